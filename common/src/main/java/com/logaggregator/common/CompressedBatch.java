@@ -0,0 +1,111 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.common;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictDecompress;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Batch of log entries compressed with the dictionary of their source.
+ *
+ * The payload is the zstd compressed JSON array of the entries. The
+ * dictionary is published as a {@link LogDictionary} before the first
+ * batch that uses it. Batches are sent as raw bytes in the
+ * {@link WireFormat#ZSTD_DICTIONARY} format: a two byte magic, the
+ * version, entry count, dictionary id and payload size, then the payload.
+ */
+public final class CompressedBatch {
+
+    private static final byte MAGIC_0 = 'L';
+    private static final byte MAGIC_1 = 'Z';
+    // Magic, version, entry count, dictionary id and payload size
+    private static final int HEADER_BYTES = 3 + Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+    private final int batchVersion;
+    private final int entryCount;
+    private final long dictId;
+    private final int payloadSize;
+    private final byte[] payload;
+
+    private CompressedBatch(int batchVersion, int entryCount, long dictId, int payloadSize, byte[] payload) {
+        this.batchVersion = batchVersion;
+        this.entryCount = entryCount;
+        this.dictId = dictId;
+        this.payloadSize = payloadSize;
+        this.payload = payload;
+    }
+
+    /**
+     * Build the record value of a dictionary-compressed JSON array of entries
+     *
+     * @param payloadSize bytes of the array before compression
+     */
+    public static byte[] toRecord(int entryCount, long dictId, int payloadSize, byte[] compressed) {
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + compressed.length);
+        record.put(MAGIC_0).put(MAGIC_1).put((byte) LogBatch.CURRENT_VERSION);
+        record.putInt(entryCount);
+        record.putLong(dictId);
+        record.putInt(payloadSize);
+        record.put(compressed);
+        return record.array();
+    }
+
+    /**
+     * Check whether a record value starts with the compressed batch magic
+     */
+    public static boolean isRecord(byte[] value) {
+        return value != null && value.length >= HEADER_BYTES && value[0] == MAGIC_0 && value[1] == MAGIC_1;
+    }
+
+    /**
+     * Read the header of a compressed record; the payload stays compressed
+     *
+     * @throws IllegalArgumentException if the value is not a compressed batch
+     */
+    public static CompressedBatch fromRecord(byte[] value) {
+        if (!isRecord(value)) {
+            throw new IllegalArgumentException("Not a compressed log batch");
+        }
+        ByteBuffer record = ByteBuffer.wrap(value, 2, value.length - 2);
+        int batchVersion = record.get();
+        int entryCount = record.getInt();
+        long dictId = record.getLong();
+        int payloadSize = record.getInt();
+        return new CompressedBatch(batchVersion, entryCount, dictId, payloadSize,
+            Arrays.copyOfRange(value, HEADER_BYTES, value.length));
+    }
+
+    /**
+     * Check whether this version of the batch can be read
+     */
+    public boolean isSupported() {
+        return batchVersion >= 1 && batchVersion <= LogBatch.CURRENT_VERSION;
+    }
+
+    /**
+     * Decompress the payload
+     *
+     * @param dictionary the dictionary published under {@link #getDictId()},
+     *                   loaded once and shared by every batch using it
+     * @return the UTF-8 JSON array of the entries
+     */
+    public byte[] decompressEntries(ZstdDictDecompress dictionary) {
+        return Zstd.decompress(payload, dictionary, payloadSize);
+    }
+
+    public int getBatchVersion() { return batchVersion; }
+
+    public int getEntryCount() { return entryCount; }
+
+    public long getDictId() { return dictId; }
+
+    public int getPayloadSize() { return payloadSize; }
+}
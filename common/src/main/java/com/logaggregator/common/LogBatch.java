@@ -0,0 +1,122 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.common;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Envelope carrying many log entries in a single Kafka record.
+ *
+ * The JSON form always starts with the batch_version field, so consumers
+ * can tell an envelope from a single serialized {@link LogEntry} without
+ * parsing it and accept both on the same topic. Producers that already
+ * hold serialized entries can build the envelope with
+ * {@link #toJson(int, byte[], int, int)} instead of serializing them a
+ * second time. Compressed batches are not envelopes, see
+ * {@link CompressedBatch}.
+ */
+@JsonPropertyOrder({"batch_version", "entry_count", "entries"})
+public class LogBatch {
+
+    public static final int CURRENT_VERSION = 1;
+
+    private static final String PREFIX = "{\"batch_version\":";
+
+    @JsonProperty("batch_version")
+    private int batchVersion = CURRENT_VERSION;
+
+    @JsonProperty("entry_count")
+    private int entryCount;
+
+    @JsonProperty("entries")
+    private List<LogEntry> entries = new ArrayList<>();
+
+    // Default constructor for Jackson
+    public LogBatch() {
+    }
+
+    public LogBatch(List<LogEntry> entries) {
+        this.entries = entries;
+        this.entryCount = entries.size();
+    }
+
+    /**
+     * Check whether a record value is a batch envelope rather than a single entry
+     */
+    public static boolean isBatch(String json) {
+        if (json == null) {
+            return false;
+        }
+        int start = 0;
+        while (start < json.length() && Character.isWhitespace(json.charAt(start))) {
+            start++;
+        }
+        return json.startsWith(PREFIX, start);
+    }
+
+    /**
+     * Check whether a UTF-8 record value is a batch envelope rather than a single entry
+     */
+    public static boolean isBatch(byte[] json) {
+        if (json == null) {
+            return false;
+        }
+        int start = 0;
+        while (start < json.length && Character.isWhitespace(json[start])) {
+            start++;
+        }
+        if (json.length - start < PREFIX.length()) {
+            return false;
+        }
+        for (int i = 0; i < PREFIX.length(); i++) {
+            if (json[start + i] != PREFIX.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Build the UTF-8 envelope around entries that are already serialized to JSON
+     *
+     * @param entries buffer holding the comma separated entries
+     * @param offset start of the first entry in the buffer
+     * @param length bytes from the first entry to the end of the last
+     */
+    public static byte[] toJson(int entryCount, byte[] entries, int offset, int length) {
+        byte[] head = (PREFIX + CURRENT_VERSION + ",\"entry_count\":" + entryCount + ",\"entries\":[")
+            .getBytes(StandardCharsets.UTF_8);
+        byte[] json = new byte[head.length + length + 2];
+        System.arraycopy(head, 0, json, 0, head.length);
+        System.arraycopy(entries, offset, json, head.length, length);
+        json[json.length - 2] = ']';
+        json[json.length - 1] = '}';
+        return json;
+    }
+
+    /**
+     * Check whether this version of the envelope can be read
+     */
+    public boolean isSupported() {
+        return batchVersion >= 1 && batchVersion <= CURRENT_VERSION;
+    }
+
+    public int getBatchVersion() { return batchVersion; }
+    public void setBatchVersion(int batchVersion) { this.batchVersion = batchVersion; }
+
+    public int getEntryCount() { return entryCount; }
+    public void setEntryCount(int entryCount) { this.entryCount = entryCount; }
+
+    public List<LogEntry> getEntries() { return entries; }
+    public void setEntries(List<LogEntry> entries) { this.entries = entries; }
+}
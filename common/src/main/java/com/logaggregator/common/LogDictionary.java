@@ -0,0 +1,69 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.common;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A zstd dictionary trained by an agent on the lines of one source.
+ * Published to the dictionary topic, keyed by its id, before any
+ * {@link LogBatch} compressed with it is sent.
+ *
+ * The id is derived from the dictionary bytes with {@link #idOf(byte[])}
+ * rather than taken from the 32-bit id zstd picks at random while
+ * training. Every agent publishes to the same compacted topic and trains
+ * again on each restart, so random ids would collide and replace
+ * dictionaries that records still in retention need.
+ */
+public class LogDictionary {
+
+    @JsonProperty("dict_id")
+    private long dictId;
+
+    @JsonProperty("source")
+    private String source;
+
+    @JsonProperty("dictionary")
+    private byte[] dictionary;
+
+    // Default constructor for Jackson
+    public LogDictionary() {
+    }
+
+    public LogDictionary(long dictId, String source, byte[] dictionary) {
+        this.dictId = dictId;
+        this.source = source;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Id of a dictionary: the first 64 bits of the SHA-256 digest of its bytes
+     */
+    public static long idOf(byte[] dictionary) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(dictionary);
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public long getDictId() { return dictId; }
+    public void setDictId(long dictId) { this.dictId = dictId; }
+
+    public String getSource() { return source; }
+    public void setSource(String source) { this.source = source; }
+
+    public byte[] getDictionary() { return dictionary; }
+    public void setDictionary(byte[] dictionary) { this.dictionary = dictionary; }
+}
@@ -0,0 +1,578 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.common;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Compact binary encoding of a batch of {@link LogEntry}s.
+ *
+ * A record starts with a two byte magic and the schema version, followed
+ * by the entry count, a string table and the entries. Source, host,
+ * application, thread, logger and every metadata and tag key are written
+ * once into the string table and referenced by index, so the names that
+ * JSON repeats in every entry cost one or two bytes each. Integers are
+ * zigzag varints, timestamps are epoch milliseconds stored as deltas to
+ * the previous entry, UUID ids take 16 bytes, and a raw message equal to
+ * the message is a flag instead of a second copy. Readers reject versions
+ * newer than they know.
+ *
+ * Encoding writes into scratch buffers kept per thread and allocates
+ * little beyond the returned value: strings are written as UTF-8 in place
+ * and ids and timestamps are converted without intermediate objects.
+ */
+public final class LogEntryCodec {
+
+    public static final int VERSION = 1;
+
+    private static final byte MAGIC_0 = 'L';
+    private static final byte MAGIC_1 = 'E';
+
+    // Field presence bits of an entry
+    private static final int HAS_ID = 1;
+    private static final int HAS_SOURCE = 1 << 1;
+    private static final int HAS_LEVEL = 1 << 2;
+    private static final int HAS_MESSAGE = 1 << 3;
+    private static final int HAS_RAW_MESSAGE = 1 << 4;
+    private static final int RAW_IS_MESSAGE = 1 << 5;
+    private static final int HAS_HOSTNAME = 1 << 6;
+    private static final int HAS_APPLICATION = 1 << 7;
+    private static final int HAS_THREAD = 1 << 8;
+    private static final int HAS_LOGGER = 1 << 9;
+    private static final int HAS_TIMESTAMP = 1 << 10;
+    private static final int HAS_PROCESSED = 1 << 11;
+    private static final int HAS_METADATA = 1 << 12;
+    private static final int HAS_TAGS = 1 << 13;
+    private static final int ID_IS_UUID = 1 << 14;
+
+    // Types of metadata values
+    private static final int VALUE_NULL = 0;
+    private static final int VALUE_STRING = 1;
+    private static final int VALUE_LONG = 2;
+    private static final int VALUE_DOUBLE = 3;
+    private static final int VALUE_TRUE = 4;
+    private static final int VALUE_FALSE = 5;
+
+    private static final LogLevel[] LEVELS = LogLevel.values();
+
+    private static final ThreadLocal<Encoder> ENCODERS = ThreadLocal.withInitial(Encoder::new);
+
+    private LogEntryCodec() {
+    }
+
+    /**
+     * Check whether a record value starts with the binary magic
+     */
+    public static boolean isBinary(byte[] value) {
+        return value != null && value.length >= 3 && value[0] == MAGIC_0 && value[1] == MAGIC_1;
+    }
+
+    /**
+     * Encode entries into one record value
+     */
+    public static byte[] encode(List<LogEntry> entries) {
+        Encoder encoder = ENCODERS.get();
+        try {
+            return encoder.encode(entries);
+        } finally {
+            encoder.reset();
+        }
+    }
+
+    /**
+     * Decode the entries of a record value
+     *
+     * @throws IllegalArgumentException if the value is not a binary batch or has an unknown version
+     */
+    public static List<LogEntry> decode(byte[] value) {
+        if (!isBinary(value)) {
+            throw new IllegalArgumentException("Not a binary log entry batch");
+        }
+        int version = value[2];
+        if (version < 1 || version > VERSION) {
+            throw new IllegalArgumentException("Unsupported binary log entry version " + version);
+        }
+
+        Reader in = new Reader(value, 3);
+        int count = in.readVarint();
+        String[] strings = new String[in.readVarint()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = in.readString();
+        }
+
+        List<LogEntry> entries = new ArrayList<>(count);
+        long previousTimestamp = 0;
+        for (int i = 0; i < count; i++) {
+            LogEntry entry = new LogEntry();
+            previousTimestamp = readEntry(in, entry, strings, previousTimestamp);
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private static long writeEntry(Buffer out, LogEntry entry, StringTable strings, long previousTimestamp) {
+        String message = entry.getMessage();
+        String rawMessage = entry.getRawMessage();
+        Map<String, Object> metadata = entry.getMetadata();
+        Map<String, String> tags = entry.getTags();
+
+        boolean uuid = isCanonicalUuid(entry.getId());
+        int fields = 0;
+        if (entry.getId() != null) {
+            fields |= uuid ? ID_IS_UUID : HAS_ID;
+        }
+        fields |= entry.getSource() != null ? HAS_SOURCE : 0;
+        fields |= entry.getLevel() != null ? HAS_LEVEL : 0;
+        fields |= message != null ? HAS_MESSAGE : 0;
+        if (rawMessage != null) {
+            fields |= rawMessage.equals(message) ? RAW_IS_MESSAGE : HAS_RAW_MESSAGE;
+        }
+        fields |= entry.getHostname() != null ? HAS_HOSTNAME : 0;
+        fields |= entry.getApplication() != null ? HAS_APPLICATION : 0;
+        fields |= entry.getThread() != null ? HAS_THREAD : 0;
+        fields |= entry.getLoggerName() != null ? HAS_LOGGER : 0;
+        fields |= entry.getTimestamp() != null ? HAS_TIMESTAMP : 0;
+        fields |= entry.getProcessedTimestamp() != null ? HAS_PROCESSED : 0;
+        fields |= !metadata.isEmpty() ? HAS_METADATA : 0;
+        fields |= !tags.isEmpty() ? HAS_TAGS : 0;
+        out.writeVarint(fields);
+
+        if ((fields & HAS_ID) != 0) {
+            out.writeString(entry.getId());
+        } else if (uuid) {
+            // Hex digits of the canonical form, skipping the dashes
+            out.writeLong(parseHex(entry.getId(), 0, 18));
+            out.writeLong(parseHex(entry.getId(), 19, 36));
+        }
+        if ((fields & HAS_SOURCE) != 0) {
+            out.writeVarint(strings.indexOf(entry.getSource()));
+        }
+        if ((fields & HAS_LEVEL) != 0) {
+            out.writeByte(entry.getLevel().ordinal());
+        }
+        if ((fields & HAS_MESSAGE) != 0) {
+            out.writeString(message);
+        }
+        if ((fields & HAS_RAW_MESSAGE) != 0) {
+            out.writeString(rawMessage);
+        }
+        if ((fields & HAS_HOSTNAME) != 0) {
+            out.writeVarint(strings.indexOf(entry.getHostname()));
+        }
+        if ((fields & HAS_APPLICATION) != 0) {
+            out.writeVarint(strings.indexOf(entry.getApplication()));
+        }
+        if ((fields & HAS_THREAD) != 0) {
+            out.writeVarint(strings.indexOf(entry.getThread()));
+        }
+        if ((fields & HAS_LOGGER) != 0) {
+            out.writeVarint(strings.indexOf(entry.getLoggerName()));
+        }
+
+        long timestamp = previousTimestamp;
+        if ((fields & HAS_TIMESTAMP) != 0) {
+            timestamp = toEpochMillis(entry.getTimestamp());
+            out.writeSignedVarlong(timestamp - previousTimestamp);
+        }
+        if ((fields & HAS_PROCESSED) != 0) {
+            out.writeSignedVarlong(toEpochMillis(entry.getProcessedTimestamp()) - timestamp);
+        }
+
+        if ((fields & HAS_METADATA) != 0) {
+            out.writeVarint(metadata.size());
+            for (Map.Entry<String, Object> field : metadata.entrySet()) {
+                out.writeVarint(strings.indexOf(field.getKey()));
+                writeValue(out, field.getValue(), strings);
+            }
+        }
+        if ((fields & HAS_TAGS) != 0) {
+            out.writeVarint(tags.size());
+            for (Map.Entry<String, String> tag : tags.entrySet()) {
+                out.writeVarint(strings.indexOf(tag.getKey()));
+                out.writeVarint(tag.getValue() != null ? strings.indexOf(tag.getValue()) + 1 : 0);
+            }
+        }
+        return timestamp;
+    }
+
+    private static long readEntry(Reader in, LogEntry entry, String[] strings, long previousTimestamp) {
+        int fields = in.readVarint();
+
+        if ((fields & HAS_ID) != 0) {
+            entry.setId(in.readString());
+        } else if ((fields & ID_IS_UUID) != 0) {
+            entry.setId(new UUID(in.readLong(), in.readLong()).toString());
+        } else {
+            entry.setId(null);
+        }
+        entry.setSource((fields & HAS_SOURCE) != 0 ? strings[in.readVarint()] : null);
+        entry.setLevel((fields & HAS_LEVEL) != 0 ? LEVELS[in.readByte()] : null);
+        entry.setMessage((fields & HAS_MESSAGE) != 0 ? in.readString() : null);
+        if ((fields & HAS_RAW_MESSAGE) != 0) {
+            entry.setRawMessage(in.readString());
+        } else if ((fields & RAW_IS_MESSAGE) != 0) {
+            entry.setRawMessage(entry.getMessage());
+        }
+        entry.setHostname((fields & HAS_HOSTNAME) != 0 ? strings[in.readVarint()] : null);
+        entry.setApplication((fields & HAS_APPLICATION) != 0 ? strings[in.readVarint()] : null);
+        entry.setThread((fields & HAS_THREAD) != 0 ? strings[in.readVarint()] : null);
+        entry.setLoggerName((fields & HAS_LOGGER) != 0 ? strings[in.readVarint()] : null);
+
+        long timestamp = previousTimestamp;
+        if ((fields & HAS_TIMESTAMP) != 0) {
+            timestamp = previousTimestamp + in.readSignedVarlong();
+            entry.setTimestamp(fromEpochMillis(timestamp));
+        } else {
+            entry.setTimestamp(null);
+        }
+        entry.setProcessedTimestamp((fields & HAS_PROCESSED) != 0
+            ? fromEpochMillis(timestamp + in.readSignedVarlong()) : null);
+
+        if ((fields & HAS_METADATA) != 0) {
+            int size = in.readVarint();
+            Map<String, Object> metadata = new HashMap<>(size * 2);
+            for (int i = 0; i < size; i++) {
+                metadata.put(strings[in.readVarint()], readValue(in, strings));
+            }
+            entry.setMetadata(metadata);
+        }
+        if ((fields & HAS_TAGS) != 0) {
+            int size = in.readVarint();
+            Map<String, String> tags = new HashMap<>(size * 2);
+            for (int i = 0; i < size; i++) {
+                String key = strings[in.readVarint()];
+                int valueIndex = in.readVarint();
+                tags.put(key, valueIndex > 0 ? strings[valueIndex - 1] : null);
+            }
+            entry.setTags(tags);
+        }
+        return timestamp;
+    }
+
+    private static void writeValue(Buffer out, Object value, StringTable strings) {
+        if (value == null) {
+            out.writeByte(VALUE_NULL);
+        } else if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            out.writeByte(VALUE_LONG);
+            out.writeSignedVarlong(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            out.writeByte(VALUE_DOUBLE);
+            out.writeLong(Double.doubleToLongBits(((Number) value).doubleValue()));
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? VALUE_TRUE : VALUE_FALSE);
+        } else {
+            out.writeByte(VALUE_STRING);
+            out.writeVarint(strings.indexOf(value.toString()));
+        }
+    }
+
+    private static Object readValue(Reader in, String[] strings) {
+        int type = in.readByte();
+        switch (type) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_STRING:
+                return strings[in.readVarint()];
+            case VALUE_LONG:
+                // Small numbers come back as Integer, like they do from JSON
+                long number = in.readSignedVarlong();
+                return number == (int) number ? (Object) (int) number : (Object) number;
+            case VALUE_DOUBLE:
+                return Double.longBitsToDouble(in.readLong());
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            default:
+                throw new IllegalArgumentException("Unknown metadata value type " + type);
+        }
+    }
+
+    /**
+     * Check whether the id is a UUID in the lower case canonical form that
+     * {@link UUID#toString()} produces, so it reads back unchanged
+     */
+    private static boolean isCanonicalUuid(String id) {
+        if (id == null || id.length() != 36) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            char c = id.charAt(i);
+            boolean valid = i == 8 || i == 13 || i == 18 || i == 23
+                ? c == '-'
+                : (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f');
+            if (!valid) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long parseHex(String value, int from, int to) {
+        long bits = 0;
+        for (int i = from; i < to; i++) {
+            char c = value.charAt(i);
+            if (c != '-') {
+                bits = (bits << 4) | Character.digit(c, 16);
+            }
+        }
+        return bits;
+    }
+
+    private static long toEpochMillis(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1000 + time.getNano() / 1_000_000;
+    }
+
+    private static LocalDateTime fromEpochMillis(long millis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000),
+            (int) Math.floorMod(millis, 1000) * 1_000_000, ZoneOffset.UTC);
+    }
+
+    /**
+     * Scratch space of one thread: the string table, the entries and the
+     * header are collected separately and copied once into the value
+     */
+    private static class Encoder {
+        private final StringTable strings = new StringTable();
+        private final Buffer head = new Buffer(1024);
+        private final Buffer body = new Buffer(64 * 1024);
+
+        byte[] encode(List<LogEntry> entries) {
+            long previousTimestamp = 0;
+            for (LogEntry entry : entries) {
+                previousTimestamp = writeEntry(body, entry, strings, previousTimestamp);
+            }
+
+            head.writeByte(MAGIC_0);
+            head.writeByte(MAGIC_1);
+            head.writeByte(VERSION);
+            head.writeVarint(entries.size());
+            head.writeVarint(strings.values.size());
+            for (String value : strings.values) {
+                head.writeString(value);
+            }
+
+            byte[] value = new byte[head.size + body.size];
+            System.arraycopy(head.bytes, 0, value, 0, head.size);
+            System.arraycopy(body.bytes, 0, value, head.size, body.size);
+            return value;
+        }
+
+        void reset() {
+            strings.clear();
+            head.reset();
+            body.reset();
+        }
+    }
+
+    /**
+     * Strings of a batch in order of first use
+     */
+    private static class StringTable {
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int indexOf(String value) {
+            Integer index = indexes.get(value);
+            if (index == null) {
+                index = values.size();
+                indexes.put(value, index);
+                values.add(value);
+            }
+            return index;
+        }
+
+        void clear() {
+            indexes.clear();
+            values.clear();
+        }
+    }
+
+    /**
+     * Growable output buffer
+     */
+    private static class Buffer {
+        // Buffers grown past this are not kept, so one huge batch does not pin its memory
+        private static final int MAX_RETAINED_BYTES = 4 * 1024 * 1024;
+
+        private final int initialCapacity;
+        private byte[] bytes;
+        private int size;
+
+        Buffer(int capacity) {
+            this.initialCapacity = capacity;
+            this.bytes = new byte[capacity];
+        }
+
+        void reset() {
+            if (bytes.length > MAX_RETAINED_BYTES) {
+                bytes = new byte[initialCapacity];
+            }
+            size = 0;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(size + extra, bytes.length * 2));
+            }
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            bytes[size++] = (byte) value;
+        }
+
+        void write(byte[] source, int offset, int length) {
+            ensure(length);
+            System.arraycopy(source, offset, bytes, size, length);
+            size += length;
+        }
+
+        void writeVarint(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void writeSignedVarlong(long value) {
+            long zigzag = (value << 1) ^ (value >> 63);
+            ensure(10);
+            while ((zigzag & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            bytes[size++] = (byte) zigzag;
+        }
+
+        void writeLong(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        /**
+         * Write the UTF-8 length and bytes of the string without an
+         * intermediate array; unpaired surrogates become '?' as with
+         * {@link String#getBytes(java.nio.charset.Charset)}
+         */
+        void writeString(String value) {
+            int length = value.length();
+            int utf8Length = 0;
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    utf8Length++;
+                } else if (c < 0x800) {
+                    utf8Length += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < length
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    utf8Length += 4;
+                    i++;
+                } else if (Character.isSurrogate(c)) {
+                    utf8Length++;
+                } else {
+                    utf8Length += 3;
+                }
+            }
+
+            writeVarint(utf8Length);
+            ensure(utf8Length);
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    bytes[size++] = (byte) c;
+                } else if (c < 0x800) {
+                    bytes[size++] = (byte) (0xC0 | (c >> 6));
+                    bytes[size++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < length
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    bytes[size++] = (byte) (0xF0 | (codePoint >> 18));
+                    bytes[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    bytes[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    bytes[size++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    bytes[size++] = '?';
+                } else {
+                    bytes[size++] = (byte) (0xE0 | (c >> 12));
+                    bytes[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    bytes[size++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+    }
+
+    /**
+     * Reader over a record value
+     */
+    private static class Reader {
+        private final byte[] bytes;
+        private int position;
+
+        Reader(byte[] bytes, int position) {
+            this.bytes = bytes;
+            this.position = position;
+        }
+
+        int readByte() {
+            return bytes[position++] & 0xFF;
+        }
+
+        int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = bytes[position++];
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        long readSignedVarlong() {
+            long zigzag = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                long b = bytes[position++];
+                zigzag |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return (zigzag >>> 1) ^ -(zigzag & 1);
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        long readLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (bytes[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        String readString() {
+            int length = readVarint();
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
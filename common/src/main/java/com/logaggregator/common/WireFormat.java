@@ -0,0 +1,85 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.common;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encoding of the log records on a topic.
+ *
+ * Producers name the encoding of every record in the {@link #HEADER}
+ * header, so JSON and binary records can share a topic while producers
+ * are switched over one by one. Records without the header are JSON, as
+ * written before the header existed.
+ *
+ * {@link #ZSTD_DICTIONARY} records are batches the agent compressed with
+ * the dictionary of their source, see {@link CompressedBatch}.
+ * Producers choose it per batch, it cannot be configured for a topic.
+ */
+public enum WireFormat {
+    JSON("json", true),
+    BINARY("binary", true),
+    ZSTD_DICTIONARY("zstd-dict", false);
+
+    public static final String HEADER = "log-format";
+
+    private final String name;
+    private final byte[] headerValue;
+    private final boolean configurable;
+
+    WireFormat(String name, boolean configurable) {
+        this.name = name;
+        this.headerValue = name.getBytes(StandardCharsets.UTF_8);
+        this.configurable = configurable;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Value of the {@link #HEADER} header for this format
+     */
+    public byte[] getHeaderValue() {
+        return headerValue.clone();
+    }
+
+    /**
+     * Format named by a record header; a missing header means JSON
+     *
+     * @return the format, or null if the header names an unknown one
+     */
+    public static WireFormat fromHeader(byte[] value) {
+        if (value == null) {
+            return JSON;
+        }
+        return fromName(new String(value, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Format configured for a topic
+     *
+     * @throws IllegalArgumentException if the name is not a format a topic can be configured with
+     */
+    public static WireFormat fromConfig(String value) {
+        WireFormat format = fromName(value.trim());
+        if (format == null || !format.configurable) {
+            throw new IllegalArgumentException("Unknown wire format: " + value);
+        }
+        return format;
+    }
+
+    private static WireFormat fromName(String value) {
+        for (WireFormat format : values()) {
+            if (format.name.equalsIgnoreCase(value)) {
+                return format;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.compress;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.github.luben.zstd.ZstdException;
+import com.logaggregator.common.LogDictionary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Zstd compression of batch payloads with a dictionary trained per source.
+ *
+ * Log lines of one source share most of their bytes, so a small batch
+ * compresses poorly on its own but very well against a dictionary trained
+ * on earlier lines of the same source. The first lines of every source are
+ * collected as samples until the sample budget is full, then a dictionary
+ * is trained in the background and handed to the publisher. The dictionary
+ * is used only after the publisher confirms it was delivered, so consumers
+ * can always find the dictionary of a batch they receive. Until then
+ * {@link #compress(String, byte[])} returns null and batches go out plain.
+ */
+public class DictionaryCompressor {
+
+    private static final Logger logger = LoggerFactory.getLogger(DictionaryCompressor.class);
+
+    /**
+     * Delivers a trained dictionary to consumers
+     */
+    @FunctionalInterface
+    public interface DictionaryPublisher {
+        CompletableFuture<Void> publish(String source, long dictId, byte[] dictionary);
+    }
+
+    /**
+     * A payload compressed with the dictionary of its source
+     */
+    public static class Compressed {
+        private final long dictId;
+        private final byte[] data;
+
+        Compressed(long dictId, byte[] data) {
+            this.dictId = dictId;
+            this.data = data;
+        }
+
+        public long getDictId() { return dictId; }
+        public byte[] getData() { return data; }
+    }
+
+    private static class SourceState {
+        private ZstdDictTrainer trainer;
+        private boolean training;
+        private volatile long dictId;
+        private volatile ZstdDictCompress dictionary;
+    }
+
+    private final int sampleBytes;
+    private final int dictionarySizeBytes;
+    private final int level;
+    private final Executor trainingExecutor;
+    private final DictionaryPublisher publisher;
+    private final Map<String, SourceState> sources = new ConcurrentHashMap<>();
+    private final AtomicLong dictionariesTrained = new AtomicLong(0);
+    private final AtomicLong trainingFailures = new AtomicLong(0);
+    private final AtomicLong uncompressedBytes = new AtomicLong(0);
+    private final AtomicLong compressedBytes = new AtomicLong(0);
+
+    public DictionaryCompressor(int sampleBytes, int dictionarySizeBytes, int level,
+                                Executor trainingExecutor, DictionaryPublisher publisher) {
+        this.sampleBytes = sampleBytes;
+        this.dictionarySizeBytes = dictionarySizeBytes;
+        this.level = level;
+        this.trainingExecutor = trainingExecutor;
+        this.publisher = publisher;
+    }
+
+    /**
+     * Check whether the source still collects samples, so callers only
+     * copy out entries that {@link #sample(String, List)} will keep
+     */
+    public boolean isSampling(String source) {
+        SourceState state = sources.get(source);
+        if (state == null) {
+            return true;
+        }
+        synchronized (state) {
+            return !state.training && state.dictionary == null;
+        }
+    }
+
+    /**
+     * Collect serialized entries of a source as training samples until its
+     * sample budget is full, then train its dictionary in the background
+     */
+    public void sample(String source, List<byte[]> entryJson) {
+        SourceState state = sources.computeIfAbsent(source, s -> new SourceState());
+        synchronized (state) {
+            if (state.training || state.dictionary != null) {
+                return;
+            }
+            if (state.trainer == null) {
+                state.trainer = new ZstdDictTrainer(sampleBytes, dictionarySizeBytes);
+            }
+            for (byte[] json : entryJson) {
+                if (!state.trainer.addSample(json)) {
+                    // Sample budget is full
+                    state.training = true;
+                    ZstdDictTrainer trainer = state.trainer;
+                    state.trainer = null;
+                    trainingExecutor.execute(() -> train(source, state, trainer));
+                    return;
+                }
+            }
+        }
+    }
+
+    private void train(String source, SourceState state, ZstdDictTrainer trainer) {
+        byte[] dictionary;
+        long dictId;
+        try {
+            dictionary = trainer.trainSamples();
+            dictId = LogDictionary.idOf(dictionary);
+        } catch (ZstdException e) {
+            // Too few or too uniform samples; batches of this source stay plain
+            trainingFailures.incrementAndGet();
+            logger.warn("Failed to train compression dictionary for {}: {}", source, e.getMessage());
+            return;
+        }
+
+        publisher.publish(source, dictId, dictionary).whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                logger.warn("Failed to publish compression dictionary for {}: {}", source, throwable.getMessage());
+                synchronized (state) {
+                    // Sample again and retry with a fresh dictionary
+                    state.training = false;
+                }
+                return;
+            }
+            state.dictId = dictId;
+            state.dictionary = new ZstdDictCompress(dictionary, level);
+            dictionariesTrained.incrementAndGet();
+            logger.info("Compression dictionary {} of {} bytes is active for {}", dictId, dictionary.length, source);
+        });
+    }
+
+    /**
+     * Compress a payload with the dictionary of its source
+     *
+     * @return the compressed payload, or null while the source has no published dictionary
+     */
+    public Compressed compress(String source, byte[] payload) {
+        SourceState state = sources.get(source);
+        ZstdDictCompress dictionary = state != null ? state.dictionary : null;
+        if (dictionary == null) {
+            return null;
+        }
+        byte[] compressed = Zstd.compress(payload, dictionary);
+        uncompressedBytes.addAndGet(payload.length);
+        compressedBytes.addAndGet(compressed.length);
+        return new Compressed(state.dictId, compressed);
+    }
+
+    /**
+     * Release the native dictionaries
+     */
+    public void close() {
+        for (SourceState state : sources.values()) {
+            ZstdDictCompress dictionary = state.dictionary;
+            if (dictionary != null) {
+                dictionary.close();
+            }
+        }
+        sources.clear();
+    }
+
+    public long getDictionariesTrained() { return dictionariesTrained.get(); }
+    public long getTrainingFailures() { return trainingFailures.get(); }
+    public long getUncompressedBytes() { return uncompressedBytes.get(); }
+    public long getCompressedBytes() { return compressedBytes.get(); }
+}
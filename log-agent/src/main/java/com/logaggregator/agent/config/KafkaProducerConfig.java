@@ -0,0 +1,49 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.config;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.springframework.boot.autoconfigure.kafka.DefaultKafkaProducerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Producer settings derived from the agent configuration.
+ * Compresses every producer batch with the configured codec, or sends
+ * uncompressed when compressLogs is off.
+ */
+@Configuration
+public class KafkaProducerConfig {
+
+    static final List<String> SUPPORTED_CODECS = List.of("none", "gzip", "lz4", "zstd");
+
+    @Bean
+    public DefaultKafkaProducerFactoryCustomizer compressionCustomizer(LogAgentConfig config) {
+        String compressionType = compressionType(config);
+        return factory -> factory.updateConfigs(Map.of(ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType));
+    }
+
+    /**
+     * Kafka compression.type for the agent configuration
+     */
+    static String compressionType(LogAgentConfig config) {
+        if (!config.isCompressLogs()) {
+            return "none";
+        }
+        String codec = config.getCompressionCodec().trim().toLowerCase(Locale.ROOT);
+        if (!SUPPORTED_CODECS.contains(codec)) {
+            throw new IllegalArgumentException("Unsupported compression codec: " + config.getCompressionCodec()
+                + " (expected one of " + SUPPORTED_CODECS + ")");
+        }
+        return codec;
+    }
+}
@@ -12,6 +12,8 @@ import org.springframework.context.annotation.Configuration;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Configuration properties for the Log Agent.
@@ -25,6 +27,7 @@ public class LogAgentConfig {
     private String hostname = "localhost";
     private List<String> watchDirectories = new ArrayList<>();
     private List<String> filePatterns = List.of("*.log", "*.txt");
+    private List<String> excludePatterns = List.of();
     private int scanIntervalSeconds = 30;
     private int batchSize = 100;
     private boolean enableFileWatcher = true;
@@ -33,6 +36,84 @@ public class LogAgentConfig {
     private long maxFileSizeBytes = 100 * 1024 * 1024; // 100MB
     private int maxRetries = 3;
     private boolean compressLogs = true;
+    private String fileEncoding = "UTF-8";
+    private int readBufferSizeBytes = 64 * 1024; // 64KB
+    private long catchUpThresholdBytes = 32 * 1024 * 1024; // 32MB
+    private long catchUpExitDistanceBytes = 1024 * 1024; // 1MB
+    private int catchUpWindowBytes = 16 * 1024 * 1024; // 16MB
+    private boolean enableCheckpoints = true;
+    private String checkpointDirectory = "./data/checkpoints";
+    private long checkpointFlushIntervalMs = 1000;
+    private int checkpointCompactThreshold = 10000;
+    private int fingerprintBytes = 1024;
+    private long drainSliceMs = 50;
+    private int tailParallelism = 0; // 0 = one drain worker per CPU core
+    private boolean enableMultiline = false;
+    private String multilineStartPattern = "";
+    private String multilineContinuationPattern = "^\\s|^Caused by:|^Suppressed:|^[\\w$.]+(Exception|Error|Throwable)(:|$)";
+    private int multilineMaxLines = 500;
+    private long multilineFlushTimeoutMs = 1000;
+    private boolean enableArchiveIngest = false;
+    private List<String> archivePatterns = List.of("*.gz", "*.zst");
+    private int archiveHandoverRetentionHours = 168; // how long a rotated file's offset waits for its compressed copy
+    private long ingestQueueBudgetBytes = 64 * 1024 * 1024; // 64MB
+    private boolean enableSpool = true;
+    private String spoolDirectory = "./data/spool";
+    private long spoolSegmentBytes = 64 * 1024 * 1024; // 64MB
+    private long spoolMaxBytes = 1024L * 1024 * 1024; // 1GB
+    private String spoolEvictionPolicy = "drop-oldest";
+    private int spoolReplayBatchSize = 1000;
+    private long spoolReplayIntervalMs = 1000;
+    private long spoolReplayTimeoutMs = 30000;
+    private int maxInFlightRecords = 10000;
+    private boolean enableBatchRecords = false;
+    private int batchRecordMaxEntries = 500;
+    private int batchRecordMaxBytes = 900 * 1024; // below the broker's 1MB default message limit
+    private String compressionCodec = "zstd"; // none, gzip, lz4 or zstd
+    private boolean enableCompressionDictionary = false; // applies to batch records
+    private String dictionaryTopicName = "log-dictionaries";
+    private int dictionarySampleBytes = 1024 * 1024; // 1MB
+    private int dictionarySizeBytes = 16 * 1024; // 16KB
+    private int compressionLevel = 3;
+    private long retryBackoffMs = 100;
+    private long retryBackoffMaxMs = 5000;
+    private int maxInFlightPerBatch = 32; // 0 = no limit
+    private String wireFormat = "json"; // json or binary
+    private String partitionStrategy = "source"; // source, round-robin or load-aware
+    private int partitionSubKeys = 8; // most sub-keys one source is spread over
+    private double hotSourceRecordsPerSecond = 5000; // load-aware: entries per second per sub-key
+    private boolean enableRateLimit = false;
+    private double sourceRateLimit = 2000; // entries per second per source, 0 = no limit
+    private int sourceRateBurst = 10000;
+    private double applicationRateLimit = 0; // entries per second per application, 0 = no limit
+    private int applicationRateBurst = 20000;
+    private Map<String, Double> applicationRateLimits = new HashMap<>(); // per-application overrides
+    private long rateLimitSummaryIntervalMs = 60000;
+    private boolean enableDeduplication = false;
+    private String deduplicationMode = "template"; // exact, template
+    private long deduplicationWindowMs = 2000;
+    private int deduplicationTableSize = 4096; // slots, bounds the lines tracked at once
+    private List<String> samplingRules = List.of(); // source-glob[:LEVEL]=rate
+    private String systemLogSource = "auto"; // auto, files, journal
+    private List<String> systemLogFiles = List.of("/var/log/syslog", "/var/log/messages");
+    private long systemLogPollIntervalMs = 500;
+    private boolean enableSyslogListener = false;
+    private String syslogBindAddress = "0.0.0.0";
+    private int syslogPort = 5514; // for every protocol, 0 picks a free port
+    private List<String> syslogProtocols = List.of("udp", "tcp");
+    private int syslogMaxMessageBytes = 65536; // longer messages are truncated
+    private int syslogReceiveBufferBytes = 4 * 1024 * 1024; // socket buffer absorbing bursts while the queue is full
+    private boolean enableHttpIngest = false; // POST /api/agent/ingest
+    private int httpIngestRetryAfterSeconds = 1; // Retry-After sent while the ingest queue is full
+    private int httpIngestMaxLineBytes = 65536; // longer plain text lines are truncated
+    private boolean enableAdaptiveThrottle = true; // slow reading and sending down above the CPU and heap targets
+    private double throttleCpuTargetPercent = 80.0; // process CPU share of all cores, 0 to ignore
+    private double throttleHeapTargetPercent = 75.0; // heap occupancy after collection, 0 to ignore
+    private long throttleIntervalMs = 1000; // how often the readings are taken
+    private double throttleMinPace = 0.1; // share of full speed the agent never drops below
+    private long throttleMaxLingerMs = 200; // pause between sent batches at the slowest pace
+    private List<FilterRule> filterRules = new ArrayList<>();
+    private String filterDefaultAction = "keep"; // keep, drop: for entries no filter rule matches
 
     // Getters and Setters
     public String getAgentId() { return agentId; }
@@ -47,6 +128,9 @@ public class LogAgentConfig {
     public List<String> getFilePatterns() { return filePatterns; }
     public void setFilePatterns(List<String> filePatterns) { this.filePatterns = filePatterns; }
 
+    public List<String> getExcludePatterns() { return excludePatterns; }
+    public void setExcludePatterns(List<String> excludePatterns) { this.excludePatterns = excludePatterns; }
+
     public int getScanIntervalSeconds() { return scanIntervalSeconds; }
     public void setScanIntervalSeconds(int scanIntervalSeconds) { this.scanIntervalSeconds = scanIntervalSeconds; }
 
@@ -70,4 +154,278 @@ public class LogAgentConfig {
 
     public boolean isCompressLogs() { return compressLogs; }
     public void setCompressLogs(boolean compressLogs) { this.compressLogs = compressLogs; }
+
+    public String getFileEncoding() { return fileEncoding; }
+    public void setFileEncoding(String fileEncoding) { this.fileEncoding = fileEncoding; }
+
+    public int getReadBufferSizeBytes() { return readBufferSizeBytes; }
+    public void setReadBufferSizeBytes(int readBufferSizeBytes) { this.readBufferSizeBytes = readBufferSizeBytes; }
+
+    public long getCatchUpThresholdBytes() { return catchUpThresholdBytes; }
+    public void setCatchUpThresholdBytes(long catchUpThresholdBytes) { this.catchUpThresholdBytes = catchUpThresholdBytes; }
+
+    public long getCatchUpExitDistanceBytes() { return catchUpExitDistanceBytes; }
+    public void setCatchUpExitDistanceBytes(long catchUpExitDistanceBytes) { this.catchUpExitDistanceBytes = catchUpExitDistanceBytes; }
+
+    public int getCatchUpWindowBytes() { return catchUpWindowBytes; }
+    public void setCatchUpWindowBytes(int catchUpWindowBytes) { this.catchUpWindowBytes = catchUpWindowBytes; }
+
+    public boolean isEnableCheckpoints() { return enableCheckpoints; }
+    public void setEnableCheckpoints(boolean enableCheckpoints) { this.enableCheckpoints = enableCheckpoints; }
+
+    public String getCheckpointDirectory() { return checkpointDirectory; }
+    public void setCheckpointDirectory(String checkpointDirectory) { this.checkpointDirectory = checkpointDirectory; }
+
+    public long getCheckpointFlushIntervalMs() { return checkpointFlushIntervalMs; }
+    public void setCheckpointFlushIntervalMs(long checkpointFlushIntervalMs) { this.checkpointFlushIntervalMs = checkpointFlushIntervalMs; }
+
+    public int getCheckpointCompactThreshold() { return checkpointCompactThreshold; }
+    public void setCheckpointCompactThreshold(int checkpointCompactThreshold) { this.checkpointCompactThreshold = checkpointCompactThreshold; }
+
+    public int getFingerprintBytes() { return fingerprintBytes; }
+    public void setFingerprintBytes(int fingerprintBytes) { this.fingerprintBytes = fingerprintBytes; }
+
+    public long getDrainSliceMs() { return drainSliceMs; }
+    public void setDrainSliceMs(long drainSliceMs) { this.drainSliceMs = drainSliceMs; }
+
+    public int getTailParallelism() { return tailParallelism; }
+    public void setTailParallelism(int tailParallelism) { this.tailParallelism = tailParallelism; }
+
+    public boolean isEnableMultiline() { return enableMultiline; }
+    public void setEnableMultiline(boolean enableMultiline) { this.enableMultiline = enableMultiline; }
+
+    public String getMultilineStartPattern() { return multilineStartPattern; }
+    public void setMultilineStartPattern(String multilineStartPattern) { this.multilineStartPattern = multilineStartPattern; }
+
+    public String getMultilineContinuationPattern() { return multilineContinuationPattern; }
+    public void setMultilineContinuationPattern(String multilineContinuationPattern) { this.multilineContinuationPattern = multilineContinuationPattern; }
+
+    public int getMultilineMaxLines() { return multilineMaxLines; }
+    public void setMultilineMaxLines(int multilineMaxLines) { this.multilineMaxLines = multilineMaxLines; }
+
+    public long getMultilineFlushTimeoutMs() { return multilineFlushTimeoutMs; }
+    public void setMultilineFlushTimeoutMs(long multilineFlushTimeoutMs) { this.multilineFlushTimeoutMs = multilineFlushTimeoutMs; }
+
+    public boolean isEnableArchiveIngest() { return enableArchiveIngest; }
+    public void setEnableArchiveIngest(boolean enableArchiveIngest) { this.enableArchiveIngest = enableArchiveIngest; }
+
+    public List<String> getArchivePatterns() { return archivePatterns; }
+    public void setArchivePatterns(List<String> archivePatterns) { this.archivePatterns = archivePatterns; }
+
+    public int getArchiveHandoverRetentionHours() { return archiveHandoverRetentionHours; }
+    public void setArchiveHandoverRetentionHours(int archiveHandoverRetentionHours) { this.archiveHandoverRetentionHours = archiveHandoverRetentionHours; }
+
+    public long getIngestQueueBudgetBytes() { return ingestQueueBudgetBytes; }
+    public void setIngestQueueBudgetBytes(long ingestQueueBudgetBytes) { this.ingestQueueBudgetBytes = ingestQueueBudgetBytes; }
+
+    public boolean isEnableSpool() { return enableSpool; }
+    public void setEnableSpool(boolean enableSpool) { this.enableSpool = enableSpool; }
+
+    public String getSpoolDirectory() { return spoolDirectory; }
+    public void setSpoolDirectory(String spoolDirectory) { this.spoolDirectory = spoolDirectory; }
+
+    public long getSpoolSegmentBytes() { return spoolSegmentBytes; }
+    public void setSpoolSegmentBytes(long spoolSegmentBytes) { this.spoolSegmentBytes = spoolSegmentBytes; }
+
+    public long getSpoolMaxBytes() { return spoolMaxBytes; }
+    public void setSpoolMaxBytes(long spoolMaxBytes) { this.spoolMaxBytes = spoolMaxBytes; }
+
+    public String getSpoolEvictionPolicy() { return spoolEvictionPolicy; }
+    public void setSpoolEvictionPolicy(String spoolEvictionPolicy) { this.spoolEvictionPolicy = spoolEvictionPolicy; }
+
+    public int getSpoolReplayBatchSize() { return spoolReplayBatchSize; }
+    public void setSpoolReplayBatchSize(int spoolReplayBatchSize) { this.spoolReplayBatchSize = spoolReplayBatchSize; }
+
+    public long getSpoolReplayIntervalMs() { return spoolReplayIntervalMs; }
+    public void setSpoolReplayIntervalMs(long spoolReplayIntervalMs) { this.spoolReplayIntervalMs = spoolReplayIntervalMs; }
+
+    public long getSpoolReplayTimeoutMs() { return spoolReplayTimeoutMs; }
+    public void setSpoolReplayTimeoutMs(long spoolReplayTimeoutMs) { this.spoolReplayTimeoutMs = spoolReplayTimeoutMs; }
+
+    public int getMaxInFlightRecords() { return maxInFlightRecords; }
+    public void setMaxInFlightRecords(int maxInFlightRecords) { this.maxInFlightRecords = maxInFlightRecords; }
+
+    public boolean isEnableBatchRecords() { return enableBatchRecords; }
+    public void setEnableBatchRecords(boolean enableBatchRecords) { this.enableBatchRecords = enableBatchRecords; }
+
+    public int getBatchRecordMaxEntries() { return batchRecordMaxEntries; }
+    public void setBatchRecordMaxEntries(int batchRecordMaxEntries) { this.batchRecordMaxEntries = batchRecordMaxEntries; }
+
+    public int getBatchRecordMaxBytes() { return batchRecordMaxBytes; }
+    public void setBatchRecordMaxBytes(int batchRecordMaxBytes) { this.batchRecordMaxBytes = batchRecordMaxBytes; }
+
+    public String getCompressionCodec() { return compressionCodec; }
+    public void setCompressionCodec(String compressionCodec) { this.compressionCodec = compressionCodec; }
+
+    public boolean isEnableCompressionDictionary() { return enableCompressionDictionary; }
+    public void setEnableCompressionDictionary(boolean enableCompressionDictionary) { this.enableCompressionDictionary = enableCompressionDictionary; }
+
+    public String getDictionaryTopicName() { return dictionaryTopicName; }
+    public void setDictionaryTopicName(String dictionaryTopicName) { this.dictionaryTopicName = dictionaryTopicName; }
+
+    public int getDictionarySampleBytes() { return dictionarySampleBytes; }
+    public void setDictionarySampleBytes(int dictionarySampleBytes) { this.dictionarySampleBytes = dictionarySampleBytes; }
+
+    public int getDictionarySizeBytes() { return dictionarySizeBytes; }
+    public void setDictionarySizeBytes(int dictionarySizeBytes) { this.dictionarySizeBytes = dictionarySizeBytes; }
+
+    public int getCompressionLevel() { return compressionLevel; }
+    public void setCompressionLevel(int compressionLevel) { this.compressionLevel = compressionLevel; }
+
+    public long getRetryBackoffMs() { return retryBackoffMs; }
+    public void setRetryBackoffMs(long retryBackoffMs) { this.retryBackoffMs = retryBackoffMs; }
+
+    public long getRetryBackoffMaxMs() { return retryBackoffMaxMs; }
+    public void setRetryBackoffMaxMs(long retryBackoffMaxMs) { this.retryBackoffMaxMs = retryBackoffMaxMs; }
+
+    public int getMaxInFlightPerBatch() { return maxInFlightPerBatch; }
+    public void setMaxInFlightPerBatch(int maxInFlightPerBatch) { this.maxInFlightPerBatch = maxInFlightPerBatch; }
+
+    public String getWireFormat() { return wireFormat; }
+    public void setWireFormat(String wireFormat) { this.wireFormat = wireFormat; }
+
+    public String getPartitionStrategy() { return partitionStrategy; }
+    public void setPartitionStrategy(String partitionStrategy) { this.partitionStrategy = partitionStrategy; }
+
+    public int getPartitionSubKeys() { return partitionSubKeys; }
+    public void setPartitionSubKeys(int partitionSubKeys) { this.partitionSubKeys = partitionSubKeys; }
+
+    public double getHotSourceRecordsPerSecond() { return hotSourceRecordsPerSecond; }
+    public void setHotSourceRecordsPerSecond(double hotSourceRecordsPerSecond) { this.hotSourceRecordsPerSecond = hotSourceRecordsPerSecond; }
+
+    public boolean isEnableRateLimit() { return enableRateLimit; }
+    public void setEnableRateLimit(boolean enableRateLimit) { this.enableRateLimit = enableRateLimit; }
+
+    public double getSourceRateLimit() { return sourceRateLimit; }
+    public void setSourceRateLimit(double sourceRateLimit) { this.sourceRateLimit = sourceRateLimit; }
+
+    public int getSourceRateBurst() { return sourceRateBurst; }
+    public void setSourceRateBurst(int sourceRateBurst) { this.sourceRateBurst = sourceRateBurst; }
+
+    public double getApplicationRateLimit() { return applicationRateLimit; }
+    public void setApplicationRateLimit(double applicationRateLimit) { this.applicationRateLimit = applicationRateLimit; }
+
+    public int getApplicationRateBurst() { return applicationRateBurst; }
+    public void setApplicationRateBurst(int applicationRateBurst) { this.applicationRateBurst = applicationRateBurst; }
+
+    public Map<String, Double> getApplicationRateLimits() { return applicationRateLimits; }
+    public void setApplicationRateLimits(Map<String, Double> applicationRateLimits) { this.applicationRateLimits = applicationRateLimits; }
+
+    public long getRateLimitSummaryIntervalMs() { return rateLimitSummaryIntervalMs; }
+    public void setRateLimitSummaryIntervalMs(long rateLimitSummaryIntervalMs) { this.rateLimitSummaryIntervalMs = rateLimitSummaryIntervalMs; }
+
+    public boolean isEnableDeduplication() { return enableDeduplication; }
+    public void setEnableDeduplication(boolean enableDeduplication) { this.enableDeduplication = enableDeduplication; }
+
+    public String getDeduplicationMode() { return deduplicationMode; }
+    public void setDeduplicationMode(String deduplicationMode) { this.deduplicationMode = deduplicationMode; }
+
+    public long getDeduplicationWindowMs() { return deduplicationWindowMs; }
+    public void setDeduplicationWindowMs(long deduplicationWindowMs) { this.deduplicationWindowMs = deduplicationWindowMs; }
+
+    public int getDeduplicationTableSize() { return deduplicationTableSize; }
+    public void setDeduplicationTableSize(int deduplicationTableSize) { this.deduplicationTableSize = deduplicationTableSize; }
+
+    public List<String> getSamplingRules() { return samplingRules; }
+    public void setSamplingRules(List<String> samplingRules) { this.samplingRules = samplingRules; }
+
+    public String getSystemLogSource() { return systemLogSource; }
+    public void setSystemLogSource(String systemLogSource) { this.systemLogSource = systemLogSource; }
+
+    public List<String> getSystemLogFiles() { return systemLogFiles; }
+    public void setSystemLogFiles(List<String> systemLogFiles) { this.systemLogFiles = systemLogFiles; }
+
+    public long getSystemLogPollIntervalMs() { return systemLogPollIntervalMs; }
+    public void setSystemLogPollIntervalMs(long systemLogPollIntervalMs) { this.systemLogPollIntervalMs = systemLogPollIntervalMs; }
+
+    public boolean isEnableSyslogListener() { return enableSyslogListener; }
+    public void setEnableSyslogListener(boolean enableSyslogListener) { this.enableSyslogListener = enableSyslogListener; }
+
+    public String getSyslogBindAddress() { return syslogBindAddress; }
+    public void setSyslogBindAddress(String syslogBindAddress) { this.syslogBindAddress = syslogBindAddress; }
+
+    public int getSyslogPort() { return syslogPort; }
+    public void setSyslogPort(int syslogPort) { this.syslogPort = syslogPort; }
+
+    public List<String> getSyslogProtocols() { return syslogProtocols; }
+    public void setSyslogProtocols(List<String> syslogProtocols) { this.syslogProtocols = syslogProtocols; }
+
+    public int getSyslogMaxMessageBytes() { return syslogMaxMessageBytes; }
+    public void setSyslogMaxMessageBytes(int syslogMaxMessageBytes) { this.syslogMaxMessageBytes = syslogMaxMessageBytes; }
+
+    public int getSyslogReceiveBufferBytes() { return syslogReceiveBufferBytes; }
+    public void setSyslogReceiveBufferBytes(int syslogReceiveBufferBytes) { this.syslogReceiveBufferBytes = syslogReceiveBufferBytes; }
+
+    public boolean isEnableHttpIngest() { return enableHttpIngest; }
+    public void setEnableHttpIngest(boolean enableHttpIngest) { this.enableHttpIngest = enableHttpIngest; }
+
+    public int getHttpIngestRetryAfterSeconds() { return httpIngestRetryAfterSeconds; }
+    public void setHttpIngestRetryAfterSeconds(int httpIngestRetryAfterSeconds) { this.httpIngestRetryAfterSeconds = httpIngestRetryAfterSeconds; }
+
+    public int getHttpIngestMaxLineBytes() { return httpIngestMaxLineBytes; }
+    public void setHttpIngestMaxLineBytes(int httpIngestMaxLineBytes) { this.httpIngestMaxLineBytes = httpIngestMaxLineBytes; }
+
+    public boolean isEnableAdaptiveThrottle() { return enableAdaptiveThrottle; }
+    public void setEnableAdaptiveThrottle(boolean enableAdaptiveThrottle) { this.enableAdaptiveThrottle = enableAdaptiveThrottle; }
+
+    public double getThrottleCpuTargetPercent() { return throttleCpuTargetPercent; }
+    public void setThrottleCpuTargetPercent(double throttleCpuTargetPercent) { this.throttleCpuTargetPercent = throttleCpuTargetPercent; }
+
+    public double getThrottleHeapTargetPercent() { return throttleHeapTargetPercent; }
+    public void setThrottleHeapTargetPercent(double throttleHeapTargetPercent) { this.throttleHeapTargetPercent = throttleHeapTargetPercent; }
+
+    public long getThrottleIntervalMs() { return throttleIntervalMs; }
+    public void setThrottleIntervalMs(long throttleIntervalMs) { this.throttleIntervalMs = throttleIntervalMs; }
+
+    public double getThrottleMinPace() { return throttleMinPace; }
+    public void setThrottleMinPace(double throttleMinPace) { this.throttleMinPace = throttleMinPace; }
+
+    public long getThrottleMaxLingerMs() { return throttleMaxLingerMs; }
+    public void setThrottleMaxLingerMs(long throttleMaxLingerMs) { this.throttleMaxLingerMs = throttleMaxLingerMs; }
+
+    public List<FilterRule> getFilterRules() { return filterRules; }
+    public void setFilterRules(List<FilterRule> filterRules) { this.filterRules = filterRules; }
+
+    public String getFilterDefaultAction() { return filterDefaultAction; }
+    public void setFilterDefaultAction(String filterDefaultAction) { this.filterDefaultAction = filterDefaultAction; }
+
+    /**
+     * A drop or keep rule, matched like a {@link com.logaggregator.common.LogFilter}.
+     * Every criterion that is set must hold for the rule to match.
+     */
+    public static class FilterRule {
+
+        private String name;
+        private String action = "drop"; // drop, keep
+        private String minLevel;
+        private String maxLevel;
+        private List<String> sources = List.of();
+        private List<String> applications = List.of();
+        private String messagePattern; // case-insensitive, matched against the parsed message
+        private String linePattern; // matched against the raw line, before it is parsed
+
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+
+        public String getAction() { return action; }
+        public void setAction(String action) { this.action = action; }
+
+        public String getMinLevel() { return minLevel; }
+        public void setMinLevel(String minLevel) { this.minLevel = minLevel; }
+
+        public String getMaxLevel() { return maxLevel; }
+        public void setMaxLevel(String maxLevel) { this.maxLevel = maxLevel; }
+
+        public List<String> getSources() { return sources; }
+        public void setSources(List<String> sources) { this.sources = sources; }
+
+        public List<String> getApplications() { return applications; }
+        public void setApplications(List<String> applications) { this.applications = applications; }
+
+        public String getMessagePattern() { return messagePattern; }
+        public void setMessagePattern(String messagePattern) { this.messagePattern = messagePattern; }
+
+        public String getLinePattern() { return linePattern; }
+        public void setLinePattern(String linePattern) { this.linePattern = linePattern; }
+    }
 }
@@ -7,19 +7,31 @@
 
 package com.logaggregator.agent.controller;
 
+import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.agent.service.HttpIngestService;
 import com.logaggregator.agent.service.LogAgentService;
 import com.logaggregator.agent.service.HealthMonitorService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 /**
  * REST controller for monitoring and managing the Log Agent.
- * Provides endpoints for health checks, status monitoring, and metrics.
+ * Provides endpoints for health checks, status monitoring, and metrics,
+ * and one for local processes to push log entries to.
  */
 @RestController
 @RequestMapping("/api/agent")
@@ -27,12 +39,18 @@ public class LogAgentController {
 
     private final LogAgentService logAgentService;
     private final HealthMonitorService healthMonitorService;
+    private final HttpIngestService httpIngestService;
+    private final LogAgentConfig config;
 
     @Autowired
     public LogAgentController(LogAgentService logAgentService,
-                             HealthMonitorService healthMonitorService) {
+                             HealthMonitorService healthMonitorService,
+                             HttpIngestService httpIngestService,
+                             LogAgentConfig config) {
         this.logAgentService = logAgentService;
         this.healthMonitorService = healthMonitorService;
+        this.httpIngestService = httpIngestService;
+        this.config = config;
     }
 
     /**
@@ -69,4 +87,58 @@ public class LogAgentController {
         Map<String, Object> metrics = healthMonitorService.getPerformanceMetrics();
         return ResponseEntity.ok(metrics);
     }
+
+    /**
+     * Accept log entries pushed as NDJSON ({@code application/x-ndjson} or
+     * {@code application/json}) or as plain lines ({@code text/plain}),
+     * optionally gzip-compressed. The body is read as a stream and never
+     * held in memory as a whole.
+     *
+     * Answers 202 with the number of records accepted, or 429 with
+     * Retry-After if the ingest queue filled up; records counted as
+     * accepted are kept even then, so a client resends only the rest.
+     */
+    @PostMapping("/ingest")
+    public ResponseEntity<Map<String, Object>> ingest(HttpServletRequest request,
+                                                      @RequestParam(name = "application", required = false) String application) {
+        if (!config.isEnableHttpIngest()) {
+            return ResponseEntity.status(404).body(Map.of("error", "HTTP ingest is disabled"));
+        }
+
+        String contentType = request.getContentType() != null
+            ? request.getContentType().toLowerCase(Locale.ROOT) : "text/plain";
+        boolean json = contentType.contains("json");
+        if (!json && !contentType.startsWith("text/plain")) {
+            return ResponseEntity.status(415).body(Map.of("error", "Unsupported content type: " + contentType));
+        }
+        String encoding = request.getHeader(HttpHeaders.CONTENT_ENCODING);
+        boolean gzip = encoding != null && (encoding.equalsIgnoreCase("gzip") || encoding.equalsIgnoreCase("x-gzip"));
+        if (encoding != null && !gzip && !encoding.equalsIgnoreCase("identity")) {
+            return ResponseEntity.status(415).body(Map.of("error", "Unsupported content encoding: " + encoding));
+        }
+
+        HttpIngestService.IngestResult result;
+        try (InputStream body = gzip
+                ? new GZIPInputStream(request.getInputStream(), 64 * 1024) : request.getInputStream()) {
+            result = json
+                ? httpIngestService.ingestJson(body, application, request.getRemoteAddr())
+                : httpIngestService.ingestLines(body, application, request.getRemoteAddr());
+        } catch (IOException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Could not read request body: " + e.getMessage()));
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("accepted", result.getAccepted());
+        response.put("rejected", result.getRejected());
+        if (result.isThrottled()) {
+            return ResponseEntity.status(429)
+                .header(HttpHeaders.RETRY_AFTER, Integer.toString(config.getHttpIngestRetryAfterSeconds()))
+                .body(response);
+        }
+        if (result.getError() != null) {
+            response.put("error", result.getError());
+            return ResponseEntity.badRequest().body(response);
+        }
+        return ResponseEntity.accepted().body(response);
+    }
 }
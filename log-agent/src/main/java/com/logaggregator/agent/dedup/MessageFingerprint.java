@@ -0,0 +1,81 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.dedup;
+
+import com.logaggregator.common.LogEntry;
+
+/**
+ * 64-bit FNV-1a fingerprint of an entry's source, level and message.
+ *
+ * In template mode every word that contains a digit hashes as a single
+ * placeholder, so "took 12ms for id 7f3a" and "took 9ms for id 0c1d"
+ * share a fingerprint: numbers, hex and UUID segments, addresses and
+ * durations vary between repeats of the same line while the words around
+ * them do not. The message is hashed in place, nothing is allocated.
+ */
+public final class MessageFingerprint {
+
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+    // Outside the char range, so they cannot collide with message text
+    private static final int SEPARATOR = 0x10000;
+    private static final int PLACEHOLDER = 0x10001;
+
+    private MessageFingerprint() {
+    }
+
+    public static long of(LogEntry entry, boolean template) {
+        long hash = OFFSET_BASIS;
+        hash = hashText(hash, entry.getSource());
+        hash = mix(hash, entry.getLevel() != null ? entry.getLevel().ordinal() : -1);
+        String message = entry.getMessage();
+        return template && message != null ? hashTemplate(hash, message) : hashText(hash, message);
+    }
+
+    private static long mix(long hash, int value) {
+        return (hash ^ value) * PRIME;
+    }
+
+    private static long hashText(long hash, String text) {
+        if (text != null) {
+            for (int i = 0; i < text.length(); i++) {
+                hash = mix(hash, text.charAt(i));
+            }
+        }
+        return mix(hash, SEPARATOR);
+    }
+
+    private static long hashTemplate(long hash, String message) {
+        int length = message.length();
+        int i = 0;
+        while (i < length) {
+            if (!isWordChar(message.charAt(i))) {
+                hash = mix(hash, message.charAt(i++));
+                continue;
+            }
+            int start = i;
+            boolean hasDigit = false;
+            while (i < length && isWordChar(message.charAt(i))) {
+                hasDigit |= Character.isDigit(message.charAt(i));
+                i++;
+            }
+            if (hasDigit) {
+                hash = mix(hash, PLACEHOLDER);
+            } else {
+                for (int j = start; j < i; j++) {
+                    hash = mix(hash, message.charAt(j));
+                }
+            }
+        }
+        return mix(hash, SEPARATOR);
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.dedup;
+
+import com.logaggregator.common.LogEntry;
+
+import java.util.function.Consumer;
+
+/**
+ * Fixed-size table of recently seen lines, keyed by fingerprint.
+ *
+ * The first occurrence of a line opens a window and is passed on; its
+ * repeats within the window are held back and counted. When the window
+ * closes, the last repeat is emitted once with a {@link #REPEAT_COUNT}
+ * metadata field giving the number of lines it stands for.
+ *
+ * The table is direct-mapped: each fingerprint has exactly one slot, and
+ * a different line landing in an occupied slot evicts it, emitting its
+ * pending repeats early. Memory is therefore bounded by the table size
+ * however many distinct lines arrive. Slots are locked individually, so
+ * sources rarely contend.
+ */
+public class RepeatTable {
+
+    public static final String REPEAT_COUNT = "repeat_count";
+
+    private static final class Slot {
+        private boolean occupied;
+        private long fingerprint;
+        private long windowStart;
+        private int repeats;
+        private LogEntry lastRepeat;
+
+        /**
+         * Clear the slot, returning its pending repeat entry if it has one
+         */
+        private LogEntry clear() {
+            LogEntry pending = lastRepeat;
+            if (pending != null) {
+                pending.addMetadata(REPEAT_COUNT, repeats);
+            }
+            occupied = false;
+            repeats = 0;
+            lastRepeat = null;
+            return pending;
+        }
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final long windowNanos;
+    private final Consumer<LogEntry> repeatSink;
+
+    /**
+     * @param size number of slots, rounded up to a power of two
+     * @param windowNanos how long repeats of a line are collapsed
+     * @param repeatSink receives the entries that stand for collapsed repeats
+     */
+    public RepeatTable(int size, long windowNanos, Consumer<LogEntry> repeatSink) {
+        int capacity = size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+        this.slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = capacity - 1;
+        this.windowNanos = windowNanos;
+        this.repeatSink = repeatSink;
+    }
+
+    /**
+     * Record a line
+     *
+     * @return true if the line opens a window and should be sent, false if it was collapsed
+     */
+    public boolean offer(LogEntry entry, long fingerprint, long now) {
+        Slot slot = slots[(int) (fingerprint ^ (fingerprint >>> 32)) & mask];
+        LogEntry evicted;
+        synchronized (slot) {
+            if (slot.occupied && slot.fingerprint == fingerprint && now - slot.windowStart < windowNanos) {
+                slot.repeats++;
+                slot.lastRepeat = entry;
+                return false;
+            }
+            evicted = slot.clear();
+            slot.occupied = true;
+            slot.fingerprint = fingerprint;
+            slot.windowStart = now;
+        }
+        if (evicted != null) {
+            repeatSink.accept(evicted);
+        }
+        return true;
+    }
+
+    /**
+     * Close every window that has run its course, emitting its repeats
+     *
+     * @param all close every window regardless of age, e.g. on shutdown
+     * @return number of repeat entries emitted
+     */
+    public int flush(long now, boolean all) {
+        int emitted = 0;
+        for (Slot slot : slots) {
+            LogEntry pending;
+            synchronized (slot) {
+                if (!slot.occupied || (!all && now - slot.windowStart < windowNanos)) {
+                    continue;
+                }
+                pending = slot.clear();
+            }
+            if (pending != null) {
+                repeatSink.accept(pending);
+                emitted++;
+            }
+        }
+        return emitted;
+    }
+
+    public int size() {
+        return slots.length;
+    }
+}
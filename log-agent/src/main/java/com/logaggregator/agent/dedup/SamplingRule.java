@@ -0,0 +1,116 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.dedup;
+
+import com.logaggregator.common.LogEntry;
+import com.logaggregator.common.LogLevel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps a fraction of the entries of matching sources and level.
+ *
+ * Rules are written as {@code source-glob[:LEVEL]=rate}, for example
+ * {@code *health*:DEBUG=0.01} keeps one in a hundred DEBUG lines of any
+ * source with "health" in its id, and {@code nginx-access=0.1} keeps one
+ * in ten lines of the nginx-access source at every level. In the glob,
+ * {@code *} matches any run of characters and {@code ?} a single one.
+ */
+public class SamplingRule {
+
+    public static final String SAMPLE_RATE = "sample_rate";
+
+    private final Pattern source;
+    private final LogLevel level;
+    private final double rate;
+
+    public SamplingRule(String sourceGlob, LogLevel level, double rate) {
+        if (!(rate >= 0 && rate <= 1)) {
+            throw new IllegalArgumentException("Sampling rate must be between 0 and 1: " + rate);
+        }
+        this.source = compile(sourceGlob);
+        this.level = level;
+        this.rate = rate;
+    }
+
+    /**
+     * Parse a rule of the form {@code source-glob[:LEVEL]=rate}
+     */
+    public static SamplingRule parse(String rule) {
+        int equals = rule.lastIndexOf('=');
+        if (equals <= 0) {
+            throw new IllegalArgumentException("Sampling rule must be source-glob[:LEVEL]=rate: " + rule);
+        }
+        String selector = rule.substring(0, equals).trim();
+        double rate;
+        try {
+            rate = Double.parseDouble(rule.substring(equals + 1).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid sampling rate in rule: " + rule);
+        }
+
+        // Source ids may contain colons themselves, so only a trailing level name counts
+        LogLevel level = null;
+        int colon = selector.lastIndexOf(':');
+        if (colon >= 0) {
+            String name = selector.substring(colon + 1).toUpperCase(Locale.ROOT);
+            for (LogLevel candidate : LogLevel.values()) {
+                if (candidate.name().equals(name)) {
+                    level = candidate;
+                }
+            }
+            if (level != null || name.equals("*")) {
+                selector = selector.substring(0, colon);
+            }
+        }
+        return new SamplingRule(selector, level, rate);
+    }
+
+    public static List<SamplingRule> parseAll(List<String> rules) {
+        List<SamplingRule> parsed = new ArrayList<>();
+        if (rules != null) {
+            for (String rule : rules) {
+                if (rule != null && !rule.isBlank()) {
+                    parsed.add(parse(rule.trim()));
+                }
+            }
+        }
+        return parsed;
+    }
+
+    private static Pattern compile(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int literalStart = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > literalStart) {
+                    regex.append(Pattern.quote(glob.substring(literalStart, i)));
+                }
+                regex.append(c == '*' ? ".*" : ".");
+                literalStart = i + 1;
+            }
+        }
+        if (literalStart < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(literalStart)));
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    public boolean matches(LogEntry entry) {
+        return (level == null || level == entry.getLevel())
+            && entry.getSource() != null && source.matcher(entry.getSource()).matches();
+    }
+
+    public double getRate() {
+        return rate;
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.filter;
+
+import com.logaggregator.agent.config.LogAgentConfig.FilterRule;
+import com.logaggregator.common.LogEntry;
+import com.logaggregator.common.LogFilter;
+import com.logaggregator.common.LogLevel;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Drop and keep rules applied to entries as soon as they are parsed.
+ *
+ * Rules are tried in order and the first one that matches decides; an
+ * entry no rule matches gets the default action. A keep rule placed
+ * before a broader drop rule therefore carves out an exception.
+ *
+ * Sources and the raw line pattern are known before a line is parsed, so
+ * {@link #checkLine} can often settle a line without parsing it: as long
+ * as the rules it has to get past only test those, it decides on its own,
+ * and the first rule that needs the parsed entry hands over to
+ * {@link #accept}.
+ */
+public class EntryFilter {
+
+    public enum Verdict { KEEP, DROP, PARSE }
+
+    private static final class Rule {
+        private final String name;
+        private final boolean keep;
+        private final Set<String> sources;
+        private final Pattern linePattern;
+        private final Predicate<LogEntry> entryPredicate;
+        // Whether the rule tests anything only known after parsing
+        private final boolean needsEntry;
+        private final LongAdder hits = new LongAdder();
+
+        private Rule(String name, FilterRule config) {
+            this.name = name;
+            this.keep = isKeep(config.getAction(), name);
+            this.sources = config.getSources() != null && !config.getSources().isEmpty()
+                ? new HashSet<>(config.getSources()) : null;
+            this.linePattern = config.getLinePattern() != null && !config.getLinePattern().isEmpty()
+                ? Pattern.compile(config.getLinePattern()) : null;
+
+            LogFilter filter = new LogFilter();
+            if (config.getMinLevel() != null) {
+                filter.withMinLevel(LogLevel.fromString(config.getMinLevel()));
+            }
+            if (config.getMaxLevel() != null) {
+                filter.withMaxLevel(LogLevel.fromString(config.getMaxLevel()));
+            }
+            if (config.getApplications() != null && !config.getApplications().isEmpty()) {
+                // LogFilter looks up entries without an application too, which immutable lists reject
+                filter.withApplications(new ArrayList<>(config.getApplications()));
+            }
+            if (config.getMessagePattern() != null && !config.getMessagePattern().isEmpty()) {
+                filter.withMessagePattern(config.getMessagePattern());
+            }
+            this.needsEntry = config.getMinLevel() != null || config.getMaxLevel() != null
+                || filter.getApplications() != null || filter.getMessagePattern() != null;
+            this.entryPredicate = filter.toPredicate();
+        }
+
+        private boolean matchesLine(String sourceId, String line) {
+            return (sources == null || sources.contains(sourceId))
+                && (linePattern == null || linePattern.matcher(line).find());
+        }
+
+        private boolean matches(LogEntry entry) {
+            String line = entry.getRawMessage() != null ? entry.getRawMessage() : entry.getMessage();
+            return matchesLine(entry.getSource(), line != null ? line : "") && entryPredicate.test(entry);
+        }
+    }
+
+    private final List<Rule> rules = new ArrayList<>();
+    private final boolean keepByDefault;
+    private final LongAdder kept = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder decidedBeforeParsing = new LongAdder();
+
+    public EntryFilter(List<FilterRule> filterRules, String defaultAction) {
+        if (filterRules != null) {
+            for (int i = 0; i < filterRules.size(); i++) {
+                FilterRule rule = filterRules.get(i);
+                rules.add(new Rule(rule.getName() != null ? rule.getName() : "rule-" + i, rule));
+            }
+        }
+        this.keepByDefault = defaultAction == null || isKeep(defaultAction, "default");
+    }
+
+    private static boolean isKeep(String action, String rule) {
+        switch (action == null ? "drop" : action.trim().toLowerCase(Locale.ROOT)) {
+            case "keep":
+                return true;
+            case "drop":
+                return false;
+            default:
+                throw new IllegalArgumentException("Unknown filter action '" + action + "' in " + rule);
+        }
+    }
+
+    /**
+     * Whether every entry is kept without looking at it
+     */
+    public boolean isPassThrough() {
+        return rules.isEmpty() && keepByDefault;
+    }
+
+    /**
+     * Decide on a raw line before parsing it, where the rules allow
+     *
+     * @return KEEP or DROP if the line is settled, PARSE if it has to be parsed and passed to {@link #accept}
+     */
+    public Verdict checkLine(String sourceId, String line) {
+        if (isPassThrough()) {
+            return Verdict.KEEP;
+        }
+        for (Rule rule : rules) {
+            if (!rule.matchesLine(sourceId, line)) {
+                continue;
+            }
+            if (rule.needsEntry) {
+                return Verdict.PARSE;
+            }
+            decidedBeforeParsing.increment();
+            return decide(rule) ? Verdict.KEEP : Verdict.DROP;
+        }
+        decidedBeforeParsing.increment();
+        return decide(null) ? Verdict.KEEP : Verdict.DROP;
+    }
+
+    /**
+     * Whether a parsed entry should be kept
+     */
+    public boolean accept(LogEntry entry) {
+        if (isPassThrough()) {
+            return true;
+        }
+        for (Rule rule : rules) {
+            if (rule.matches(entry)) {
+                return decide(rule);
+            }
+        }
+        return decide(null);
+    }
+
+    private boolean decide(Rule rule) {
+        boolean keep = rule != null ? rule.keep : keepByDefault;
+        if (rule != null) {
+            rule.hits.increment();
+        }
+        (keep ? kept : dropped).increment();
+        return keep;
+    }
+
+    /**
+     * Get filter statistics, with the hits of every rule
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> ruleHits = new LinkedHashMap<>();
+        for (Rule rule : rules) {
+            ruleHits.put(rule.name, rule.hits.sum());
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("rules", rules.size());
+        stats.put("default_action", keepByDefault ? "keep" : "drop");
+        stats.put("kept_entries", kept.sum());
+        stats.put("dropped_entries", dropped.sum());
+        stats.put("decided_before_parsing", decidedBeforeParsing.sum());
+        stats.put("rule_hits", ruleHits);
+        return stats;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.limit;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Feedback controller that sets the agent's ingestion pace from its CPU
+ * and heap readings.
+ *
+ * The pace runs from the configured minimum to 1 (full speed) and follows
+ * additive increase, multiplicative decrease: a reading above its target
+ * cuts the pace, by half for heap and by a fifth for CPU, and only once
+ * both readings are well below their targets does it grow back in steps.
+ * Readers scale their batch sizes and the number of files drained at once
+ * by the pace, the ingest queue its memory budget, and the queue's sender
+ * lingers between batches as the pace drops.
+ *
+ * Readings come from one thread; the values derived from the pace may be
+ * read from any thread.
+ */
+public class AdaptiveThrottle {
+
+    // Percentage points below a target both readings need before the pace grows again
+    private static final double HEADROOM_PERCENT = 10.0;
+    private static final double PACE_STEP = 0.1;
+    private static final double HEAP_DECREASE = 0.5;
+    private static final double CPU_DECREASE = 0.8;
+
+    private final double cpuTargetPercent;
+    private final double heapTargetPercent;
+    private final double minPace;
+    private final long maxLingerMs;
+    private volatile double pace = 1.0;
+    private volatile String limitedBy = "none";
+    private volatile double lastCpuPercent = -1;
+    private volatile double lastHeapPercent = -1;
+    private long decreases;
+    private long increases;
+
+    /**
+     * @param cpuTargetPercent process CPU share of all cores to stay below, 0 to ignore CPU
+     * @param heapTargetPercent heap occupancy after collection to stay below, 0 to ignore heap
+     * @param minPace slowest pace, above zero so the agent never stops reading
+     * @param maxLingerMs pause between batches at the slowest pace
+     */
+    public AdaptiveThrottle(double cpuTargetPercent, double heapTargetPercent, double minPace, long maxLingerMs) {
+        this.cpuTargetPercent = cpuTargetPercent;
+        this.heapTargetPercent = heapTargetPercent;
+        this.minPace = Math.min(1.0, Math.max(minPace, 0.01));
+        this.maxLingerMs = Math.max(0, maxLingerMs);
+    }
+
+    /**
+     * Adjust the pace to a new pair of readings
+     *
+     * @param cpuPercent process CPU load, negative if unavailable
+     * @param heapPercent heap in use as a share of the maximum, negative if unavailable
+     */
+    public synchronized void update(double cpuPercent, double heapPercent) {
+        lastCpuPercent = cpuPercent;
+        lastHeapPercent = heapPercent;
+        boolean heapOver = exceeds(heapPercent, heapTargetPercent, 0);
+        boolean cpuOver = exceeds(cpuPercent, cpuTargetPercent, 0);
+
+        if (heapOver || cpuOver) {
+            double next = Math.max(minPace, pace * (heapOver ? HEAP_DECREASE : CPU_DECREASE));
+            if (next < pace) {
+                decreases++;
+            }
+            pace = next;
+            limitedBy = heapOver ? "heap" : "cpu";
+        } else if (!exceeds(heapPercent, heapTargetPercent, HEADROOM_PERCENT)
+                && !exceeds(cpuPercent, cpuTargetPercent, HEADROOM_PERCENT)) {
+            if (pace < 1.0) {
+                // Rounded so repeated steps land on full speed exactly
+                pace = Math.min(1.0, Math.round((pace + PACE_STEP) * 100) / 100.0);
+                increases++;
+            }
+            if (pace >= 1.0) {
+                limitedBy = "none";
+            }
+        }
+    }
+
+    /**
+     * Whether a reading is above its target less the headroom; unavailable readings and targets never are
+     */
+    private static boolean exceeds(double reading, double target, double headroom) {
+        return target > 0 && reading >= 0 && reading > target - headroom;
+    }
+
+    public double getPace() {
+        return pace;
+    }
+
+    public boolean isThrottled() {
+        return pace < 1.0;
+    }
+
+    /**
+     * Lines to read per batch, from the configured batch size
+     */
+    public int batchSize(int configured) {
+        return Math.max(1, (int) Math.round(configured * pace));
+    }
+
+    /**
+     * Files to drain at once, from the configured number of drain workers
+     */
+    public int parallelism(int configured) {
+        return Math.max(1, (int) Math.ceil(configured * pace));
+    }
+
+    /**
+     * Bytes the ingest queue may hold, from the configured budget
+     */
+    public long budgetBytes(long configured) {
+        return Math.max(1, (long) (configured * pace));
+    }
+
+    /**
+     * Pause between batches handed to the producer: none at full speed,
+     * growing to the maximum at the slowest pace
+     */
+    public long lingerMs() {
+        double current = pace;
+        if (current >= 1.0) {
+            return 0;
+        }
+        return Math.round(maxLingerMs * (1.0 - current) / (1.0 - minPace));
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("state", isThrottled() ? "THROTTLED" : "FULL_SPEED");
+        stats.put("pace", pace);
+        stats.put("limited_by", limitedBy);
+        stats.put("linger_ms", lingerMs());
+        stats.put("cpu_percent", lastCpuPercent);
+        stats.put("heap_percent", lastHeapPercent);
+        stats.put("cpu_target_percent", cpuTargetPercent);
+        stats.put("heap_target_percent", heapTargetPercent);
+        stats.put("decreases", decreases);
+        stats.put("increases", increases);
+        return stats;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.limit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free token bucket.
+ *
+ * The bucket is kept as the theoretical arrival time of the next token
+ * (the generic cell rate algorithm), so taking a token is a single compare
+ * and set and no thread ever waits for another. A bucket holding burst
+ * tokens refills at the configured rate.
+ *
+ * Callers may be restricted to part of the burst: a request with depth
+ * 0.5 is refused once half the bucket is drained, while a request with
+ * depth 1 may take the last token. Giving important entries a greater
+ * depth sheds the less important ones first when a source overruns.
+ */
+public class TokenBucket {
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final LongSupplier nanoClock;
+    private final AtomicLong theoreticalArrival;
+
+    /**
+     * @param ratePerSecond tokens added per second, more than zero
+     * @param burst tokens the bucket holds when full
+     */
+    public TokenBucket(double ratePerSecond, double burst, LongSupplier nanoClock) {
+        this.intervalNanos = Math.max(1, (long) (1_000_000_000L / ratePerSecond));
+        this.burstNanos = (long) (Math.max(burst, 1) * intervalNanos);
+        this.nanoClock = nanoClock;
+        this.theoreticalArrival = new AtomicLong(nanoClock.getAsLong());
+    }
+
+    /**
+     * Take one token if the caller's share of the bucket has one left
+     *
+     * @param depth share of the burst the caller may drain, from 0 to 1
+     */
+    public boolean tryAcquire(double depth) {
+        long now = nanoClock.getAsLong();
+        // At least one token, so a full bucket always admits
+        long allowance = Math.max(intervalNanos, (long) (burstNanos * depth));
+        while (true) {
+            long arrival = theoreticalArrival.get();
+            long next = Math.max(arrival, now) + intervalNanos;
+            if (next - now > allowance) {
+                return false;
+            }
+            if (theoreticalArrival.compareAndSet(arrival, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Give back a token taken by {@link #tryAcquire} that was not used
+     */
+    public void release() {
+        // An arrival left in the past only means the bucket is full
+        theoreticalArrival.addAndGet(-intervalNanos);
+    }
+
+    /**
+     * Whether the bucket has been full, with no token taken, for at least the given time
+     */
+    public boolean isIdle(long idleNanos) {
+        return nanoClock.getAsLong() - theoreticalArrival.get() >= idleNanos;
+    }
+
+    /**
+     * Share of the bucket currently drained, from 0 when full to 1 when empty
+     */
+    public double getFillRatio() {
+        long backlog = theoreticalArrival.get() - nanoClock.getAsLong();
+        return backlog <= 0 ? 0 : Math.min(1.0, backlog / (double) burstNanos);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.partition;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps quiet sources on one key and salts hot ones.
+ *
+ * The rate of every source is measured over the last seconds. A source
+ * below the hot rate keeps its plain key; above it, its records rotate
+ * over one sub-key per multiple of the hot rate, up to the configured
+ * number, so each sub-key takes roughly the hot rate. Sources not seen
+ * for a minute are forgotten; they would be on their plain key anyway.
+ */
+public class LoadAwarePartitionStrategy implements PartitionStrategy {
+
+    // Short, so a source that turns hot is spread within seconds
+    private static final int RATE_WINDOW_SECONDS = 2;
+    private static final long IDLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static class SourceLoad {
+        private final RateMeter rate;
+        private final AtomicLong next = new AtomicLong();
+        private volatile long lastSeenNanos;
+
+        SourceLoad(RateMeter rate) {
+            this.rate = rate;
+        }
+    }
+
+    private final int maxSubKeys;
+    private final double hotRecordsPerSecond;
+    private final LongSupplier nanoClock;
+    private final Map<String, SourceLoad> sources = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweepNanos;
+
+    public LoadAwarePartitionStrategy(int maxSubKeys, double hotRecordsPerSecond) {
+        this(maxSubKeys, hotRecordsPerSecond, System::nanoTime);
+    }
+
+    LoadAwarePartitionStrategy(int maxSubKeys, double hotRecordsPerSecond, LongSupplier nanoClock) {
+        this.maxSubKeys = Math.max(maxSubKeys, 1);
+        this.hotRecordsPerSecond = hotRecordsPerSecond;
+        this.nanoClock = nanoClock;
+        this.nextSweepNanos = new AtomicLong(nanoClock.getAsLong() + IDLE_NANOS);
+    }
+
+    @Override
+    public String keyFor(String source, int entryCount) {
+        SourceLoad load = sources.computeIfAbsent(source,
+            s -> new SourceLoad(new RateMeter(RATE_WINDOW_SECONDS, nanoClock)));
+        long now = nanoClock.getAsLong();
+        load.lastSeenNanos = now;
+        load.rate.mark(entryCount);
+        evictIdle(now);
+        int subKeys = subKeys(load.rate.getRatePerSecond());
+        if (subKeys <= 1) {
+            return source;
+        }
+        return PartitionStrategy.subKey(source, Math.floorMod(load.next.getAndIncrement(), subKeys));
+    }
+
+    /**
+     * Forget the sources not seen for a while, at most once per idle period
+     */
+    private void evictIdle(long now) {
+        long sweep = nextSweepNanos.get();
+        if (now - sweep < 0 || !nextSweepNanos.compareAndSet(sweep, now + IDLE_NANOS)) {
+            return;
+        }
+        // A source marked while it is removed only loses a few seconds of its rate
+        sources.values().removeIf(load -> now - load.lastSeenNanos >= IDLE_NANOS);
+    }
+
+    /**
+     * Number of sources whose rate is being measured
+     */
+    public int getTrackedSources() {
+        return sources.size();
+    }
+
+    /**
+     * Sub-keys a source is currently spread over
+     */
+    public int getSubKeys(String source) {
+        SourceLoad load = sources.get(source);
+        return load != null ? subKeys(load.rate.getRatePerSecond()) : 1;
+    }
+
+    private int subKeys(double ratePerSecond) {
+        if (hotRecordsPerSecond <= 0) {
+            return 1;
+        }
+        return (int) Math.min(maxSubKeys, Math.max(1, Math.ceil(ratePerSecond / hotRecordsPerSecond)));
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.partition;
+
+import java.util.Locale;
+
+/**
+ * Chooses the Kafka key, and so the partition, of the records of a source.
+ *
+ * Keying by source keeps every source in order on one partition, but a
+ * single noisy file then loads one partition and the one consumer reading
+ * it. The other strategies spread a source over sub-keys of the form
+ * {@code source#n}; entries then carry a per-source
+ * {@link #SEQUENCE_METADATA} number so consumers can restore their order.
+ */
+public interface PartitionStrategy {
+
+    /**
+     * Metadata field numbering the entries of a source in the order they were sent
+     */
+    String SEQUENCE_METADATA = "source_sequence";
+
+    /**
+     * Key for the next record of a source
+     *
+     * @param entryCount entries the record carries
+     */
+    String keyFor(String source, int entryCount);
+
+    /**
+     * Whether records of one source may land on different partitions
+     */
+    default boolean spreadsSources() {
+        return true;
+    }
+
+    /**
+     * Create the configured strategy
+     *
+     * @param name source, round-robin or load-aware
+     * @param subKeys most sub-keys one source is spread over
+     * @param hotRecordsPerSecond load-aware: entries per second one sub-key takes
+     * @throws IllegalArgumentException if the name is not a known strategy
+     */
+    static PartitionStrategy fromConfig(String name, int subKeys, double hotRecordsPerSecond) {
+        switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "source":
+                return new SourcePartitionStrategy();
+            case "round-robin":
+                return new RoundRobinPartitionStrategy(subKeys);
+            case "load-aware":
+                return new LoadAwarePartitionStrategy(subKeys, hotRecordsPerSecond);
+            default:
+                throw new IllegalArgumentException("Unknown partition strategy: " + name);
+        }
+    }
+
+    static String subKey(String source, long index) {
+        return source + "#" + index;
+    }
+}
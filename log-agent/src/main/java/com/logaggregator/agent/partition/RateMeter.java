@@ -0,0 +1,74 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.partition;
+
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * Events per second over a sliding window of whole seconds.
+ *
+ * Counts are kept in one slot per second of the window, so marking is
+ * constant time and the meter never holds more than the window. The rate
+ * covers the completed seconds only, which keeps it from swinging with
+ * how far the current second has progressed.
+ */
+public class RateMeter {
+
+    private final int windowSeconds;
+    private final LongSupplier nanoClock;
+    private final long[] slotSeconds;
+    private final long[] slotCounts;
+    private long total;
+
+    public RateMeter(int windowSeconds) {
+        this(windowSeconds, System::nanoTime);
+    }
+
+    public RateMeter(int windowSeconds, LongSupplier nanoClock) {
+        this.windowSeconds = windowSeconds;
+        this.nanoClock = nanoClock;
+        // One more slot for the second in progress
+        this.slotSeconds = new long[windowSeconds + 1];
+        this.slotCounts = new long[windowSeconds + 1];
+        Arrays.fill(slotSeconds, Long.MIN_VALUE);
+    }
+
+    public synchronized void mark(long count) {
+        long second = currentSecond();
+        int slot = (int) Math.floorMod(second, slotSeconds.length);
+        if (slotSeconds[slot] != second) {
+            slotSeconds[slot] = second;
+            slotCounts[slot] = 0;
+        }
+        slotCounts[slot] += count;
+        total += count;
+    }
+
+    /**
+     * Average per second over the completed seconds of the window
+     */
+    public synchronized double getRatePerSecond() {
+        long second = currentSecond();
+        long sum = 0;
+        for (int i = 0; i < slotSeconds.length; i++) {
+            if (slotSeconds[i] < second && slotSeconds[i] >= second - windowSeconds) {
+                sum += slotCounts[i];
+            }
+        }
+        return sum / (double) windowSeconds;
+    }
+
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    private long currentSecond() {
+        return nanoClock.getAsLong() / 1_000_000_000L;
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.partition;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Each record of a source takes the next of its sub-keys in turn, so every
+ * source is spread evenly however busy it is
+ */
+public class RoundRobinPartitionStrategy implements PartitionStrategy {
+
+    private final int subKeys;
+    private final Map<String, AtomicLong> next = new ConcurrentHashMap<>();
+
+    public RoundRobinPartitionStrategy(int subKeys) {
+        this.subKeys = Math.max(subKeys, 1);
+    }
+
+    @Override
+    public String keyFor(String source, int entryCount) {
+        long index = next.computeIfAbsent(source, s -> new AtomicLong()).getAndIncrement();
+        return PartitionStrategy.subKey(source, Math.floorMod(index, subKeys));
+    }
+}
@@ -0,0 +1,24 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.partition;
+
+/**
+ * Every record of a source goes to the partition of the source
+ */
+public class SourcePartitionStrategy implements PartitionStrategy {
+
+    @Override
+    public String keyFor(String source, int entryCount) {
+        return source;
+    }
+
+    @Override
+    public boolean spreadsSources() {
+        return false;
+    }
+}
@@ -0,0 +1,400 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.service;
+
+import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.agent.tail.ArchiveReader;
+import com.logaggregator.agent.tail.FileIdentity;
+import com.logaggregator.agent.tail.FileTailReader;
+import com.logaggregator.agent.tail.LogEntryFactory;
+import com.logaggregator.agent.tail.LogFileMatcher;
+import com.logaggregator.agent.tail.MultilineAggregator;
+import com.logaggregator.common.LogEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One-shot ingestion of compressed rotated log files (gzip or zstd), used to
+ * backfill what was rotated away while the agent was down.
+ *
+ * Archives are decompressed in a single streaming pass and go through the
+ * same parser, multiline assembly and producer batches as tailed files.
+ * Progress is checkpointed under a key derived from the decompressed head
+ * and the compressed trailer, and an archive is marked completed once all
+ * its batches are acknowledged. Completed archives are skipped on every
+ * later pass, and their keys are dropped once the archive is deleted.
+ *
+ * A log file released after rotation hands its offset over under a key
+ * derived from its head, which is the head of the archive it is compressed
+ * to, so the archive resumes where the log file was read to. Handovers
+ * expire when no archive picks them up within the retention time.
+ */
+@Service
+public class ArchiveIngestService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ArchiveIngestService.class);
+
+    static final String ARCHIVE_KEY_PREFIX = "archive#";
+    static final String HANDOVER_KEY_PREFIX = "archive-handover#";
+
+    private final LogAgentConfig config;
+    private final IngestQueueService ingestQueue;
+    private final CheckpointService checkpointService;
+    private final LogFileMatcher archiveMatcher;
+    private final LogEntryFactory entryFactory;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean isRunning = new AtomicBoolean(false);
+    private final AtomicLong archivesIngested = new AtomicLong(0);
+    private final AtomicLong archivesSkipped = new AtomicLong(0);
+    private final AtomicLong archivesFailed = new AtomicLong(0);
+    private final AtomicLong entriesIngested = new AtomicLong(0);
+    private volatile String currentArchive;
+
+    @Autowired
+    public ArchiveIngestService(LogAgentConfig config, IngestQueueService ingestQueue,
+                                CheckpointService checkpointService, LogFilterService logFilterService) {
+        this.config = config;
+        this.ingestQueue = ingestQueue;
+        this.checkpointService = checkpointService;
+        this.archiveMatcher = new LogFileMatcher(config.getArchivePatterns(), config.getExcludePatterns());
+        this.entryFactory = new LogEntryFactory(config, logFilterService.getEntryFilter());
+    }
+
+    /**
+     * Checkpoint key of an archive, from the checksums of its decompressed
+     * head and its compressed trailer
+     */
+    public static String archiveKey(long headChecksum, long trailerChecksum) {
+        return ARCHIVE_KEY_PREFIX + Long.toHexString(headChecksum) + "-" + Long.toHexString(trailerChecksum);
+    }
+
+    /**
+     * Check whether a checkpoint key belongs to an archive
+     */
+    public static boolean isArchiveKey(String key) {
+        return key.startsWith(ARCHIVE_KEY_PREFIX);
+    }
+
+    /**
+     * Checkpoint key under which the offset of a released log file waits
+     * for the archive it is compressed to
+     */
+    public static String handoverKey(long headChecksum, long releasedAtMillis) {
+        return HANDOVER_KEY_PREFIX + Long.toHexString(headChecksum) + "@" + releasedAtMillis;
+    }
+
+    /**
+     * Check whether a checkpoint key holds the offset of a released log file
+     */
+    public static boolean isHandoverKey(String key) {
+        return key.startsWith(HANDOVER_KEY_PREFIX);
+    }
+
+    /**
+     * Check whether a handover was made before the given time
+     */
+    public static boolean isExpiredHandover(String key, long expiry) {
+        try {
+            return Long.parseLong(key.substring(key.lastIndexOf('@') + 1)) < expiry;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    private static boolean isHandoverOf(String key, long headChecksum) {
+        return key.startsWith(HANDOVER_KEY_PREFIX + Long.toHexString(headChecksum) + "@");
+    }
+
+    /**
+     * Ingest all archives in the watch directories in the background,
+     * unless a pass is already running
+     */
+    public CompletableFuture<Void> startIngestion() {
+        if (!isRunning.compareAndSet(false, true)) {
+            logger.warn("Archive ingestion is already running");
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return CompletableFuture.runAsync(() -> {
+            try {
+                ingestArchives();
+            } finally {
+                isRunning.set(false);
+            }
+        }, executor);
+    }
+
+    /**
+     * Stop a running pass after the archive currently being read
+     */
+    public void stopIngestion() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Ingest every archive in the watch directories that is not completed
+     * yet, then forget the archives that are gone
+     */
+    void ingestArchives() {
+        List<Path> archives = findArchives();
+        logger.info("Found {} compressed log files to check for backfill", archives.size());
+
+        long failedBefore = archivesFailed.get();
+        Set<String> present = new HashSet<>();
+        for (Path archive : archives) {
+            if (Thread.currentThread().isInterrupted()) {
+                logger.info("Archive ingestion interrupted");
+                return;
+            }
+            String checkpointKey = ingestArchive(archive);
+            if (checkpointKey != null) {
+                present.add(checkpointKey);
+            }
+        }
+
+        // An archive that could not be read may still be there, keep every key until a clean pass
+        if (archivesFailed.get() == failedBefore && !Thread.currentThread().isInterrupted()) {
+            checkpointService.retainOnly(id -> !isArchiveKey(id) || present.contains(id));
+        }
+    }
+
+    private List<Path> findArchives() {
+        List<Path> archives = new ArrayList<>();
+        for (String directory : config.getWatchDirectories()) {
+            Path dirPath = Paths.get(directory);
+            if (!Files.isDirectory(dirPath)) {
+                continue;
+            }
+            try {
+                Files.walkFileTree(dirPath, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                        return !dir.equals(dirPath) && archiveMatcher.isExcluded(dir)
+                            ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (attrs.isRegularFile() && archiveMatcher.matches(file)) {
+                            archives.add(file);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        logger.debug("Cannot access {}: {}", file, e.getMessage());
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                logger.error("Failed to scan {} for archives: {}", dirPath, e.getMessage());
+            }
+        }
+        return archives;
+    }
+
+    /**
+     * Ingest a single archive from its checkpointed offset to the end
+     *
+     * @return the checkpoint key of the archive, or null if it is empty or could not be read
+     */
+    String ingestArchive(Path archive) {
+        currentArchive = archive.toString();
+        String checkpointKey = null;
+        try (ArchiveReader reader = new ArchiveReader(archive,
+                Charset.forName(config.getFileEncoding()), config.getReadBufferSizeBytes())) {
+            Long head = reader.headChecksum(config.getFingerprintBytes());
+            if (head == null) {
+                archivesSkipped.incrementAndGet();
+                return null;
+            }
+
+            checkpointKey = archiveKey(head, reader.trailerChecksum());
+            if (checkpointService.isCompleted(checkpointKey)) {
+                archivesSkipped.incrementAndGet();
+                return checkpointKey;
+            }
+
+            List<String> handovers = new ArrayList<>();
+            long resumeOffset = resolveResumeOffset(head, checkpointKey, handovers);
+            logger.info("Ingesting {} archive {} from offset {}", reader.getFormat(), archive, resumeOffset);
+
+            long entries = readArchive(reader, checkpointKey, resumeOffset, handovers);
+            archivesIngested.incrementAndGet();
+            entriesIngested.addAndGet(entries);
+            logger.info("Finished ingesting {} ({} entries)", archive, entries);
+
+        } catch (IOException e) {
+            archivesFailed.incrementAndGet();
+            logger.error("Failed to ingest archive {}: {}", archive, e.getMessage());
+        } catch (InterruptedException e) {
+            // The checkpoint keeps the progress, the next pass resumes from it
+            logger.info("Ingestion of {} interrupted", archive);
+            Thread.currentThread().interrupt();
+        } finally {
+            currentArchive = null;
+        }
+        return checkpointKey;
+    }
+
+    /**
+     * Offset already delivered for an archive: its own checkpoint, or the
+     * checkpoint of the log file it was compressed from
+     *
+     * @param handovers receives the keys of the handovers with the archive's head
+     */
+    private long resolveResumeOffset(long headChecksum, String checkpointKey, List<String> handovers) {
+        OptionalLong own = checkpointService.getOffset(checkpointKey);
+        long offset = own.orElse(0L);
+        long handoverOffset = Long.MAX_VALUE;
+        for (Map.Entry<String, Long> entry : checkpointService.getOffsets().entrySet()) {
+            String key = entry.getKey();
+            if (isHandoverOf(key, headChecksum)) {
+                handovers.add(key);
+                // Files with the same head released earlier: resume at the lowest so none loses lines
+                handoverOffset = Math.min(handoverOffset, entry.getValue());
+            } else if (!isArchiveKey(key) && !isHandoverKey(key)
+                    && FileIdentity.headChecksumOfKey(key) == headChecksum) {
+                offset = Math.max(offset, entry.getValue());
+            }
+        }
+        if (own.isEmpty() && !handovers.isEmpty()) {
+            offset = Math.max(offset, handoverOffset);
+        }
+        return offset;
+    }
+
+    /**
+     * Send the lines past resumeOffset in batches and mark the archive
+     * completed once every batch is acknowledged
+     *
+     * @return the number of entries sent
+     */
+    private long readArchive(ArchiveReader reader, String checkpointKey, long resumeOffset, List<String> handovers)
+            throws IOException, InterruptedException {
+        String sourceId = config.getAgentId() + ":" + reader.getFilePath();
+        MultilineAggregator multiline = entryFactory.createMultilineAggregator();
+        long[] lastLineEnd = {0};
+        long sent = 0;
+        // Acks may arrive out of order, each offset is committed only after every batch before it
+        CompletableFuture<Void> commits = CompletableFuture.completedFuture(null);
+
+        while (true) {
+            List<LogEntry> logEntries = new ArrayList<>();
+            FileTailReader.LineHandler handler = (line, endOffset) -> {
+                long startOffset = lastLineEnd[0];
+                lastLineEnd[0] = endOffset;
+                if (endOffset <= resumeOffset) {
+                    return; // delivered before the file was rotated
+                }
+                if (multiline == null) {
+                    addLogEntry(logEntries, sourceId, reader.getFilePath(), line);
+                } else {
+                    // Timing does not matter for an archive, events end at the next start line
+                    addLogEntry(logEntries, sourceId, reader.getFilePath(), multiline.add(line, startOffset, 0));
+                }
+            };
+
+            // Backfill must not crowd out live tailing, wait for room in the ingest queue
+            while (!ingestQueue.awaitCapacity(1000)) {
+                // keep waiting
+            }
+            int lines = reader.readLines(ingestQueue.getThrottle().batchSize(config.getBatchSize()), handler);
+            boolean finished = reader.isFinished();
+            if (finished && multiline != null) {
+                addLogEntry(logEntries, sourceId, reader.getFilePath(), multiline.flush());
+            }
+
+            long committable = multiline != null && multiline.hasPending()
+                ? multiline.getPendingStartOffset() : reader.getPosition();
+            if (!logEntries.isEmpty()) {
+                sent += logEntries.size();
+                // After a failed batch the offset stays put, the next pass resumes from there
+                commits = commits.thenCombine(ingestQueue.submit(logEntries), (previous, result) -> (Void) null)
+                    .thenRun(() -> checkpointService.commit(checkpointKey, committable));
+            }
+
+            if (finished || lines == 0) {
+                break;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+        }
+
+        commits.whenComplete((result, throwable) -> {
+            if (throwable == null) {
+                checkpointService.markCompleted(checkpointKey);
+                handovers.forEach(checkpointService::remove);
+            } else {
+                logger.warn("Not all entries of {} were delivered, it is resumed on the next pass", reader.getFilePath());
+            }
+        });
+        return sent;
+    }
+
+    private void addLogEntry(List<LogEntry> logEntries, String sourceId, Path filePath, String line) {
+        LogEntry entry = entryFactory.createLogEntry(sourceId, filePath, line);
+        if (entry != null) {
+            logEntries.add(entry);
+        }
+    }
+
+    private void addLogEntry(List<LogEntry> logEntries, String sourceId, Path filePath, List<String> eventLines) {
+        if (eventLines != null) {
+            LogEntry entry = entryFactory.createLogEntry(sourceId, filePath, eventLines);
+            if (entry != null) {
+                logEntries.add(entry);
+            }
+        }
+    }
+
+    /**
+     * Get archive ingestion statistics
+     */
+    public Map<String, Object> getIngestStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("is_running", isRunning.get());
+        stats.put("current_archive", currentArchive);
+        stats.put("archives_ingested", archivesIngested.get());
+        stats.put("archives_skipped", archivesSkipped.get());
+        stats.put("archives_failed", archivesFailed.get());
+        stats.put("entries_ingested", entriesIngested.get());
+        return stats;
+    }
+}
@@ -0,0 +1,440 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.service;
+
+import com.logaggregator.agent.config.LogAgentConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+/**
+ * Durable registry of committed read offsets, keyed by file identity.
+ *
+ * Commits are coalesced in memory and written to an append-only journal by a
+ * background flush, so many batches share a single write and fsync. Once the
+ * journal grows past a threshold its content is compacted into a snapshot.
+ * Every record carries a sequence number and a CRC32; on startup the snapshot
+ * is loaded, newer journal records are replayed and a torn tail is discarded.
+ */
+@Service
+public class CheckpointService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CheckpointService.class);
+
+    static final String SNAPSHOT_FILE = "checkpoints.snapshot";
+    static final String JOURNAL_FILE = "checkpoints.journal";
+    private static final long REMOVED = -1L;
+
+    /**
+     * Offset marking a source that has been read completely, e.g. an archive
+     */
+    public static final long COMPLETED = Long.MAX_VALUE;
+
+    private final LogAgentConfig config;
+    private final Map<String, Long> offsets = new ConcurrentHashMap<>();
+    private final Map<String, Long> dirty = new LinkedHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    private final AtomicLong flushCount = new AtomicLong(0);
+    private final AtomicLong commitCount = new AtomicLong(0);
+    private final Object ioLock = new Object();
+    private FileChannel journal;
+    private long sequence = 0;
+    private long journalRecords = 0;
+    private volatile boolean isRunning = false;
+
+    @Autowired
+    public CheckpointService(LogAgentConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Recover offsets from disk and start the periodic journal flush
+     */
+    public void start() {
+        if (isRunning || !config.isEnableCheckpoints()) {
+            return;
+        }
+
+        synchronized (ioLock) {
+            openStore();
+        }
+    }
+
+    private void openStore() {
+        try {
+            Path directory = Paths.get(config.getCheckpointDirectory());
+            Files.createDirectories(directory);
+
+            long snapshotSequence = loadSnapshot(directory.resolve(SNAPSHOT_FILE));
+            journal = FileChannel.open(directory.resolve(JOURNAL_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            replayJournal(snapshotSequence);
+            isRunning = true;
+
+            scheduler.scheduleWithFixedDelay(
+                this::flush,
+                config.getCheckpointFlushIntervalMs(),
+                config.getCheckpointFlushIntervalMs(),
+                TimeUnit.MILLISECONDS
+            );
+
+            logger.info("Checkpoint store opened at {} with {} offsets", directory, offsets.size());
+
+        } catch (IOException e) {
+            logger.error("Failed to open checkpoint store, offsets will not survive restarts: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Flush pending commits, compact and close the journal
+     */
+    public void stop() {
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
+                scheduler.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            scheduler.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (ioLock) {
+            if (!isRunning) {
+                return;
+            }
+            flush();
+            compact();
+            try {
+                journal.close();
+            } catch (IOException e) {
+                logger.warn("Error closing checkpoint journal: {}", e.getMessage());
+            }
+            isRunning = false;
+        }
+
+        logger.info("Checkpoint store closed");
+    }
+
+    /**
+     * Last committed offset for a file identity
+     */
+    public OptionalLong getOffset(String fileId) {
+        Long offset = offsets.get(fileId);
+        return offset != null ? OptionalLong.of(offset) : OptionalLong.empty();
+    }
+
+    /**
+     * Copy of all committed offsets
+     */
+    public Map<String, Long> getOffsets() {
+        return new HashMap<>(offsets);
+    }
+
+    /**
+     * Record that everything before the given offset has been delivered.
+     * Offsets only move forward; the write reaches disk on the next flush.
+     */
+    public void commit(String fileId, long offset) {
+        long current = offsets.merge(fileId, offset, Math::max);
+        if (current == offset && isRunning) {
+            synchronized (dirty) {
+                dirty.merge(fileId, offset, Math::max);
+            }
+        }
+        commitCount.incrementAndGet();
+    }
+
+    /**
+     * Replace the offset for a file identity, e.g. after truncation
+     */
+    public void reset(String fileId, long offset) {
+        offsets.put(fileId, offset);
+        if (isRunning) {
+            synchronized (dirty) {
+                dirty.put(fileId, offset);
+            }
+        }
+    }
+
+    /**
+     * Forget a file identity, e.g. after the file was deleted
+     */
+    public void remove(String fileId) {
+        if (offsets.remove(fileId) != null && isRunning) {
+            synchronized (dirty) {
+                dirty.put(fileId, REMOVED);
+            }
+        }
+    }
+
+    /**
+     * Forget every file identity the predicate rejects
+     *
+     * @return the forgotten identities with their last offsets
+     */
+    public Map<String, Long> retainOnly(Predicate<String> keep) {
+        Map<String, Long> removed = new HashMap<>();
+        for (Map.Entry<String, Long> entry : new ArrayList<>(offsets.entrySet())) {
+            if (!keep.test(entry.getKey())) {
+                remove(entry.getKey());
+                removed.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Record that a source has been read completely
+     */
+    public void markCompleted(String fileId) {
+        commit(fileId, COMPLETED);
+    }
+
+    /**
+     * Check whether a source has been read completely
+     */
+    public boolean isCompleted(String fileId) {
+        Long offset = offsets.get(fileId);
+        return offset != null && offset == COMPLETED;
+    }
+
+    /**
+     * Write all pending commits with a single write and fsync
+     */
+    public void flush() {
+        synchronized (ioLock) {
+            if (!isRunning) {
+                return;
+            }
+
+            // Swap the pending commits out so committers never wait on the fsync
+            Map<String, Long> pending;
+            synchronized (dirty) {
+                if (dirty.isEmpty()) {
+                    return;
+                }
+                pending = new LinkedHashMap<>(dirty);
+                dirty.clear();
+            }
+
+            try {
+                int size = 0;
+                for (String fileId : pending.keySet()) {
+                    size += recordSize(fileId);
+                }
+                ByteBuffer buffer = ByteBuffer.allocate(size);
+                for (Map.Entry<String, Long> entry : pending.entrySet()) {
+                    writeRecord(buffer, entry.getKey(), entry.getValue(), ++sequence);
+                }
+                buffer.flip();
+
+                long position = journal.size();
+                while (buffer.hasRemaining()) {
+                    position += journal.write(buffer, position);
+                }
+                journal.force(false);
+
+                journalRecords += pending.size();
+                flushCount.incrementAndGet();
+
+                if (journalRecords >= config.getCheckpointCompactThreshold()) {
+                    compact();
+                }
+
+            } catch (IOException e) {
+                logger.error("Failed to flush checkpoint journal: {}", e.getMessage());
+                synchronized (dirty) {
+                    pending.forEach(dirty::putIfAbsent);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write all offsets to a new snapshot and start an empty journal
+     */
+    private void compact() {
+        Path directory = Paths.get(config.getCheckpointDirectory());
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        Path tempSnapshot = directory.resolve(SNAPSHOT_FILE + ".tmp");
+
+        try {
+            Map<String, Long> current = new HashMap<>(offsets);
+            int size = Long.BYTES;
+            for (String fileId : current.keySet()) {
+                size += recordSize(fileId);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            buffer.putLong(sequence);
+            for (Map.Entry<String, Long> entry : current.entrySet()) {
+                writeRecord(buffer, entry.getKey(), entry.getValue(), sequence);
+            }
+            buffer.flip();
+
+            try (FileChannel channel = FileChannel.open(tempSnapshot, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(tempSnapshot, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+            // Records up to the snapshot sequence are skipped on replay, so a crash here is harmless
+            journal.truncate(0);
+            journal.force(true);
+            journalRecords = 0;
+
+            logger.debug("Compacted checkpoint journal into snapshot with {} offsets", current.size());
+
+        } catch (IOException e) {
+            logger.error("Failed to compact checkpoint journal: {}", e.getMessage());
+        }
+    }
+
+    private long loadSnapshot(Path snapshot) throws IOException {
+        if (!Files.exists(snapshot)) {
+            return 0;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(snapshot));
+        long snapshotSequence = buffer.getLong();
+        while (buffer.hasRemaining()) {
+            Record record = readRecord(buffer);
+            if (record == null) {
+                logger.warn("Checkpoint snapshot {} is corrupt, ignoring the remainder", snapshot);
+                break;
+            }
+            offsets.put(record.fileId, record.offset);
+        }
+        sequence = snapshotSequence;
+        return snapshotSequence;
+    }
+
+    private void replayJournal(long snapshotSequence) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) journal.size());
+        while (buffer.hasRemaining() && journal.read(buffer, buffer.position()) > 0) {
+            // keep reading
+        }
+        buffer.flip();
+
+        long validLength = 0;
+        while (buffer.hasRemaining()) {
+            Record record = readRecord(buffer);
+            if (record == null) {
+                break;
+            }
+            validLength = buffer.position();
+            journalRecords++;
+            if (record.sequence <= snapshotSequence) {
+                continue;
+            }
+            if (record.offset == REMOVED) {
+                offsets.remove(record.fileId);
+            } else {
+                offsets.put(record.fileId, record.offset);
+            }
+            sequence = Math.max(sequence, record.sequence);
+        }
+
+        if (validLength < journal.size()) {
+            logger.warn("Discarding {} bytes of torn checkpoint journal", journal.size() - validLength);
+            journal.truncate(validLength);
+        }
+    }
+
+    private static int recordSize(String fileId) {
+        return Integer.BYTES + fileId.getBytes(StandardCharsets.UTF_8).length + Long.BYTES * 2 + Integer.BYTES;
+    }
+
+    private static void writeRecord(ByteBuffer buffer, String fileId, long offset, long recordSequence) {
+        byte[] id = fileId.getBytes(StandardCharsets.UTF_8);
+        int start = buffer.position();
+        buffer.putInt(id.length);
+        buffer.put(id);
+        buffer.putLong(offset);
+        buffer.putLong(recordSequence);
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), start, buffer.position() - start);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    private static Record readRecord(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.remaining() < Integer.BYTES) {
+            return null;
+        }
+        int idLength = buffer.getInt();
+        if (idLength < 0 || buffer.remaining() < idLength + Long.BYTES * 2 + Integer.BYTES) {
+            return null;
+        }
+        byte[] id = new byte[idLength];
+        buffer.get(id);
+        long offset = buffer.getLong();
+        long recordSequence = buffer.getLong();
+        int end = buffer.position();
+        int storedCrc = buffer.getInt();
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), start, end - start);
+        if ((int) crc.getValue() != storedCrc) {
+            return null;
+        }
+        return new Record(new String(id, StandardCharsets.UTF_8), offset, recordSequence);
+    }
+
+    private static class Record {
+        private final String fileId;
+        private final long offset;
+        private final long sequence;
+
+        Record(String fileId, long offset, long sequence) {
+            this.fileId = fileId;
+            this.offset = offset;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Get checkpoint statistics
+     */
+    public Map<String, Object> getCheckpointStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("is_running", isRunning);
+        stats.put("checkpoint_count", offsets.size());
+        stats.put("commits", commitCount.get());
+        stats.put("flushes", flushCount.get());
+        stats.put("journal_records", journalRecords);
+        return stats;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.service;
+
+import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.agent.dedup.MessageFingerprint;
+import com.logaggregator.agent.dedup.RepeatTable;
+import com.logaggregator.agent.dedup.SamplingRule;
+import com.logaggregator.common.LogEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Collapses repeated lines and samples noisy sources before they are sent.
+ *
+ * Repeats of a line within the deduplication window are held back in a
+ * {@link RepeatTable} and sent once, when the window closes, as a single
+ * entry carrying a repeat_count. That entry goes through the rate limits
+ * and the ingest queue like any other. In template mode lines that differ only
+ * in numbers and ids count as repeats. Entries that survive are then
+ * checked against the sampling rules in order; the first matching rule
+ * keeps its fraction of them, marked with their sample_rate so counts
+ * can be scaled back up downstream.
+ */
+@Service
+public class DeduplicationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeduplicationService.class);
+
+    private final LogAgentConfig config;
+    private final IngestQueueService ingestQueue;
+    private final RateLimitService rateLimitService;
+    private final LongSupplier nanoClock;
+    private final DoubleSupplier random;
+    private final boolean templateMode;
+    private final RepeatTable repeatTable;
+    private final List<SamplingRule> samplingRules;
+    private final LongAdder collapsedLines = new LongAdder();
+    private final LongAdder repeatEntriesSent = new LongAdder();
+    private final LongAdder repeatEntriesFailed = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+    private ScheduledExecutorService flushScheduler;
+
+    @Autowired
+    public DeduplicationService(LogAgentConfig config, IngestQueueService ingestQueue,
+                                RateLimitService rateLimitService) {
+        this(config, ingestQueue, rateLimitService, System::nanoTime, () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    DeduplicationService(LogAgentConfig config, IngestQueueService ingestQueue, RateLimitService rateLimitService,
+                         LongSupplier nanoClock, DoubleSupplier random) {
+        this.config = config;
+        this.ingestQueue = ingestQueue;
+        this.rateLimitService = rateLimitService;
+        this.nanoClock = nanoClock;
+        this.random = random;
+        this.templateMode = isTemplateMode(config.getDeduplicationMode());
+        this.repeatTable = config.isEnableDeduplication()
+            ? new RepeatTable(config.getDeduplicationTableSize(),
+                              TimeUnit.MILLISECONDS.toNanos(config.getDeduplicationWindowMs()), this::sendRepeat)
+            : null;
+        this.samplingRules = SamplingRule.parseAll(config.getSamplingRules());
+    }
+
+    private static boolean isTemplateMode(String mode) {
+        if (mode == null) {
+            return true;
+        }
+        switch (mode.trim().toLowerCase(Locale.ROOT)) {
+            case "template":
+                return true;
+            case "exact":
+                return false;
+            default:
+                throw new IllegalArgumentException("Unknown deduplication mode: " + mode);
+        }
+    }
+
+    /**
+     * Start closing deduplication windows in the background
+     */
+    public synchronized void start() {
+        if (repeatTable == null || flushScheduler != null) {
+            return;
+        }
+        flushScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "dedup-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1, config.getDeduplicationWindowMs() / 2);
+        flushScheduler.scheduleAtFixedRate(() -> repeatTable.flush(nanoClock.getAsLong(), false),
+                                           interval, interval, TimeUnit.MILLISECONDS);
+        logger.info("Deduplicating {} lines within {}ms in {} slots, {} sampling rules",
+                   templateMode ? "template-equal" : "identical", config.getDeduplicationWindowMs(),
+                   repeatTable.size(), samplingRules.size());
+    }
+
+    /**
+     * Stop the background flush, sending every repeat still held back
+     */
+    public synchronized void stop() {
+        if (flushScheduler == null) {
+            return;
+        }
+        flushScheduler.shutdownNow();
+        flushScheduler = null;
+        repeatTable.flush(nanoClock.getAsLong(), true);
+    }
+
+    /**
+     * Entries of a batch that should be sent now, in their original order
+     */
+    public List<LogEntry> admit(List<LogEntry> logEntries) {
+        if (repeatTable == null && samplingRules.isEmpty()) {
+            return logEntries;
+        }
+        List<LogEntry> admitted = null;
+        for (int i = 0; i < logEntries.size(); i++) {
+            LogEntry logEntry = logEntries.get(i);
+            if (admit(logEntry)) {
+                if (admitted != null) {
+                    admitted.add(logEntry);
+                }
+            } else if (admitted == null) {
+                // First entry held back: copy what was admitted so far
+                admitted = new ArrayList<>(logEntries.subList(0, i));
+            }
+        }
+        return admitted != null ? admitted : logEntries;
+    }
+
+    /**
+     * Check whether an entry should be sent now
+     *
+     * @return false if the entry was collapsed into a repeat or sampled out
+     */
+    public boolean admit(LogEntry logEntry) {
+        if (repeatTable != null
+                && !repeatTable.offer(logEntry, MessageFingerprint.of(logEntry, templateMode), nanoClock.getAsLong())) {
+            collapsedLines.increment();
+            return false;
+        }
+        for (SamplingRule rule : samplingRules) {
+            if (rule.matches(logEntry)) {
+                if (random.getAsDouble() >= rule.getRate()) {
+                    sampledOut.increment();
+                    return false;
+                }
+                logEntry.addMetadata(SamplingRule.SAMPLE_RATE, rule.getRate());
+                break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Close every window that has run its course
+     */
+    void flush() {
+        if (repeatTable != null) {
+            repeatTable.flush(nanoClock.getAsLong(), false);
+        }
+    }
+
+    private void sendRepeat(LogEntry repeat) {
+        if (!rateLimitService.admit(repeat)) {
+            return;
+        }
+        repeatEntriesSent.increment();
+        ingestQueue.submit(List.of(repeat)).whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                repeatEntriesFailed.increment();
+                logger.warn("Failed to send repeat of a line from {}: {}", repeat.getSource(), throwable.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Get deduplication and sampling statistics
+     */
+    public Map<String, Object> getDeduplicationStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", repeatTable != null);
+        stats.put("mode", templateMode ? "template" : "exact");
+        stats.put("table_size", repeatTable != null ? repeatTable.size() : 0);
+        stats.put("collapsed_lines", collapsedLines.sum());
+        stats.put("repeat_entries_sent", repeatEntriesSent.sum());
+        stats.put("repeat_entries_failed", repeatEntriesFailed.sum());
+        stats.put("sampling_rules", samplingRules.size());
+        stats.put("sampled_out", sampledOut.sum());
+        return stats;
+    }
+}
@@ -8,8 +8,14 @@
 package com.logaggregator.agent.service;
 
 import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.agent.system.SystemLogFileFollower;
+import com.logaggregator.agent.tail.DirectoryScanIndex;
+import com.logaggregator.agent.tail.FileIdentity;
+import com.logaggregator.agent.tail.FileTailReader;
+import com.logaggregator.agent.tail.LogEntryFactory;
+import com.logaggregator.agent.tail.LogFileMatcher;
+import com.logaggregator.agent.tail.MultilineAggregator;
 import com.logaggregator.common.LogEntry;
-import com.logaggregator.common.LogParser;
 import com.logaggregator.common.LogSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,18 +23,46 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
 
 /**
  * Service responsible for monitoring log files and detecting changes.
  * Uses Java NIO WatchService for efficient file monitoring.
+ *
+ * Files are tracked by {@link FileIdentity} rather than by path, so a file
+ * renamed by log rotation keeps its reader and is drained to EOF before it
+ * is released, while a new file created under the old name starts cleanly.
+ *
+ * Reading is driven by a ready queue rather than by individual events: a
+ * file with unread bytes is queued once and drained in round-robin time
+ * slices, so a burst is read to the end even if no further event arrives
+ * and a busy file cannot starve the others. The queue is served by a pool
+ * of drain workers, so different files are read and parsed in parallel,
+ * while a file is only ever read by one worker at a time and its batches
+ * are sent in order.
+ *
+ * When multiline assembly is enabled, continuation lines such as stack
+ * trace frames are joined with the line that started the event, and a file
+ * is only checkpointed up to the start of an event that is still pending.
+ *
+ * Batches go through the bounded {@link IngestQueueService}; while its
+ * memory budget is used up no file is read, so offsets stop advancing
+ * until the producer catches up.
  */
 @Service
 public class FileMonitorService {
@@ -36,27 +70,69 @@ public class FileMonitorService {
     private static final Logger logger = LoggerFactory.getLogger(FileMonitorService.class);
 
     private final LogAgentConfig config;
-    private final LogProducerService logProducerService;
-    private final Map<Path, LogFileTracker> trackedFiles = new ConcurrentHashMap<>();
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    private final IngestQueueService ingestQueue;
+    private final DeduplicationService deduplicationService;
+    private final RateLimitService rateLimitService;
+    private final CheckpointService checkpointService;
+    private final Map<FileIdentity, LogFileTracker> trackedFiles = new ConcurrentHashMap<>();
+    private final Map<Path, FileIdentity> pathIndex = new ConcurrentHashMap<>();
+    private final Set<Path> pendingFiles = ConcurrentHashMap.newKeySet();
+    private final Map<Path, Long> deferredCopies = new ConcurrentHashMap<>();
+    private final Map<Long, CopyCandidate> truncatedFiles = new ConcurrentHashMap<>();
+    private final BlockingQueue<LogFileTracker> readyFiles = new LinkedBlockingQueue<>();
+    private final Map<Path, WatchKey> watchedDirectories = new ConcurrentHashMap<>();
+    private final LogFileMatcher fileMatcher;
+    private final LogEntryFactory entryFactory;
+    private final DirectoryScanIndex scanIndex = new DirectoryScanIndex();
+    private final AtomicLong scanCount = new AtomicLong(0);
+    private final AtomicLong totalScanTimeMs = new AtomicLong(0);
+    private volatile long lastScanDurationMs = 0;
+    private final AtomicInteger activeDrains = new AtomicInteger(0);
+    // Watcher, periodic scanner and multiline flush timer
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(3);
+    private ExecutorService drainWorkers;
     private WatchService watchService;
     private boolean isRunning = false;
 
     @Autowired
-    public FileMonitorService(LogAgentConfig config, LogProducerService logProducerService) {
+    public FileMonitorService(LogAgentConfig config, IngestQueueService ingestQueue,
+                              CheckpointService checkpointService, LogFilterService logFilterService,
+                              DeduplicationService deduplicationService, RateLimitService rateLimitService) {
         this.config = config;
-        this.logProducerService = logProducerService;
+        this.ingestQueue = ingestQueue;
+        this.deduplicationService = deduplicationService;
+        this.rateLimitService = rateLimitService;
+        this.checkpointService = checkpointService;
+        this.fileMatcher = new LogFileMatcher(config.getFilePatterns(), config.getExcludePatterns());
+        this.entryFactory = new LogEntryFactory(config, logFilterService.getEntryFilter());
     }
 
     /**
      * Tracks file position and metadata for tail-like functionality
      */
     private static class LogFileTracker {
-        private final Path filePath;
+        private Path filePath;
         private final LogSource logSource;
+        private FileIdentity identity;
+        private boolean orphaned;
+        private long tailFrom;
+        private long tailChecksum;
         private long lastPosition;
         private long lastModified;
-        private RandomAccessFile randomAccessFile;
+        private FileTailReader reader;
+        private boolean catchingUp;
+        private long catchUpStartPosition;
+        private long lastKnownSize;
+        private MultilineAggregator multiline;
+        private final AtomicBoolean queued = new AtomicBoolean(false);
+        // Generation of the batches being read, guarded by the tracker like the other read state
+        private int readGeneration;
+        // Commit state, guarded by its own lock since acks arrive while the tracker is held for reading
+        private final Object commitLock = new Object();
+        private CompletableFuture<Void> commits = CompletableFuture.completedFuture(null);
+        private int generation;
+        private long committedPosition;
+        private long rewindTo = -1;
 
         public LogFileTracker(Path filePath, LogSource logSource) {
             this.filePath = filePath;
@@ -66,18 +142,118 @@ public class FileMonitorService {
         }
 
         public Path getFilePath() { return filePath; }
+        public void setFilePath(Path filePath) { this.filePath = filePath; }
         public LogSource getLogSource() { return logSource; }
+        public FileIdentity getIdentity() { return identity; }
+        public void setIdentity(FileIdentity identity) { this.identity = identity; }
+        public boolean isOrphaned() { return orphaned; }
+        public void setOrphaned(boolean orphaned) { this.orphaned = orphaned; }
+        public long getTailFrom() { return tailFrom; }
+        public long getTailChecksum() { return tailChecksum; }
+        public void setTail(long tailFrom, long tailChecksum) {
+            this.tailFrom = tailFrom;
+            this.tailChecksum = tailChecksum;
+        }
         public long getLastPosition() { return lastPosition; }
         public void setLastPosition(long lastPosition) { this.lastPosition = lastPosition; }
         public long getLastModified() { return lastModified; }
         public void setLastModified(long lastModified) { this.lastModified = lastModified; }
-        public RandomAccessFile getRandomAccessFile() { return randomAccessFile; }
-        public void setRandomAccessFile(RandomAccessFile randomAccessFile) { this.randomAccessFile = randomAccessFile; }
+        public FileTailReader getReader() { return reader; }
+        public void setReader(FileTailReader reader) { this.reader = reader; }
+        public boolean isCatchingUp() { return catchingUp; }
+        public void setCatchingUp(boolean catchingUp) { this.catchingUp = catchingUp; }
+        public long getCatchUpStartPosition() { return catchUpStartPosition; }
+        public void setCatchUpStartPosition(long catchUpStartPosition) { this.catchUpStartPosition = catchUpStartPosition; }
+        public long getLastKnownSize() { return lastKnownSize; }
+        public void setLastKnownSize(long lastKnownSize) { this.lastKnownSize = lastKnownSize; }
+        public MultilineAggregator getMultiline() { return multiline; }
+        public void setMultiline(MultilineAggregator multiline) { this.multiline = multiline; }
+        public boolean markQueued() { return queued.compareAndSet(false, true); }
+        public void clearQueued() { queued.set(false); }
+        public int getReadGeneration() { return readGeneration; }
+
+        /**
+         * Start over from a position whose lines are all delivered, e.g. a
+         * checkpoint or the start of a truncated file. Batches still in
+         * flight no longer commit or rewind.
+         */
+        public void resetCommits(long position) {
+            synchronized (commitLock) {
+                generation++;
+                readGeneration = generation;
+                commits = CompletableFuture.completedFuture(null);
+                committedPosition = position;
+                rewindTo = -1;
+            }
+        }
+
+        /**
+         * Take the position to read again from after a failed batch, and
+         * start the generation of the batches read next
+         *
+         * @return the last committed position, or -1 if nothing failed
+         */
+        public long takeRewind() {
+            synchronized (commitLock) {
+                readGeneration = generation;
+                long rewind = rewindTo;
+                rewindTo = -1;
+                return rewind;
+            }
+        }
+
+        /**
+         * Commit a batch's position once it, and every batch read before it,
+         * is acknowledged. Retries let acks arrive out of order, and a later
+         * batch must not move the checkpoint past an earlier one that may
+         * still fail. After a failure nothing further is committed, and the
+         * reader is asked to rewind to the last committed position.
+         */
+        public void addCommit(CompletableFuture<Void> sent, int batchGeneration, long position,
+                              LongConsumer committer, Runnable onFailure) {
+            synchronized (commitLock) {
+                if (batchGeneration != generation) {
+                    return; // read before a failure, the rewind reads it again
+                }
+                // Committed within the chain, so the next batch's outcome is only seen after it
+                commits = commits.thenCombine(sent, (previous, result) -> (Void) null)
+                    .thenRun(() -> committed(batchGeneration, position, committer));
+                commits.whenComplete((result, throwable) -> {
+                    if (throwable != null && failed(batchGeneration)) {
+                        onFailure.run();
+                    }
+                });
+            }
+        }
+
+        private void committed(int batchGeneration, long position, LongConsumer committer) {
+            synchronized (commitLock) {
+                if (batchGeneration == generation) {
+                    committedPosition = position;
+                    committer.accept(position);
+                }
+            }
+        }
+
+        /**
+         * @return true for the first failure of a generation, which starts the next one
+         */
+        private boolean failed(int batchGeneration) {
+            synchronized (commitLock) {
+                if (batchGeneration != generation) {
+                    return false;
+                }
+                generation++;
+                commits = CompletableFuture.completedFuture(null);
+                rewindTo = committedPosition;
+                return true;
+            }
+        }
 
         public void close() {
-            if (randomAccessFile != null) {
+            if (reader != null) {
                 try {
-                    randomAccessFile.close();
+                    reader.close();
                 } catch (IOException e) {
                     logger.warn("Error closing file: {}", e.getMessage());
                 }
@@ -85,6 +261,26 @@ public class FileMonitorService {
         }
     }
 
+    /**
+     * Read state of a file that was truncated in place. A copy of it made by
+     * copytruncate-style rotation has the same head and the same bytes right
+     * before the position, so it can resume where the original left off.
+     */
+    private static class CopyCandidate {
+        private final String fileKey;
+        private final long position;
+        private final long tailFrom;
+        private final long tailChecksum;
+        private final long recordedAt = System.currentTimeMillis();
+
+        CopyCandidate(String fileKey, long position, long tailFrom, long tailChecksum) {
+            this.fileKey = fileKey;
+            this.position = position;
+            this.tailFrom = tailFrom;
+            this.tailChecksum = tailChecksum;
+        }
+    }
+
     /**
      * Start monitoring configured directories
      */
@@ -106,6 +302,20 @@ public class FileMonitorService {
                 scheduler.execute(this::watchForFileChanges);
             }
 
+            // Start drain workers
+            int parallelism = getTailParallelism();
+            drainWorkers = Executors.newFixedThreadPool(parallelism);
+            for (int i = 0; i < parallelism; i++) {
+                drainWorkers.execute(this::drainReadyFiles);
+            }
+
+            // Flush multiline events that stopped receiving lines
+            if (config.isEnableMultiline()) {
+                long flushCheckMs = Math.max(50, config.getMultilineFlushTimeoutMs() / 2);
+                scheduler.scheduleWithFixedDelay(
+                    this::flushIdleEvents, flushCheckMs, flushCheckMs, TimeUnit.MILLISECONDS);
+            }
+
             // Start periodic scanner
             scheduler.scheduleAtFixedRate(
                 this::scanForNewFiles,
@@ -128,19 +338,19 @@ public class FileMonitorService {
     public void stopMonitoring() {
         isRunning = false;
 
-        scheduler.shutdown();
-        try {
-            if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
-                scheduler.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            scheduler.shutdownNow();
-            Thread.currentThread().interrupt();
+        shutdownExecutor(scheduler);
+        if (drainWorkers != null) {
+            shutdownExecutor(drainWorkers);
         }
 
         // Close all tracked files
         trackedFiles.values().forEach(LogFileTracker::close);
         trackedFiles.clear();
+        pathIndex.clear();
+        pendingFiles.clear();
+        deferredCopies.clear();
+        readyFiles.clear();
+        watchedDirectories.clear();
 
         if (watchService != null) {
             try {
@@ -153,15 +363,35 @@ public class FileMonitorService {
         logger.info("File monitoring stopped");
     }
 
+    private void shutdownExecutor(ExecutorService executor) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
-     * Perform initial scan of configured directories
+     * Number of drain workers, one per CPU core unless configured
+     */
+    private int getTailParallelism() {
+        int parallelism = config.getTailParallelism();
+        return parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Perform initial scan of configured directories. Every directory of the
+     * tree is registered for watching as the scan reaches it.
      */
     private void performInitialScan() {
         for (String directory : config.getWatchDirectories()) {
             Path dirPath = Paths.get(directory);
             if (Files.exists(dirPath) && Files.isDirectory(dirPath)) {
-                scanDirectory(dirPath, true);
-                registerDirectoryForWatching(dirPath);
+                scanDirectory(dirPath, true, false);
             } else {
                 logger.warn("Watch directory does not exist or is not a directory: {}", directory);
             }
@@ -169,14 +399,20 @@ public class FileMonitorService {
     }
 
     /**
-     * Register directory with WatchService
+     * Register directory with WatchService unless it is already watched
      */
     private void registerDirectoryForWatching(Path directory) {
+        WatchKey existing = watchedDirectories.get(directory);
+        if (existing != null && existing.isValid()) {
+            return;
+        }
+
         try {
-            directory.register(watchService,
+            WatchKey key = directory.register(watchService,
                 StandardWatchEventKinds.ENTRY_CREATE,
                 StandardWatchEventKinds.ENTRY_MODIFY,
                 StandardWatchEventKinds.ENTRY_DELETE);
+            watchedDirectories.put(directory, key);
             logger.debug("Registered directory for watching: {}", directory);
         } catch (IOException e) {
             logger.error("Failed to register directory for watching: {}", e.getMessage());
@@ -190,11 +426,19 @@ public class FileMonitorService {
         while (isRunning) {
             try {
                 WatchKey key = watchService.take();
+                Path directory = (Path) key.watchable();
 
                 for (WatchEvent<?> event : key.pollEvents()) {
                     WatchEvent.Kind<?> kind = event.kind();
+
+                    if (kind == StandardWatchEventKinds.OVERFLOW) {
+                        // Events were dropped, find out what changed in this directory
+                        resyncDirectory(directory);
+                        continue;
+                    }
+
                     Path eventPath = (Path) event.context();
-                    Path fullPath = ((Path) key.watchable()).resolve(eventPath);
+                    Path fullPath = directory.resolve(eventPath);
 
                     if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
                         handleFileCreated(fullPath);
@@ -206,7 +450,9 @@ public class FileMonitorService {
                 }
 
                 if (!key.reset()) {
-                    break;
+                    // The directory itself is gone, keep watching the others
+                    watchedDirectories.remove(directory, key);
+                    logger.debug("Stopped watching removed directory: {}", directory);
                 }
 
             } catch (InterruptedException e) {
@@ -219,71 +465,209 @@ public class FileMonitorService {
     }
 
     /**
-     * Scan directory for log files
+     * Scan directory for log files. An incremental scan only lists directories
+     * whose entries changed since the previous scan.
      */
-    private void scanDirectory(Path directory, boolean isInitialScan) {
-        try {
-            Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
-                @Override
-                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-                    if (isLogFile(file) && attrs.size() <= config.getMaxFileSizeBytes()) {
-                        if (isInitialScan) {
-                            trackFile(file, true); // Start from end for initial scan
-                        } else {
-                            trackFile(file, false); // Start from beginning for new files
-                        }
+    private void scanDirectory(Path directory, boolean isInitialScan, boolean incremental) {
+        scanIndex.scan(directory, !incremental, new DirectoryScanIndex.Visitor() {
+            @Override
+            public boolean onDirectory(Path dir) {
+                if (!dir.equals(directory) && fileMatcher.isExcluded(dir)) {
+                    return false;
+                }
+                // Register before reading the directory so no file created meanwhile is missed
+                registerDirectoryForWatching(dir);
+                return true;
+            }
+
+            @Override
+            public void onFile(Path file, BasicFileAttributes attrs) {
+                if (isReplaced(file, attrs)) {
+                    // A rotation we did not see an event for
+                    handleFileDeleted(file);
+                }
+                if (isLogFile(file)) {
+                    if (isInitialScan) {
+                        trackFile(file, true); // Start from end for initial scan
+                    } else {
+                        trackFile(file, false); // Start from beginning for new files
                     }
-                    return FileVisitResult.CONTINUE;
                 }
-            });
-        } catch (IOException e) {
-            logger.error("Error scanning directory {}: {}", directory, e.getMessage());
-        }
+            }
+        });
     }
 
     /**
      * Check if file matches log file patterns
      */
     private boolean isLogFile(Path file) {
-        String fileName = file.getFileName().toString().toLowerCase();
-        return config.getFilePatterns().stream()
-            .anyMatch(pattern -> {
-                String regexPattern = pattern.replace("*", ".*").replace("?", ".");
-                return fileName.matches(regexPattern);
-            });
+        return fileMatcher.matches(file);
+    }
+
+    /**
+     * Check whether the file at a tracked path is no longer the tracked file
+     */
+    private boolean isReplaced(Path file, BasicFileAttributes attrs) {
+        FileIdentity identity = pathIndex.get(file);
+        return identity != null && attrs.fileKey() != null
+            && !identity.getFileKey().equals(attrs.fileKey().toString());
     }
 
     /**
      * Start tracking a log file
      */
-    private void trackFile(Path filePath, boolean startFromEnd) {
-        if (trackedFiles.containsKey(filePath)) {
+    private synchronized void trackFile(Path filePath, boolean startFromEnd) {
+        if (pathIndex.containsKey(filePath)) {
             return; // Already tracking
         }
 
+        FileTailReader reader = null;
         try {
-            LogSource logSource = createLogSource(filePath);
-            LogFileTracker tracker = new LogFileTracker(filePath, logSource);
+            reader = new FileTailReader(filePath,
+                Charset.forName(config.getFileEncoding()), config.getReadBufferSizeBytes());
+            FileIdentity identity = FileIdentity.of(resolveFileKey(filePath), reader.getChannel(),
+                config.getFingerprintBytes());
 
-            RandomAccessFile raf = new RandomAccessFile(filePath.toFile(), "r");
-            tracker.setRandomAccessFile(raf);
+            if (identity == null) {
+                // Nothing complete to read yet; retried on the next modification or scan
+                reader.close();
+                pendingFiles.add(filePath);
+                return;
+            }
+            pendingFiles.remove(filePath);
 
-            if (startFromEnd) {
-                // For existing files, start from the end
-                tracker.setLastPosition(raf.length());
-            } else {
-                // For new files, start from the beginning
-                tracker.setLastPosition(0);
+            LogFileTracker existing = trackedFiles.get(identity);
+            if (existing != null) {
+                // The same file under a new name, e.g. after a rename by logrotate
+                reader.close();
+                pathIndex.remove(existing.getFilePath(), identity);
+                existing.setFilePath(filePath);
+                existing.setOrphaned(false);
+                pathIndex.put(filePath, identity);
+                logger.info("Tracked file renamed to {}", filePath);
+                return;
             }
 
+            if (reader.size() > config.getMaxFileSizeBytes()
+                    && checkpointService.getOffset(identity.asKey()).isEmpty()) {
+                // Too large to start on, but a file with a committed offset resumes whatever its size
+                reader.close();
+                logger.debug("Skipping {}: larger than {} bytes", filePath, config.getMaxFileSizeBytes());
+                return;
+            }
+
+            if (isUnconfirmedCopy(filePath, identity, reader)) {
+                // Probably a copytruncate copy whose original is about to be truncated
+                reader.close();
+                pendingFiles.add(filePath);
+                return;
+            }
+
+            LogSource logSource = createLogSource(filePath);
+            LogFileTracker tracker = new LogFileTracker(filePath, logSource);
+            tracker.setReader(reader);
+            tracker.setMultiline(entryFactory.createMultilineAggregator());
+            tracker.setIdentity(identity);
+            tracker.setLastPosition(resolveStartPosition(identity, reader, startFromEnd));
+            tracker.resetCommits(tracker.getLastPosition());
             tracker.setLastModified(Files.getLastModifiedTime(filePath).toMillis());
-            trackedFiles.put(filePath, tracker);
+
+            trackedFiles.put(identity, tracker);
+            pathIndex.put(filePath, identity);
+            scheduleDrain(tracker);
 
             logger.info("Started tracking file: {} (position: {})", filePath, tracker.getLastPosition());
 
         } catch (IOException e) {
             logger.error("Failed to track file {}: {}", filePath, e.getMessage());
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException closeError) {
+                    logger.warn("Error closing file: {}", closeError.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Decide where reading of a newly tracked file starts
+     */
+    private long resolveStartPosition(FileIdentity identity, FileTailReader reader, boolean startFromEnd)
+            throws IOException {
+        long size = reader.size();
+
+        // Resume where the last delivered batch ended
+        OptionalLong committed = checkpointService.getOffset(identity.asKey());
+        if (committed.isPresent() && committed.getAsLong() <= size) {
+            return committed.getAsLong();
+        }
+
+        // A copy of a file we were reading continues from the original's position
+        CopyCandidate truncated = truncatedFiles.get(identity.getHeadChecksum());
+        if (truncated != null && isCopyOf(truncated, identity, reader)) {
+            logger.info("{} is a copy of a truncated file, resuming at {}", reader.getFilePath(), truncated.position);
+            truncatedFiles.remove(identity.getHeadChecksum(), truncated);
+            return truncated.position;
         }
+
+        // For existing files start from the end, for new files from the beginning
+        return startFromEnd ? size : 0;
+    }
+
+    /**
+     * Check whether a new file matches the read state of a file that is still
+     * being tracked. Such a file is held back for a scan interval, by which
+     * time a copytruncate rotation has truncated the original and left a
+     * candidate to resume from; files that merely share content are then
+     * tracked normally. Scans and events in the meantime keep holding it.
+     */
+    private boolean isUnconfirmedCopy(Path filePath, FileIdentity identity, FileTailReader reader)
+            throws IOException {
+        if (truncatedFiles.containsKey(identity.getHeadChecksum())) {
+            deferredCopies.remove(filePath);
+            return false;
+        }
+        Long deferredAt = deferredCopies.get(filePath);
+        if (deferredAt != null) {
+            if (System.currentTimeMillis() - deferredAt < 1000L * config.getScanIntervalSeconds()) {
+                return true;
+            }
+            deferredCopies.remove(filePath);
+            return false;
+        }
+
+        for (LogFileTracker tracker : trackedFiles.values()) {
+            if (tracker.getIdentity().getHeadChecksum() == identity.getHeadChecksum()
+                    && isCopyOf(new CopyCandidate(tracker.getIdentity().getFileKey(), tracker.getLastPosition(),
+                        tracker.getTailFrom(), tracker.getTailChecksum()), identity, reader)) {
+                deferredCopies.put(filePath, System.currentTimeMillis());
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether a file holds the same last line as a candidate right before its position
+     */
+    private boolean isCopyOf(CopyCandidate candidate, FileIdentity identity, FileTailReader reader)
+            throws IOException {
+        return !candidate.fileKey.equals(identity.getFileKey())
+            && candidate.position > 0
+            && candidate.position <= reader.size()
+            && FileIdentity.lineChecksum(reader.getChannel(), candidate.tailFrom, candidate.position,
+                reader.getCharset()) == candidate.tailChecksum;
+    }
+
+    /**
+     * File system key of a file, falling back to the path on file systems
+     * without file keys
+     */
+    private String resolveFileKey(Path filePath) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(filePath, BasicFileAttributes.class);
+        Object fileKey = attrs.fileKey();
+        return fileKey != null ? fileKey.toString() : filePath.toAbsolutePath().toString();
     }
 
     /**
@@ -297,10 +681,41 @@ public class FileMonitorService {
         return new LogSource(fileName, filePathStr, "file", sourceId, config.getHostname());
     }
 
+    /**
+     * Rescan a directory after an overflow: pick up new files and directories,
+     * release files that disappeared and queue every file that grew
+     */
+    private void resyncDirectory(Path directory) {
+        logger.warn("Watch events overflowed for {}, resynchronizing", directory);
+
+        for (Path trackedPath : new ArrayList<>(pathIndex.keySet())) {
+            if (trackedPath.startsWith(directory) && !Files.exists(trackedPath)) {
+                handleFileDeleted(trackedPath);
+            }
+        }
+
+        scanDirectory(directory, false, false);
+
+        for (LogFileTracker tracker : trackedFiles.values()) {
+            if (tracker.getFilePath().startsWith(directory) && hasChanged(tracker)) {
+                scheduleDrain(tracker);
+            }
+        }
+    }
+
     /**
      * Handle file creation event
      */
     private void handleFileCreated(Path filePath) {
+        if (Files.isDirectory(filePath, LinkOption.NOFOLLOW_LINKS)) {
+            // Watch the new directory and pick up what was written before it was registered
+            if (!fileMatcher.isExcluded(filePath)) {
+                logger.debug("New directory detected: {}", filePath);
+                scanDirectory(filePath, false, false);
+            }
+            return;
+        }
+
         if (isLogFile(filePath)) {
             logger.debug("New log file detected: {}", filePath);
             trackFile(filePath, false);
@@ -311,75 +726,475 @@ public class FileMonitorService {
      * Handle file modification event
      */
     private void handleFileModified(Path filePath) {
-        LogFileTracker tracker = trackedFiles.get(filePath);
+        if (pendingFiles.contains(filePath) && !deferredCopies.containsKey(filePath)) {
+            trackFile(filePath, false);
+        }
+
+        FileIdentity identity = pathIndex.get(filePath);
+        LogFileTracker tracker = identity != null ? trackedFiles.get(identity) : null;
         if (tracker != null) {
-            processFileChanges(tracker);
+            scheduleDrain(tracker);
         }
     }
 
     /**
-     * Handle file deletion event
+     * Handle file deletion event. With rename-based rotation the open handle
+     * still reaches the file, so it keeps draining as an orphan that is
+     * released on the next scan unless it shows up under a new name.
      */
     private void handleFileDeleted(Path filePath) {
-        LogFileTracker tracker = trackedFiles.remove(filePath);
-        if (tracker != null) {
-            tracker.close();
-            logger.debug("Stopped tracking deleted file: {}", filePath);
+        LogFileTracker tracker;
+        synchronized (this) {
+            pendingFiles.remove(filePath);
+            deferredCopies.remove(filePath);
+            FileIdentity identity = pathIndex.remove(filePath);
+            tracker = identity != null ? trackedFiles.get(identity) : null;
+            if (tracker == null || !tracker.getFilePath().equals(filePath)) {
+                return;
+            }
+            tracker.setOrphaned(true);
+        }
+
+        scheduleDrain(tracker);
+        logger.debug("Tracked file {} was renamed or deleted", filePath);
+    }
+
+    /**
+     * Queue a file for reading unless it is already queued or being read
+     */
+    private void scheduleDrain(LogFileTracker tracker) {
+        if (tracker.markQueued()) {
+            readyFiles.offer(tracker);
+        }
+    }
+
+    /**
+     * Take files from the ready queue and give each one time slice at a time.
+     * Runs on every drain worker; a queued file is taken by exactly one of them.
+     * Workers pause before taking a file while the ingest queue is full,
+     * and idle while the throttle allows fewer of them to drain at once.
+     */
+    private void drainReadyFiles() {
+        while (isRunning) {
+            try {
+                if (!ingestQueue.awaitCapacity(500)) {
+                    continue;
+                }
+                if (!acquireDrainSlot()) {
+                    Thread.sleep(50);
+                    continue;
+                }
+                try {
+                    LogFileTracker tracker = readyFiles.poll(500, TimeUnit.MILLISECONDS);
+                    if (tracker != null) {
+                        drainSlice(tracker);
+                    }
+                } finally {
+                    activeDrains.decrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                logger.error("Error draining log files: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Take one of the drain slots the throttle currently allows
+     */
+    private boolean acquireDrainSlot() {
+        int allowed = ingestQueue.getThrottle().parallelism(getTailParallelism());
+        while (true) {
+            int active = activeDrains.get();
+            if (active >= allowed) {
+                return false;
+            }
+            if (activeDrains.compareAndSet(active, active + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Read batches from a file until it has no complete lines left, its
+     * slice is used up or the ingest queue is full, then send it to the back
+     * of the queue if needed
+     */
+    private void drainSlice(LogFileTracker tracker) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getDrainSliceMs());
+        int lines;
+        try {
+            do {
+                lines = processFileChanges(tracker);
+            } while (lines > 0 && System.nanoTime() < deadline && ingestQueue.hasCapacity());
+        } finally {
+            tracker.clearQueued();
+        }
+
+        // Re-check after clearing the flag so an append racing with the last read is not lost
+        if (lines > 0 || hasChanged(tracker)) {
+            scheduleDrain(tracker);
+        }
+    }
+
+    /**
+     * Check whether a file grew, or shrank because it was truncated, since
+     * it was last read. A trailing partial line does not count, it is picked
+     * up once the next write completes it.
+     */
+    private boolean hasChanged(LogFileTracker tracker) {
+        try {
+            FileTailReader reader = tracker.getReader();
+            return reader.getChannel().isOpen() && reader.size() != tracker.getLastKnownSize();
+        } catch (IOException e) {
+            return false;
         }
     }
 
+    /**
+     * Unread bytes of a file, including a trailing partial line
+     */
+    private long getLagBytes(LogFileTracker tracker) {
+        try {
+            FileTailReader reader = tracker.getReader();
+            long size = reader.getChannel().isOpen() ? reader.size() : tracker.getLastKnownSize();
+            return Math.max(0, size - tracker.getLastPosition());
+        } catch (IOException e) {
+            return Math.max(0, tracker.getLastKnownSize() - tracker.getLastPosition());
+        }
+    }
+
+    /**
+     * Read a file until no complete lines are left and send any pending event
+     */
+    private void drainFile(LogFileTracker tracker) {
+        while (processFileChanges(tracker, false) > 0) {
+            // keep reading
+        }
+        processFileChanges(tracker, true);
+    }
+
+    /**
+     * Queue files whose pending multiline event timed out, so it gets sent
+     */
+    private void flushIdleEvents() {
+        long now = System.currentTimeMillis();
+        for (LogFileTracker tracker : trackedFiles.values()) {
+            MultilineAggregator multiline = tracker.getMultiline();
+            if (multiline != null && multiline.isIdle(now)) {
+                scheduleDrain(tracker);
+            }
+        }
+    }
+
+    /**
+     * Process new content in a file
+     *
+     * @return the number of lines read
+     */
+    private int processFileChanges(LogFileTracker tracker) {
+        return processFileChanges(tracker, false);
+    }
+
     /**
      * Process new content in a file
+     *
+     * @param flushPending also send a multiline event that has not timed out yet
+     * @return the number of lines read
      */
-    private void processFileChanges(LogFileTracker tracker) {
+    private int processFileChanges(LogFileTracker tracker, boolean flushPending) {
+        synchronized (tracker) {
+            return readFileChanges(tracker, flushPending);
+        }
+    }
+
+    private int readFileChanges(LogFileTracker tracker, boolean flushPending) {
         try {
-            RandomAccessFile raf = tracker.getRandomAccessFile();
-            long currentLength = raf.length();
+            FileTailReader reader = tracker.getReader();
+            if (!reader.getChannel().isOpen()) {
+                return 0;
+            }
+            long currentLength = reader.size();
+            tracker.setLastKnownSize(currentLength);
 
-            if (currentLength < tracker.getLastPosition()) {
-                // File was truncated, start from beginning
-                tracker.setLastPosition(0);
+            // A failure arriving mid-read keeps the batch read now from committing; the rewind re-reads it
+            long rewind = tracker.takeRewind();
+            if (rewind >= 0 && rewind < tracker.getLastPosition()) {
+                // A batch was not delivered, read it again together with everything after it
+                logger.warn("Re-reading {} from offset {} after a failed send", tracker.getFilePath(), rewind);
+                tracker.setLastPosition(rewind);
+                if (tracker.getMultiline() != null) {
+                    tracker.setMultiline(entryFactory.createMultilineAggregator());
+                }
+                reader.releaseWindow();
             }
 
+            List<LogEntry> logEntries = new ArrayList<>();
+            MultilineAggregator multiline = tracker.getMultiline();
+
+            Long head = FileIdentity.headChecksum(reader.getChannel(), config.getFingerprintBytes());
+            if (currentLength < tracker.getLastPosition()
+                    || head == null || head != tracker.getIdentity().getHeadChecksum()) {
+                // Truncated in place (copytruncate) or rewritten: the content is a new file
+                if (multiline != null) {
+                    addLogEntry(logEntries, tracker, multiline.flush());
+                }
+                if (!handleTruncation(tracker)) {
+                    sendBatch(tracker, logEntries, null, 0);
+                    return 0;
+                }
+            }
+
+            int lines = 0;
+            String checkpointKey = tracker.getIdentity().asKey();
             if (currentLength > tracker.getLastPosition()) {
-                raf.seek(tracker.getLastPosition());
-
-                List<LogEntry> logEntries = new ArrayList<>();
-                String line;
-
-                while ((line = raf.readLine()) != null && logEntries.size() < config.getBatchSize()) {
-                    LogEntry entry = LogParser.parseLine(line, tracker.getLogSource().getSourceId());
-                    if (entry != null) {
-                        entry.setHostname(config.getHostname());
-                        entry.addMetadata("agent_id", config.getAgentId());
-                        entry.addMetadata("file_path", tracker.getFilePath().toString());
-                        logEntries.add(entry);
+                reader.setPosition(tracker.getLastPosition());
+
+                if (!tracker.isCatchingUp()
+                        && currentLength - tracker.getLastPosition() > config.getCatchUpThresholdBytes()) {
+                    tracker.setCatchingUp(true);
+                    tracker.setCatchUpStartPosition(tracker.getLastPosition());
+                    logger.info("Entering catch-up mode for {} ({} bytes behind)",
+                               tracker.getFilePath(), currentLength - tracker.getLastPosition());
+                }
+
+                long now = System.currentTimeMillis();
+                long[] lastLineStart = {tracker.getLastPosition(), tracker.getLastPosition()};
+                String[] lastLine = {null};
+                FileTailReader.LineHandler handler = (line, endOffset) -> {
+                    long startOffset = lastLineStart[1];
+                    lastLineStart[0] = startOffset;
+                    lastLineStart[1] = endOffset;
+                    lastLine[0] = line;
+                    if (multiline == null) {
+                        addLogEntry(logEntries, tracker, line);
+                    } else {
+                        addLogEntry(logEntries, tracker, multiline.add(line, startOffset, now));
                     }
+                };
+
+                int batchSize = ingestQueue.getThrottle().batchSize(config.getBatchSize());
+                if (tracker.isCatchingUp()) {
+                    lines = reader.readLinesMapped(batchSize, config.getCatchUpWindowBytes(), handler);
+                } else {
+                    lines = reader.readLines(batchSize, handler);
                 }
 
-                tracker.setLastPosition(raf.getFilePointer());
+                long endPosition = reader.getPosition();
+                tracker.setLastPosition(endPosition);
+                if (lines > 0) {
+                    // Remember the last line so a copy of this file can be matched later
+                    tracker.setTail(lastLineStart[0], FileIdentity.lineChecksum(lastLine[0], reader.getCharset()));
+                }
 
-                if (!logEntries.isEmpty()) {
-                    logProducerService.sendLogEntries(logEntries);
-                    logger.debug("Processed {} log entries from {}", logEntries.size(), tracker.getFilePath());
+                if (tracker.isCatchingUp()
+                        && currentLength - tracker.getLastPosition() <= config.getCatchUpExitDistanceBytes()) {
+                    stopCatchUp(tracker);
+                    logger.info("Caught up with {}, switching back to tailing", tracker.getFilePath());
                 }
             }
 
+            if (multiline != null && (flushPending || multiline.isIdle(System.currentTimeMillis()))) {
+                addLogEntry(logEntries, tracker, multiline.flush());
+            }
+
+            // Lines of a pending event are read but not delivered, so they must be read again after a restart
+            long committable = multiline != null && multiline.hasPending()
+                ? multiline.getPendingStartOffset() : tracker.getLastPosition();
+            if (lines > 0 || !logEntries.isEmpty()) {
+                sendBatch(tracker, logEntries, checkpointKey, committable);
+            }
+            return lines;
+
         } catch (IOException e) {
             logger.error("Error processing file changes for {}: {}", tracker.getFilePath(), e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Send a batch and commit the offset once the producer has acknowledged
+     * it and every batch read before it. After a failed batch the file is
+     * read again from the last committed offset.
+     *
+     * @param checkpointKey file identity to commit, or null to commit nothing
+     */
+    private void sendBatch(LogFileTracker tracker, List<LogEntry> batch, String checkpointKey, long offset) {
+        List<LogEntry> logEntries = rateLimitService.admit(deduplicationService.admit(batch));
+        if (checkpointKey == null) {
+            if (!logEntries.isEmpty()) {
+                ingestQueue.submit(logEntries).whenComplete((result, throwable) -> {
+                    if (throwable != null) {
+                        logger.error("Lost {} entries of truncated file {}: {}",
+                                   logEntries.size(), tracker.getFilePath(), throwable.getMessage());
+                    }
+                });
+            }
+            return;
+        }
+
+        // Collapsed, sampled out and rate limited lines count as read, so a batch left empty still commits in turn
+        CompletableFuture<Void> sent = logEntries.isEmpty()
+            ? CompletableFuture.completedFuture(null) : ingestQueue.submit(logEntries);
+        tracker.addCommit(sent, tracker.getReadGeneration(), offset,
+            position -> checkpointService.commit(checkpointKey, position),
+            () -> scheduleDrain(tracker));
+        if (!logEntries.isEmpty()) {
+            logger.debug("Processed {} log entries from {}", logEntries.size(), tracker.getFilePath());
+        }
+    }
+
+    private void addLogEntry(List<LogEntry> logEntries, LogFileTracker tracker, String line) {
+        LogEntry entry = entryFactory.createLogEntry(
+            tracker.getLogSource().getSourceId(), tracker.getFilePath(), line);
+        if (entry != null) {
+            logEntries.add(entry);
+        }
+    }
+
+    private void addLogEntry(List<LogEntry> logEntries, LogFileTracker tracker, List<String> eventLines) {
+        if (eventLines != null) {
+            LogEntry entry = entryFactory.createLogEntry(
+                tracker.getLogSource().getSourceId(), tracker.getFilePath(), eventLines);
+            if (entry != null) {
+                logEntries.add(entry);
+            }
+        }
+    }
+
+    /**
+     * Re-identify a file whose content was replaced in place
+     *
+     * @return false if the tracker was released because the new head is incomplete
+     */
+    private boolean handleTruncation(LogFileTracker tracker) throws IOException {
+        FileIdentity previous = tracker.getIdentity();
+        FileIdentity current = FileIdentity.of(previous.getFileKey(), tracker.getReader().getChannel(),
+            config.getFingerprintBytes());
+
+        synchronized (this) {
+            truncatedFiles.put(previous.getHeadChecksum(), new CopyCandidate(previous.getFileKey(),
+                tracker.getLastPosition(), tracker.getTailFrom(), tracker.getTailChecksum()));
+            trackedFiles.remove(previous, tracker);
+            checkpointService.remove(previous.asKey());
+            stopCatchUp(tracker);
+            tracker.setLastPosition(0);
+            tracker.resetCommits(0);
+            tracker.setTail(0, 0);
+
+            if (current == null) {
+                // Wait for the first line of the new content before tracking it again
+                pathIndex.remove(tracker.getFilePath(), previous);
+                if (!tracker.isOrphaned()) {
+                    pendingFiles.add(tracker.getFilePath());
+                }
+                tracker.close();
+                logger.info("File {} was truncated", tracker.getFilePath());
+                return false;
+            }
+
+            tracker.setIdentity(current);
+            trackedFiles.put(current, tracker);
+            if (!tracker.isOrphaned()) {
+                pathIndex.put(tracker.getFilePath(), current);
+            }
         }
+
+        logger.info("File {} was truncated or rewritten, reading from the beginning", tracker.getFilePath());
+        return true;
+    }
+
+    /**
+     * Leave catch-up mode and release the mapped window
+     */
+    private void stopCatchUp(LogFileTracker tracker) {
+        tracker.setCatchingUp(false);
+        tracker.getReader().releaseWindow();
     }
 
     /**
      * Periodic scan for new files
      */
     private void scanForNewFiles() {
+        long start = System.nanoTime();
         for (String directory : config.getWatchDirectories()) {
             Path dirPath = Paths.get(directory);
             if (Files.exists(dirPath)) {
-                scanDirectory(dirPath, false);
+                scanDirectory(dirPath, false, true);
             }
         }
+
+        // Files waiting for their first line live in directories that may not have changed
+        for (Path pendingFile : new ArrayList<>(pendingFiles)) {
+            trackFile(pendingFile, false);
+        }
+
+        // Safety net for writes whose events were missed
+        for (LogFileTracker tracker : trackedFiles.values()) {
+            if (hasChanged(tracker)) {
+                scheduleDrain(tracker);
+            }
+        }
+
+        releaseOrphans();
+
+        lastScanDurationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        totalScanTimeMs.addAndGet(lastScanDurationMs);
+        scanCount.incrementAndGet();
+        logger.debug("Scan finished in {} ms", lastScanDurationMs);
+    }
+
+    /**
+     * Release rotated-away files that did not reappear under a tracked name,
+     * after a final drain, and forget checkpoints of files no longer tracked
+     */
+    private void releaseOrphans() {
+        List<LogFileTracker> orphans = new ArrayList<>();
+        for (LogFileTracker tracker : trackedFiles.values()) {
+            if (tracker.isOrphaned()) {
+                orphans.add(tracker);
+            }
+        }
+
+        for (LogFileTracker tracker : orphans) {
+            drainFile(tracker);
+            boolean released;
+            synchronized (this) {
+                released = tracker.isOrphaned() && trackedFiles.remove(tracker.getIdentity(), tracker);
+            }
+            if (released) {
+                // Never hold the service lock while waiting for a reader
+                synchronized (tracker) {
+                    tracker.close();
+                }
+                logger.debug("Released rotated file {}", tracker.getFilePath());
+            }
+        }
+
+        // Keep resume points for a full scan interval so a held back copy can still use them
+        long expiry = System.currentTimeMillis() - 2000L * config.getScanIntervalSeconds();
+        truncatedFiles.values().removeIf(candidate -> candidate.recordedAt < expiry);
+
+        Set<String> live = new HashSet<>();
+        for (FileIdentity identity : trackedFiles.keySet()) {
+            live.add(identity.asKey());
+        }
+        long now = System.currentTimeMillis();
+        long handoverExpiry = now - TimeUnit.HOURS.toMillis(config.getArchiveHandoverRetentionHours());
+        Map<String, Long> released = checkpointService.retainOnly(
+            id -> live.contains(id) || ArchiveIngestService.isArchiveKey(id)
+                || (ArchiveIngestService.isHandoverKey(id) && !ArchiveIngestService.isExpiredHandover(id, handoverExpiry))
+                || SystemLogFileFollower.isSystemLogKey(id));
+
+        // A released file may reappear compressed; hand its offset over so only the unsent part is ingested
+        released.forEach((id, offset) -> {
+            if (!ArchiveIngestService.isHandoverKey(id)) {
+                checkpointService.commit(
+                    ArchiveIngestService.handoverKey(FileIdentity.headChecksumOfKey(id), now), offset);
+            }
+        });
     }
 
     /**
@@ -389,8 +1204,60 @@ public class FileMonitorService {
         Map<String, Object> stats = new HashMap<>();
         stats.put("tracked_files_count", trackedFiles.size());
         stats.put("watch_directories", config.getWatchDirectories());
+        stats.put("watched_directories_count", watchedDirectories.size());
+        stats.put("scan", getScanStats());
         stats.put("is_running", isRunning);
-        stats.put("tracked_files", trackedFiles.keySet().stream().map(Path::toString).toArray());
+        stats.put("tracked_files", pathIndex.keySet().stream().map(Path::toString).toArray());
+        stats.put("pending_files_count", pendingFiles.size());
+        stats.put("rotated_files_draining", trackedFiles.values().stream().filter(LogFileTracker::isOrphaned).count());
+        stats.put("catch_up", getCatchUpStats());
+        stats.put("ready_files_count", readyFiles.size());
+        stats.put("tail_parallelism", getTailParallelism());
+        stats.put("active_drains", activeDrains.get());
+
+        Map<String, Long> lagBytes = new HashMap<>();
+        for (LogFileTracker tracker : trackedFiles.values()) {
+            lagBytes.put(tracker.getFilePath().toString(), getLagBytes(tracker));
+        }
+        stats.put("file_lag_bytes", lagBytes);
+        stats.put("total_lag_bytes", lagBytes.values().stream().mapToLong(Long::longValue).sum());
         return stats;
     }
+
+    /**
+     * Cost of the periodic directory scans
+     */
+    private Map<String, Object> getScanStats() {
+        Map<String, Object> scan = new HashMap<>();
+        scan.put("scan_count", scanCount.get());
+        scan.put("last_scan_duration_ms", lastScanDurationMs);
+        scan.put("total_scan_time_ms", totalScanTimeMs.get());
+        scan.put("indexed_directories", scanIndex.getIndexedDirectoryCount());
+        scan.put("directories_listed", scanIndex.getDirectoriesListed());
+        scan.put("directories_skipped", scanIndex.getDirectoriesSkipped());
+        scan.put("files_examined", scanIndex.getFilesExamined());
+        return scan;
+    }
+
+    /**
+     * Progress of files currently being read in catch-up mode
+     */
+    private Map<String, Object> getCatchUpStats() {
+        Map<String, Object> catchUp = new HashMap<>();
+        for (LogFileTracker tracker : trackedFiles.values()) {
+            if (!tracker.isCatchingUp()) {
+                continue;
+            }
+            long total = tracker.getLastKnownSize() - tracker.getCatchUpStartPosition();
+            long done = tracker.getLastPosition() - tracker.getCatchUpStartPosition();
+
+            Map<String, Object> progress = new HashMap<>();
+            progress.put("position", tracker.getLastPosition());
+            progress.put("file_size", tracker.getLastKnownSize());
+            progress.put("bytes_remaining", tracker.getLastKnownSize() - tracker.getLastPosition());
+            progress.put("progress_percent", total > 0 ? (double) done / total * 100 : 100.0);
+            catchUp.put(tracker.getFilePath().toString(), progress);
+        }
+        return catchUp;
+    }
 }
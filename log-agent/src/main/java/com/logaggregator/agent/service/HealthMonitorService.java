@@ -8,8 +8,10 @@
 package com.logaggregator.agent.service;
 
 import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.agent.limit.AdaptiveThrottle;
 import com.logaggregator.common.LogEntry;
 import com.logaggregator.common.LogLevel;
+import com.sun.management.OperatingSystemMXBean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,7 +19,9 @@ import org.springframework.stereotype.Service;
 
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
-import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Executors;
@@ -28,6 +32,9 @@ import java.util.concurrent.atomic.AtomicLong;
 /**
  * Service for monitoring the health and performance of the Log Agent.
  * Tracks system metrics, agent performance, and generates health reports.
+ * Also feeds CPU and heap readings to the ingest queue's
+ * {@link AdaptiveThrottle} at a much shorter interval than the health checks,
+ * so the agent slows down before it runs out of memory.
  */
 @Service
 public class HealthMonitorService {
@@ -36,6 +43,8 @@ public class HealthMonitorService {
 
     private final LogAgentConfig config;
     private final LogProducerService logProducerService;
+    private final IngestQueueService ingestQueue;
+    private final AdaptiveThrottle throttle;
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
     private final AtomicLong healthChecksCount = new AtomicLong(0);
     private boolean isRunning = false;
@@ -47,9 +56,12 @@ public class HealthMonitorService {
     private long startTime = System.currentTimeMillis();
 
     @Autowired
-    public HealthMonitorService(LogAgentConfig config, LogProducerService logProducerService) {
+    public HealthMonitorService(LogAgentConfig config, LogProducerService logProducerService,
+                                IngestQueueService ingestQueue) {
         this.config = config;
         this.logProducerService = logProducerService;
+        this.ingestQueue = ingestQueue;
+        this.throttle = ingestQueue.getThrottle();
     }
 
     /**
@@ -72,6 +84,15 @@ public class HealthMonitorService {
             TimeUnit.SECONDS
         );
 
+        if (config.isEnableAdaptiveThrottle()) {
+            scheduler.scheduleWithFixedDelay(
+                this::adjustThrottle,
+                config.getThrottleIntervalMs(),
+                config.getThrottleIntervalMs(),
+                TimeUnit.MILLISECONDS
+            );
+        }
+
         logger.info("Health monitoring started");
     }
 
@@ -102,7 +123,7 @@ public class HealthMonitorService {
             healthChecksCount.incrementAndGet();
 
             // Collect system metrics
-            OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+            OperatingSystemMXBean osBean = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
             MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
 
             // CPU usage
@@ -127,6 +148,52 @@ public class HealthMonitorService {
         }
     }
 
+    /**
+     * Take fresh CPU and heap readings and let the throttle adjust the pace
+     */
+    private void adjustThrottle() {
+        try {
+            OperatingSystemMXBean osBean = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+            double cpuLoad = osBean.getProcessCpuLoad();
+            double heapPercent = getLiveHeapPercent();
+            boolean wasThrottled = throttle.isThrottled();
+
+            throttle.update(cpuLoad >= 0 ? cpuLoad * 100 : -1, heapPercent);
+
+            if (throttle.isThrottled() != wasThrottled) {
+                logger.info("Ingestion {} - CPU: {}%, heap: {}%, pace: {}",
+                           wasThrottled ? "back to full speed" : "throttled",
+                           String.format("%.1f", cpuLoad * 100), String.format("%.1f", heapPercent),
+                           String.format("%.2f", throttle.getPace()));
+            }
+        } catch (Exception e) {
+            logger.error("Error adjusting ingestion throttle: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Heap occupancy as left by the last collections, which unlike the used
+     * heap does not swing with garbage that is about to be collected. Falls
+     * back to the used heap before the first collection and for collectors
+     * that do not report it.
+     */
+    private double getLiveHeapPercent() {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        long max = heap.getMax() > 0 ? heap.getMax() : heap.getCommitted();
+        if (max <= 0) {
+            return -1;
+        }
+
+        long live = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage afterCollection = pool.getType() == MemoryType.HEAP ? pool.getCollectionUsage() : null;
+            if (afterCollection != null) {
+                live += afterCollection.getUsed();
+            }
+        }
+        return (double) (live > 0 ? live : heap.getUsed()) / max * 100;
+    }
+
     /**
      * Check for alert conditions
      */
@@ -211,6 +278,7 @@ public class HealthMonitorService {
         // Overall health status
         String status = determineOverallHealth();
         health.put("overall_status", status);
+        health.put("throttle", throttle.getStats());
 
         return health;
     }
@@ -237,7 +305,7 @@ public class HealthMonitorService {
      */
     public Map<String, Object> getPerformanceMetrics() {
         Runtime runtime = Runtime.getRuntime();
-        OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+        OperatingSystemMXBean osBean = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
 
         Map<String, Object> metrics = new HashMap<>();
 
@@ -255,6 +323,7 @@ public class HealthMonitorService {
         // Agent metrics
         metrics.put("agent_uptime_ms", System.currentTimeMillis() - startTime);
         metrics.put("health_checks_performed", healthChecksCount.get());
+        metrics.put("ingest_queue", ingestQueue.getQueueStats());
 
         return metrics;
     }
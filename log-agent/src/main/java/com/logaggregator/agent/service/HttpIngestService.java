@@ -0,0 +1,444 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.common.LogEntry;
+import com.logaggregator.common.LogLevel;
+import com.logaggregator.common.LogParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Turns request bodies pushed to the agent's ingest endpoint into entries.
+ *
+ * Bodies are read as a stream, one record at a time: NDJSON through a
+ * Jackson {@link JsonParser} over the root-level values, plain text line
+ * by line through {@link LogParser} like tailed files. Plain text lines
+ * longer than {@code http-ingest-max-line-bytes} are truncated, so a body
+ * without newlines cannot fill the heap. Entries are sent
+ * in batches of {@code batch-size} through the filter rules,
+ * deduplication and rate limits into the {@link IngestQueueService}.
+ *
+ * Reading stops as soon as the ingest queue is full. The records read
+ * up to then are kept and counted as accepted, so a client can resend the
+ * rest of its body after the requested delay.
+ */
+@Service
+public class HttpIngestService {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpIngestService.class);
+
+    /**
+     * What became of one request body
+     */
+    public static class IngestResult {
+        private long accepted;
+        private long rejected;
+        private boolean throttled;
+        private String error;
+
+        /**
+         * Records read from the body, including ones the filter rules dropped
+         */
+        public long getAccepted() { return accepted; }
+
+        /**
+         * Records without a message, or JSON values that are not objects
+         */
+        public long getRejected() { return rejected; }
+
+        /**
+         * Reading stopped early because the ingest queue is full
+         */
+        public boolean isThrottled() { return throttled; }
+
+        /**
+         * Why reading stopped at malformed input, or null
+         */
+        public String getError() { return error; }
+    }
+
+    private final LogAgentConfig config;
+    private final IngestQueueService ingestQueue;
+    private final LogFilterService logFilterService;
+    private final DeduplicationService deduplicationService;
+    private final RateLimitService rateLimitService;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final AtomicLong requests = new AtomicLong(0);
+    private final AtomicLong throttledRequests = new AtomicLong(0);
+    private final AtomicLong acceptedRecords = new AtomicLong(0);
+    private final AtomicLong rejectedRecords = new AtomicLong(0);
+    private final AtomicLong sentEntries = new AtomicLong(0);
+    private final AtomicLong truncatedLines = new AtomicLong(0);
+
+    @Autowired
+    public HttpIngestService(LogAgentConfig config, IngestQueueService ingestQueue,
+                             LogFilterService logFilterService, DeduplicationService deduplicationService,
+                             RateLimitService rateLimitService) {
+        this.config = config;
+        this.ingestQueue = ingestQueue;
+        this.logFilterService = logFilterService;
+        this.deduplicationService = deduplicationService;
+        this.rateLimitService = rateLimitService;
+    }
+
+    /**
+     * Read a body of newline-delimited JSON objects
+     *
+     * @param application application of records that do not name their own, or null
+     * @param peer address of the client
+     */
+    public IngestResult ingestJson(InputStream body, String application, String peer) throws IOException {
+        IngestResult result = begin();
+        if (result.throttled) {
+            return result;
+        }
+        List<LogEntry> batch = new ArrayList<>(config.getBatchSize());
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    result.rejected++;
+                    continue;
+                }
+                LogEntry entry = readEntry(parser, application, peer);
+                if (entry == null) {
+                    result.rejected++;
+                    continue;
+                }
+                batch.add(entry);
+                result.accepted++;
+                if (batch.size() >= config.getBatchSize() && !send(batch, result)) {
+                    break;
+                }
+            }
+        } catch (JsonProcessingException e) {
+            result.error = "Malformed JSON after " + result.accepted + " records: " + e.getOriginalMessage();
+            logger.debug("Stopped reading ingest request from {}: {}", peer, result.error);
+        }
+        send(batch, result);
+        return finish(result);
+    }
+
+    /**
+     * Read a body of plain log lines, parsed like lines of tailed files
+     */
+    public IngestResult ingestLines(InputStream body, String application, String peer) throws IOException {
+        IngestResult result = begin();
+        if (result.throttled) {
+            return result;
+        }
+        List<LogEntry> batch = new ArrayList<>(config.getBatchSize());
+        String sourceId = sourceId(application);
+        LineReader reader = new LineReader(body, config.getHttpIngestMaxLineBytes());
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (reader.isTruncated()) {
+                truncatedLines.incrementAndGet();
+            }
+            if (line.isBlank()) {
+                continue;
+            }
+            LogEntry entry = LogParser.parseLine(line, sourceId);
+            if (entry == null) {
+                result.rejected++;
+                continue;
+            }
+            if (application != null) {
+                entry.setApplication(application);
+            }
+            decorate(entry, peer);
+            batch.add(entry);
+            result.accepted++;
+            if (batch.size() >= config.getBatchSize() && !send(batch, result)) {
+                break;
+            }
+        }
+        send(batch, result);
+        return finish(result);
+    }
+
+    private IngestResult begin() {
+        requests.incrementAndGet();
+        IngestResult result = new IngestResult();
+        // Refuse the whole body rather than read part of it into a full queue
+        result.throttled = !ingestQueue.hasCapacity();
+        if (result.throttled) {
+            throttledRequests.incrementAndGet();
+        }
+        return result;
+    }
+
+    private IngestResult finish(IngestResult result) {
+        acceptedRecords.addAndGet(result.accepted);
+        rejectedRecords.addAndGet(result.rejected);
+        if (result.throttled) {
+            throttledRequests.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Send a batch and empty it
+     *
+     * @return false if the ingest queue is full and reading should stop
+     */
+    private boolean send(List<LogEntry> batch, IngestResult result) {
+        if (!batch.isEmpty()) {
+            List<LogEntry> admitted = rateLimitService.admit(deduplicationService.admit(
+                batch.stream().filter(logFilterService::accept).toList()));
+            if (!admitted.isEmpty()) {
+                sentEntries.addAndGet(admitted.size());
+                ingestQueue.submit(admitted);
+            }
+            batch.clear();
+        }
+        if (!ingestQueue.hasCapacity()) {
+            result.throttled = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Read the fields of one JSON object, the parser being at its start
+     *
+     * @return the entry, or null if the object has no message
+     */
+    private LogEntry readEntry(JsonParser parser, String application, String peer) throws IOException {
+        String message = null;
+        String level = null;
+        String source = null;
+        String recordApplication = null;
+        String hostname = null;
+        String thread = null;
+        String loggerName = null;
+        LocalDateTime timestamp = null;
+        Map<String, Object> fields = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (name) {
+                case "message", "msg" -> message = text(parser, value);
+                case "level", "severity" -> level = text(parser, value);
+                case "source" -> source = text(parser, value);
+                case "application", "app", "service" -> recordApplication = text(parser, value);
+                case "hostname", "host" -> hostname = text(parser, value);
+                case "thread" -> thread = text(parser, value);
+                case "logger", "logger_name" -> loggerName = text(parser, value);
+                case "timestamp", "@timestamp", "time" -> timestamp = timestamp(parser, value);
+                default -> {
+                    if (fields == null) {
+                        fields = new HashMap<>();
+                    }
+                    fields.put(name, value.isScalarValue() ? scalar(parser, value)
+                        : parser.readValueAsTree().toString());
+                }
+            }
+        }
+
+        if (message == null || message.isBlank()) {
+            return null;
+        }
+        String app = recordApplication != null ? recordApplication : application;
+        LogEntry entry = new LogEntry(source != null ? source : sourceId(app), LogLevel.fromString(level), message);
+        entry.setApplication(app);
+        entry.setThread(thread);
+        entry.setLoggerName(loggerName);
+        if (timestamp != null) {
+            entry.setTimestamp(timestamp);
+        }
+        decorate(entry, peer);
+        if (hostname != null) {
+            entry.setHostname(hostname);
+        }
+        if (fields != null) {
+            fields.forEach(entry::addMetadata);
+        }
+        return entry;
+    }
+
+    private static String text(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (!value.isScalarValue()) {
+            return parser.readValueAsTree().toString();
+        }
+        return parser.getText();
+    }
+
+    private static Object scalar(JsonParser parser, JsonToken value) throws IOException {
+        return switch (value) {
+            case VALUE_NUMBER_INT -> parser.getLongValue();
+            case VALUE_NUMBER_FLOAT -> parser.getDoubleValue();
+            case VALUE_TRUE -> true;
+            case VALUE_FALSE -> false;
+            case VALUE_NULL -> null;
+            default -> parser.getText();
+        };
+    }
+
+    /**
+     * Epoch milliseconds, or an ISO-8601 date-time with or without offset
+     */
+    private LocalDateTime timestamp(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NUMBER_INT) {
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(parser.getLongValue()), zone);
+        }
+        if (value != JsonToken.VALUE_STRING) {
+            parser.skipChildren();
+            return null;
+        }
+        String text = parser.getText();
+        try {
+            return LocalDateTime.ofInstant(OffsetDateTime.parse(text).toInstant(), zone);
+        } catch (DateTimeParseException e) {
+            try {
+                return LocalDateTime.parse(text);
+            } catch (DateTimeParseException notLocal) {
+                return null;
+            }
+        }
+    }
+
+    private String sourceId(String application) {
+        return config.getAgentId() + ":http:" + (application != null ? application : "ingest");
+    }
+
+    private void decorate(LogEntry entry, String peer) {
+        entry.setHostname(config.getHostname());
+        entry.addMetadata("agent_id", config.getAgentId());
+        if (peer != null) {
+            entry.addMetadata("peer", peer);
+        }
+        entry.addTag("log_type", "http");
+    }
+
+    /**
+     * Get HTTP ingest statistics
+     */
+    public Map<String, Object> getIngestStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", config.isEnableHttpIngest());
+        stats.put("requests", requests.get());
+        stats.put("throttled_requests", throttledRequests.get());
+        stats.put("accepted_records", acceptedRecords.get());
+        stats.put("rejected_records", rejectedRecords.get());
+        stats.put("sent_entries", sentEntries.get());
+        stats.put("truncated_lines", truncatedLines.get());
+        return stats;
+    }
+
+    /**
+     * UTF-8 line reader that keeps at most maxLineBytes of each line and
+     * skips the rest up to the newline, unlike BufferedReader which grows
+     * its line buffer without limit
+     */
+    private static final class LineReader {
+
+        private final InputStream input;
+        private final byte[] buffer = new byte[8192];
+        private final byte[] line;
+        private int bufferPos;
+        private int bufferLimit;
+        private boolean truncated;
+
+        LineReader(InputStream input, int maxLineBytes) {
+            this.input = input;
+            this.line = new byte[Math.max(1, maxLineBytes)];
+        }
+
+        /**
+         * Whether the line last returned was cut at the limit
+         */
+        boolean isTruncated() {
+            return truncated;
+        }
+
+        /**
+         * @return the next line without its line terminator, or null at the end of the body
+         */
+        String readLine() throws IOException {
+            int length = 0;
+            boolean read = false;
+            truncated = false;
+            while (true) {
+                if (bufferPos == bufferLimit) {
+                    bufferLimit = input.read(buffer);
+                    bufferPos = 0;
+                    if (bufferLimit <= 0) {
+                        bufferLimit = 0;
+                        return read ? decode(length) : null;
+                    }
+                }
+                read = true;
+                byte b = buffer[bufferPos++];
+                if (b == '\n') {
+                    return decode(length);
+                }
+                if (length < line.length) {
+                    line[length++] = b;
+                } else {
+                    truncated = true;
+                }
+            }
+        }
+
+        private String decode(int length) {
+            if (truncated) {
+                // Drop a character cut in half by the limit
+                int end = length;
+                while (end > 0 && (line[end - 1] & 0xC0) == 0x80) {
+                    end--;
+                }
+                if (end > 0 && (line[end - 1] & 0x80) != 0
+                        && end - 1 + sequenceLength(line[end - 1]) > length) {
+                    length = end - 1;
+                }
+            } else if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            return new String(line, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private static int sequenceLength(byte lead) {
+            if ((lead & 0xE0) == 0xC0) {
+                return 2;
+            }
+            if ((lead & 0xF0) == 0xE0) {
+                return 3;
+            }
+            return 4;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.service;
+
+import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.agent.limit.AdaptiveThrottle;
+import com.logaggregator.common.LogEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded stage between the readers of log files and the Kafka producer.
+ *
+ * Readers submit batches to a lock-free queue that a single sender thread
+ * hands to {@link LogProducerService} in submission order. Every batch is
+ * charged against a memory budget from the moment it is queued until its
+ * send completes. Once the budget is used up readers pause in
+ * {@link #awaitCapacity(long)} instead of reading further, so file offsets
+ * stop advancing and the heap stays bounded while Kafka is slow.
+ *
+ * The queue also owns the agent's {@link AdaptiveThrottle}. While it is
+ * throttled the budget shrinks with the pace, and once the queue is empty
+ * the sender lingers before taking the next batches, so they reach the
+ * producer in bursts it can pack into fewer, larger requests.
+ */
+@Service
+public class IngestQueueService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestQueueService.class);
+
+    // Rough per-entry cost of the object graph beyond the message characters
+    private static final int ENTRY_OVERHEAD_BYTES = 512;
+
+    private final LogAgentConfig config;
+    private final LogProducerService logProducerService;
+    private final AdaptiveThrottle throttle;
+    private final ConcurrentLinkedQueue<QueuedBatch> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedBatches = new AtomicInteger(0);
+    private final AtomicLong queuedEntries = new AtomicLong(0);
+    private final AtomicLong usedBytes = new AtomicLong(0);
+    private final AtomicLong submittedBatches = new AtomicLong(0);
+    private final AtomicLong pauseCount = new AtomicLong(0);
+    private final AtomicLong totalPauseNanos = new AtomicLong(0);
+    private final AtomicInteger pausedReaders = new AtomicInteger(0);
+    private final AtomicLong lingerCount = new AtomicLong(0);
+    private final ReentrantLock capacityLock = new ReentrantLock();
+    private final Condition capacityAvailable = capacityLock.newCondition();
+    private volatile Thread sender;
+    private volatile boolean isRunning = false;
+
+    @Autowired
+    public IngestQueueService(LogAgentConfig config, LogProducerService logProducerService) {
+        this.config = config;
+        this.logProducerService = logProducerService;
+        this.throttle = new AdaptiveThrottle(config.getThrottleCpuTargetPercent(),
+            config.getThrottleHeapTargetPercent(), config.getThrottleMinPace(), config.getThrottleMaxLingerMs());
+    }
+
+    /**
+     * A batch waiting to be sent, with the future its reader waits on
+     */
+    private static class QueuedBatch {
+        private final List<LogEntry> entries;
+        private final long sizeBytes;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        QueuedBatch(List<LogEntry> entries, long sizeBytes) {
+            this.entries = entries;
+            this.sizeBytes = sizeBytes;
+        }
+    }
+
+    /**
+     * Start the sender thread
+     */
+    public synchronized void start() {
+        if (isRunning) {
+            return;
+        }
+        isRunning = true;
+        sender = new Thread(this::sendQueuedBatches, "ingest-queue-sender");
+        sender.setDaemon(true);
+        sender.start();
+        logger.info("Ingest queue started with a budget of {} bytes", config.getIngestQueueBudgetBytes());
+    }
+
+    /**
+     * Stop the sender thread after handing every queued batch to the producer
+     */
+    public synchronized void stop() {
+        if (!isRunning) {
+            return;
+        }
+        isRunning = false;
+        Thread thread = sender;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Ingest queue stopped");
+    }
+
+    /**
+     * Queue a batch for sending. Never blocks; the budget is enforced by
+     * readers calling {@link #awaitCapacity(long)} before they read.
+     *
+     * @return a future completed once the producer has finished the batch
+     */
+    public CompletableFuture<Void> submit(List<LogEntry> logEntries) {
+        QueuedBatch batch = new QueuedBatch(logEntries, estimateSize(logEntries));
+        usedBytes.addAndGet(batch.sizeBytes);
+        queuedEntries.addAndGet(logEntries.size());
+        queuedBatches.incrementAndGet();
+        submittedBatches.incrementAndGet();
+        queue.offer(batch);
+        LockSupport.unpark(sender);
+        return batch.result;
+    }
+
+    /**
+     * Check whether the memory budget has room for another batch
+     */
+    public boolean hasCapacity() {
+        return usedBytes.get() < throttle.budgetBytes(config.getIngestQueueBudgetBytes());
+    }
+
+    /**
+     * The throttle readers consult for their batch sizes and concurrency
+     */
+    public AdaptiveThrottle getThrottle() {
+        return throttle;
+    }
+
+    /**
+     * Pause the calling reader until the budget has room again
+     *
+     * @return false if the budget is still used up after the timeout
+     */
+    public boolean awaitCapacity(long timeoutMs) throws InterruptedException {
+        if (hasCapacity()) {
+            return true;
+        }
+
+        long start = System.nanoTime();
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        pauseCount.incrementAndGet();
+        pausedReaders.incrementAndGet();
+        capacityLock.lock();
+        try {
+            while (!hasCapacity() && remaining > 0) {
+                remaining = capacityAvailable.awaitNanos(remaining);
+            }
+            return hasCapacity();
+        } finally {
+            capacityLock.unlock();
+            pausedReaders.decrementAndGet();
+            totalPauseNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Hand queued batches to the producer in order, parking while the queue is empty
+     */
+    private void sendQueuedBatches() {
+        while (isRunning || !queue.isEmpty()) {
+            QueuedBatch batch = queue.poll();
+            if (batch == null) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+                continue;
+            }
+            queuedBatches.decrementAndGet();
+            queuedEntries.addAndGet(-batch.entries.size());
+
+            try {
+                logProducerService.sendLogEntries(batch.entries)
+                    .whenComplete((result, throwable) -> complete(batch, throwable));
+            } catch (RuntimeException e) {
+                logger.error("Failed to hand batch to the producer: {}", e.getMessage());
+                complete(batch, e);
+            }
+
+            if (queue.isEmpty()) {
+                linger();
+            }
+        }
+    }
+
+    /**
+     * Let batches accumulate for the throttle's linger time. Submissions do
+     * not cut it short, only stopping does.
+     */
+    private void linger() {
+        long lingerMs = throttle.lingerMs();
+        if (lingerMs <= 0) {
+            return;
+        }
+        lingerCount.incrementAndGet();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        long remaining;
+        while (isRunning && (remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    /**
+     * Release the budget held by a finished batch and wake paused readers
+     */
+    private void complete(QueuedBatch batch, Throwable throwable) {
+        usedBytes.addAndGet(-batch.sizeBytes);
+        if (pausedReaders.get() > 0) {
+            capacityLock.lock();
+            try {
+                capacityAvailable.signalAll();
+            } finally {
+                capacityLock.unlock();
+            }
+        }
+
+        if (throwable != null) {
+            batch.result.completeExceptionally(throwable);
+        } else {
+            batch.result.complete(null);
+        }
+    }
+
+    /**
+     * Approximate heap held by a batch: two bytes per character plus a fixed
+     * cost per entry for its fields, metadata and the serialized copy
+     */
+    static long estimateSize(List<LogEntry> logEntries) {
+        long size = 0;
+        for (LogEntry entry : logEntries) {
+            size += ENTRY_OVERHEAD_BYTES;
+            if (entry.getMessage() != null) {
+                size += 2L * entry.getMessage().length();
+            }
+            if (entry.getRawMessage() != null) {
+                size += 2L * entry.getRawMessage().length();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Get queue depth and backpressure statistics
+     */
+    public Map<String, Object> getQueueStats() {
+        long budget = throttle.budgetBytes(config.getIngestQueueBudgetBytes());
+        long used = usedBytes.get();
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("is_running", isRunning);
+        stats.put("queued_batches", queuedBatches.get());
+        stats.put("queued_entries", queuedEntries.get());
+        stats.put("used_bytes", used);
+        stats.put("budget_bytes", budget);
+        stats.put("budget_used_percent", budget > 0 ? (double) used / budget * 100 : 0);
+        stats.put("submitted_batches", submittedBatches.get());
+        stats.put("paused_readers", pausedReaders.get());
+        stats.put("pause_count", pauseCount.get());
+        stats.put("total_pause_ms", TimeUnit.NANOSECONDS.toMillis(totalPauseNanos.get()));
+        stats.put("linger_count", lingerCount.get());
+        return stats;
+    }
+}
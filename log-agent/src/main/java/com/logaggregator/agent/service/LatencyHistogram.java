@@ -0,0 +1,112 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with fixed, roughly logarithmic buckets.
+ * Percentiles are reported as the upper bound of the bucket they fall in,
+ * which is precise enough to tell a healthy broker from a struggling one.
+ */
+public class LatencyHistogram {
+
+    private static final long[] BUCKET_BOUNDS_MS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000};
+
+    // One more bucket for everything above the last bound
+    private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_MS.length + 1];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong(0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record one latency
+     */
+    public void record(long nanos) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_MS.length && millis >= BUCKET_BOUNDS_MS[bucket]) {
+            bucket++;
+        }
+        buckets[bucket].increment();
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Upper bound in milliseconds of the bucket holding the given percentile,
+     * or -1 for latencies beyond the last bucket
+     */
+    public long getPercentileMs(double percentile) {
+        long[] counts = snapshotCounts();
+        long total = 0;
+        for (long bucketCount : counts) {
+            total += bucketCount;
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_BOUNDS_MS.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return BUCKET_BOUNDS_MS[i];
+            }
+        }
+        return -1;
+    }
+
+    private long[] snapshotCounts() {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+
+    /**
+     * Get count, mean, max, percentiles and per-bucket counts
+     */
+    public Map<String, Object> getSnapshot() {
+        long total = count.sum();
+        long[] counts = snapshotCounts();
+        Map<String, Long> bucketCounts = new LinkedHashMap<>();
+        for (int i = 0; i < BUCKET_BOUNDS_MS.length; i++) {
+            bucketCounts.put("lt_" + BUCKET_BOUNDS_MS[i] + "ms", counts[i]);
+        }
+        bucketCounts.put("ge_" + BUCKET_BOUNDS_MS[BUCKET_BOUNDS_MS.length - 1] + "ms", counts[BUCKET_BOUNDS_MS.length]);
+
+        Map<String, Object> snapshot = new HashMap<>();
+        snapshot.put("count", total);
+        snapshot.put("mean_ms", total > 0 ? totalNanos.sum() / (double) total / 1_000_000 : 0);
+        snapshot.put("max_ms", TimeUnit.NANOSECONDS.toMillis(maxNanos.get()));
+        snapshot.put("p50_ms", getPercentileMs(50));
+        snapshot.put("p90_ms", getPercentileMs(90));
+        snapshot.put("p99_ms", getPercentileMs(99));
+        snapshot.put("buckets", bucketCounts);
+        return snapshot;
+    }
+}
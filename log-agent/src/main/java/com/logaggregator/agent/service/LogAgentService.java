@@ -20,7 +20,8 @@ import java.util.Map;
 
 /**
  * Main orchestration service for the Log Agent.
- * Coordinates file monitoring, system log collection, and health monitoring.
+ * Coordinates file monitoring, system log collection, the syslog listener
+ * and health monitoring.
  */
 @Service
 public class LogAgentService implements CommandLineRunner {
@@ -32,18 +33,42 @@ public class LogAgentService implements CommandLineRunner {
     private final SystemLogService systemLogService;
     private final HealthMonitorService healthMonitorService;
     private final LogProducerService logProducerService;
+    private final CheckpointService checkpointService;
+    private final ArchiveIngestService archiveIngestService;
+    private final IngestQueueService ingestQueue;
+    private final LogFilterService logFilterService;
+    private final DeduplicationService deduplicationService;
+    private final RateLimitService rateLimitService;
+    private final SyslogListenerService syslogListenerService;
+    private final HttpIngestService httpIngestService;
 
     @Autowired
     public LogAgentService(LogAgentConfig config,
                           FileMonitorService fileMonitorService,
                           SystemLogService systemLogService,
                           HealthMonitorService healthMonitorService,
-                          LogProducerService logProducerService) {
+                          LogProducerService logProducerService,
+                          CheckpointService checkpointService,
+                          ArchiveIngestService archiveIngestService,
+                          IngestQueueService ingestQueue,
+                          LogFilterService logFilterService,
+                          DeduplicationService deduplicationService,
+                          RateLimitService rateLimitService,
+                          SyslogListenerService syslogListenerService,
+                          HttpIngestService httpIngestService) {
         this.config = config;
         this.fileMonitorService = fileMonitorService;
         this.systemLogService = systemLogService;
         this.healthMonitorService = healthMonitorService;
         this.logProducerService = logProducerService;
+        this.checkpointService = checkpointService;
+        this.archiveIngestService = archiveIngestService;
+        this.ingestQueue = ingestQueue;
+        this.logFilterService = logFilterService;
+        this.deduplicationService = deduplicationService;
+        this.rateLimitService = rateLimitService;
+        this.syslogListenerService = syslogListenerService;
+        this.httpIngestService = httpIngestService;
     }
 
     @Override
@@ -74,6 +99,21 @@ public class LogAgentService implements CommandLineRunner {
         // Start health monitoring
         healthMonitorService.startMonitoring();
 
+        // Recover committed offsets before any file is tracked
+        checkpointService.start();
+
+        // Replay entries spooled during an earlier Kafka outage
+        logProducerService.start();
+
+        // Start sending what the readers queue up
+        ingestQueue.start();
+
+        // Send collapsed repeats as their windows close
+        deduplicationService.start();
+
+        // Report lines dropped by the rate limits
+        rateLimitService.start();
+
         // Start file monitoring if enabled
         if (config.isEnableFileWatcher() && !config.getWatchDirectories().isEmpty()) {
             fileMonitorService.startMonitoring();
@@ -81,6 +121,11 @@ public class LogAgentService implements CommandLineRunner {
             logger.info("File monitoring disabled or no directories configured");
         }
 
+        // Backfill rotated files that were compressed while the agent was down
+        if (config.isEnableArchiveIngest()) {
+            archiveIngestService.startIngestion();
+        }
+
         // Start system log collection if enabled
         if (config.isEnableSystemLogs()) {
             systemLogService.startCollection();
@@ -88,6 +133,11 @@ public class LogAgentService implements CommandLineRunner {
             logger.info("System log collection disabled");
         }
 
+        // Receive syslog sent over the network
+        if (config.isEnableSyslogListener()) {
+            syslogListenerService.start();
+        }
+
         // Log producer stats
         logProducerService.logProducerStats();
     }
@@ -112,7 +162,15 @@ public class LogAgentService implements CommandLineRunner {
 
         try {
             fileMonitorService.stopMonitoring();
+            archiveIngestService.stopIngestion();
             systemLogService.stopCollection();
+            syslogListenerService.stop();
+            // Repeats still held back go through the ingest queue, so flush them before it stops
+            deduplicationService.stop();
+            ingestQueue.stop();
+            rateLimitService.stop();
+            logProducerService.stop();
+            checkpointService.stop();
             healthMonitorService.stopMonitoring();
 
             logger.info("Log Agent shutdown completed");
@@ -125,12 +183,22 @@ public class LogAgentService implements CommandLineRunner {
      * Get comprehensive agent status
      */
     public Map<String, Object> getAgentStatus() {
-        return Map.of(
-            "agent_id", config.getAgentId(),
-            "hostname", config.getHostname(),
-            "file_monitoring", fileMonitorService.getMonitoringStats(),
-            "system_logs", systemLogService.getCollectionStats(),
-            "health", healthMonitorService.getHealthStatus()
+        return Map.ofEntries(
+            Map.entry("agent_id", config.getAgentId()),
+            Map.entry("hostname", config.getHostname()),
+            Map.entry("file_monitoring", fileMonitorService.getMonitoringStats()),
+            Map.entry("system_logs", systemLogService.getCollectionStats()),
+            Map.entry("syslog_listener", syslogListenerService.getListenerStats()),
+            Map.entry("http_ingest", httpIngestService.getIngestStats()),
+            Map.entry("health", healthMonitorService.getHealthStatus()),
+            Map.entry("checkpoints", checkpointService.getCheckpointStats()),
+            Map.entry("archive_ingest", archiveIngestService.getIngestStats()),
+            Map.entry("spool", logProducerService.getSpoolStats()),
+            Map.entry("compression", logProducerService.getCompressionStats()),
+            Map.entry("delivery", logProducerService.getDeliveryStats()),
+            Map.entry("filters", logFilterService.getFilterStats()),
+            Map.entry("deduplication", deduplicationService.getDeduplicationStats()),
+            Map.entry("rate_limits", rateLimitService.getRateLimitStats())
         );
     }
 }
@@ -0,0 +1,58 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.service;
+
+import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.agent.filter.EntryFilter;
+import com.logaggregator.common.LogEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+
+/**
+ * Holds the configured drop and keep rules, shared by every reader so
+ * their hit counters cover all the entries the agent parses.
+ */
+@Service
+public class LogFilterService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LogFilterService.class);
+
+    private final EntryFilter entryFilter;
+
+    @Autowired
+    public LogFilterService(LogAgentConfig config) {
+        this.entryFilter = new EntryFilter(config.getFilterRules(), config.getFilterDefaultAction());
+        if (!entryFilter.isPassThrough()) {
+            logger.info("Filtering entries with {} rules, default action {}",
+                       config.getFilterRules() != null ? config.getFilterRules().size() : 0,
+                       config.getFilterDefaultAction());
+        }
+    }
+
+    public EntryFilter getEntryFilter() {
+        return entryFilter;
+    }
+
+    /**
+     * Whether a parsed entry should be kept
+     */
+    public boolean accept(LogEntry logEntry) {
+        return entryFilter.accept(logEntry);
+    }
+
+    /**
+     * Get filter statistics
+     */
+    public Map<String, Object> getFilterStats() {
+        return entryFilter.getStats();
+    }
+}
@@ -7,10 +7,24 @@
 
 package com.logaggregator.agent.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.logaggregator.agent.compress.DictionaryCompressor;
 import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.agent.partition.PartitionStrategy;
+import com.logaggregator.agent.partition.RateMeter;
+import com.logaggregator.agent.partition.SourcePartitionStrategy;
+import com.logaggregator.agent.spool.SegmentSpool;
+import com.logaggregator.common.CompressedBatch;
+import com.logaggregator.common.LogBatch;
+import com.logaggregator.common.LogDictionary;
 import com.logaggregator.common.LogEntry;
+import com.logaggregator.common.LogEntryCodec;
+import com.logaggregator.common.WireFormat;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,67 +32,269 @@ import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 /**
  * Service responsible for sending log entries to Kafka.
  * Handles batching, serialization, and error handling.
+ *
+ * The futures returned by the send methods complete when the broker has
+ * acknowledged the records, so callers can commit file offsets on them.
+ * A failed send is retried up to maxRetries times with jittered exponential
+ * backoff before it fails, and the records of one batch are sent through
+ * a window that bounds how many of them await their ack at once.
+ *
+ * When the spool is enabled, entries that cannot be sent are not lost: a
+ * send that failed every retry, or a send while the broker is down or too
+ * many records are in flight, appends the serialized record to a
+ * {@link SegmentSpool} and counts as delivered. Once anything is spooled,
+ * new entries are spooled behind it so the order is kept, and a replay task
+ * sends the spool back to Kafka in large batches of already serialized
+ * records, waiting for every batch to be acknowledged before it is removed.
+ *
+ * With batch records enabled, the entries of a batch are packed into
+ * {@link LogBatch} envelopes, so one Kafka record carries many entries.
+ * With the compression dictionary enabled as well, each source gets a zstd
+ * dictionary trained on its first lines and published to the dictionary
+ * topic, and its envelopes are compressed with it from then on.
+ *
+ * Records are JSON or, with the binary wire format, {@link LogEntryCodec}
+ * batches; the {@link WireFormat#HEADER} header of every record names its
+ * format for consumers. JSON is streamed by cached writers into a
+ * {@link RecordBuffer} reused per thread, and only the finished record
+ * value is copied out of it.
+ *
+ * The {@link PartitionStrategy} picks the key of every record. Strategies
+ * that spread a source over several partitions number its entries with
+ * {@link PartitionStrategy#SEQUENCE_METADATA}, and the delivery stats show
+ * the send rate of every partition so the balance can be checked.
  */
 @Service
 public class LogProducerService {
 
     private static final Logger logger = LoggerFactory.getLogger(LogProducerService.class);
 
-    private final KafkaTemplate<String, String> kafkaTemplate;
+    // Per-partition send rates average the last minute
+    private static final int PARTITION_RATE_WINDOW_SECONDS = 60;
+
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
     private final LogAgentConfig config;
     private final ObjectMapper objectMapper;
+    private final ObjectWriter entryWriter;
+    // Writes the entries of a batch back to back, separated by commas
+    private final ObjectWriter batchEntryWriter;
+    private final WireFormat wireFormat;
+    private final PartitionStrategy partitionStrategy;
+    private final Map<String, AtomicLong> sourceSequences = new ConcurrentHashMap<>();
+    private final Map<Integer, RateMeter> partitionRecords = new ConcurrentHashMap<>();
+    private final Map<Integer, RateMeter> partitionBytes = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlightRecords = new AtomicInteger(0);
+    private final AtomicLong spooledRecords = new AtomicLong(0);
+    private final AtomicLong droppedRecords = new AtomicLong(0);
+    private final AtomicLong replayedRecords = new AtomicLong(0);
+    private final AtomicLong ackedRecords = new AtomicLong(0);
+    private final AtomicLong retriedSends = new AtomicLong(0);
+    private final AtomicLong failedRecords = new AtomicLong(0);
+    private final LatencyHistogram ackLatency = new LatencyHistogram();
+    // Futures of spooled records waiting for the next forced write
+    private final Queue<CompletableFuture<Void>> pendingSyncs = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean syncScheduled = new AtomicBoolean(false);
+    // Futures of sends waiting for a retry, failed by stop() if the retry never runs
+    private final Set<CompletableFuture<Void>> pendingRetries = ConcurrentHashMap.newKeySet();
+    private volatile ScheduledExecutorService retryScheduler;
+    private volatile boolean brokerAvailable = true;
+    private volatile SegmentSpool spool;
+    private ScheduledExecutorService replayScheduler;
+    private final DictionaryCompressor dictionaryCompressor;
+    private final ExecutorService dictionaryTrainer;
 
     @Autowired
-    public LogProducerService(KafkaTemplate<String, String> kafkaTemplate,
+    public LogProducerService(KafkaTemplate<String, byte[]> kafkaTemplate,
                              LogAgentConfig config) {
         this.kafkaTemplate = kafkaTemplate;
         this.config = config;
-        this.objectMapper = new ObjectMapper();
+        this.objectMapper = new ObjectMapper().findAndRegisterModules();
+        this.entryWriter = objectMapper.writerFor(LogEntry.class);
+        this.batchEntryWriter = entryWriter.withRootValueSeparator(",");
+        this.wireFormat = config.getWireFormat() != null
+            ? WireFormat.fromConfig(config.getWireFormat()) : WireFormat.JSON;
+        this.partitionStrategy = config.getPartitionStrategy() != null
+            ? PartitionStrategy.fromConfig(config.getPartitionStrategy(), config.getPartitionSubKeys(),
+                config.getHotSourceRecordsPerSecond())
+            : new SourcePartitionStrategy();
+        if (config.isEnableBatchRecords() && config.isEnableCompressionDictionary()
+                && wireFormat == WireFormat.JSON) {
+            this.dictionaryTrainer = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "dictionary-trainer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.dictionaryCompressor = new DictionaryCompressor(config.getDictionarySampleBytes(),
+                config.getDictionarySizeBytes(), config.getCompressionLevel(),
+                dictionaryTrainer, this::publishDictionary);
+        } else {
+            this.dictionaryTrainer = null;
+            this.dictionaryCompressor = null;
+        }
+    }
+
+    /**
+     * Start retrying failed sends, open the spool and start replaying what it holds
+     */
+    public synchronized void start() {
+        if (retryScheduler == null) {
+            retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "producer-retry");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        if (!config.isEnableSpool() || spool != null) {
+            return;
+        }
+
+        SegmentSpool opened = new SegmentSpool(Paths.get(config.getSpoolDirectory()),
+            config.getSpoolSegmentBytes(), config.getSpoolMaxBytes(),
+            SegmentSpool.EvictionPolicy.fromConfig(config.getSpoolEvictionPolicy()));
+        try {
+            opened.open();
+        } catch (IOException e) {
+            logger.error("Failed to open spool, entries will be lost while Kafka is unavailable: {}", e.getMessage());
+            return;
+        }
+        spool = opened;
+
+        replayScheduler = Executors.newSingleThreadScheduledExecutor();
+        replayScheduler.scheduleWithFixedDelay(
+            this::replaySpool,
+            0,
+            config.getSpoolReplayIntervalMs(),
+            TimeUnit.MILLISECONDS
+        );
+        logger.info("Spool opened at {}", config.getSpoolDirectory());
+    }
+
+    /**
+     * Stop retrying and replaying and close the spool; what is left is replayed after the next start
+     */
+    public synchronized void stop() {
+        if (replayScheduler != null) {
+            replayScheduler.shutdown();
+            try {
+                if (!replayScheduler.awaitTermination(5, TimeUnit.SECONDS)) {
+                    replayScheduler.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                replayScheduler.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            replayScheduler = null;
+        }
+
+        ScheduledExecutorService retries = retryScheduler;
+        retryScheduler = null;
+        if (retries != null) {
+            retries.shutdownNow();
+        }
+        // Sends still waiting for a retry fail, their offsets are read again after the next start
+        for (CompletableFuture<Void> pending : pendingRetries) {
+            if (pendingRetries.remove(pending)) {
+                inFlightRecords.decrementAndGet();
+                failedRecords.incrementAndGet();
+                pending.completeExceptionally(new IllegalStateException("Producer stopped before the send was retried"));
+            }
+        }
+        // Records spooled since the last forced write are acknowledged once they are on disk
+        syncSpool();
+
+        if (dictionaryCompressor != null) {
+            dictionaryTrainer.shutdownNow();
+            dictionaryCompressor.close();
+        }
+
+        if (spool != null) {
+            try {
+                spool.close();
+            } catch (IOException e) {
+                logger.warn("Error closing spool: {}", e.getMessage());
+            }
+            spool = null;
+        }
     }
 
     /**
      * Send a single log entry to Kafka
      */
     public CompletableFuture<Void> sendLogEntry(LogEntry logEntry) {
+        String source = generateKey(logEntry);
+        numberEntry(source, logEntry);
+        String key = partitionStrategy.keyFor(source, 1);
+        if (wireFormat == WireFormat.BINARY) {
+            return sendRecord(key, LogEntryCodec.encode(List.of(logEntry)));
+        }
         try {
-            String jsonLog = objectMapper.writeValueAsString(logEntry);
-            String key = generateKey(logEntry);
-
-            // Send to Kafka and handle the result
-            kafkaTemplate.send(config.getKafkaTopicName(), key, jsonLog)
-                .whenComplete((result, throwable) -> {
-                    if (throwable != null) {
-                        logger.error("Failed to send log entry: {}", throwable.getMessage());
-                    } else {
-                        logger.debug("Log entry sent successfully: partition={}, offset={}",
-                                   result.getRecordMetadata().partition(),
-                                   result.getRecordMetadata().offset());
-                    }
-                });
-
-            return CompletableFuture.completedFuture(null);
+            return sendRecord(key, writeJson(logEntry));
 
-        } catch (JsonProcessingException e) {
+        } catch (IOException e) {
             logger.error("Failed to serialize log entry to JSON: {}", e.getMessage());
             return CompletableFuture.failedFuture(e);
         }
     }
 
+    /**
+     * Serialize an entry through the pooled buffer, copying out only the value
+     */
+    private byte[] writeJson(LogEntry logEntry) throws IOException {
+        RecordBuffer buffer = RecordBuffer.acquire();
+        try {
+            entryWriter.writeValue(buffer, logEntry);
+            return buffer.toByteArray();
+        } finally {
+            buffer.release();
+        }
+    }
+
     /**
      * Send multiple log entries as a batch
+     *
+     * @return a future completed once every entry is acknowledged
      */
     public CompletableFuture<Void> sendLogEntries(List<LogEntry> logEntries) {
-        CompletableFuture<Void> allFutures = CompletableFuture.allOf(
-            logEntries.stream()
-                .map(this::sendLogEntry)
-                .toArray(CompletableFuture[]::new)
-        );
+        CompletableFuture<Void> allFutures;
+        if (config.isEnableBatchRecords()) {
+            allFutures = sendBatchRecords(logEntries);
+        } else {
+            List<Supplier<CompletableFuture<Void>>> sends = new ArrayList<>(logEntries.size());
+            for (LogEntry logEntry : logEntries) {
+                sends.add(() -> sendLogEntry(logEntry));
+            }
+            allFutures = SendWindow.run(sends, config.getMaxInFlightPerBatch());
+        }
 
         return allFutures.whenComplete((result, throwable) -> {
             if (throwable != null) {
@@ -90,13 +306,493 @@ public class LogProducerService {
     }
 
     /**
-     * Generate a partition key for the log entry
+     * Pack entries into {@link LogBatch} envelopes or binary batches, one
+     * record per source and up to the configured entry count and byte
+     * budget each, keeping the order of entries of the same source. The
+     * records of one source in a batch share a key.
+     */
+    private CompletableFuture<Void> sendBatchRecords(List<LogEntry> logEntries) {
+        Map<String, List<LogEntry>> entriesBySource = new LinkedHashMap<>();
+        for (LogEntry logEntry : logEntries) {
+            String source = generateKey(logEntry);
+            numberEntry(source, logEntry);
+            entriesBySource.computeIfAbsent(source, k -> new ArrayList<>()).add(logEntry);
+        }
+
+        List<Supplier<CompletableFuture<Void>>> sends = new ArrayList<>();
+        for (Map.Entry<String, List<LogEntry>> sourceEntries : entriesBySource.entrySet()) {
+            String source = sourceEntries.getKey();
+            String key = partitionStrategy.keyFor(source, sourceEntries.getValue().size());
+            List<byte[]> values;
+            try {
+                values = wireFormat == WireFormat.BINARY
+                    ? encodeBinaryBatches(sourceEntries.getValue())
+                    : encodeJsonBatches(source, sourceEntries.getValue());
+            } catch (IOException e) {
+                logger.error("Failed to serialize log entry to JSON: {}", e.getMessage());
+                return CompletableFuture.failedFuture(e);
+            }
+            for (byte[] value : values) {
+                sends.add(() -> sendRecord(key, value));
+            }
+        }
+        return SendWindow.run(sends, config.getMaxInFlightPerBatch());
+    }
+
+    /**
+     * Serialize the entries of one source back to back into the pooled
+     * buffer and cut the envelopes out of it, so every entry is written once
+     */
+    private List<byte[]> encodeJsonBatches(String source, List<LogEntry> entries) throws IOException {
+        RecordBuffer buffer = RecordBuffer.acquire();
+        try {
+            // End offset of every entry; the next one starts after a comma
+            int[] ends = new int[entries.size()];
+            try (JsonGenerator generator = batchEntryWriter.createGenerator(buffer)) {
+                for (int i = 0; i < entries.size(); i++) {
+                    batchEntryWriter.writeValue(generator, entries.get(i));
+                    generator.flush();
+                    ends[i] = buffer.size();
+                }
+            }
+
+            List<byte[]> values = new ArrayList<>();
+            int first = 0;
+            for (int i = 1; i < entries.size(); i++) {
+                if (i - first >= config.getBatchRecordMaxEntries()
+                        || ends[i] - entryStart(ends, first) > config.getBatchRecordMaxBytes()) {
+                    values.add(encodeEnvelope(source, buffer, ends, first, i));
+                    first = i;
+                }
+            }
+            values.add(encodeEnvelope(source, buffer, ends, first, entries.size()));
+            return values;
+        } finally {
+            buffer.release();
+        }
+    }
+
+    private static int entryStart(int[] ends, int index) {
+        return index == 0 ? 0 : ends[index - 1] + 1;
+    }
+
+    /**
+     * Split entries into binary batches the same way as JSON envelopes.
+     * The byte budget is checked against the message lengths, which make up
+     * most of a binary entry.
+     */
+    private List<byte[]> encodeBinaryBatches(List<LogEntry> entries) {
+        List<byte[]> values = new ArrayList<>();
+        int first = 0;
+        long batchBytes = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            String message = entries.get(i).getMessage();
+            long entryBytes = 64 + (message != null ? 3L * message.length() : 0);
+            if (i > first && (i - first >= config.getBatchRecordMaxEntries()
+                    || batchBytes + entryBytes > config.getBatchRecordMaxBytes())) {
+                values.add(LogEntryCodec.encode(entries.subList(first, i)));
+                first = i;
+                batchBytes = 0;
+            }
+            batchBytes += entryBytes;
+        }
+        values.add(LogEntryCodec.encode(entries.subList(first, entries.size())));
+        return values;
+    }
+
+    /**
+     * Build the envelope of entries from to to in the buffer, compressed
+     * with the dictionary of its source once that dictionary is published
+     */
+    private byte[] encodeEnvelope(String source, RecordBuffer buffer, int[] ends, int from, int to) {
+        int offset = entryStart(ends, from);
+        int length = ends[to - 1] - offset;
+        if (dictionaryCompressor == null) {
+            return LogBatch.toJson(to - from, buffer.array(), offset, length);
+        }
+
+        if (dictionaryCompressor.isSampling(source)) {
+            List<byte[]> samples = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                samples.add(buffer.copyOfRange(entryStart(ends, i), ends[i]));
+            }
+            dictionaryCompressor.sample(source, samples);
+            return LogBatch.toJson(to - from, buffer.array(), offset, length);
+        }
+
+        byte[] payload = new byte[length + 2];
+        payload[0] = '[';
+        System.arraycopy(buffer.array(), offset, payload, 1, length);
+        payload[length + 1] = ']';
+        DictionaryCompressor.Compressed compressed = dictionaryCompressor.compress(source, payload);
+        if (compressed == null) {
+            return LogBatch.toJson(to - from, buffer.array(), offset, length);
+        }
+        return CompressedBatch.toRecord(to - from, compressed.getDictId(), payload.length, compressed.getData());
+    }
+
+    /**
+     * Publish a trained dictionary, keyed by its id so a compacted topic keeps every dictionary once
+     */
+    private CompletableFuture<Void> publishDictionary(String source, long dictId, byte[] dictionary) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(new LogDictionary(dictId, source, dictionary));
+            return kafkaTemplate.send(createRecord(config.getDictionaryTopicName(), Long.toString(dictId), json))
+                .thenApply(result -> null);
+        } catch (JsonProcessingException | RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Send a serialized record, or spool it if it cannot be sent now
+     *
+     * @return a future completed once the broker acknowledged the record or
+     *         it was forced to the spool, and failed once every retry has
+     *         failed or the record was dropped
+     */
+    private CompletableFuture<Void> sendRecord(String key, byte[] value) {
+        if (shouldSpool()) {
+            return spoolDurably(key, value);
+        }
+
+        CompletableFuture<Void> acknowledged = new CompletableFuture<>();
+        inFlightRecords.incrementAndGet();
+        attemptSend(key, value, 0, System.nanoTime(), acknowledged);
+        return acknowledged;
+    }
+
+    /**
+     * Send a record and schedule a retry if the broker does not acknowledge it
+     */
+    private void attemptSend(String key, byte[] value, int attempt, long startNanos,
+                             CompletableFuture<Void> acknowledged) {
+        CompletableFuture<SendResult<String, byte[]>> send;
+        try {
+            send = kafkaTemplate.send(createRecord(config.getKafkaTopicName(), key, value));
+        } catch (RuntimeException e) {
+            // e.g. metadata for the topic could not be fetched in time
+            send = CompletableFuture.failedFuture(e);
+        }
+
+        send.whenComplete((result, throwable) -> {
+            if (throwable == null) {
+                inFlightRecords.decrementAndGet();
+                ackedRecords.incrementAndGet();
+                ackLatency.record(System.nanoTime() - startNanos);
+                RecordMetadata metadata = result.getRecordMetadata();
+                partitionRecords.computeIfAbsent(metadata.partition(), p -> new RateMeter(PARTITION_RATE_WINDOW_SECONDS))
+                    .mark(1);
+                partitionBytes.computeIfAbsent(metadata.partition(), p -> new RateMeter(PARTITION_RATE_WINDOW_SECONDS))
+                    .mark(value.length);
+                logger.debug("Log entry sent successfully: partition={}, offset={}",
+                           result.getRecordMetadata().partition(),
+                           result.getRecordMetadata().offset());
+                acknowledged.complete(null);
+                return;
+            }
+
+            ScheduledExecutorService retries = retryScheduler;
+            if (attempt < config.getMaxRetries() && retries != null) {
+                long delayMs = retryDelayMs(attempt);
+                logger.debug("Send failed ({}), retry {} of {} in {} ms",
+                           throwable.getMessage(), attempt + 1, config.getMaxRetries(), delayMs);
+                // Whichever of the retry and stop() removes the future first owns it
+                pendingRetries.add(acknowledged);
+                try {
+                    retries.schedule(() -> {
+                        if (pendingRetries.remove(acknowledged)) {
+                            attemptSend(key, value, attempt + 1, startNanos, acknowledged);
+                        }
+                    }, delayMs, TimeUnit.MILLISECONDS);
+                    retriedSends.incrementAndGet();
+                    return;
+                } catch (RejectedExecutionException e) {
+                    // Shutting down, give up on the record unless stop() already failed it
+                    if (!pendingRetries.remove(acknowledged)) {
+                        return;
+                    }
+                }
+            }
+
+            inFlightRecords.decrementAndGet();
+            logger.error("Failed to send log entry after {} attempts: {}", attempt + 1, throwable.getMessage());
+            if (spool != null) {
+                brokerAvailable = false;
+                spoolDurably(key, value).whenComplete((spooled, spoolFailure) -> {
+                    if (spoolFailure != null) {
+                        acknowledged.completeExceptionally(spoolFailure);
+                    } else {
+                        acknowledged.complete(null);
+                    }
+                });
+            } else {
+                failedRecords.incrementAndGet();
+                acknowledged.completeExceptionally(throwable);
+            }
+        });
+    }
+
+    /**
+     * Exponential backoff for a retry, capped and jittered so records that
+     * failed together do not all retry at the same moment
+     */
+    private long retryDelayMs(int attempt) {
+        long delay = Math.min(config.getRetryBackoffMaxMs(),
+            config.getRetryBackoffMs() << Math.min(attempt, 20));
+        return delay > 0 ? ThreadLocalRandom.current().nextLong(delay / 2, delay + 1) : 0;
+    }
+
+    /**
+     * Whether a new entry has to go to the spool: behind entries already
+     * spooled, while the broker is down, or when too many records are in flight
+     */
+    private boolean shouldSpool() {
+        SegmentSpool current = spool;
+        return current != null && (!brokerAvailable || !current.isEmpty()
+            || inFlightRecords.get() >= config.getMaxInFlightRecords());
+    }
+
+    /**
+     * Spool a record and acknowledge it once the spool was forced to disk,
+     * so no checkpoint gets past a record that exists only in the page cache
+     *
+     * @return a future failed if the record was dropped
+     */
+    private CompletableFuture<Void> spoolDurably(String key, byte[] value) {
+        if (!spoolRecord(key, value)) {
+            return CompletableFuture.failedFuture(new IOException("Log entry dropped, the spool is full or unavailable"));
+        }
+        CompletableFuture<Void> synced = new CompletableFuture<>();
+        pendingSyncs.add(synced);
+        if (syncScheduled.compareAndSet(false, true)) {
+            ScheduledExecutorService scheduler = retryScheduler;
+            try {
+                if (scheduler == null) {
+                    throw new RejectedExecutionException("Producer is stopped");
+                }
+                scheduler.execute(this::syncSpool);
+            } catch (RejectedExecutionException e) {
+                // Shutting down, stop() forces what is pending
+                syncScheduled.set(false);
+            }
+        }
+        return synced;
+    }
+
+    /**
+     * Force the spool once for every record appended so far and complete
+     * their futures; records spooled meanwhile wait for the next call
+     */
+    private void syncSpool() {
+        syncScheduled.set(false);
+        List<CompletableFuture<Void>> synced = new ArrayList<>();
+        CompletableFuture<Void> future;
+        while ((future = pendingSyncs.poll()) != null) {
+            synced.add(future);
+        }
+        if (synced.isEmpty()) {
+            return;
+        }
+
+        IOException failure = null;
+        SegmentSpool current = spool;
+        try {
+            if (current == null) {
+                throw new IOException("Spool closed before the record was forced to disk");
+            }
+            current.sync();
+        } catch (IOException e) {
+            failure = e;
+            droppedRecords.addAndGet(synced.size());
+            logger.error("Failed to force {} spooled records to disk: {}", synced.size(), e.getMessage());
+        }
+        for (CompletableFuture<Void> pending : synced) {
+            if (failure != null) {
+                pending.completeExceptionally(failure);
+            } else {
+                pending.complete(null);
+            }
+        }
+    }
+
+    /**
+     * Append a record to the spool
+     *
+     * @return false if the record was dropped
+     */
+    private boolean spoolRecord(String key, byte[] value) {
+        SegmentSpool current = spool;
+        if (current == null) {
+            droppedRecords.incrementAndGet();
+            return false;
+        }
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + keyBytes.length + value.length);
+        record.putInt(keyBytes.length);
+        record.put(keyBytes);
+        record.put(value);
+
+        try {
+            if (current.append(record.array())) {
+                spooledRecords.incrementAndGet();
+                return true;
+            }
+            droppedRecords.incrementAndGet();
+        } catch (IOException e) {
+            droppedRecords.incrementAndGet();
+            logger.error("Failed to spool log entry: {}", e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Send spooled records back to Kafka, oldest first, until the spool is
+     * empty or a send fails. A batch is removed only after every record in
+     * it was acknowledged, so a failure replays it again later.
+     */
+    private void replaySpool() {
+        SegmentSpool current = spool;
+        if (current == null) {
+            return;
+        }
+
+        try {
+            current.sync();
+            SegmentSpool.Batch batch = current.read(config.getSpoolReplayBatchSize());
+            if (batch.isEmpty()) {
+                // Nothing to replay, let live sends find out whether the broker is back
+                brokerAvailable = true;
+                return;
+            }
+
+            while (!batch.isEmpty() && !Thread.currentThread().isInterrupted()) {
+                List<CompletableFuture<SendResult<String, byte[]>>> sends = new ArrayList<>(batch.getRecords().size());
+                for (byte[] record : batch.getRecords()) {
+                    ByteBuffer buffer = ByteBuffer.wrap(record);
+                    int keyLength = buffer.getInt();
+                    String key = new String(record, Integer.BYTES, keyLength, StandardCharsets.UTF_8);
+                    byte[] value = Arrays.copyOfRange(record, Integer.BYTES + keyLength, record.length);
+                    sends.add(kafkaTemplate.send(createRecord(config.getKafkaTopicName(), key, value)));
+                }
+                CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new))
+                    .get(config.getSpoolReplayTimeoutMs(), TimeUnit.MILLISECONDS);
+
+                current.acknowledge(batch);
+                replayedRecords.addAndGet(batch.getRecords().size());
+                brokerAvailable = true;
+                batch = current.read(config.getSpoolReplayBatchSize());
+            }
+
+            logger.info("Spool replayed, {} records sent in total", replayedRecords.get());
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            brokerAvailable = false;
+            logger.warn("Spool replay paused, Kafka is unavailable: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Build a record whose header names the format of its value; spooled
+     * records are told apart by the binary and compressed batch magic
+     */
+    private ProducerRecord<String, byte[]> createRecord(String topic, String key, byte[] value) {
+        ProducerRecord<String, byte[]> record = new ProducerRecord<>(topic, key, value);
+        WireFormat format = LogEntryCodec.isBinary(value) ? WireFormat.BINARY
+            : CompressedBatch.isRecord(value) ? WireFormat.ZSTD_DICTIONARY : WireFormat.JSON;
+        record.headers().add(WireFormat.HEADER, format.getHeaderValue());
+        return record;
+    }
+
+    /**
+     * Number the entry within its source when the records of a source may
+     * be spread over partitions. Numbers start at the epoch microsecond the
+     * source was first seen, so they keep growing across restarts.
+     */
+    private void numberEntry(String source, LogEntry logEntry) {
+        if (partitionStrategy.spreadsSources()) {
+            long sequence = sourceSequences.computeIfAbsent(source,
+                s -> new AtomicLong(TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis()))).incrementAndGet();
+            logEntry.addMetadata(PartitionStrategy.SEQUENCE_METADATA, sequence);
+        }
+    }
+
+    /**
+     * Generate the source key of the log entry, which the partition strategy turns into the record key
      */
     private String generateKey(LogEntry logEntry) {
         // Use source as key for better distribution
         return logEntry.getSource() != null ? logEntry.getSource() : "unknown";
     }
 
+    /**
+     * Get spool statistics
+     */
+    public Map<String, Object> getSpoolStats() {
+        Map<String, Object> stats = new HashMap<>();
+        SegmentSpool current = spool;
+        stats.put("enabled", current != null);
+        stats.put("broker_available", brokerAvailable);
+        stats.put("in_flight_records", inFlightRecords.get());
+        stats.put("spooled_records", spooledRecords.get());
+        stats.put("replayed_records", replayedRecords.get());
+        stats.put("dropped_records", droppedRecords.get());
+        if (current != null) {
+            stats.put("pending_bytes", current.getPendingBytes());
+            stats.put("segment_count", current.getSegmentCount());
+            stats.put("evicted_bytes", current.getEvictedBytes());
+        }
+        return stats;
+    }
+
+    /**
+     * Get acknowledgement statistics
+     */
+    public Map<String, Object> getDeliveryStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("in_flight_records", inFlightRecords.get());
+        stats.put("acked_records", ackedRecords.get());
+        stats.put("retried_sends", retriedSends.get());
+        stats.put("failed_records", failedRecords.get());
+        stats.put("ack_latency", ackLatency.getSnapshot());
+
+        Map<Integer, Map<String, Object>> partitions = new TreeMap<>();
+        for (Map.Entry<Integer, RateMeter> records : partitionRecords.entrySet()) {
+            RateMeter bytes = partitionBytes.get(records.getKey());
+            Map<String, Object> partition = new HashMap<>();
+            partition.put("records", records.getValue().getTotal());
+            partition.put("records_per_second", records.getValue().getRatePerSecond());
+            partition.put("bytes_per_second", bytes != null ? bytes.getRatePerSecond() : 0.0);
+            partitions.put(records.getKey(), partition);
+        }
+        stats.put("partition_strategy", config.getPartitionStrategy());
+        stats.put("partitions", partitions);
+        return stats;
+    }
+
+    /**
+     * Get compression statistics
+     */
+    public Map<String, Object> getCompressionStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", config.isCompressLogs());
+        stats.put("codec", config.isCompressLogs() ? config.getCompressionCodec() : "none");
+        stats.put("dictionary_enabled", dictionaryCompressor != null);
+        if (dictionaryCompressor != null) {
+            long uncompressed = dictionaryCompressor.getUncompressedBytes();
+            long compressed = dictionaryCompressor.getCompressedBytes();
+            stats.put("dictionaries_trained", dictionaryCompressor.getDictionariesTrained());
+            stats.put("training_failures", dictionaryCompressor.getTrainingFailures());
+            stats.put("dictionary_uncompressed_bytes", uncompressed);
+            stats.put("dictionary_compressed_bytes", compressed);
+            stats.put("dictionary_ratio", compressed > 0 ? (double) uncompressed / compressed : 0);
+        }
+        return stats;
+    }
+
     /**
      * Get producer statistics
      */
@@ -0,0 +1,308 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.service;
+
+import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.agent.limit.TokenBucket;
+import com.logaggregator.common.LogEntry;
+import com.logaggregator.common.LogLevel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-source and per-application rate limits on live log entries.
+ *
+ * Every source, and every application with a limit, has a
+ * {@link TokenBucket}. An entry may drain its buckets only as far as its
+ * level allows: the share of the burst it may use is its
+ * {@link LogLevel#getPriority()} relative to the most severe level, so a
+ * runaway source loses its DEBUG lines first and its FATAL lines last.
+ * Dropped lines are counted per source and level and reported in summary
+ * entries sent periodically under the source they were dropped from.
+ *
+ * Admitting an entry takes no locks: buckets are looked up in a
+ * concurrent map and updated with compare-and-set. Only a dropped entry
+ * locks its source's counters, so they cannot be evicted under it.
+ * Buckets that stayed full and counters that stayed empty for a summary
+ * interval are evicted, so sources that come and go do not pile up.
+ */
+@Service
+public class RateLimitService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RateLimitService.class);
+
+    private static final LogLevel[] LEVELS = LogLevel.values();
+    private static final double MAX_PRIORITY = maxPriority();
+
+    /**
+     * Lines dropped from one source since the last summary
+     */
+    private static class DroppedLines {
+        // One counter per level, plus one for entries without a level
+        private final LongAdder[] byLevel = new LongAdder[LEVELS.length + 1];
+        private volatile String application;
+
+        DroppedLines() {
+            for (int i = 0; i < byLevel.length; i++) {
+                byLevel[i] = new LongAdder();
+            }
+        }
+
+        boolean isEmpty() {
+            for (LongAdder count : byLevel) {
+                if (count.sum() != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final LogAgentConfig config;
+    private final LogProducerService logProducerService;
+    private final LongSupplier nanoClock;
+    private final Map<String, TokenBucket> sourceBuckets = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> applicationBuckets = new ConcurrentHashMap<>();
+    private final Map<String, DroppedLines> droppedLines = new ConcurrentHashMap<>();
+    private final LongAdder admittedEntries = new LongAdder();
+    private final LongAdder droppedEntries = new LongAdder();
+    private final AtomicLong summariesSent = new AtomicLong(0);
+    private ScheduledExecutorService summaryScheduler;
+
+    @Autowired
+    public RateLimitService(LogAgentConfig config, LogProducerService logProducerService) {
+        this(config, logProducerService, System::nanoTime);
+    }
+
+    RateLimitService(LogAgentConfig config, LogProducerService logProducerService, LongSupplier nanoClock) {
+        this.config = config;
+        this.logProducerService = logProducerService;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Start sending summaries of dropped lines
+     */
+    public synchronized void start() {
+        if (!config.isEnableRateLimit() || summaryScheduler != null) {
+            return;
+        }
+        summaryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "rate-limit-summary");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = config.getRateLimitSummaryIntervalMs();
+        summaryScheduler.scheduleAtFixedRate(() -> {
+            sendSummaries();
+            evictIdle();
+        }, interval, interval, TimeUnit.MILLISECONDS);
+        logger.info("Rate limits active: {} entries/s per source, {} entries/s per application",
+                   config.getSourceRateLimit(), config.getApplicationRateLimit());
+    }
+
+    /**
+     * Stop the summaries, reporting what was dropped since the last one
+     */
+    public synchronized void stop() {
+        if (summaryScheduler == null) {
+            return;
+        }
+        summaryScheduler.shutdownNow();
+        summaryScheduler = null;
+        sendSummaries();
+    }
+
+    /**
+     * Entries of a batch that are within their limits, in their original order
+     */
+    public List<LogEntry> admit(List<LogEntry> logEntries) {
+        if (!config.isEnableRateLimit()) {
+            return logEntries;
+        }
+        List<LogEntry> admitted = null;
+        for (int i = 0; i < logEntries.size(); i++) {
+            LogEntry logEntry = logEntries.get(i);
+            if (admit(logEntry)) {
+                if (admitted != null) {
+                    admitted.add(logEntry);
+                }
+            } else if (admitted == null) {
+                // First drop: copy what was admitted so far
+                admitted = new ArrayList<>(logEntries.subList(0, i));
+            }
+        }
+        return admitted != null ? admitted : logEntries;
+    }
+
+    /**
+     * Check an entry against the limits of its source and application
+     *
+     * @return true if the entry may be sent, false if it was dropped
+     */
+    public boolean admit(LogEntry logEntry) {
+        if (!config.isEnableRateLimit()) {
+            return true;
+        }
+        double depth = depth(logEntry.getLevel());
+        String source = logEntry.getSource() != null ? logEntry.getSource() : "unknown";
+        String application = logEntry.getApplication();
+
+        TokenBucket sourceBucket = sourceBucket(source);
+        TokenBucket applicationBucket = application != null ? applicationBucket(application) : null;
+        if (sourceBucket == null || sourceBucket.tryAcquire(depth)) {
+            if (applicationBucket == null || applicationBucket.tryAcquire(depth)) {
+                admittedEntries.increment();
+                return true;
+            }
+            // The application refused the entry, the source keeps its token
+            if (sourceBucket != null) {
+                sourceBucket.release();
+            }
+        }
+
+        droppedEntries.increment();
+        LogLevel level = logEntry.getLevel();
+        int slot = level != null ? level.ordinal() : LEVELS.length;
+        droppedLines.compute(source, (s, dropped) -> {
+            if (dropped == null) {
+                dropped = new DroppedLines();
+            }
+            dropped.application = application;
+            dropped.byLevel[slot].increment();
+            return dropped;
+        });
+        return false;
+    }
+
+    /**
+     * Share of a bucket an entry may drain, from its level's priority
+     */
+    private static double depth(LogLevel level) {
+        return (level != null ? level : LogLevel.INFO).getPriority() / MAX_PRIORITY;
+    }
+
+    private static double maxPriority() {
+        int max = 1;
+        for (LogLevel level : LEVELS) {
+            max = Math.max(max, level.getPriority());
+        }
+        return max;
+    }
+
+    private TokenBucket sourceBucket(String source) {
+        if (config.getSourceRateLimit() <= 0) {
+            return null;
+        }
+        TokenBucket bucket = sourceBuckets.get(source);
+        if (bucket == null) {
+            bucket = sourceBuckets.computeIfAbsent(source,
+                s -> new TokenBucket(config.getSourceRateLimit(), config.getSourceRateBurst(), nanoClock));
+        }
+        return bucket;
+    }
+
+    private TokenBucket applicationBucket(String application) {
+        TokenBucket bucket = applicationBuckets.get(application);
+        if (bucket != null) {
+            return bucket;
+        }
+        Double override = config.getApplicationRateLimits() != null
+            ? config.getApplicationRateLimits().get(application) : null;
+        double rate = override != null ? override : config.getApplicationRateLimit();
+        if (rate <= 0) {
+            return null;
+        }
+        return applicationBuckets.computeIfAbsent(application,
+            a -> new TokenBucket(rate, config.getApplicationRateBurst(), nanoClock));
+    }
+
+    /**
+     * Send one summary entry for every source that lost lines since the last summary
+     */
+    void sendSummaries() {
+        for (Map.Entry<String, DroppedLines> source : droppedLines.entrySet()) {
+            DroppedLines dropped = source.getValue();
+            long total = 0;
+            Map<String, Object> byLevel = new HashMap<>();
+            for (int i = 0; i < dropped.byLevel.length; i++) {
+                long count = dropped.byLevel[i].sumThenReset();
+                if (count > 0) {
+                    String level = i < LEVELS.length ? LEVELS[i].getLevel() : "UNKNOWN";
+                    byLevel.put("dropped_" + level.toLowerCase(Locale.ROOT), count);
+                    total += count;
+                }
+            }
+            if (total == 0) {
+                continue;
+            }
+
+            LogEntry summary = new LogEntry(source.getKey(), LogLevel.WARN, String.format(
+                "Rate limit dropped %d lines from %s in the last %d seconds", total, source.getKey(),
+                TimeUnit.MILLISECONDS.toSeconds(config.getRateLimitSummaryIntervalMs())));
+            summary.setHostname(config.getHostname());
+            summary.setApplication(dropped.application);
+            summary.addMetadata("agent_id", config.getAgentId());
+            summary.addMetadata("rate_limit_summary", true);
+            summary.addMetadata("dropped_lines", total);
+            byLevel.forEach(summary::addMetadata);
+            logProducerService.sendLogEntry(summary);
+            summariesSent.incrementAndGet();
+            logger.warn("Rate limit dropped {} lines from {}", total, source.getKey());
+        }
+    }
+
+    /**
+     * Drop the buckets that stayed full and the counters that stayed empty
+     * for a summary interval. A source seen again gets a full bucket, just
+     * like the one it had.
+     */
+    void evictIdle() {
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(config.getRateLimitSummaryIntervalMs());
+        for (String source : sourceBuckets.keySet()) {
+            sourceBuckets.computeIfPresent(source, (s, bucket) -> bucket.isIdle(idleNanos) ? null : bucket);
+        }
+        for (String application : applicationBuckets.keySet()) {
+            applicationBuckets.computeIfPresent(application,
+                (a, bucket) -> bucket.isIdle(idleNanos) ? null : bucket);
+        }
+        // Summaries reset the counters, so an empty one saw no drop since the last summary
+        for (String source : droppedLines.keySet()) {
+            droppedLines.computeIfPresent(source, (s, dropped) -> dropped.isEmpty() ? null : dropped);
+        }
+    }
+
+    /**
+     * Get rate limiting statistics
+     */
+    public Map<String, Object> getRateLimitStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", config.isEnableRateLimit());
+        stats.put("admitted_entries", admittedEntries.sum());
+        stats.put("dropped_entries", droppedEntries.sum());
+        stats.put("summaries_sent", summariesSent.get());
+        stats.put("limited_sources", sourceBuckets.size());
+        stats.put("limited_applications", applicationBuckets.size());
+        return stats;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.service;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer that records are serialized into, reused per thread.
+ *
+ * Serializing straight into a buffer that outlives the call avoids the
+ * intermediate String and the growing arrays of a fresh stream for every
+ * record; only the final value handed to Kafka is copied out. A buffer
+ * that grew past {@link #MAX_RETAINED_BYTES} is dropped on release, so a
+ * single huge batch does not pin its memory.
+ */
+final class RecordBuffer extends OutputStream {
+
+    private static final int INITIAL_CAPACITY = 16 * 1024;
+    private static final int MAX_RETAINED_BYTES = 4 * 1024 * 1024;
+
+    private static final ThreadLocal<RecordBuffer> POOL = ThreadLocal.withInitial(RecordBuffer::new);
+
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+    private int size;
+    private boolean inUse;
+
+    private RecordBuffer() {
+    }
+
+    /**
+     * Take the buffer of the calling thread, or a new one if it is already taken
+     */
+    static RecordBuffer acquire() {
+        RecordBuffer buffer = POOL.get();
+        if (buffer.inUse) {
+            buffer = new RecordBuffer();
+        }
+        buffer.inUse = true;
+        return buffer;
+    }
+
+    /**
+     * Hand the buffer back; its content must not be used afterwards
+     */
+    void release() {
+        if (bytes.length > MAX_RETAINED_BYTES) {
+            bytes = new byte[INITIAL_CAPACITY];
+        }
+        size = 0;
+        inUse = false;
+    }
+
+    private void ensure(int extra) {
+        if (size + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(size + extra, bytes.length * 2));
+        }
+    }
+
+    @Override
+    public void write(int b) {
+        ensure(1);
+        bytes[size++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] source, int offset, int length) {
+        ensure(length);
+        System.arraycopy(source, offset, bytes, size, length);
+        size += length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * The backing array, valid up to {@link #size()} until the next write
+     */
+    byte[] array() {
+        return bytes;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+
+    byte[] copyOfRange(int from, int to) {
+        return Arrays.copyOfRange(bytes, from, to);
+    }
+}
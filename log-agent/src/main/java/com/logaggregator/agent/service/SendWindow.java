@@ -0,0 +1,84 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs the sends of one batch with a bounded number awaiting their ack.
+ *
+ * A new send starts only when an earlier one is acknowledged, so a large
+ * batch cannot flood the producer's buffer. The future of the window
+ * completes once every send is acknowledged, or fails with the first
+ * failed send, in which case the sends not started yet are skipped.
+ */
+final class SendWindow {
+
+    private final List<Supplier<CompletableFuture<Void>>> sends;
+    private final int limit;
+    private final CompletableFuture<Void> result = new CompletableFuture<>();
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final AtomicInteger acknowledged = new AtomicInteger(0);
+    private final AtomicInteger drainRequests = new AtomicInteger(0);
+    private int next; // only touched by the thread that owns the drain loop
+
+    private SendWindow(List<Supplier<CompletableFuture<Void>>> sends, int limit) {
+        this.sends = sends;
+        this.limit = limit > 0 ? limit : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Run the sends in order with at most limit of them in flight
+     *
+     * @param limit maximum sends awaiting their ack, 0 or less for no limit
+     */
+    static CompletableFuture<Void> run(List<Supplier<CompletableFuture<Void>>> sends, int limit) {
+        if (sends.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        SendWindow window = new SendWindow(sends, limit);
+        window.drain();
+        return window.result;
+    }
+
+    /**
+     * Start sends while the window has room. Acks that complete on the
+     * calling thread re-enter here, so only the outermost call loops.
+     */
+    private void drain() {
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+        do {
+            while (!result.isDone() && next < sends.size() && inFlight.get() < limit) {
+                inFlight.incrementAndGet();
+                CompletableFuture<Void> send;
+                try {
+                    send = sends.get(next++).get();
+                } catch (RuntimeException e) {
+                    send = CompletableFuture.failedFuture(e);
+                }
+                send.whenComplete((ignored, throwable) -> onComplete(throwable));
+            }
+        } while (drainRequests.decrementAndGet() != 0);
+    }
+
+    private void onComplete(Throwable throwable) {
+        inFlight.decrementAndGet();
+        if (throwable != null) {
+            result.completeExceptionally(throwable);
+        } else if (acknowledged.incrementAndGet() == sends.size()) {
+            result.complete(null);
+        } else {
+            drain();
+        }
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.service;
+
+import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.agent.syslog.SyslogFrameDecoder;
+import com.logaggregator.agent.syslog.SyslogParser;
+import com.logaggregator.common.LogEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Receives syslog over the network, so appliances that can only send
+ * syslog need no relay writing files for the agent to tail.
+ *
+ * One thread runs a selector over a UDP socket and a TCP server socket
+ * and every connection accepted on it. Datagrams and TCP frames (see
+ * {@link SyslogFrameDecoder}) are parsed by {@link SyslogParser} and
+ * collected into batches of {@code batch-size} entries, or whatever was
+ * read in one pass over the ready channels, which go through the filter
+ * rules, deduplication and rate limits into the {@link IngestQueueService}
+ * like batches read from files.
+ *
+ * While the ingest queue is full the listener stops reading: TCP senders
+ * are held back by flow control, and datagrams wait in the socket's
+ * receive buffer until it overflows.
+ */
+@Service
+public class SyslogListenerService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SyslogListenerService.class);
+
+    // Datagrams read from the UDP socket before connections get their turn
+    private static final int MAX_DATAGRAMS_PER_PASS = 1024;
+    private static final int MIN_CONNECTION_BUFFER_BYTES = 64 * 1024;
+
+    /**
+     * A TCP connection with the bytes of its incomplete frame
+     */
+    private static class Connection {
+        private final String peer;
+        private final ByteBuffer buffer;
+        private final SyslogFrameDecoder decoder;
+
+        Connection(String peer, int bufferBytes, int maxMessageBytes) {
+            this.peer = peer;
+            this.buffer = ByteBuffer.allocate(bufferBytes);
+            this.decoder = new SyslogFrameDecoder(maxMessageBytes);
+        }
+    }
+
+    private final LogAgentConfig config;
+    private final IngestQueueService ingestQueue;
+    private final LogFilterService logFilterService;
+    private final DeduplicationService deduplicationService;
+    private final RateLimitService rateLimitService;
+    private final SyslogParser parser;
+    private final AtomicLong receivedMessages = new AtomicLong(0);
+    private final AtomicLong unparsableMessages = new AtomicLong(0);
+    private final AtomicLong truncatedMessages = new AtomicLong(0);
+    private final AtomicLong sentEntries = new AtomicLong(0);
+    private final AtomicLong acceptedConnections = new AtomicLong(0);
+    private final AtomicInteger openConnections = new AtomicInteger(0);
+    private final AtomicLong backpressureWaits = new AtomicLong(0);
+    private Selector selector;
+    private DatagramChannel udpChannel;
+    private ServerSocketChannel tcpChannel;
+    private ByteBuffer datagram;
+    private List<LogEntry> pending;
+    private InetAddress lastSender;
+    private String lastSenderText;
+    private Thread thread;
+    private volatile boolean isRunning = false;
+
+    @Autowired
+    public SyslogListenerService(LogAgentConfig config, IngestQueueService ingestQueue,
+                                 LogFilterService logFilterService, DeduplicationService deduplicationService,
+                                 RateLimitService rateLimitService) {
+        this.config = config;
+        this.ingestQueue = ingestQueue;
+        this.logFilterService = logFilterService;
+        this.deduplicationService = deduplicationService;
+        this.rateLimitService = rateLimitService;
+        this.parser = new SyslogParser(config);
+    }
+
+    /**
+     * Bind the configured protocols and start the listener thread
+     */
+    public synchronized void start() {
+        if (isRunning) {
+            logger.warn("Syslog listener is already running");
+            return;
+        }
+
+        boolean udp = false;
+        boolean tcp = false;
+        for (String protocol : config.getSyslogProtocols()) {
+            switch (protocol.trim().toLowerCase(Locale.ROOT)) {
+                case "udp" -> udp = true;
+                case "tcp" -> tcp = true;
+                default -> throw new IllegalArgumentException("Unknown syslog protocol: " + protocol);
+            }
+        }
+
+        InetSocketAddress address = new InetSocketAddress(config.getSyslogBindAddress(), config.getSyslogPort());
+        try {
+            selector = Selector.open();
+            if (udp) {
+                udpChannel = DatagramChannel.open();
+                udpChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                udpChannel.setOption(StandardSocketOptions.SO_RCVBUF, config.getSyslogReceiveBufferBytes());
+                udpChannel.bind(address);
+                udpChannel.configureBlocking(false);
+                udpChannel.register(selector, SelectionKey.OP_READ);
+                // Largest payload of a UDP datagram
+                datagram = ByteBuffer.allocate(65535);
+            }
+            if (tcp) {
+                tcpChannel = ServerSocketChannel.open();
+                tcpChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                tcpChannel.setOption(StandardSocketOptions.SO_RCVBUF, config.getSyslogReceiveBufferBytes());
+                tcpChannel.bind(address);
+                tcpChannel.configureBlocking(false);
+                tcpChannel.register(selector, SelectionKey.OP_ACCEPT);
+            }
+        } catch (IOException e) {
+            logger.error("Could not listen for syslog on {}: {}", address, e.getMessage());
+            closeChannels();
+            return;
+        }
+
+        pending = new ArrayList<>(config.getBatchSize());
+        isRunning = true;
+        thread = new Thread(this::listen, "syslog-listener");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("Listening for syslog on {} (udp: {}, tcp: {})", address, udp, tcp);
+    }
+
+    /**
+     * Stop listening, sending what was already received
+     */
+    public synchronized void stop() {
+        if (!isRunning) {
+            return;
+        }
+        isRunning = false;
+        selector.wakeup();
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Syslog listener stopped");
+    }
+
+    private void listen() {
+        try {
+            while (isRunning) {
+                if (!ingestQueue.hasCapacity()) {
+                    backpressureWaits.incrementAndGet();
+                    ingestQueue.awaitCapacity(100);
+                    continue;
+                }
+                selector.select(500);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.channel() == udpChannel) {
+                        readDatagrams();
+                    } else {
+                        readConnection(key);
+                    }
+                }
+                flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.error("Syslog listener failed: {}", e.getMessage(), e);
+        } finally {
+            flush();
+            closeChannels();
+            isRunning = false;
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = tcpChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            String peer = ((InetSocketAddress) channel.getRemoteAddress()).getAddress().getHostAddress();
+            int bufferBytes = Math.max(MIN_CONNECTION_BUFFER_BYTES, config.getSyslogMaxMessageBytes() + 16);
+            channel.register(selector, SelectionKey.OP_READ,
+                new Connection(peer, bufferBytes, config.getSyslogMaxMessageBytes()));
+            acceptedConnections.incrementAndGet();
+            openConnections.incrementAndGet();
+        }
+    }
+
+    private void readDatagrams() throws IOException {
+        byte[] bytes = datagram.array();
+        for (int i = 0; i < MAX_DATAGRAMS_PER_PASS; i++) {
+            datagram.clear();
+            SocketAddress sender = udpChannel.receive(datagram);
+            if (sender == null) {
+                return;
+            }
+            int length = datagram.position();
+            if (length > config.getSyslogMaxMessageBytes()) {
+                truncatedMessages.incrementAndGet();
+                length = config.getSyslogMaxMessageBytes();
+            }
+            received(bytes, 0, length, peer(sender));
+        }
+    }
+
+    private void readConnection(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+        int read;
+        try {
+            read = channel.read(connection.buffer);
+        } catch (IOException e) {
+            logger.debug("Syslog connection from {} failed: {}", connection.peer, e.getMessage());
+            read = -1;
+        }
+
+        connection.buffer.flip();
+        long truncated = connection.decoder.getOversizedFrames();
+        connection.decoder.decode(connection.buffer,
+            (bytes, offset, length) -> received(bytes, offset, length, connection.peer));
+        truncatedMessages.addAndGet(connection.decoder.getOversizedFrames() - truncated);
+        connection.buffer.compact();
+
+        if (read < 0) {
+            // A last frame without its newline is still a message
+            connection.buffer.flip();
+            if (connection.buffer.hasRemaining()) {
+                received(connection.buffer.array(), 0, connection.buffer.limit(), connection.peer);
+            }
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.debug("Error closing syslog connection: {}", e.getMessage());
+            }
+            openConnections.decrementAndGet();
+        }
+    }
+
+    /**
+     * Address of a datagram's sender as text, reusing the last one for repeated senders
+     */
+    private String peer(SocketAddress sender) {
+        InetAddress address = ((InetSocketAddress) sender).getAddress();
+        if (!address.equals(lastSender)) {
+            lastSender = address;
+            lastSenderText = address.getHostAddress();
+        }
+        return lastSenderText;
+    }
+
+    private void received(byte[] bytes, int offset, int length, String peer) {
+        receivedMessages.incrementAndGet();
+        LogEntry entry;
+        try {
+            entry = parser.parse(bytes, offset, length, peer);
+        } catch (RuntimeException e) {
+            unparsableMessages.incrementAndGet();
+            logger.debug("Could not parse syslog message from {}: {}", peer, e.getMessage());
+            return;
+        }
+        if (entry == null) {
+            return;
+        }
+        pending.add(entry);
+        if (pending.size() >= config.getBatchSize()) {
+            flush();
+        }
+    }
+
+    /**
+     * Send the entries read so far as one batch
+     */
+    private void flush() {
+        if (pending == null || pending.isEmpty()) {
+            return;
+        }
+        List<LogEntry> batch = pending;
+        pending = new ArrayList<>(config.getBatchSize());
+        List<LogEntry> admitted = rateLimitService.admit(deduplicationService.admit(
+            batch.stream().filter(logFilterService::accept).toList()));
+        if (!admitted.isEmpty()) {
+            sentEntries.addAndGet(admitted.size());
+            ingestQueue.submit(admitted);
+        }
+    }
+
+    private void closeChannels() {
+        try {
+            if (selector != null) {
+                for (SelectionKey key : selector.keys()) {
+                    key.channel().close();
+                }
+                selector.close();
+            }
+            if (udpChannel != null) {
+                udpChannel.close();
+            }
+            if (tcpChannel != null) {
+                tcpChannel.close();
+            }
+        } catch (IOException e) {
+            logger.debug("Error closing syslog listener: {}", e.getMessage());
+        }
+        openConnections.set(0);
+    }
+
+    /**
+     * Address a protocol is bound to, or null if it is not listening
+     */
+    InetSocketAddress getLocalAddress(String protocol) throws IOException {
+        if ("udp".equals(protocol)) {
+            return udpChannel != null ? (InetSocketAddress) udpChannel.getLocalAddress() : null;
+        }
+        return tcpChannel != null ? (InetSocketAddress) tcpChannel.getLocalAddress() : null;
+    }
+
+    /**
+     * Get syslog listener statistics
+     */
+    public Map<String, Object> getListenerStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", config.isEnableSyslogListener());
+        stats.put("is_running", isRunning);
+        stats.put("received_messages", receivedMessages.get());
+        stats.put("sent_entries", sentEntries.get());
+        stats.put("unparsable_messages", unparsableMessages.get());
+        stats.put("truncated_messages", truncatedMessages.get());
+        stats.put("accepted_connections", acceptedConnections.get());
+        stats.put("open_connections", openConnections.get());
+        stats.put("backpressure_waits", backpressureWaits.get());
+        return stats;
+    }
+}
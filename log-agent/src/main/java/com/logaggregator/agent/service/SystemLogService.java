@@ -8,6 +8,9 @@
 package com.logaggregator.agent.service;
 
 import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.agent.system.JournalFollower;
+import com.logaggregator.agent.system.SystemLogFileFollower;
+import com.logaggregator.agent.system.SystemLogFollower;
 import com.logaggregator.common.LogEntry;
 import com.logaggregator.common.LogLevel;
 import org.slf4j.Logger;
@@ -16,10 +19,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.io.BufferedReader;
-import java.io.IOException;
+import java.io.File;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -28,6 +37,11 @@ import java.util.concurrent.atomic.AtomicLong;
 /**
  * Service for collecting system logs from the operating system.
  * Supports Windows Event Log and Unix syslog collection.
+ *
+ * On Unix a single {@link SystemLogFollower} streams the system log for
+ * as long as collection runs: it tails a syslog file with checkpointed
+ * offsets or keeps one journalctl process open and resumes from its
+ * cursor, and sends through the ingest queue like the file monitor.
  */
 @Service
 public class SystemLogService {
@@ -36,14 +50,28 @@ public class SystemLogService {
 
     private final LogAgentConfig config;
     private final LogProducerService logProducerService;
+    private final IngestQueueService ingestQueue;
+    private final CheckpointService checkpointService;
+    private final LogFilterService logFilterService;
+    private final DeduplicationService deduplicationService;
+    private final RateLimitService rateLimitService;
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
     private final AtomicLong collectedLogsCount = new AtomicLong(0);
+    private SystemLogFollower follower;
     private boolean isRunning = false;
 
     @Autowired
-    public SystemLogService(LogAgentConfig config, LogProducerService logProducerService) {
+    public SystemLogService(LogAgentConfig config, LogProducerService logProducerService,
+                            IngestQueueService ingestQueue, CheckpointService checkpointService,
+                            LogFilterService logFilterService, DeduplicationService deduplicationService,
+                            RateLimitService rateLimitService) {
         this.config = config;
         this.logProducerService = logProducerService;
+        this.ingestQueue = ingestQueue;
+        this.checkpointService = checkpointService;
+        this.logFilterService = logFilterService;
+        this.deduplicationService = deduplicationService;
+        this.rateLimitService = rateLimitService;
     }
 
     /**
@@ -57,23 +85,97 @@ public class SystemLogService {
 
         isRunning = true;
 
-        // Start periodic system log collection
-        scheduler.scheduleAtFixedRate(
-            this::collectSystemLogs,
-            0,
-            config.getScanIntervalSeconds() * 2L, // Less frequent than file monitoring
-            TimeUnit.SECONDS
-        );
+        String osName = System.getProperty("os.name").toLowerCase();
+        if (osName.contains("win")) {
+            // Start periodic system log collection
+            scheduler.scheduleAtFixedRate(
+                this::collectWindowsEventLogs,
+                0,
+                config.getScanIntervalSeconds() * 2L, // Less frequent than file monitoring
+                TimeUnit.SECONDS
+            );
+        } else if (osName.contains("nix") || osName.contains("nux") || osName.contains("mac")) {
+            follower = createFollower();
+            if (follower == null) {
+                logger.warn("No readable system log file and no journalctl found, system logs are not collected");
+                return;
+            }
+            follower.start();
+            // Persist the follower's position as often as checkpoints are flushed
+            scheduler.scheduleWithFixedDelay(follower::flush, config.getCheckpointFlushIntervalMs(),
+                config.getCheckpointFlushIntervalMs(), TimeUnit.MILLISECONDS);
+        } else {
+            logger.debug("Unsupported OS for system log collection: {}", osName);
+        }
 
         logger.info("System log collection started");
     }
 
+    /**
+     * Follow the first readable syslog file, or the journal if there is none
+     */
+    private SystemLogFollower createFollower() {
+        String source = config.getSystemLogSource() != null
+            ? config.getSystemLogSource().trim().toLowerCase(Locale.ROOT) : "auto";
+        if (!source.equals("auto") && !source.equals("files") && !source.equals("journal")) {
+            throw new IllegalArgumentException("Unknown system log source: " + config.getSystemLogSource());
+        }
+
+        if (!source.equals("journal")) {
+            for (String file : config.getSystemLogFiles()) {
+                Path path = Paths.get(file);
+                if (Files.isReadable(path)) {
+                    return new SystemLogFileFollower(config, path, checkpointService,
+                        this::parseUnixSystemLog, this::sendFollowed);
+                }
+            }
+        }
+        if (!source.equals("files") && isOnPath("journalctl")) {
+            Path cursorFile = config.isEnableCheckpoints()
+                ? Paths.get(config.getCheckpointDirectory(), "journal.cursor") : null;
+            return new JournalFollower(config, cursorFile, this::sendFollowed);
+        }
+        return null;
+    }
+
+    private static boolean isOnPath(String executable) {
+        String path = System.getenv("PATH");
+        if (path == null) {
+            return false;
+        }
+        for (String directory : path.split(File.pathSeparator)) {
+            if (Files.isExecutable(Paths.get(directory, executable))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Send a batch read by the follower, waiting while the ingest queue is full
+     */
+    private CompletableFuture<Void> sendFollowed(List<LogEntry> entries) throws InterruptedException {
+        while (!ingestQueue.awaitCapacity(500)) {
+            if (!isRunning) {
+                throw new InterruptedException("System log collection stopped");
+            }
+        }
+        List<LogEntry> admitted = rateLimitService.admit(deduplicationService.admit(
+            entries.stream().filter(logFilterService::accept).toList()));
+        collectedLogsCount.addAndGet(admitted.size());
+        return admitted.isEmpty() ? CompletableFuture.completedFuture(null) : ingestQueue.submit(admitted);
+    }
+
     /**
      * Stop system log collection
      */
     public void stopCollection() {
         isRunning = false;
 
+        if (follower != null) {
+            follower.stop();
+        }
+
         scheduler.shutdown();
         try {
             if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
@@ -87,26 +189,6 @@ public class SystemLogService {
         logger.info("System log collection stopped");
     }
 
-    /**
-     * Collect system logs based on the operating system
-     */
-    private void collectSystemLogs() {
-        try {
-            String osName = System.getProperty("os.name").toLowerCase();
-
-            if (osName.contains("win")) {
-                collectWindowsEventLogs();
-            } else if (osName.contains("nix") || osName.contains("nux") || osName.contains("mac")) {
-                collectUnixSystemLogs();
-            } else {
-                logger.debug("Unsupported OS for system log collection: {}", osName);
-            }
-
-        } catch (Exception e) {
-            logger.error("Error collecting system logs: {}", e.getMessage());
-        }
-    }
-
     /**
      * Collect Windows Event Logs using PowerShell
      */
@@ -129,7 +211,7 @@ public class SystemLogService {
                 parseWindowsEventLogs(output.toString());
             }
 
-        } catch (IOException | InterruptedException e) {
+        } catch (Exception e) {
             logger.debug("Could not collect Windows event logs: {}", e.getMessage());
         }
     }
@@ -144,7 +226,7 @@ public class SystemLogService {
 
             for (String event : events) {
                 LogEntry logEntry = parseWindowsEvent(event);
-                if (logEntry != null) {
+                if (logEntry != null && admit(logEntry)) {
                     logProducerService.sendLogEntry(logEntry);
                     collectedLogsCount.incrementAndGet();
                 }
@@ -155,6 +237,15 @@ public class SystemLogService {
         }
     }
 
+    /**
+     * Pass an entry through the filter rules, deduplication and rate limits
+     */
+    private boolean admit(LogEntry logEntry) {
+        return logFilterService.accept(logEntry)
+            && deduplicationService.admit(logEntry)
+            && rateLimitService.admit(logEntry);
+    }
+
     /**
      * Parse individual Windows event
      */
@@ -221,56 +312,6 @@ public class SystemLogService {
         }
     }
 
-    /**
-     * Collect Unix/Linux system logs
-     */
-    private void collectUnixSystemLogs() {
-        try {
-            // Try to read recent syslog entries
-            String[] commands = {
-                "tail -n 10 /var/log/syslog",
-                "tail -n 10 /var/log/messages",
-                "journalctl -n 10 --no-pager"
-            };
-
-            for (String command : commands) {
-                if (executeUnixCommand(command)) {
-                    break; // Successfully collected logs
-                }
-            }
-
-        } catch (Exception e) {
-            logger.debug("Error collecting Unix system logs: {}", e.getMessage());
-        }
-    }
-
-    /**
-     * Execute Unix command and process output
-     */
-    private boolean executeUnixCommand(String command) {
-        try {
-            Process process = Runtime.getRuntime().exec(new String[]{"sh", "-c", command});
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            String line;
-            int logCount = 0;
-
-            while ((line = reader.readLine()) != null && logCount < 10) {
-                LogEntry logEntry = parseUnixSystemLog(line);
-                if (logEntry != null) {
-                    logProducerService.sendLogEntry(logEntry);
-                    collectedLogsCount.incrementAndGet();
-                    logCount++;
-                }
-            }
-
-            int exitCode = process.waitFor();
-            return exitCode == 0 && logCount > 0;
-
-        } catch (IOException | InterruptedException e) {
-            return false;
-        }
-    }
-
     /**
      * Parse Unix system log line
      */
@@ -325,6 +366,9 @@ public class SystemLogService {
         stats.put("collected_logs_count", collectedLogsCount.get());
         stats.put("os_name", System.getProperty("os.name"));
         stats.put("collection_enabled", config.isEnableSystemLogs());
+        if (follower != null) {
+            stats.put("follower", follower.getStats());
+        }
         return stats;
     }
 }
@@ -0,0 +1,418 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.spool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, segmented on-disk queue of opaque records.
+ *
+ * Records are framed with their length and a CRC32 and appended to the
+ * newest segment file; a full segment is synced and a new one started.
+ * Records are read back in append order and only removed once the reader
+ * acknowledges them, so everything between the acknowledged cursor and the
+ * end is replayed after a restart. A torn record at the end of the newest
+ * segment is truncated on open. When the size cap is reached the policy
+ * decides whether the oldest segment or the new record is dropped.
+ * Thread-safe.
+ */
+public class SegmentSpool implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentSpool.class);
+
+    static final String SEGMENT_PREFIX = "spool-";
+    static final String SEGMENT_SUFFIX = ".seg";
+    static final String CURSOR_FILE = "spool.cursor";
+    private static final int HEADER_BYTES = Integer.BYTES * 2;
+
+    /**
+     * What to drop when the spool is full
+     */
+    public enum EvictionPolicy {
+        DROP_OLDEST, DROP_NEWEST;
+
+        public static EvictionPolicy fromConfig(String value) {
+            return valueOf(value.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Records read from one segment, to be passed to {@link #acknowledge(Batch)}
+     * once they are delivered
+     */
+    public static final class Batch {
+        private final List<byte[]> records;
+        private final long segmentId;
+        private final long endOffset;
+
+        Batch(List<byte[]> records, long segmentId, long endOffset) {
+            this.records = records;
+            this.segmentId = segmentId;
+            this.endOffset = endOffset;
+        }
+
+        public List<byte[]> getRecords() { return records; }
+        public boolean isEmpty() { return records.isEmpty(); }
+    }
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final long maxBytes;
+    private final EvictionPolicy evictionPolicy;
+    private final TreeMap<Long, Long> segments = new TreeMap<>();
+    private FileChannel writeChannel;
+    private long writeSegmentId;
+    private long readSegmentId;
+    private long readOffset;
+    private long totalBytes;
+    private long appendedRecords;
+    private long acknowledgedRecords;
+    private long rejectedRecords;
+    private long evictedBytes;
+
+    public SegmentSpool(Path directory, long segmentBytes, long maxBytes, EvictionPolicy evictionPolicy) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = Math.max(maxBytes, segmentBytes * 2);
+        this.evictionPolicy = evictionPolicy;
+    }
+
+    /**
+     * Recover the segments and the acknowledged cursor from disk
+     */
+    public synchronized void open() throws IOException {
+        Files.createDirectories(directory);
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path segment : stream) {
+                String name = segment.getFileName().toString();
+                try {
+                    long id = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                    segments.put(id, Files.size(segment));
+                } catch (NumberFormatException e) {
+                    logger.warn("Ignoring unexpected file in spool directory: {}", segment);
+                }
+            }
+        }
+
+        if (segments.isEmpty()) {
+            segments.put(0L, 0L);
+        }
+        writeSegmentId = segments.lastKey();
+        writeChannel = FileChannel.open(segmentPath(writeSegmentId),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        truncateTornTail();
+
+        readSegmentId = segments.firstKey();
+        readOffset = 0;
+        loadCursor();
+
+        totalBytes = 0;
+        for (long size : segments.values()) {
+            totalBytes += size;
+        }
+        if (getPendingBytes() > 0) {
+            logger.info("Spool at {} holds {} bytes to replay in {} segments", directory, getPendingBytes(), segments.size());
+        }
+    }
+
+    /**
+     * Append a record
+     *
+     * @return false if the record was dropped because the spool is full
+     */
+    public synchronized boolean append(byte[] record) throws IOException {
+        long frameBytes = HEADER_BYTES + record.length;
+        long writeSize = segments.get(writeSegmentId);
+        if (writeSize > 0 && writeSize + frameBytes > segmentBytes) {
+            roll();
+            writeSize = 0;
+        }
+
+        if (totalBytes + frameBytes > maxBytes) {
+            if (evictionPolicy == EvictionPolicy.DROP_OLDEST) {
+                while (totalBytes + frameBytes > maxBytes && segments.size() > 1) {
+                    evictOldest();
+                }
+            }
+            if (totalBytes + frameBytes > maxBytes) {
+                rejectedRecords++;
+                return false;
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        ByteBuffer frame = ByteBuffer.allocate((int) frameBytes);
+        frame.putInt(record.length);
+        frame.putInt((int) crc.getValue());
+        frame.put(record);
+        frame.flip();
+
+        long position = writeSize;
+        while (frame.hasRemaining()) {
+            position += writeChannel.write(frame, position);
+        }
+        segments.put(writeSegmentId, writeSize + frameBytes);
+        totalBytes += frameBytes;
+        appendedRecords++;
+        return true;
+    }
+
+    /**
+     * Read up to maxRecords unacknowledged records in append order. A batch
+     * never spans segments; fully acknowledged segments are skipped.
+     */
+    public synchronized Batch read(int maxRecords) throws IOException {
+        while (true) {
+            long segmentSize = segments.get(readSegmentId);
+            List<byte[]> records = new ArrayList<>();
+            long position = readOffset;
+
+            if (position < segmentSize) {
+                try (FileChannel channel = FileChannel.open(segmentPath(readSegmentId), StandardOpenOption.READ)) {
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                    while (records.size() < maxRecords && position + HEADER_BYTES <= segmentSize) {
+                        header.clear();
+                        readFully(channel, header, position);
+                        header.flip();
+                        int length = header.getInt();
+                        int storedCrc = header.getInt();
+                        if (length < 0 || position + HEADER_BYTES + length > segmentSize) {
+                            position = skipCorrupt(position, segmentSize);
+                            break;
+                        }
+
+                        ByteBuffer record = ByteBuffer.allocate(length);
+                        readFully(channel, record, position + HEADER_BYTES);
+                        CRC32 crc = new CRC32();
+                        crc.update(record.array());
+                        if ((int) crc.getValue() != storedCrc) {
+                            position = skipCorrupt(position, segmentSize);
+                            break;
+                        }
+                        records.add(record.array());
+                        position += HEADER_BYTES + length;
+                    }
+                }
+            }
+
+            if (!records.isEmpty() || readSegmentId == writeSegmentId) {
+                return new Batch(records, readSegmentId, position);
+            }
+            // Nothing left in an older segment, move on to the next one
+            readOffset = position;
+            releaseReadSegment();
+        }
+    }
+
+    private long skipCorrupt(long position, long segmentSize) {
+        logger.warn("Corrupt spool record in segment {} at offset {}, skipping the rest of the segment",
+            readSegmentId, position);
+        return segmentSize;
+    }
+
+    /**
+     * Mark the records of a batch as delivered
+     */
+    public synchronized void acknowledge(Batch batch) throws IOException {
+        if (batch.segmentId != readSegmentId || batch.endOffset <= readOffset) {
+            return; // the segment was evicted meanwhile
+        }
+        readOffset = batch.endOffset;
+        acknowledgedRecords += batch.records.size();
+        releaseReadSegment();
+        saveCursor();
+    }
+
+    /**
+     * Delete the read segment once it is fully acknowledged, or empty the
+     * write segment so its space is reused
+     */
+    private void releaseReadSegment() throws IOException {
+        long size = segments.get(readSegmentId);
+        if (readOffset < size) {
+            return;
+        }
+
+        if (readSegmentId == writeSegmentId) {
+            writeChannel.truncate(0);
+            segments.put(writeSegmentId, 0L);
+        } else {
+            Files.deleteIfExists(segmentPath(readSegmentId));
+            segments.remove(readSegmentId);
+            readSegmentId = segments.firstKey();
+        }
+        totalBytes -= size;
+        readOffset = 0;
+    }
+
+    private void evictOldest() throws IOException {
+        long size = segments.get(readSegmentId);
+        evictedBytes += size - readOffset;
+        Files.deleteIfExists(segmentPath(readSegmentId));
+        segments.remove(readSegmentId);
+        totalBytes -= size;
+        logger.warn("Spool is full, dropped {} unsent bytes from segment {}", size - readOffset, readSegmentId);
+        readSegmentId = segments.firstKey();
+        readOffset = 0;
+        saveCursor();
+    }
+
+    private void roll() throws IOException {
+        writeChannel.force(false);
+        writeChannel.close();
+        writeSegmentId++;
+        writeChannel = FileChannel.open(segmentPath(writeSegmentId),
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segments.put(writeSegmentId, 0L);
+    }
+
+    /**
+     * Force appended records to disk
+     */
+    public synchronized void sync() throws IOException {
+        writeChannel.force(false);
+    }
+
+    public synchronized boolean isEmpty() {
+        return getPendingBytes() == 0;
+    }
+
+    /**
+     * Bytes appended but not yet acknowledged
+     */
+    public synchronized long getPendingBytes() {
+        return totalBytes - readOffset;
+    }
+
+    public synchronized int getSegmentCount() { return segments.size(); }
+    public synchronized long getAppendedRecords() { return appendedRecords; }
+    public synchronized long getAcknowledgedRecords() { return acknowledgedRecords; }
+    public synchronized long getRejectedRecords() { return rejectedRecords; }
+    public synchronized long getEvictedBytes() { return evictedBytes; }
+
+    /**
+     * Drop a torn record left at the end of the newest segment by a crash
+     */
+    private void truncateTornTail() throws IOException {
+        long size = writeChannel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (position + HEADER_BYTES <= size) {
+            header.clear();
+            readFully(writeChannel, header, position);
+            header.flip();
+            int length = header.getInt();
+            int storedCrc = header.getInt();
+            if (length < 0 || position + HEADER_BYTES + length > size) {
+                break;
+            }
+            ByteBuffer record = ByteBuffer.allocate(length);
+            readFully(writeChannel, record, position + HEADER_BYTES);
+            CRC32 crc = new CRC32();
+            crc.update(record.array());
+            if ((int) crc.getValue() != storedCrc) {
+                break;
+            }
+            position += HEADER_BYTES + length;
+        }
+
+        if (position < size) {
+            logger.warn("Discarding {} bytes of torn spool segment {}", size - position, writeSegmentId);
+            writeChannel.truncate(position);
+        }
+        segments.put(writeSegmentId, position);
+    }
+
+    private void loadCursor() throws IOException {
+        Path cursor = directory.resolve(CURSOR_FILE);
+        if (!Files.exists(cursor)) {
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(cursor));
+        if (buffer.remaining() < Long.BYTES * 2 + Integer.BYTES) {
+            logger.warn("Spool cursor is corrupt, replaying the whole spool");
+            return;
+        }
+        long segmentId = buffer.getLong();
+        long offset = buffer.getLong();
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, Long.BYTES * 2);
+        if ((int) crc.getValue() != buffer.getInt()) {
+            logger.warn("Spool cursor is corrupt, replaying the whole spool");
+            return;
+        }
+
+        // Segments before the cursor were acknowledged but not deleted yet
+        for (Map.Entry<Long, Long> segment : new ArrayList<>(segments.headMap(segmentId).entrySet())) {
+            if (segment.getKey() != writeSegmentId) {
+                Files.deleteIfExists(segmentPath(segment.getKey()));
+                segments.remove(segment.getKey());
+            }
+        }
+        readSegmentId = segments.firstKey();
+        if (readSegmentId == segmentId) {
+            readOffset = Math.min(offset, segments.get(readSegmentId));
+        }
+    }
+
+    private void saveCursor() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES * 2 + Integer.BYTES);
+        buffer.putLong(readSegmentId);
+        buffer.putLong(readOffset);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, Long.BYTES * 2);
+        buffer.putInt((int) crc.getValue());
+
+        Path cursor = directory.resolve(CURSOR_FILE);
+        Path tempCursor = directory.resolve(CURSOR_FILE + ".tmp");
+        Files.write(tempCursor, buffer.array());
+        Files.move(tempCursor, cursor, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path segmentPath(long id) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of spool segment");
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writeChannel != null && writeChannel.isOpen()) {
+            writeChannel.force(false);
+            writeChannel.close();
+            saveCursor();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.syslog;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Splits a syslog TCP stream into messages (RFC 6587).
+ *
+ * Each frame is either octet-counted ({@code "LEN SP MSG"}, recognized by
+ * a leading digit) or terminated by a newline, so senders may mix both on
+ * one connection. A frame longer than the maximum is cut at the maximum
+ * and the rest of it skipped, which keeps a sender that never sends a
+ * newline from growing the buffer without bound.
+ *
+ * One decoder belongs to one connection and is not thread-safe.
+ */
+public final class SyslogFrameDecoder {
+
+    /**
+     * Receives the bytes of one complete message
+     */
+    @FunctionalInterface
+    public interface FrameHandler {
+        void frame(byte[] bytes, int offset, int length);
+    }
+
+    // Digits of an octet count: enough for any length up to Integer.MAX_VALUE
+    private static final int MAX_COUNT_DIGITS = 10;
+
+    private final int maxFrameBytes;
+    // Bytes still to skip from an oversized octet-counted frame
+    private long skipBytes;
+    // Skipping the rest of an oversized newline-terminated frame
+    private boolean skipToNewline;
+    private long oversizedFrames;
+
+    public SyslogFrameDecoder(int maxFrameBytes) {
+        this.maxFrameBytes = maxFrameBytes;
+    }
+
+    /**
+     * Hand every complete frame in the buffer to the handler.
+     *
+     * The buffer must be in read mode and backed by an array of at least
+     * maxFrameBytes plus {@link #MAX_COUNT_DIGITS} plus one bytes. Its
+     * position is left at the first byte of an incomplete frame, ready for
+     * {@link ByteBuffer#compact()}.
+     */
+    public void decode(ByteBuffer buffer, FrameHandler handler) {
+        byte[] bytes = buffer.array();
+        int base = buffer.arrayOffset();
+        int position = base + buffer.position();
+        int limit = base + buffer.limit();
+
+        while (position < limit) {
+            if (skipBytes > 0) {
+                int skipped = (int) Math.min(skipBytes, limit - position);
+                skipBytes -= skipped;
+                position += skipped;
+                continue;
+            }
+            if (skipToNewline) {
+                int newline = indexOf(bytes, position, limit, (byte) '\n');
+                if (newline < 0) {
+                    position = limit;
+                    break;
+                }
+                skipToNewline = false;
+                position = newline + 1;
+                continue;
+            }
+
+            byte first = bytes[position];
+            if (first == '\n' || first == '\r' || first == ' ' || first == 0) {
+                // Stray separators between frames
+                position++;
+            } else if (first >= '1' && first <= '9') {
+                int next = octetCounted(bytes, position, limit, handler);
+                if (next == position) {
+                    break;
+                }
+                position = next;
+            } else {
+                int newline = indexOf(bytes, position, limit, (byte) '\n');
+                if (newline < 0) {
+                    if (limit - position >= maxFrameBytes) {
+                        oversizedFrames++;
+                        handler.frame(bytes, position, maxFrameBytes);
+                        skipToNewline = true;
+                        position = limit;
+                    }
+                    break;
+                }
+                int end = newline > position && bytes[newline - 1] == '\r' ? newline - 1 : newline;
+                handler.frame(bytes, position, Math.min(end - position, maxFrameBytes));
+                if (end - position > maxFrameBytes) {
+                    oversizedFrames++;
+                }
+                position = newline + 1;
+            }
+        }
+        buffer.position(position - base);
+    }
+
+    /**
+     * Decode one octet-counted frame
+     *
+     * @return the position after the frame, or the same position if it is incomplete
+     */
+    private int octetCounted(byte[] bytes, int position, int limit, FrameHandler handler) {
+        long length = 0;
+        int i = position;
+        while (i < limit && bytes[i] >= '0' && bytes[i] <= '9') {
+            if (i - position == MAX_COUNT_DIGITS) {
+                return newlineFallback(bytes, position, limit, handler);
+            }
+            length = length * 10 + (bytes[i] - '0');
+            i++;
+        }
+        if (i == limit) {
+            return position;
+        }
+        if (bytes[i] != ' ') {
+            // A line that merely starts with a digit
+            return newlineFallback(bytes, position, limit, handler);
+        }
+        int start = i + 1;
+        if (length > maxFrameBytes) {
+            oversizedFrames++;
+            int available = limit - start;
+            if (available < maxFrameBytes) {
+                return position;
+            }
+            handler.frame(bytes, start, maxFrameBytes);
+            long rest = length - maxFrameBytes;
+            int buffered = (int) Math.min(rest, available - maxFrameBytes);
+            skipBytes = rest - buffered;
+            return start + maxFrameBytes + buffered;
+        }
+        if (limit - start < length) {
+            return position;
+        }
+        handler.frame(bytes, start, (int) length);
+        return start + (int) length;
+    }
+
+    private int newlineFallback(byte[] bytes, int position, int limit, FrameHandler handler) {
+        int newline = indexOf(bytes, position, limit, (byte) '\n');
+        if (newline < 0) {
+            if (limit - position < maxFrameBytes) {
+                return position;
+            }
+            oversizedFrames++;
+            handler.frame(bytes, position, maxFrameBytes);
+            skipToNewline = true;
+            return limit;
+        }
+        int end = newline > position && bytes[newline - 1] == '\r' ? newline - 1 : newline;
+        handler.frame(bytes, position, Math.min(end - position, maxFrameBytes));
+        return newline + 1;
+    }
+
+    private static int indexOf(byte[] bytes, int from, int to, byte value) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public long getOversizedFrames() {
+        return oversizedFrames;
+    }
+}
@@ -0,0 +1,565 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.syslog;
+
+import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.common.LogEntry;
+import com.logaggregator.common.LogLevel;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Turns one syslog message into a log entry.
+ *
+ * Messages with a version after the priority are read as RFC 5424,
+ * including their structured data, which becomes metadata named
+ * {@code sd.<SD-ID>.<PARAM-NAME>}. Anything else is read as the BSD
+ * format of RFC 3164, as leniently as senders of it need: a missing
+ * priority, timestamp or tag leaves the rest as the message.
+ *
+ * Parsing walks the decoded message once by index, without regular
+ * expressions, since it runs for every datagram on the listener thread.
+ */
+public final class SyslogParser {
+
+    private static final String[] MONTHS = {
+        "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"
+    };
+    private static final String[] FACILITIES = {
+        "kern", "user", "mail", "daemon", "auth", "syslog", "lpr", "news", "uucp", "cron",
+        "authpriv", "ftp", "ntp", "audit", "alert", "clock",
+        "local0", "local1", "local2", "local3", "local4", "local5", "local6", "local7"
+    };
+    // user.notice, the priority RFC 3164 assumes when there is none
+    private static final int DEFAULT_PRIORITY = 13;
+    private static final char BOM = '\uFEFF';
+
+    private final LogAgentConfig config;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private volatile ParsedTimestamp lastTimestamp;
+
+    public SyslogParser(LogAgentConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Parse a message received from a peer
+     *
+     * @return the entry, or null if the message is empty
+     */
+    public LogEntry parse(byte[] bytes, int offset, int length, String peer) {
+        return parse(new String(bytes, offset, length, StandardCharsets.UTF_8), peer);
+    }
+
+    public LogEntry parse(String message, String peer) {
+        int end = message.length();
+        while (end > 0 && message.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (end == 0) {
+            return null;
+        }
+        Cursor cursor = new Cursor(message, end);
+
+        int priority = cursor.priority();
+        Fields fields = new Fields();
+        if (priority >= 0 && cursor.versionFollows()) {
+            parse5424(cursor, fields);
+        } else {
+            parse3164(cursor, fields);
+        }
+        if (priority < 0) {
+            priority = DEFAULT_PRIORITY;
+        }
+
+        String raw = message.substring(0, end);
+        // A message may consist of structured data alone
+        String text = fields.message != null && !fields.message.isBlank() ? fields.message : raw;
+        String host = fields.hostname != null ? fields.hostname : peer;
+        LogEntry entry = new LogEntry(config.getAgentId() + ":syslog:" + host, level(priority & 7), text);
+        entry.setRawMessage(raw);
+        entry.setHostname(host);
+        entry.setApplication(fields.appName != null ? fields.appName : "syslog");
+        if (fields.timestamp != null) {
+            entry.setTimestamp(fields.timestamp);
+        }
+        entry.addMetadata("agent_id", config.getAgentId());
+        entry.addMetadata("facility", facility(priority >> 3));
+        entry.addMetadata("severity", priority & 7);
+        if (peer != null) {
+            entry.addMetadata("peer", peer);
+        }
+        if (fields.procId != null) {
+            entry.addMetadata("pid", fields.procId);
+        }
+        if (fields.msgId != null) {
+            entry.addMetadata("msgid", fields.msgId);
+        }
+        if (fields.structuredData != null) {
+            fields.structuredData.forEach(entry::addMetadata);
+        }
+        entry.addTag("log_type", "syslog");
+        entry.addTag("syslog_format", fields.rfc5424 ? "rfc5424" : "rfc3164");
+        return entry;
+    }
+
+    /**
+     * VERSION SP TIMESTAMP SP HOSTNAME SP APP-NAME SP PROCID SP MSGID SP STRUCTURED-DATA [SP MSG]
+     */
+    private void parse5424(Cursor cursor, Fields fields) {
+        fields.rfc5424 = true;
+        cursor.token();
+        String timestamp = cursor.nilOrToken();
+        if (timestamp != null) {
+            fields.timestamp = isoTimestamp(timestamp);
+        }
+        fields.hostname = cursor.nilOrToken();
+        fields.appName = cursor.nilOrToken();
+        fields.procId = cursor.nilOrToken();
+        fields.msgId = cursor.nilOrToken();
+        if (cursor.peek() == '-') {
+            cursor.position++;
+        } else if (cursor.peek() == '[') {
+            fields.structuredData = new LinkedHashMap<>();
+            if (!cursor.structuredData(fields.structuredData)) {
+                // Malformed structured data: keep what was read and the rest as message
+                fields.message = cursor.rest();
+                return;
+            }
+        }
+        if (cursor.peek() == ' ') {
+            cursor.position++;
+        }
+        if (cursor.peek() == BOM) {
+            cursor.position++;
+        }
+        fields.message = cursor.rest();
+    }
+
+    /**
+     * [TIMESTAMP SP HOSTNAME SP] [TAG[PID]: ] MSG
+     */
+    private void parse3164(Cursor cursor, Fields fields) {
+        int start = cursor.position;
+        LocalDateTime timestamp = cursor.bsdTimestamp();
+        if (timestamp == null && cursor.isoTimestampFollows()) {
+            // High-precision timestamps some senders use in the BSD format
+            int mark = cursor.position;
+            timestamp = isoTimestamp(cursor.token());
+            if (timestamp == null) {
+                cursor.position = mark;
+            }
+        }
+        if (timestamp != null) {
+            fields.timestamp = timestamp;
+            int mark = cursor.position;
+            String hostname = cursor.token();
+            if (hostname != null && hostname.endsWith(":")) {
+                // No hostname: this was already the tag
+                cursor.position = mark;
+            } else {
+                fields.hostname = hostname;
+            }
+        } else {
+            cursor.position = start;
+        }
+
+        int tagStart = cursor.position;
+        int i = tagStart;
+        String text = cursor.text;
+        while (i < cursor.end && i - tagStart < 48) {
+            char c = text.charAt(i);
+            if (c == '[' || c == ':' || c == ' ') {
+                break;
+            }
+            i++;
+        }
+        if (i > tagStart && i < cursor.end) {
+            char c = text.charAt(i);
+            if (c == '[') {
+                int close = text.indexOf(']', i);
+                if (close > 0 && close + 1 < cursor.end && text.charAt(close + 1) == ':') {
+                    fields.appName = text.substring(tagStart, i);
+                    fields.procId = text.substring(i + 1, close);
+                    cursor.position = close + 2;
+                }
+            } else if (c == ':') {
+                fields.appName = text.substring(tagStart, i);
+                cursor.position = i + 1;
+            }
+        }
+        if (cursor.peek() == ' ') {
+            cursor.position++;
+        }
+        fields.message = cursor.rest();
+    }
+
+    /**
+     * Parse an RFC 3339 timestamp into local time, reusing the last result
+     * for the same text: a burst of messages mostly shares its timestamps
+     */
+    private LocalDateTime isoTimestamp(String value) {
+        ParsedTimestamp last = lastTimestamp;
+        if (last != null && last.text.equals(value)) {
+            return last.timestamp;
+        }
+        LocalDateTime timestamp = rfc3339(value);
+        if (timestamp == null) {
+            try {
+                timestamp = LocalDateTime.ofInstant(OffsetDateTime.parse(value).toInstant(), zone);
+            } catch (DateTimeParseException e) {
+                return null;
+            }
+        }
+        lastTimestamp = new ParsedTimestamp(value, timestamp);
+        return timestamp;
+    }
+
+    /**
+     * {@code yyyy-MM-ddTHH:mm:ss[.fraction](Z|+hh:mm|-hh:mm)} read by position,
+     * or null for anything else, which is left to the full parser
+     */
+    private LocalDateTime rfc3339(String value) {
+        int length = value.length();
+        if (length < 20 || value.charAt(4) != '-' || value.charAt(7) != '-' || value.charAt(10) != 'T'
+                || value.charAt(13) != ':' || value.charAt(16) != ':') {
+            return null;
+        }
+        int year = number(value, 0, 4);
+        int month = number(value, 5, 2);
+        int day = number(value, 8, 2);
+        int hour = number(value, 11, 2);
+        int minute = number(value, 14, 2);
+        int second = number(value, 17, 2);
+        int i = 19;
+        int nanos = 0;
+        if (value.charAt(i) == '.') {
+            int digits = 0;
+            i++;
+            while (i < length && Character.isDigit(value.charAt(i))) {
+                if (digits < 9) {
+                    nanos = nanos * 10 + (value.charAt(i) - '0');
+                    digits++;
+                }
+                i++;
+            }
+            if (digits == 0) {
+                return null;
+            }
+            for (; digits < 9; digits++) {
+                nanos *= 10;
+            }
+        }
+        if (i >= length) {
+            return null;
+        }
+        int offsetSeconds;
+        char sign = value.charAt(i);
+        if (sign == 'Z' && i + 1 == length) {
+            offsetSeconds = 0;
+        } else if ((sign == '+' || sign == '-') && i + 6 == length && value.charAt(i + 3) == ':') {
+            int offsetHours = number(value, i + 1, 2);
+            int offsetMinutes = number(value, i + 4, 2);
+            if (offsetHours < 0 || offsetHours > 18 || offsetMinutes < 0 || offsetMinutes > 59) {
+                return null;
+            }
+            offsetSeconds = (sign == '-' ? -1 : 1) * (offsetHours * 3600 + offsetMinutes * 60);
+        } else {
+            return null;
+        }
+        if (year < 0 || month < 0 || day < 0 || hour < 0 || minute < 0 || second < 0) {
+            return null;
+        }
+        try {
+            LocalDateTime timestamp = LocalDateTime.of(year, month, day, hour, minute, second, nanos);
+            ZoneOffset offset = ZoneOffset.ofTotalSeconds(offsetSeconds);
+            if (offset.equals(zone.getRules().getOffset(timestamp.toInstant(offset)))) {
+                return timestamp;
+            }
+            return LocalDateTime.ofInstant(timestamp.toInstant(offset), zone);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Value of a run of digits, or -1 if one of them is not a digit
+     */
+    private static int number(String value, int from, int count) {
+        int result = 0;
+        for (int i = from; i < from + count; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    /**
+     * Map a syslog severity to a level, like journal priorities
+     */
+    static LogLevel level(int severity) {
+        switch (severity) {
+            case 0:
+            case 1:
+            case 2:
+                return LogLevel.FATAL;
+            case 3:
+                return LogLevel.ERROR;
+            case 4:
+                return LogLevel.WARN;
+            case 7:
+                return LogLevel.DEBUG;
+            default:
+                return LogLevel.INFO;
+        }
+    }
+
+    private static String facility(int code) {
+        return code < FACILITIES.length ? FACILITIES[code] : Integer.toString(code);
+    }
+
+    private static final class ParsedTimestamp {
+        private final String text;
+        private final LocalDateTime timestamp;
+
+        ParsedTimestamp(String text, LocalDateTime timestamp) {
+            this.text = text;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * Fields read from the header
+     */
+    private static class Fields {
+        private boolean rfc5424;
+        private LocalDateTime timestamp;
+        private String hostname;
+        private String appName;
+        private String procId;
+        private String msgId;
+        private Map<String, String> structuredData;
+        private String message;
+    }
+
+    /**
+     * Position in the message being parsed
+     */
+    private final class Cursor {
+        private final String text;
+        private final int end;
+        private int position;
+
+        Cursor(String text, int end) {
+            this.text = text;
+            this.end = end;
+        }
+
+        char peek() {
+            return position < end ? text.charAt(position) : 0;
+        }
+
+        /**
+         * Read {@code <PRI>}, or return -1 and stay put if there is none
+         */
+        int priority() {
+            if (peek() != '<') {
+                return -1;
+            }
+            int value = 0;
+            int i = position + 1;
+            while (i < end && i - position <= 4 && Character.isDigit(text.charAt(i))) {
+                value = value * 10 + (text.charAt(i) - '0');
+                i++;
+            }
+            if (i == position + 1 || i >= end || text.charAt(i) != '>' || value > 191) {
+                return -1;
+            }
+            position = i + 1;
+            return value;
+        }
+
+        /**
+         * The only version RFC 5424 defines, followed by a space
+         */
+        boolean versionFollows() {
+            return text.startsWith("1 ", position);
+        }
+
+        boolean isoTimestampFollows() {
+            return position + 10 < end && Character.isDigit(text.charAt(position))
+                && Character.isDigit(text.charAt(position + 3)) && text.charAt(position + 4) == '-';
+        }
+
+        /**
+         * The next space-separated token, consuming the space after it
+         */
+        String token() {
+            if (position >= end) {
+                return null;
+            }
+            int space = text.indexOf(' ', position);
+            if (space < 0 || space > end) {
+                space = end;
+            }
+            String token = text.substring(position, space);
+            position = Math.min(space + 1, end);
+            return token;
+        }
+
+        String nilOrToken() {
+            String token = token();
+            return token == null || token.equals("-") ? null : token;
+        }
+
+        String rest() {
+            return position < end ? text.substring(position, end) : "";
+        }
+
+        /**
+         * Read {@code Mmm dd hh:mm:ss }, or return null and stay put
+         */
+        LocalDateTime bsdTimestamp() {
+            if (position + 16 > end || text.charAt(position + 3) != ' ' || text.charAt(position + 6) != ' '
+                    || text.charAt(position + 9) != ':' || text.charAt(position + 12) != ':'
+                    || text.charAt(position + 15) != ' ') {
+                return null;
+            }
+            int month = -1;
+            for (int m = 0; m < MONTHS.length; m++) {
+                if (text.regionMatches(position, MONTHS[m], 0, 3)) {
+                    month = m + 1;
+                    break;
+                }
+            }
+            int day = digits(position + 4, 2);
+            int hour = digits(position + 7, 2);
+            int minute = digits(position + 10, 2);
+            int second = digits(position + 13, 2);
+            if (month < 0 || day < 1 || day > 31 || hour < 0 || hour > 23 || minute < 0 || minute > 59
+                    || second < 0 || second > 60) {
+                return null;
+            }
+            LocalDateTime now = LocalDateTime.now(zone);
+            LocalDateTime timestamp;
+            try {
+                timestamp = LocalDateTime.of(now.getYear(), month, day, hour, minute, Math.min(second, 59));
+            } catch (DateTimeException e) {
+                return null;
+            }
+            if (timestamp.isAfter(now.plusDays(1))) {
+                // A December message read in January: the format has no year
+                timestamp = timestamp.minusYears(1);
+            }
+            position += 16;
+            return timestamp;
+        }
+
+        /**
+         * Value of a fixed-width number, where the first digit may be a space; -1 if not a number
+         */
+        private int digits(int from, int count) {
+            int value = 0;
+            for (int i = from; i < from + count; i++) {
+                char c = text.charAt(i);
+                if (c == ' ' && i == from) {
+                    continue;
+                }
+                if (c < '0' || c > '9') {
+                    return -1;
+                }
+                value = value * 10 + (c - '0');
+            }
+            return value;
+        }
+
+        /**
+         * Read {@code [SD-ID PARAM="VALUE" ...]...} into metadata names and values
+         *
+         * @return false if the structured data is malformed
+         */
+        boolean structuredData(Map<String, String> parameters) {
+            while (peek() == '[') {
+                position++;
+                int idStart = position;
+                while (position < end && text.charAt(position) != ' ' && text.charAt(position) != ']') {
+                    position++;
+                }
+                if (position == idStart || position >= end) {
+                    return false;
+                }
+                String id = text.substring(idStart, position);
+                while (peek() == ' ') {
+                    position++;
+                    int nameStart = position;
+                    while (position < end && text.charAt(position) != '=') {
+                        position++;
+                    }
+                    if (position + 1 >= end || text.charAt(position + 1) != '"') {
+                        return false;
+                    }
+                    String name = text.substring(nameStart, position);
+                    position += 2;
+                    String value = quoted();
+                    if (value == null) {
+                        return false;
+                    }
+                    parameters.put("sd." + id + "." + name, value);
+                }
+                if (peek() != ']') {
+                    return false;
+                }
+                position++;
+            }
+            return true;
+        }
+
+        /**
+         * Read a parameter value up to its closing quote, resolving {@code \" \\ \]}
+         */
+        private String quoted() {
+            int start = position;
+            StringBuilder unescaped = null;
+            while (position < end) {
+                char c = text.charAt(position);
+                if (c == '"') {
+                    String value = unescaped != null
+                        ? unescaped.append(text, start, position).toString()
+                        : text.substring(start, position);
+                    position++;
+                    return value;
+                }
+                if (c == '\\' && position + 1 < end) {
+                    char next = text.charAt(position + 1);
+                    if (next == '"' || next == '\\' || next == ']') {
+                        if (unescaped == null) {
+                            unescaped = new StringBuilder();
+                        }
+                        unescaped.append(text, start, position).append(next);
+                        position += 2;
+                        start = position;
+                        continue;
+                    }
+                }
+                position++;
+            }
+            return null;
+        }
+    }
+}
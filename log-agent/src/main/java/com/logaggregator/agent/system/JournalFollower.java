@@ -0,0 +1,271 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.system;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.common.LogEntry;
+import com.logaggregator.common.LogLevel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Follows the systemd journal through one long-running
+ * {@code journalctl --follow --output=json} process.
+ *
+ * Each record carries a cursor. The cursor of the last acknowledged record
+ * is written to a cursor file, and the process is started again after it
+ * when the agent restarts or a batch fails, so records are neither skipped
+ * nor, unless a batch failed, sent twice. Without a cursor file, following
+ * starts with the next new record.
+ */
+public class JournalFollower extends SystemLogFollower {
+
+    private static final Logger logger = LoggerFactory.getLogger(JournalFollower.class);
+
+    private final LogAgentConfig config;
+    private final Path cursorFile;
+    private final Function<String, List<String>> command;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private volatile Process process;
+    private BufferedReader output;
+    private OrderedCommits<String> commits;
+    private volatile String committedCursor;
+    // First record read while nothing was committed yet, so a rewind can start there
+    private String firstCursor;
+    private String flushedCursor;
+
+    public JournalFollower(LogAgentConfig config, Path cursorFile, BatchSink sink) {
+        this(config, cursorFile, sink, JournalFollower::journalctl);
+    }
+
+    /**
+     * @param command builds the command line from the journalctl option that says where to start
+     */
+    JournalFollower(LogAgentConfig config, Path cursorFile, BatchSink sink,
+                    Function<String, List<String>> command) {
+        super("journal-follower", sink, config.getSystemLogPollIntervalMs());
+        this.config = config;
+        this.cursorFile = cursorFile;
+        this.command = command;
+        this.committedCursor = readCursor(cursorFile);
+        this.flushedCursor = committedCursor;
+    }
+
+    private static List<String> journalctl(String startOption) {
+        return List.of("journalctl", "--follow", "--output=json", "--no-pager", startOption);
+    }
+
+    private static String readCursor(Path cursorFile) {
+        try {
+            if (cursorFile != null && Files.exists(cursorFile)) {
+                String cursor = Files.readString(cursorFile, StandardCharsets.UTF_8).trim();
+                return cursor.isEmpty() ? null : cursor;
+            }
+        } catch (IOException e) {
+            logger.warn("Could not read journal cursor {}: {}", cursorFile, e.getMessage());
+        }
+        return null;
+    }
+
+    @Override
+    protected boolean poll() throws IOException, InterruptedException {
+        if (commits != null && commits.takeFailure()) {
+            rewinds.incrementAndGet();
+            logger.warn("Sending journal records failed, reading again after {}", committedCursor);
+            release();
+        }
+        if (process == null) {
+            open();
+        }
+
+        String line = output.readLine();
+        if (line == null) {
+            // journalctl exited; started again after the poll interval
+            release();
+            return false;
+        }
+
+        List<LogEntry> entries = new ArrayList<>();
+        String cursor = null;
+        do {
+            linesRead.incrementAndGet();
+            JsonNode record;
+            try {
+                record = objectMapper.readTree(line);
+            } catch (JsonProcessingException e) {
+                logger.debug("Skipping unreadable journal record: {}", e.getMessage());
+                continue;
+            }
+            String recordCursor = record.path("__CURSOR").asText(null);
+            if (recordCursor != null) {
+                cursor = recordCursor;
+                if (firstCursor == null && committedCursor == null) {
+                    firstCursor = recordCursor;
+                }
+            }
+            LogEntry entry = toLogEntry(record);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        } while (entries.size() < config.getBatchSize() && output.ready() && (line = output.readLine()) != null);
+
+        if (cursor != null) {
+            sendBatch(entries, commits, cursor);
+        }
+        return true;
+    }
+
+    private void open() throws IOException {
+        String cursor = committedCursor;
+        String startOption = cursor != null ? "--after-cursor=" + cursor
+            : firstCursor != null ? "--cursor=" + firstCursor : "--lines=0";
+        process = new ProcessBuilder(command.apply(startOption))
+            .redirectError(ProcessBuilder.Redirect.DISCARD)
+            .start();
+        output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        commits = new OrderedCommits<>(committed -> committedCursor = committed);
+        logger.info("Following the journal with {}", startOption.startsWith("--lines") ? "new records" : startOption);
+    }
+
+    /**
+     * Turn a journal record into an entry, or null if it has no message
+     */
+    LogEntry toLogEntry(JsonNode record) {
+        String message = text(record.get("MESSAGE"));
+        if (message == null || message.isEmpty()) {
+            return null;
+        }
+
+        LogEntry entry = new LogEntry(config.getAgentId() + ":journal", level(record.path("PRIORITY").asText()), message);
+        entry.setHostname(config.getHostname());
+        String identifier = text(record.get("SYSLOG_IDENTIFIER"));
+        if (identifier == null) {
+            identifier = text(record.get("_COMM"));
+        }
+        entry.setApplication(identifier != null ? identifier : "journal");
+        long micros = record.path("__REALTIME_TIMESTAMP").asLong(0);
+        if (micros > 0) {
+            Instant instant = Instant.ofEpochSecond(micros / 1_000_000, (micros % 1_000_000) * 1000);
+            entry.setTimestamp(LocalDateTime.ofInstant(instant, ZoneId.systemDefault()));
+        }
+        entry.addMetadata("agent_id", config.getAgentId());
+        String pid = text(record.get("_PID"));
+        if (pid != null) {
+            entry.addMetadata("pid", pid);
+        }
+        String unit = text(record.get("_SYSTEMD_UNIT"));
+        if (unit != null) {
+            entry.addMetadata("systemd_unit", unit);
+        }
+        entry.addTag("log_type", "system");
+        entry.addTag("os", "unix");
+        return entry;
+    }
+
+    /**
+     * Field value as text; journalctl writes non-UTF-8 values as arrays of bytes
+     */
+    private static String text(JsonNode field) {
+        if (field == null || field.isNull()) {
+            return null;
+        }
+        if (field.isArray()) {
+            byte[] bytes = new byte[field.size()];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte) field.get(i).asInt();
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        return field.asText();
+    }
+
+    /**
+     * Map a syslog priority (0 emerg .. 7 debug) to a level
+     */
+    private static LogLevel level(String priority) {
+        switch (priority) {
+            case "0":
+            case "1":
+            case "2":
+                return LogLevel.FATAL;
+            case "3":
+                return LogLevel.ERROR;
+            case "4":
+                return LogLevel.WARN;
+            case "7":
+                return LogLevel.DEBUG;
+            default:
+                return LogLevel.INFO;
+        }
+    }
+
+    @Override
+    protected void release() {
+        Process current = process;
+        process = null;
+        if (current != null) {
+            current.destroy();
+            try {
+                output.close();
+            } catch (IOException e) {
+                logger.debug("Error closing journalctl output: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Write the cursor of the last acknowledged record, if it moved
+     */
+    @Override
+    public synchronized void flush() {
+        String cursor = committedCursor;
+        if (cursorFile == null || cursor == null || cursor.equals(flushedCursor)) {
+            return;
+        }
+        try {
+            Files.createDirectories(cursorFile.toAbsolutePath().getParent());
+            Path temp = cursorFile.resolveSibling(cursorFile.getFileName() + ".tmp");
+            Files.writeString(temp, cursor, StandardCharsets.UTF_8);
+            try {
+                Files.move(temp, cursorFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, cursorFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            flushedCursor = cursor;
+        } catch (IOException e) {
+            logger.warn("Could not write journal cursor {}: {}", cursorFile, e.getMessage());
+        }
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = super.getStats();
+        stats.put("cursor_file", String.valueOf(cursorFile));
+        stats.put("has_cursor", committedCursor != null);
+        return stats;
+    }
+}
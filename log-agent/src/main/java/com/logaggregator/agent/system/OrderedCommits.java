@@ -0,0 +1,77 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.system;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Commits read positions in the order the batches were read.
+ *
+ * Acks may arrive out of order, so each batch's position is committed
+ * only once it and every batch before it have been acknowledged. After a
+ * failed batch nothing further is committed until the reader has taken
+ * the failure and rewound to the last committed position. Batches are
+ * tagged with the generation they were read in, so the batches still in
+ * flight behind a failure, which fail with it, are ignored once the reader
+ * has rewound instead of making it rewind again.
+ */
+final class OrderedCommits<T> {
+
+    private final Consumer<T> committer;
+    private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+    private int generation;
+    private boolean failed;
+
+    OrderedCommits(Consumer<T> committer) {
+        this.committer = committer;
+    }
+
+    /**
+     * Commit a position once the batch ending at it, and all before it, are acknowledged
+     */
+    synchronized void add(CompletableFuture<Void> send, T position) {
+        int batchGeneration = generation;
+        tail = tail.thenCombine(send, (previous, sent) -> (Void) null)
+            .whenComplete((result, throwable) -> completed(batchGeneration, position, throwable));
+    }
+
+    private synchronized void completed(int batchGeneration, T position, Throwable throwable) {
+        if (batchGeneration != generation) {
+            // Read before the last rewind, which reads it again
+            return;
+        }
+        if (throwable != null) {
+            failed = true;
+        } else {
+            committer.accept(position);
+        }
+    }
+
+    /**
+     * Check for a failed batch, starting a new generation if there was one
+     *
+     * @return true if the reader has to rewind to the last committed position
+     */
+    synchronized boolean takeFailure() {
+        if (!failed) {
+            return false;
+        }
+        failed = false;
+        generation++;
+        tail = CompletableFuture.completedFuture(null);
+        return true;
+    }
+
+    /**
+     * Check whether every batch added so far has been acknowledged and committed
+     */
+    synchronized boolean isCommitted() {
+        return tail.isDone() && !failed;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.system;
+
+import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.agent.service.CheckpointService;
+import com.logaggregator.agent.tail.FileIdentity;
+import com.logaggregator.agent.tail.FileTailReader;
+import com.logaggregator.common.LogEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.function.Function;
+
+/**
+ * Follows a syslog file such as /var/log/syslog.
+ *
+ * Offsets are committed to the {@link CheckpointService} under the file's
+ * identity, as for tailed log files, so a restart resumes after the last
+ * acknowledged line. Only the very first file starts at its end when it
+ * has no checkpoint; after a rotation the old file is read to its end,
+ * and held until its last lines are acknowledged, before the new one is
+ * read from its start, so no line falls between the two.
+ */
+public class SystemLogFileFollower extends SystemLogFollower {
+
+    private static final Logger logger = LoggerFactory.getLogger(SystemLogFileFollower.class);
+
+    static final String SYSTEM_LOG_KEY_PREFIX = "system-log#";
+
+    private final LogAgentConfig config;
+    private final Path path;
+    private final CheckpointService checkpointService;
+    private final Function<String, LogEntry> parser;
+    private boolean startAtEnd = true;
+    private volatile FileTailReader reader;
+    private FileIdentity identity;
+    private OrderedCommits<Long> commits;
+    private volatile long committedOffset;
+
+    public SystemLogFileFollower(LogAgentConfig config, Path path, CheckpointService checkpointService,
+                                 Function<String, LogEntry> parser, BatchSink sink) {
+        super("system-log-follower", sink, config.getSystemLogPollIntervalMs());
+        this.config = config;
+        this.path = path;
+        this.checkpointService = checkpointService;
+        this.parser = parser;
+    }
+
+    /**
+     * Checkpoint key of a followed system log file
+     */
+    public static String checkpointKey(FileIdentity identity) {
+        return SYSTEM_LOG_KEY_PREFIX + identity.asKey();
+    }
+
+    /**
+     * Check whether a checkpoint key belongs to a followed system log file
+     */
+    public static boolean isSystemLogKey(String key) {
+        return key.startsWith(SYSTEM_LOG_KEY_PREFIX);
+    }
+
+    @Override
+    protected boolean poll() throws IOException, InterruptedException {
+        if (reader == null && !open()) {
+            return false;
+        }
+        if (commits.takeFailure()) {
+            rewinds.incrementAndGet();
+            logger.warn("Sending lines of {} failed, reading again from {}", path, committedOffset);
+            reader.setPosition(committedOffset);
+        }
+        if (readBatch() > 0) {
+            return true;
+        }
+        if (isRotated()) {
+            if (!commits.isCommitted()) {
+                // Keep the old file until its last lines are acknowledged, a failure reads them again
+                return false;
+            }
+            logger.info("{} was rotated, following the new file", path);
+            release();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Open the file at the path and find where to continue
+     */
+    private boolean open() throws IOException {
+        if (!Files.isReadable(path)) {
+            return false;
+        }
+        FileTailReader opened = new FileTailReader(path,
+            Charset.forName(config.getFileEncoding()), config.getReadBufferSizeBytes());
+        FileIdentity openedIdentity = FileIdentity.of(fileKey(), opened.getChannel(), config.getFingerprintBytes());
+        if (openedIdentity == null) {
+            // Nothing complete to read yet
+            opened.close();
+            return false;
+        }
+
+        long size = opened.size();
+        String checkpointKey = checkpointKey(openedIdentity);
+        OptionalLong committed = checkpointService.getOffset(checkpointKey);
+        long start;
+        if (openedIdentity.equals(identity)) {
+            // Reopened after an error: continue after the last acknowledged line
+            start = Math.min(committedOffset, size);
+        } else if (committed.isPresent() && committed.getAsLong() <= size) {
+            start = committed.getAsLong();
+        } else {
+            start = startAtEnd ? size : 0;
+        }
+        opened.setPosition(start);
+        startAtEnd = false;
+
+        if (identity != null && !identity.equals(openedIdentity)) {
+            // The rotated file was read to its end
+            checkpointService.remove(checkpointKey(identity));
+        }
+        identity = openedIdentity;
+        committedOffset = start;
+        commits = new OrderedCommits<>(offset -> {
+            committedOffset = offset;
+            checkpointService.commit(checkpointKey, offset);
+        });
+        reader = opened;
+        logger.info("Following system log {} from offset {}", path, start);
+        return true;
+    }
+
+    private int readBatch() throws IOException, InterruptedException {
+        List<LogEntry> entries = new ArrayList<>();
+        int lines = reader.readLines(config.getBatchSize(), (line, endOffset) -> {
+            LogEntry entry = parser.apply(line);
+            if (entry != null) {
+                entry.addMetadata("file_path", path.toString());
+                entries.add(entry);
+            }
+        });
+        if (lines > 0) {
+            linesRead.addAndGet(lines);
+            sendBatch(entries, commits, reader.getPosition());
+        }
+        return lines;
+    }
+
+    /**
+     * Check whether the path now holds a different file, or the file was truncated
+     */
+    private boolean isRotated() throws IOException {
+        try {
+            Object fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+            return (fileKey != null && !fileKey.toString().equals(identity.getFileKey()))
+                || reader.size() < reader.getPosition();
+        } catch (NoSuchFileException e) {
+            // Renamed away and not recreated yet: keep reading the old file
+            return false;
+        }
+    }
+
+    private String fileKey() throws IOException {
+        Object fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        return fileKey != null ? fileKey.toString() : path.toAbsolutePath().toString();
+    }
+
+    @Override
+    protected void release() {
+        FileTailReader current = reader;
+        reader = null;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                logger.debug("Error closing {}: {}", path, e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        // Offsets are flushed by the CheckpointService
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = super.getStats();
+        stats.put("path", path.toString());
+        stats.put("committed_offset", committedOffset);
+        return stats;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.system;
+
+import com.logaggregator.common.LogEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-lived reader of the operating system log, run on its own thread.
+ *
+ * Subclasses read whatever is available in {@link #poll()} and hand it to
+ * the {@link BatchSink} in batches; the loop sleeps for the poll interval
+ * only when there was nothing to read. Positions are committed through
+ * {@link OrderedCommits}, so a restart resumes after the last line that
+ * was acknowledged.
+ */
+public abstract class SystemLogFollower {
+
+    private static final Logger logger = LoggerFactory.getLogger(SystemLogFollower.class);
+
+    /**
+     * Sends a batch of entries, completing once they are acknowledged
+     */
+    @FunctionalInterface
+    public interface BatchSink {
+        CompletableFuture<Void> send(List<LogEntry> entries) throws InterruptedException;
+    }
+
+    protected final BatchSink sink;
+    protected final AtomicLong linesRead = new AtomicLong(0);
+    protected final AtomicLong batchesSent = new AtomicLong(0);
+    protected final AtomicLong rewinds = new AtomicLong(0);
+    private final String name;
+    private final long pollIntervalMs;
+    private volatile boolean isRunning = false;
+    private Thread thread;
+
+    protected SystemLogFollower(String name, BatchSink sink, long pollIntervalMs) {
+        this.name = name;
+        this.sink = sink;
+        this.pollIntervalMs = pollIntervalMs;
+    }
+
+    public synchronized void start() {
+        if (isRunning) {
+            return;
+        }
+        isRunning = true;
+        thread = new Thread(this::follow, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        if (!isRunning) {
+            return;
+        }
+        isRunning = false;
+        thread.interrupt();
+        // Unblocks a reader waiting for input
+        release();
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    protected boolean isRunning() {
+        return isRunning;
+    }
+
+    private void follow() {
+        while (isRunning) {
+            try {
+                if (!poll()) {
+                    Thread.sleep(pollIntervalMs);
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                if (!isRunning) {
+                    break;
+                }
+                logger.warn("Error following {}: {}", name, e.getMessage());
+                release();
+                try {
+                    Thread.sleep(pollIntervalMs);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+            }
+        }
+        release();
+    }
+
+    /**
+     * Read and send what is available
+     *
+     * @return false if there was nothing to read
+     */
+    protected abstract boolean poll() throws Exception;
+
+    /**
+     * Close the open file or stream; the next poll opens it again
+     */
+    protected abstract void release();
+
+    /**
+     * Make the last committed position durable
+     */
+    public abstract void flush();
+
+    /**
+     * Send a batch and commit the position after it once it is acknowledged
+     */
+    <T> void sendBatch(List<LogEntry> entries, OrderedCommits<T> commits, T position) throws InterruptedException {
+        CompletableFuture<Void> sent = entries.isEmpty() ? CompletableFuture.completedFuture(null) : sink.send(entries);
+        batchesSent.incrementAndGet();
+        commits.add(sent, position);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("follower", name);
+        stats.put("is_running", isRunning);
+        stats.put("lines_read", linesRead.get());
+        stats.put("batches_sent", batchesSent.get());
+        stats.put("rewinds", rewinds.get());
+        return stats;
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.tail;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the lines of a compressed log file (gzip or zstd) in one streaming
+ * pass. Memory use is bounded by the read buffer and the longest line,
+ * regardless of the archive size. The format is detected from the magic
+ * bytes, not the file name.
+ *
+ * Offsets refer to the decompressed content, so they line up with the
+ * offsets of the original log file. Unlike {@link FileTailReader} a
+ * trailing line without a newline is delivered, since an archive does not
+ * grow any more.
+ */
+public class ArchiveReader implements Closeable {
+
+    private static final byte[] GZIP_MAGIC = {(byte) 0x1f, (byte) 0x8b};
+    private static final byte[] ZSTD_MAGIC = {(byte) 0x28, (byte) 0xb5, (byte) 0x2f, (byte) 0xfd};
+    private static final int TRAILER_BYTES = 16;
+
+    private final Path filePath;
+    private final Charset charset;
+    private final String format;
+    private final InputStream input;
+    private byte[] buffer;
+    private int bufferPos;
+    private int bufferLimit;
+    private byte[] carry = new byte[256];
+    private int carryLength;
+    private long position;
+    private boolean eof;
+
+    public ArchiveReader(Path filePath, Charset charset, int bufferSize) throws IOException {
+        this.filePath = filePath;
+        this.charset = charset;
+        this.buffer = new byte[bufferSize];
+
+        InputStream raw = new BufferedInputStream(Files.newInputStream(filePath), bufferSize);
+        try {
+            raw.mark(ZSTD_MAGIC.length);
+            byte[] magic = raw.readNBytes(ZSTD_MAGIC.length);
+            raw.reset();
+            if (startsWith(magic, GZIP_MAGIC)) {
+                this.format = "gzip";
+                this.input = new GZIPInputStream(raw, bufferSize);
+            } else if (startsWith(magic, ZSTD_MAGIC)) {
+                this.format = "zstd";
+                this.input = new ZstdInputStream(raw);
+            } else {
+                throw new IOException("Unsupported archive format: " + filePath);
+            }
+        } catch (IOException | RuntimeException e) {
+            raw.close();
+            throw e;
+        }
+    }
+
+    private static boolean startsWith(byte[] data, byte[] prefix) {
+        return data.length >= prefix.length && Arrays.equals(data, 0, prefix.length, prefix, 0, prefix.length);
+    }
+
+    public Path getFilePath() { return filePath; }
+    public String getFormat() { return format; }
+
+    /**
+     * Offset in the decompressed content just past the last delivered line
+     */
+    public long getPosition() { return position; }
+
+    /**
+     * Check whether every line has been delivered
+     */
+    public boolean isFinished() {
+        return eof && bufferPos == bufferLimit && carryLength == 0;
+    }
+
+    /**
+     * Checksum of the decompressed head, computed like {@link FileIdentity}
+     * so an archive can be matched with the log file it was compressed from.
+     * Must be called before any line is read.
+     *
+     * @return the checksum, or null for an empty archive
+     */
+    public Long headChecksum(int headBytes) throws IOException {
+        if (buffer.length < headBytes) {
+            buffer = Arrays.copyOf(buffer, headBytes);
+        }
+        while (!eof && bufferLimit < headBytes) {
+            int read = input.read(buffer, bufferLimit, buffer.length - bufferLimit);
+            if (read < 0) {
+                eof = true;
+            } else {
+                bufferLimit += read;
+            }
+        }
+
+        int length = Math.min(bufferLimit, headBytes);
+        Long checksum = FileIdentity.headChecksum(buffer, length, headBytes);
+        if (checksum == null && length > 0) {
+            // A single unterminated line is final in an archive
+            CRC32 crc = new CRC32();
+            crc.update(buffer, 0, length);
+            checksum = crc.getValue();
+        }
+        return checksum;
+    }
+
+    /**
+     * Checksum of the compressed file's size and last bytes. The gzip
+     * trailer holds the CRC32 and length of the decompressed content and
+     * the zstd tools end a frame with a content checksum, so archives with
+     * the same head are still told apart.
+     */
+    public long trailerChecksum() throws IOException {
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer trailer = ByteBuffer.allocate((int) Math.min(size, TRAILER_BYTES));
+            long start = size - trailer.capacity();
+            while (trailer.hasRemaining() && channel.read(trailer, start + trailer.position()) >= 0) {
+                // keep reading
+            }
+            CRC32 crc = new CRC32();
+            crc.update(trailer.array(), 0, trailer.position());
+            crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, size));
+            return crc.getValue();
+        }
+    }
+
+    /**
+     * Read up to maxLines lines
+     *
+     * @return the number of lines delivered to the handler, 0 once the archive is finished
+     */
+    public int readLines(int maxLines, FileTailReader.LineHandler handler) throws IOException {
+        int lines = 0;
+
+        while (lines < maxLines) {
+            if (bufferPos == bufferLimit && !fill()) {
+                if (carryLength > 0) {
+                    position += carryLength;
+                    String line = decode(carry, 0, carryLength);
+                    carryLength = 0;
+                    lines++;
+                    handler.onLine(line, position);
+                }
+                break;
+            }
+
+            int newline = -1;
+            for (int i = bufferPos; i < bufferLimit; i++) {
+                if (buffer[i] == '\n') {
+                    newline = i;
+                    break;
+                }
+            }
+
+            if (newline < 0) {
+                // Keep the unterminated tail until its newline shows up
+                appendCarry(bufferPos, bufferLimit - bufferPos);
+                bufferPos = bufferLimit;
+                continue;
+            }
+
+            // The carried bytes were read before this buffer, count them once
+            int carried = carryLength;
+            String line;
+            if (carryLength == 0) {
+                line = decode(buffer, bufferPos, newline - bufferPos);
+            } else {
+                appendCarry(bufferPos, newline - bufferPos);
+                line = decode(carry, 0, carryLength);
+            }
+            position += carried + (newline + 1 - bufferPos);
+            carryLength = 0;
+            bufferPos = newline + 1;
+            lines++;
+            handler.onLine(line, position);
+        }
+
+        return lines;
+    }
+
+    private boolean fill() throws IOException {
+        bufferPos = 0;
+        bufferLimit = 0;
+        while (!eof) {
+            int read = input.read(buffer);
+            if (read < 0) {
+                eof = true;
+            } else if (read > 0) {
+                bufferLimit = read;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void appendCarry(int from, int length) {
+        if (length <= 0) {
+            return;
+        }
+        int required = carryLength + length;
+        if (required > carry.length) {
+            carry = Arrays.copyOf(carry, Math.max(required, carry.length * 2));
+        }
+        System.arraycopy(buffer, from, carry, carryLength, length);
+        carryLength = required;
+    }
+
+    private String decode(byte[] bytes, int offset, int length) {
+        if (length > 0 && bytes[offset + length - 1] == '\r') {
+            length--;
+        }
+        return new String(bytes, offset, length, charset);
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.tail;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the modification time and subdirectories of every scanned
+ * directory, so repeated scans only list directories whose entries changed.
+ *
+ * Creating, deleting or renaming an entry updates the modification time of
+ * its directory, so an unchanged directory cannot hold new files. Its
+ * subdirectories are still visited, since their changes do not propagate
+ * upwards. A directory modified shortly before it was listed is listed
+ * again on the next scan, because a change in the same clock tick would
+ * leave its modification time unchanged.
+ */
+public class DirectoryScanIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(DirectoryScanIndex.class);
+
+    private static final long DEFAULT_RACY_WINDOW_MS = 2000;
+
+    /**
+     * Receives the directories and files found by a scan
+     */
+    public interface Visitor {
+        /**
+         * @return false to skip the directory and everything below it
+         */
+        boolean onDirectory(Path directory);
+
+        void onFile(Path file, BasicFileAttributes attrs);
+    }
+
+    private static class DirectoryState {
+        private final long lastModified;
+        private final boolean racy;
+        private final List<Path> subdirectories;
+
+        DirectoryState(long lastModified, boolean racy, List<Path> subdirectories) {
+            this.lastModified = lastModified;
+            this.racy = racy;
+            this.subdirectories = subdirectories;
+        }
+    }
+
+    private final Map<Path, DirectoryState> directories = new ConcurrentHashMap<>();
+    private final long racyWindowMs;
+    private final AtomicLong directoriesListed = new AtomicLong(0);
+    private final AtomicLong directoriesSkipped = new AtomicLong(0);
+    private final AtomicLong filesExamined = new AtomicLong(0);
+
+    public DirectoryScanIndex() {
+        this(DEFAULT_RACY_WINDOW_MS);
+    }
+
+    DirectoryScanIndex(long racyWindowMs) {
+        this.racyWindowMs = racyWindowMs;
+    }
+
+    /**
+     * Scan a directory tree, listing only directories that changed since
+     * the last scan unless a full scan is requested
+     */
+    public synchronized void scan(Path root, boolean full, Visitor visitor) {
+        long scanStart = System.currentTimeMillis();
+        Deque<Path> pending = new ArrayDeque<>();
+        pending.push(root);
+
+        while (!pending.isEmpty()) {
+            Path directory = pending.pop();
+
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(directory, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException e) {
+                forget(directory);
+                continue;
+            }
+            if (!attrs.isDirectory() || !visitor.onDirectory(directory)) {
+                forget(directory);
+                continue;
+            }
+
+            long lastModified = attrs.lastModifiedTime().toMillis();
+            DirectoryState state = directories.get(directory);
+            if (!full && state != null && !state.racy && state.lastModified == lastModified) {
+                directoriesSkipped.incrementAndGet();
+                state.subdirectories.forEach(pending::push);
+                continue;
+            }
+
+            List<Path> subdirectories = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes entryAttrs;
+                    try {
+                        entryAttrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        continue; // removed while listing
+                    }
+                    if (entryAttrs.isDirectory()) {
+                        subdirectories.add(entry);
+                        pending.push(entry);
+                    } else {
+                        filesExamined.incrementAndGet();
+                        visitor.onFile(entry, entryAttrs);
+                    }
+                }
+            } catch (IOException e) {
+                logger.debug("Skipping unreadable directory {}: {}", directory, e.getMessage());
+                forget(directory);
+                continue;
+            }
+            directoriesListed.incrementAndGet();
+
+            if (state != null) {
+                Set<Path> current = new HashSet<>(subdirectories);
+                for (Path previous : state.subdirectories) {
+                    if (!current.contains(previous)) {
+                        forget(previous);
+                    }
+                }
+            }
+            boolean racy = lastModified >= scanStart - racyWindowMs;
+            directories.put(directory, new DirectoryState(lastModified, racy, subdirectories));
+        }
+    }
+
+    /**
+     * Drop a directory and everything below it from the index
+     */
+    private void forget(Path directory) {
+        directories.keySet().removeIf(path -> path.startsWith(directory));
+    }
+
+    public int getIndexedDirectoryCount() { return directories.size(); }
+    public long getDirectoriesListed() { return directoriesListed.get(); }
+    public long getDirectoriesSkipped() { return directoriesSkipped.get(); }
+    public long getFilesExamined() { return filesExamined.get(); }
+}
@@ -0,0 +1,168 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.tail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * Identifies a log file independently of its current path.
+ *
+ * The identity combines the file system key (device and inode on Unix) with
+ * a checksum of the file head: the first line, or the first headBytes bytes
+ * when the first line is longer. The head of an append-only file never
+ * changes, so the identity survives renames, while an inode that is reused
+ * for a different file, or a file truncated and rewritten in place, gets a
+ * new identity. Files whose head is not complete yet have no identity.
+ */
+public final class FileIdentity {
+
+    private final String fileKey;
+    private final long headChecksum;
+
+    public FileIdentity(String fileKey, long headChecksum) {
+        this.fileKey = fileKey;
+        this.headChecksum = headChecksum;
+    }
+
+    /**
+     * Resolve the identity of the file currently at the given path
+     *
+     * @return the identity, or null while the head of the file is incomplete
+     */
+    public static FileIdentity of(Path path, int headBytes) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        Object key = attrs.fileKey();
+        String fileKey = key != null ? key.toString() : path.toAbsolutePath().toString();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return of(fileKey, channel, headBytes);
+        }
+    }
+
+    /**
+     * Resolve the identity of an already open file, e.g. one that has been renamed
+     *
+     * @return the identity, or null while the head of the file is incomplete
+     */
+    public static FileIdentity of(String fileKey, FileChannel channel, int headBytes) throws IOException {
+        Long checksum = headChecksum(channel, headBytes);
+        return checksum != null ? new FileIdentity(fileKey, checksum) : null;
+    }
+
+    /**
+     * Checksum of the file head, or null while the first line is incomplete
+     */
+    public static Long headChecksum(FileChannel channel, int headBytes) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(headBytes);
+        while (head.hasRemaining() && channel.read(head, head.position()) > 0) {
+            // keep reading until the head is full or EOF
+        }
+        return headChecksum(head.array(), head.position(), headBytes);
+    }
+
+    /**
+     * Checksum of a head read from any source, e.g. a decompressed archive
+     *
+     * @param length number of valid bytes in head, at most headBytes
+     * @return the checksum, or null while the first line is incomplete
+     */
+    public static Long headChecksum(byte[] head, int length, int headBytes) {
+        int end = -1;
+        for (int i = 0; i < length; i++) {
+            if (head[i] == '\n') {
+                end = i + 1;
+                break;
+            }
+        }
+        if (end < 0) {
+            if (length < headBytes) {
+                return null;
+            }
+            end = headBytes;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(head, 0, end);
+        return crc.getValue();
+    }
+
+    /**
+     * Head checksum encoded in a key produced by {@link #asKey()}
+     */
+    public static long headChecksumOfKey(String key) {
+        return Long.parseUnsignedLong(key.substring(key.lastIndexOf('#') + 1), 16);
+    }
+
+    /**
+     * Checksum of a line as a reader delivered it, used to recognise a copy
+     * of a file. Taken from the delivered line rather than from the file,
+     * which may already be truncated by the time the line is handled.
+     */
+    public static long lineChecksum(String line, Charset charset) {
+        CRC32 crc = new CRC32();
+        crc.update(line.getBytes(charset));
+        return crc.getValue();
+    }
+
+    /**
+     * Checksum of the line stored in [from, to), computed like {@link #lineChecksum(String, Charset)}
+     */
+    public static long lineChecksum(FileChannel channel, long from, long to, Charset charset) throws IOException {
+        ByteBuffer range = ByteBuffer.allocate((int) (to - from));
+        while (range.hasRemaining() && channel.read(range, from + range.position()) > 0) {
+            // keep reading until the range is full or EOF
+        }
+
+        byte[] bytes = range.array();
+        int length = range.position();
+        if (length > 0 && bytes[length - 1] == '\n') {
+            length--;
+        }
+        if (length > 0 && bytes[length - 1] == '\r') {
+            length--;
+        }
+        return lineChecksum(new String(bytes, 0, length, charset), charset);
+    }
+
+    public String getFileKey() { return fileKey; }
+    public long getHeadChecksum() { return headChecksum; }
+
+    /**
+     * Stable string form, used as checkpoint key
+     */
+    public String asKey() {
+        return fileKey + "#" + Long.toHexString(headChecksum);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        FileIdentity other = (FileIdentity) obj;
+        return headChecksum == other.headChecksum && Objects.equals(fileKey, other.fileKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fileKey, headChecksum);
+    }
+
+    @Override
+    public String toString() {
+        return asKey();
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.tail;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Tails a log file through a FileChannel and a reusable direct ByteBuffer.
+ * Lines may span buffer boundaries; only complete, newline-terminated lines
+ * are handed out, and the position always points at the first byte after
+ * the last line that was delivered. Line splitting is done on the raw
+ * '\n' byte, so the charset must be ASCII compatible (UTF-8, ISO-8859-x, ...).
+ *
+ * For large backlogs the reader can also scan a read-only memory mapped
+ * window of the file in place (see {@link #readLinesMapped}), which avoids
+ * the read syscalls and buffer copies of the regular path.
+ */
+public class FileTailReader implements Closeable {
+
+    /**
+     * Receives decoded lines together with the byte offset just past the line.
+     */
+    @FunctionalInterface
+    public interface LineHandler {
+        void onLine(String line, long endOffset);
+    }
+
+    private final Path filePath;
+    private final Charset charset;
+    private final FileChannel channel;
+    private final ByteBuffer readBuffer;
+    private final byte[] chunk;
+    private byte[] carry = new byte[256];
+    private long position;
+
+    // Catch-up mode state
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    public FileTailReader(Path filePath, Charset charset, int bufferSize) throws IOException {
+        this.filePath = filePath;
+        this.charset = charset;
+        this.channel = FileChannel.open(filePath, StandardOpenOption.READ);
+        this.readBuffer = ByteBuffer.allocateDirect(bufferSize);
+        this.chunk = new byte[bufferSize];
+        this.position = 0;
+    }
+
+    public Path getFilePath() { return filePath; }
+    public Charset getCharset() { return charset; }
+    public FileChannel getChannel() { return channel; }
+
+    /**
+     * Offset of the first byte that has not been delivered as part of a line
+     */
+    public long getPosition() { return position; }
+
+    public void setPosition(long position) { this.position = position; }
+
+    /**
+     * Current size of the underlying file
+     */
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Read up to maxLines complete lines starting at the current position.
+     * A trailing line without a newline is left unread until it is completed.
+     *
+     * @return the number of lines delivered to the handler
+     */
+    public int readLines(int maxLines, LineHandler handler) throws IOException {
+        long readOffset = position;
+        int carryLength = 0;
+        int lines = 0;
+
+        while (lines < maxLines) {
+            readBuffer.clear();
+            int bytesRead = channel.read(readBuffer, readOffset);
+            if (bytesRead <= 0) {
+                break;
+            }
+            readBuffer.flip();
+            readBuffer.get(chunk, 0, bytesRead);
+
+            int segmentStart = 0;
+            for (int i = 0; i < bytesRead && lines < maxLines; i++) {
+                if (chunk[i] != '\n') {
+                    continue;
+                }
+
+                long endOffset = readOffset + i + 1;
+                String line;
+                if (carryLength == 0) {
+                    line = decode(chunk, segmentStart, i - segmentStart);
+                } else {
+                    carryLength = appendCarry(carryLength, segmentStart, i - segmentStart);
+                    line = decode(carry, 0, carryLength);
+                    carryLength = 0;
+                }
+
+                position = endOffset;
+                segmentStart = i + 1;
+                lines++;
+                handler.onLine(line, endOffset);
+            }
+
+            if (lines >= maxLines) {
+                break;
+            }
+
+            // Keep the unterminated tail of this chunk until its newline shows up
+            carryLength = appendCarry(carryLength, segmentStart, bytesRead - segmentStart);
+            readOffset += bytesRead;
+        }
+
+        // Anything after the last delivered line is re-read on the next call
+        return lines;
+    }
+
+    /**
+     * Read up to maxLines complete lines by scanning memory mapped windows of at
+     * most windowBytes, starting at the current position. Windows always begin
+     * on a line boundary; a single line longer than a window is handed over to
+     * the buffered path.
+     *
+     * @return the number of lines delivered to the handler
+     */
+    public int readLinesMapped(int maxLines, int windowBytes, LineHandler handler) throws IOException {
+        long size = channel.size();
+        int lines = 0;
+
+        try {
+            while (lines < maxLines && position < size) {
+                if (window == null || position < windowStart || position >= windowStart + window.limit()) {
+                    mapWindow(position, (int) Math.min(windowBytes, size - position));
+                }
+
+                int lineStart = (int) (position - windowStart);
+                int limit = window.limit();
+                int newline = -1;
+                for (int i = lineStart; i < limit; i++) {
+                    if (window.get(i) == '\n') {
+                        newline = i;
+                        break;
+                    }
+                }
+
+                if (newline < 0) {
+                    if (windowStart + limit >= size) {
+                        break; // unterminated line at EOF
+                    }
+                    if (lineStart == 0) {
+                        // Line does not fit into a single window
+                        releaseWindow();
+                        return lines + readLines(maxLines - lines, handler);
+                    }
+                    // Re-map so the next window starts at this line
+                    mapWindow(position, (int) Math.min(windowBytes, size - position));
+                    continue;
+                }
+
+                String line = decodeWindow(lineStart, newline - lineStart);
+                position = windowStart + newline + 1;
+                lines++;
+                handler.onLine(line, position);
+            }
+        } catch (InternalError e) {
+            // Raised by the JVM when a mapped page disappears, e.g. the file was truncated
+            releaseWindow();
+            throw new IOException("File changed underneath mapped window: " + filePath, e);
+        }
+
+        return lines;
+    }
+
+    /**
+     * Drop the current mapped window, if any
+     */
+    public void releaseWindow() {
+        window = null;
+    }
+
+    private void mapWindow(long start, int length) throws IOException {
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        windowStart = start;
+    }
+
+    private String decodeWindow(int offset, int length) {
+        if (length > 0 && window.get(offset + length - 1) == '\r') {
+            length--;
+        }
+        // Only the line itself is copied out; String's decoders are much faster on heap arrays
+        if (length > carry.length) {
+            carry = new byte[Math.max(length, carry.length * 2)];
+        }
+        window.get(offset, carry, 0, length);
+        return new String(carry, 0, length, charset);
+    }
+
+    private int appendCarry(int carryLength, int from, int length) {
+        if (length <= 0) {
+            return carryLength;
+        }
+        int required = carryLength + length;
+        if (required > carry.length) {
+            carry = Arrays.copyOf(carry, Math.max(required, carry.length * 2));
+        }
+        System.arraycopy(chunk, from, carry, carryLength, length);
+        return required;
+    }
+
+    private String decode(byte[] bytes, int offset, int length) {
+        if (length > 0 && bytes[offset + length - 1] == '\r') {
+            length--;
+        }
+        return new String(bytes, offset, length, charset);
+    }
+
+    @Override
+    public void close() throws IOException {
+        releaseWindow();
+        channel.close();
+    }
+}
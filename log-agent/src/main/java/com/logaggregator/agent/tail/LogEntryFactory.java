@@ -0,0 +1,103 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.tail;
+
+import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.agent.filter.EntryFilter;
+import com.logaggregator.common.LogEntry;
+import com.logaggregator.common.LogParser;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Turns lines read from log files into entries, shared by every reader of
+ * file content so live and archived files produce identical entries.
+ * Entries the {@link EntryFilter} drops come back as null, like blank
+ * lines; single lines it can settle from the raw text are not parsed.
+ */
+public class LogEntryFactory {
+
+    private final LogAgentConfig config;
+    private final EntryFilter entryFilter;
+    private final Pattern multilineStartPattern;
+    private final Pattern multilineContinuationPattern;
+
+    public LogEntryFactory(LogAgentConfig config, EntryFilter entryFilter) {
+        this.config = config;
+        this.entryFilter = entryFilter;
+        this.multilineStartPattern = config.isEnableMultiline()
+            ? compileOptional(config.getMultilineStartPattern()) : null;
+        this.multilineContinuationPattern = config.isEnableMultiline()
+            ? compileOptional(config.getMultilineContinuationPattern()) : null;
+    }
+
+    private static Pattern compileOptional(String regex) {
+        return regex == null || regex.isEmpty() ? null : Pattern.compile(regex);
+    }
+
+    /**
+     * Per-source multiline state, or null if multiline assembly is disabled
+     */
+    public MultilineAggregator createMultilineAggregator() {
+        if (!config.isEnableMultiline()
+                || (multilineStartPattern == null && multilineContinuationPattern == null)) {
+            return null;
+        }
+        return new MultilineAggregator(multilineStartPattern, multilineContinuationPattern,
+            config.getMultilineMaxLines(), config.getMultilineFlushTimeoutMs());
+    }
+
+    /**
+     * Parse a single line into an entry, or null for blank and filtered lines
+     */
+    public LogEntry createLogEntry(String sourceId, Path filePath, String line) {
+        if (line == null || line.trim().isEmpty()) {
+            return null;
+        }
+        EntryFilter.Verdict verdict = entryFilter.checkLine(sourceId, line);
+        if (verdict == EntryFilter.Verdict.DROP) {
+            return null;
+        }
+        LogEntry entry = parse(sourceId, filePath, line);
+        return entry != null && (verdict == EntryFilter.Verdict.KEEP || entryFilter.accept(entry)) ? entry : null;
+    }
+
+    private LogEntry parse(String sourceId, Path filePath, String line) {
+        LogEntry entry = LogParser.parseLine(line, sourceId);
+        if (entry != null) {
+            entry.setHostname(config.getHostname());
+            entry.addMetadata("agent_id", config.getAgentId());
+            entry.addMetadata("file_path", filePath.toString());
+        }
+        return entry;
+    }
+
+    /**
+     * Parse a multiline event: the first line determines format and fields,
+     * the continuation lines are appended to the message. The filter sees
+     * the whole event, so it is applied once the event is assembled.
+     */
+    public LogEntry createLogEntry(String sourceId, Path filePath, List<String> eventLines) {
+        if (eventLines.size() == 1) {
+            return createLogEntry(sourceId, filePath, eventLines.get(0));
+        }
+
+        String continuation = "\n" + String.join("\n", eventLines.subList(1, eventLines.size()));
+        LogEntry entry = parse(sourceId, filePath, eventLines.get(0));
+        if (entry == null) {
+            entry = parse(sourceId, filePath, String.join("\n", eventLines));
+            return entry != null && entryFilter.accept(entry) ? entry : null;
+        }
+        entry.setMessage(entry.getMessage() + continuation);
+        entry.setRawMessage((entry.getRawMessage() != null ? entry.getRawMessage() : eventLines.get(0)) + continuation);
+        entry.addMetadata("line_count", eventLines.size());
+        return entryFilter.accept(entry) ? entry : null;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.tail;
+
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Decides which files are log files, using glob patterns compiled once.
+ *
+ * Patterns are matched case-insensitively against the file name. A file is
+ * a log file if it matches an include pattern and no exclude pattern;
+ * exclude patterns also apply to directory names, pruning whole subtrees.
+ */
+public final class LogFileMatcher {
+
+    private final List<PathMatcher> includes;
+    private final List<PathMatcher> excludes;
+
+    public LogFileMatcher(List<String> includePatterns, List<String> excludePatterns) {
+        this.includes = compile(includePatterns);
+        this.excludes = compile(excludePatterns);
+    }
+
+    private static List<PathMatcher> compile(List<String> patterns) {
+        List<PathMatcher> matchers = new ArrayList<>();
+        if (patterns == null) {
+            return matchers;
+        }
+        FileSystem fileSystem = FileSystems.getDefault();
+        for (String pattern : patterns) {
+            if (pattern.isBlank()) {
+                continue;
+            }
+            matchers.add(fileSystem.getPathMatcher("glob:" + pattern.trim().toLowerCase(Locale.ROOT)));
+        }
+        return matchers;
+    }
+
+    /**
+     * Check if a file should be tailed
+     */
+    public boolean matches(Path file) {
+        Path name = normalizedName(file);
+        return name != null && anyMatch(includes, name) && !anyMatch(excludes, name);
+    }
+
+    /**
+     * Check if a file or directory is excluded
+     */
+    public boolean isExcluded(Path path) {
+        Path name = normalizedName(path);
+        return name != null && anyMatch(excludes, name);
+    }
+
+    private static boolean anyMatch(List<PathMatcher> matchers, Path name) {
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Path normalizedName(Path path) {
+        Path name = path.getFileName();
+        if (name == null) {
+            return null;
+        }
+        String value = name.toString();
+        String lowerCase = value.toLowerCase(Locale.ROOT);
+        return lowerCase.equals(value) ? name : name.getFileSystem().getPath(lowerCase);
+    }
+}
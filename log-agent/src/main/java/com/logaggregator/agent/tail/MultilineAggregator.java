@@ -0,0 +1,95 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.tail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Joins the physical lines of one source into logical events, e.g. a log
+ * message followed by its stack trace.
+ *
+ * A line continues the current event if a start pattern is configured and
+ * the line does not match it, or if it matches the continuation pattern.
+ * Every other line starts a new event. The last event stays pending until
+ * the next event starts, it reaches the line limit, or no line has been
+ * added for the flush timeout. Not thread-safe; each source owns one.
+ */
+public class MultilineAggregator {
+
+    private final Pattern startPattern;
+    private final Pattern continuationPattern;
+    private final int maxLines;
+    private final long flushTimeoutMs;
+
+    private List<String> pending = new ArrayList<>();
+    private long pendingStartOffset = -1;
+    private long lastAddedAt;
+
+    public MultilineAggregator(Pattern startPattern, Pattern continuationPattern, int maxLines, long flushTimeoutMs) {
+        this.startPattern = startPattern;
+        this.continuationPattern = continuationPattern;
+        this.maxLines = maxLines;
+        this.flushTimeoutMs = flushTimeoutMs;
+    }
+
+    /**
+     * Add a line read from the given offset
+     *
+     * @return the lines of the event completed by this line, or null
+     */
+    public List<String> add(String line, long startOffset, long now) {
+        lastAddedAt = now;
+        if (!pending.isEmpty() && isContinuation(line) && pending.size() < maxLines) {
+            pending.add(line);
+            return null;
+        }
+
+        List<String> completed = flush();
+        pending.add(line);
+        pendingStartOffset = startOffset;
+        return completed;
+    }
+
+    private boolean isContinuation(String line) {
+        if (startPattern != null && !startPattern.matcher(line).find()) {
+            return true;
+        }
+        return continuationPattern != null && continuationPattern.matcher(line).find();
+    }
+
+    /**
+     * Complete the pending event
+     *
+     * @return its lines, or null if nothing is pending
+     */
+    public List<String> flush() {
+        if (pending.isEmpty()) {
+            return null;
+        }
+        List<String> completed = pending;
+        pending = new ArrayList<>();
+        pendingStartOffset = -1;
+        return completed;
+    }
+
+    /**
+     * Check whether the pending event has waited longer than the flush timeout
+     */
+    public boolean isIdle(long now) {
+        return !pending.isEmpty() && now - lastAddedAt >= flushTimeoutMs;
+    }
+
+    public boolean hasPending() { return !pending.isEmpty(); }
+
+    /**
+     * Offset of the first line of the pending event; nothing before it is in flight
+     */
+    public long getPendingStartOffset() { return pendingStartOffset; }
+}
@@ -49,7 +49,7 @@ class LogAgentIntegrationTest {
     private HealthMonitorService healthMonitorService;
 
     @MockBean
-    private KafkaTemplate<String, String> kafkaTemplate;
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
 
     @TempDir
     Path tempDir;
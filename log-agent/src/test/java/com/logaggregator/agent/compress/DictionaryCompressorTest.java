@@ -0,0 +1,102 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.compress;
+
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.logaggregator.common.CompressedBatch;
+import com.logaggregator.common.LogDictionary;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for DictionaryCompressor
+ */
+class DictionaryCompressorTest {
+
+    private static final int SAMPLE_BYTES = 64 * 1024;
+    private static final int DICTIONARY_BYTES = 4 * 1024;
+
+    @Test
+    void testSourceIsCompressedOnceItsDictionaryIsPublished() {
+        // Arrange - training runs inline and publishing succeeds at once
+        Map<Long, byte[]> published = new HashMap<>();
+        DictionaryCompressor compressor = new DictionaryCompressor(SAMPLE_BYTES, DICTIONARY_BYTES, 3, Runnable::run,
+            (source, dictId, dictionary) -> {
+                published.put(dictId, dictionary);
+                return CompletableFuture.completedFuture(null);
+            });
+        byte[] payload = payload(0, 20);
+        assertNull(compressor.compress("app.log", payload));
+
+        // Act
+        assertTrue(compressor.isSampling("app.log"));
+        compressor.sample("app.log", lines(0, 2000));
+        DictionaryCompressor.Compressed compressed = compressor.compress("app.log", payload);
+
+        // Assert
+        assertNotNull(compressed);
+        assertFalse(compressor.isSampling("app.log"));
+        assertEquals(1, compressor.getDictionariesTrained());
+        assertTrue(published.containsKey(compressed.getDictId()));
+        assertEquals(LogDictionary.idOf(published.get(compressed.getDictId())), compressed.getDictId());
+        assertTrue(compressed.getData().length * 3 < payload.length);
+        byte[] record = CompressedBatch.toRecord(20, compressed.getDictId(), payload.length, compressed.getData());
+        assertTrue(CompressedBatch.isRecord(record));
+        CompressedBatch batch = CompressedBatch.fromRecord(record);
+        assertEquals(20, batch.getEntryCount());
+        assertEquals(compressed.getDictId(), batch.getDictId());
+        try (ZstdDictDecompress dictionary = new ZstdDictDecompress(published.get(compressed.getDictId()))) {
+            assertArrayEquals(payload, batch.decompressEntries(dictionary));
+        }
+        assertNull(compressor.compress("other.log", payload));
+        compressor.close();
+    }
+
+    @Test
+    void testDictionaryIsNotUsedUntilPublishSucceeds() {
+        // Arrange
+        CompletableFuture<Void> publish = new CompletableFuture<>();
+        DictionaryCompressor compressor = new DictionaryCompressor(SAMPLE_BYTES, DICTIONARY_BYTES, 3, Runnable::run,
+            (source, dictId, dictionary) -> publish);
+        compressor.sample("app.log", lines(0, 2000));
+
+        // Act & Assert
+        assertNull(compressor.compress("app.log", payload(0, 20)));
+        publish.completeExceptionally(new RuntimeException("broker down"));
+        assertNull(compressor.compress("app.log", payload(0, 20)));
+        assertEquals(0, compressor.getDictionariesTrained());
+        compressor.close();
+    }
+
+    private static List<byte[]> lines(int from, int count) {
+        List<byte[]> lines = new ArrayList<>();
+        for (int i = from; i < from + count; i++) {
+            lines.add(("{\"id\":\"" + i + "\",\"level\":\"" + (i % 7 == 0 ? "ERROR" : "INFO")
+                + "\",\"message\":\"Request " + (i * 7919 % 100000) + " served in " + (i % 250)
+                + "ms by worker-" + (i % 16) + "\",\"source\":\"app.log\",\"host\":\"web-01\"}")
+                .getBytes(StandardCharsets.UTF_8));
+        }
+        return lines;
+    }
+
+    private static byte[] payload(int from, int count) {
+        List<String> lines = new ArrayList<>();
+        for (byte[] line : lines(from, count)) {
+            lines.add(new String(line, StandardCharsets.UTF_8));
+        }
+        return ("[" + String.join(",", lines) + "]").getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -7,6 +7,8 @@
 
 package com.logaggregator.agent.controller;
 
+import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.agent.service.HttpIngestService;
 import com.logaggregator.agent.service.LogAgentService;
 import com.logaggregator.agent.service.HealthMonitorService;
 import org.junit.jupiter.api.Test;
@@ -16,10 +18,19 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 /**
@@ -37,6 +48,12 @@ class LogAgentControllerTest {
     @MockBean
     private HealthMonitorService healthMonitorService;
 
+    @MockBean
+    private HttpIngestService httpIngestService;
+
+    @MockBean
+    private LogAgentConfig config;
+
     @Test
     void testGetStatus() throws Exception {
         // Arrange
@@ -108,4 +125,58 @@ class LogAgentControllerTest {
                 .andExpect(jsonPath("$.available_processors").value(4))
                 .andExpect(jsonPath("$.agent_uptime_ms").value(300000));
     }
+
+    @Test
+    void testIngest_GzipNdjson() throws Exception {
+        // Arrange
+        String ndjson = "{\"message\":\"first\"}\n{\"message\":\"second\"}\n";
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(ndjson.getBytes(StandardCharsets.UTF_8));
+        }
+        HttpIngestService.IngestResult result = mock(HttpIngestService.IngestResult.class);
+        when(result.getAccepted()).thenReturn(2L);
+        when(config.isEnableHttpIngest()).thenReturn(true);
+        when(httpIngestService.ingestJson(any(InputStream.class), eq("checkout"), any())).thenAnswer(invocation -> {
+            // The service gets the decompressed body
+            assertEquals(ndjson, new String(invocation.<InputStream>getArgument(0).readAllBytes(), StandardCharsets.UTF_8));
+            return result;
+        });
+
+        // Act & Assert
+        mockMvc.perform(post("/api/agent/ingest").param("application", "checkout")
+                    .contentType("application/x-ndjson")
+                    .header("Content-Encoding", "gzip")
+                    .content(compressed.toByteArray()))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.accepted").value(2))
+                .andExpect(jsonPath("$.rejected").value(0));
+    }
+
+    @Test
+    void testIngest_QueueFull() throws Exception {
+        // Arrange
+        HttpIngestService.IngestResult result = mock(HttpIngestService.IngestResult.class);
+        when(result.isThrottled()).thenReturn(true);
+        when(result.getAccepted()).thenReturn(100L);
+        when(config.isEnableHttpIngest()).thenReturn(true);
+        when(config.getHttpIngestRetryAfterSeconds()).thenReturn(3);
+        when(httpIngestService.ingestLines(any(InputStream.class), any(), any())).thenReturn(result);
+
+        // Act & Assert
+        mockMvc.perform(post("/api/agent/ingest").contentType(MediaType.TEXT_PLAIN).content("a line\n"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "3"))
+                .andExpect(jsonPath("$.accepted").value(100));
+    }
+
+    @Test
+    void testIngest_Disabled() throws Exception {
+        // Arrange
+        when(config.isEnableHttpIngest()).thenReturn(false);
+
+        // Act & Assert
+        mockMvc.perform(post("/api/agent/ingest").contentType(MediaType.TEXT_PLAIN).content("a line\n"))
+                .andExpect(status().isNotFound());
+    }
 }
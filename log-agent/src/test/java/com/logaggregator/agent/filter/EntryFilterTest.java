@@ -0,0 +1,111 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.filter;
+
+import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.agent.config.LogAgentConfig.FilterRule;
+import com.logaggregator.agent.tail.LogEntryFactory;
+import com.logaggregator.common.LogEntry;
+import com.logaggregator.common.LogLevel;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for EntryFilter
+ */
+class EntryFilterTest {
+
+    private static final Path FILE = Path.of("/var/log/app/service.log");
+
+    private static FilterRule rule(String name, String action) {
+        FilterRule rule = new FilterRule();
+        rule.setName(name);
+        rule.setAction(action);
+        return rule;
+    }
+
+    private static String javaLine(String level, String message) {
+        return "2024-01-15 10:30:45.123 [" + level + "] main com.example.App - " + message;
+    }
+
+    @Test
+    void testKeepRuleCarvesExceptionOutOfDropRule() {
+        // Arrange - keep DEBUG from payments, drop DEBUG everywhere else
+        FilterRule payments = rule("payments-debug", "keep");
+        payments.setSources(List.of("payments"));
+        payments.setMaxLevel("DEBUG");
+        FilterRule debug = rule("debug", "drop");
+        debug.setMaxLevel("DEBUG");
+        EntryFilter filter = new EntryFilter(List.of(payments, debug), "keep");
+        LogEntryFactory factory = new LogEntryFactory(new LogAgentConfig(), filter);
+
+        // Act
+        LogEntry paymentsDebug = factory.createLogEntry("payments", FILE, javaLine("DEBUG", "Card tokenized"));
+        LogEntry ordersDebug = factory.createLogEntry("orders", FILE, javaLine("DEBUG", "Cache warmed"));
+        LogEntry ordersInfo = factory.createLogEntry("orders", FILE, javaLine("INFO", "Order placed"));
+
+        // Assert
+        assertNotNull(paymentsDebug);
+        assertNull(ordersDebug);
+        assertNotNull(ordersInfo);
+        assertEquals(LogLevel.INFO, ordersInfo.getLevel());
+        Map<String, Object> stats = filter.getStats();
+        assertEquals(Map.of("payments-debug", 1L, "debug", 1L), stats.get("rule_hits"));
+        assertEquals(1L, stats.get("dropped_entries"));
+        assertEquals(2L, stats.get("kept_entries"));
+    }
+
+    @Test
+    void testRawLineRulesDecideBeforeParsing() {
+        // Arrange
+        FilterRule health = rule("health-checks", "drop");
+        health.setLinePattern("GET /health");
+        FilterRule errors = rule("errors", "keep");
+        errors.setMinLevel("ERROR");
+        EntryFilter filter = new EntryFilter(List.of(health, errors), "drop");
+
+        // Act & Assert - only the health check line can be settled from its text
+        assertEquals(EntryFilter.Verdict.DROP, filter.checkLine("nginx", "10.0.0.1 - - \"GET /health HTTP/1.1\" 200"));
+        assertEquals(EntryFilter.Verdict.PARSE, filter.checkLine("nginx", "10.0.0.1 - - \"GET /orders HTTP/1.1\" 500"));
+        assertEquals(1L, filter.getStats().get("decided_before_parsing"));
+    }
+
+    @Test
+    void testDefaultDropKeepsOnlyMatchingEntries() {
+        // Arrange - an allow list of applications and error messages
+        FilterRule checkout = rule("checkout", "keep");
+        checkout.setApplications(List.of("checkout"));
+        FilterRule timeouts = rule("timeouts", "keep");
+        timeouts.setMessagePattern("timed? ?out");
+        EntryFilter filter = new EntryFilter(List.of(checkout, timeouts), "drop");
+        LogEntry checkoutEntry = new LogEntry("app.log", LogLevel.INFO, "Cart updated");
+        checkoutEntry.setApplication("checkout");
+
+        // Act & Assert
+        assertTrue(filter.accept(checkoutEntry));
+        assertTrue(filter.accept(new LogEntry("app.log", LogLevel.WARN, "Upstream TIMED OUT after 30s")));
+        assertFalse(filter.accept(new LogEntry("app.log", LogLevel.WARN, "Upstream slow")));
+    }
+
+    @Test
+    void testWithoutRulesEveryLineIsParsedAndKept() {
+        // Arrange
+        EntryFilter filter = new EntryFilter(List.of(), null);
+
+        // Act & Assert
+        assertTrue(filter.isPassThrough());
+        assertEquals(EntryFilter.Verdict.KEEP, filter.checkLine("app.log", javaLine("DEBUG", "noise")));
+        assertThrows(IllegalArgumentException.class,
+            () -> new EntryFilter(List.of(rule("typo", "discard")), "keep"));
+    }
+}
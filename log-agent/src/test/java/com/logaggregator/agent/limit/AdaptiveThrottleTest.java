@@ -0,0 +1,94 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.limit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for AdaptiveThrottle
+ */
+class AdaptiveThrottleTest {
+
+    private final AdaptiveThrottle throttle = new AdaptiveThrottle(80.0, 75.0, 0.1, 200);
+
+    @Test
+    void testFullSpeedWithinTargets() {
+        // Act
+        throttle.update(40.0, 50.0);
+
+        // Assert
+        assertFalse(throttle.isThrottled());
+        assertEquals(1000, throttle.batchSize(1000));
+        assertEquals(4, throttle.parallelism(4));
+        assertEquals(0, throttle.lingerMs());
+    }
+
+    @Test
+    void testHeapPressureHalvesPaceDownToMinimum() {
+        // Act
+        throttle.update(10.0, 90.0);
+
+        // Assert
+        assertEquals(0.5, throttle.getPace(), 1e-9);
+        assertEquals(500, throttle.batchSize(1000));
+        assertEquals(2, throttle.parallelism(4));
+        assertEquals(50_000_000, throttle.budgetBytes(100_000_000));
+
+        // Act - pressure persists
+        for (int i = 0; i < 10; i++) {
+            throttle.update(10.0, 90.0);
+        }
+
+        // Assert
+        assertEquals(0.1, throttle.getPace(), 1e-9);
+        assertEquals(1, throttle.parallelism(4));
+        assertEquals(200, throttle.lingerMs());
+    }
+
+    @Test
+    void testCpuPressureCutsPaceLessThanHeap() {
+        // Act
+        throttle.update(95.0, 10.0);
+
+        // Assert
+        assertEquals(0.8, throttle.getPace(), 1e-9);
+        assertEquals("cpu", throttle.getStats().get("limited_by"));
+    }
+
+    @Test
+    void testPaceRecoversOnlyWithHeadroom() {
+        // Arrange
+        throttle.update(10.0, 90.0);
+
+        // Act - below the target but within the headroom holds the pace
+        throttle.update(10.0, 70.0);
+
+        // Assert
+        assertEquals(0.5, throttle.getPace(), 1e-9);
+
+        // Act - well below the targets the pace grows back in steps
+        for (int i = 0; i < 5; i++) {
+            throttle.update(10.0, 40.0);
+        }
+
+        // Assert
+        assertFalse(throttle.isThrottled());
+        assertEquals("none", throttle.getStats().get("limited_by"));
+    }
+
+    @Test
+    void testUnavailableReadingsAreIgnored() {
+        // Act
+        throttle.update(-1, -1);
+
+        // Assert
+        assertFalse(throttle.isThrottled());
+    }
+}
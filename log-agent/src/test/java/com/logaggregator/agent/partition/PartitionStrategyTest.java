@@ -0,0 +1,90 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.partition;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the partition strategies
+ */
+class PartitionStrategyTest {
+
+    @Test
+    void testRoundRobinRotatesOverSubKeysPerSource() {
+        // Arrange
+        PartitionStrategy strategy = PartitionStrategy.fromConfig("round-robin", 3, 0);
+
+        // Act & Assert
+        assertEquals("a.log#0", strategy.keyFor("a.log", 10));
+        assertEquals("a.log#1", strategy.keyFor("a.log", 10));
+        assertEquals("b.log#0", strategy.keyFor("b.log", 10));
+        assertEquals("a.log#2", strategy.keyFor("a.log", 10));
+        assertEquals("a.log#0", strategy.keyFor("a.log", 10));
+        assertTrue(strategy.spreadsSources());
+    }
+
+    @Test
+    void testLoadAwareSaltsOnlyHotSources() {
+        // Arrange - 1000 entries per second per sub-key, at most 4 sub-keys
+        AtomicLong clock = new AtomicLong(0);
+        LoadAwarePartitionStrategy strategy = new LoadAwarePartitionStrategy(4, 1000, clock::get);
+
+        // Act - two seconds at 2500/s for the hot source and 10/s for the quiet one
+        for (int second = 0; second < 2; second++) {
+            clock.set(TimeUnit.SECONDS.toNanos(second));
+            for (int i = 0; i < 25; i++) {
+                strategy.keyFor("hot.log", 100);
+            }
+            strategy.keyFor("quiet.log", 10);
+        }
+        clock.set(TimeUnit.SECONDS.toNanos(2));
+        Set<String> hotKeys = new HashSet<>();
+        for (int i = 0; i < 6; i++) {
+            hotKeys.add(strategy.keyFor("hot.log", 1));
+        }
+
+        // Assert
+        assertEquals(3, strategy.getSubKeys("hot.log"));
+        assertEquals(Set.of("hot.log#0", "hot.log#1", "hot.log#2"), hotKeys);
+        assertEquals("quiet.log", strategy.keyFor("quiet.log", 10));
+    }
+
+    @Test
+    void testLoadAwareForgetsIdleSources() {
+        // Arrange
+        AtomicLong clock = new AtomicLong(0);
+        LoadAwarePartitionStrategy strategy = new LoadAwarePartitionStrategy(4, 1000, clock::get);
+        strategy.keyFor("gone.log", 10);
+        strategy.keyFor("busy.log", 10);
+
+        // Act - only the busy source is seen again before the sweep
+        clock.set(TimeUnit.SECONDS.toNanos(30));
+        strategy.keyFor("busy.log", 10);
+        clock.set(TimeUnit.SECONDS.toNanos(61));
+        strategy.keyFor("busy.log", 10);
+
+        // Assert
+        assertEquals(1, strategy.getTrackedSources());
+    }
+
+    @Test
+    void testSourceStrategyKeepsTheSourceKey() {
+        PartitionStrategy strategy = PartitionStrategy.fromConfig("source", 8, 1000);
+
+        assertEquals("a.log", strategy.keyFor("a.log", 1000000));
+        assertFalse(strategy.spreadsSources());
+        assertThrows(IllegalArgumentException.class, () -> PartitionStrategy.fromConfig("random", 8, 1000));
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.service;
+
+import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.agent.tail.ArchiveReader;
+import com.logaggregator.common.LogEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for ArchiveIngestService
+ */
+@ExtendWith(MockitoExtension.class)
+class ArchiveIngestServiceTest {
+
+    @Mock
+    private LogProducerService logProducerService;
+
+    @TempDir
+    Path tempDir;
+
+    private LogAgentConfig config;
+    private CheckpointService checkpointService;
+    private IngestQueueService ingestQueue;
+    private ArchiveIngestService archiveIngestService;
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private final List<CompletableFuture<Void>> pending = new CopyOnWriteArrayList<>();
+    private volatile boolean holdSends;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        config = new LogAgentConfig();
+        config.setEnableCheckpoints(false);
+        config.setEnableMultiline(false);
+        config.setWatchDirectories(List.of(tempDir.toString()));
+        checkpointService = new CheckpointService(config);
+        when(logProducerService.sendLogEntries(anyList())).thenAnswer(invocation -> {
+            for (LogEntry entry : (List<LogEntry>) invocation.getArgument(0)) {
+                sent.add(entry.getMessage());
+            }
+            if (holdSends) {
+                CompletableFuture<Void> future = new CompletableFuture<>();
+                pending.add(future);
+                return future;
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+        ingestQueue = new IngestQueueService(config, logProducerService);
+        ingestQueue.start();
+        archiveIngestService = new ArchiveIngestService(config, ingestQueue, checkpointService,
+            new LogFilterService(config));
+    }
+
+    @AfterEach
+    void tearDown() {
+        ingestQueue.stop();
+    }
+
+    private Path archive(String name, String... lines) throws IOException {
+        Path archive = tempDir.resolve(name);
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(archive))) {
+            for (String line : lines) {
+                out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return archive;
+    }
+
+    private long completedArchives() {
+        return checkpointService.getOffsets().entrySet().stream()
+            .filter(entry -> ArchiveIngestService.isArchiveKey(entry.getKey()))
+            .filter(entry -> entry.getValue() == CheckpointService.COMPLETED)
+            .count();
+    }
+
+    private boolean hasHandovers() {
+        return checkpointService.getOffsets().keySet().stream().anyMatch(ArchiveIngestService::isHandoverKey);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void testArchivesWithTheSameHeadAreBothIngested() throws Exception {
+        // Arrange - the same startup banner heads both archives
+        archive("app.log.1.gz", "=== application started ===", "first run");
+        archive("app.log.2.gz", "=== application started ===", "second run");
+
+        // Act
+        archiveIngestService.ingestArchives();
+        await(() -> completedArchives() == 2);
+
+        // Assert
+        assertTrue(sent.contains("first run"));
+        assertTrue(sent.contains("second run"));
+        assertEquals(2, completedArchives());
+    }
+
+    @Test
+    void testKeysOfDeletedArchivesAreDropped() throws Exception {
+        // Arrange
+        archive("app.log.1.gz", "line 1");
+        Path deleted = archive("app.log.2.gz", "line 2");
+        archiveIngestService.ingestArchives();
+        await(() -> completedArchives() == 2);
+
+        // Act
+        Files.delete(deleted);
+        sent.clear();
+        archiveIngestService.ingestArchives();
+
+        // Assert - the remaining archive is still completed and not sent again
+        assertEquals(1, completedArchives());
+        assertTrue(sent.isEmpty());
+    }
+
+    @Test
+    void testHandoverOfARotatedFileIsUsedAndRemoved() throws Exception {
+        // Arrange - the first line was sent before the log file was rotated and released
+        Path archive = archive("app.log.1.gz", "line 1", "line 2");
+        long head;
+        try (ArchiveReader reader = new ArchiveReader(archive, StandardCharsets.UTF_8, 64)) {
+            head = reader.headChecksum(config.getFingerprintBytes());
+        }
+        checkpointService.commit(ArchiveIngestService.handoverKey(head, System.currentTimeMillis()), 7);
+
+        // Act
+        archiveIngestService.ingestArchives();
+        await(() -> !hasHandovers());
+
+        // Assert
+        assertEquals(List.of("line 2"), sent);
+        assertEquals(1, completedArchives());
+        assertFalse(hasHandovers());
+    }
+
+    @Test
+    void testLaterAckDoesNotCommitPastAFailedBatch() throws Exception {
+        // Arrange - one line per batch, acks held by the test
+        config.setBatchSize(1);
+        holdSends = true;
+        archive("app.log.1.gz", "line 1", "line 2");
+        archiveIngestService.ingestArchives();
+        await(() -> pending.size() == 2);
+
+        // Act - the second batch is acked before the first fails
+        pending.get(1).complete(null);
+        pending.get(0).completeExceptionally(new IllegalStateException("broker down"));
+
+        // Assert - nothing is committed, the next pass reads both lines again
+        assertEquals(2, pending.size());
+        assertTrue(checkpointService.getOffsets().keySet().stream().noneMatch(ArchiveIngestService::isArchiveKey));
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.service;
+
+import com.logaggregator.agent.config.LogAgentConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.OptionalLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for CheckpointService
+ */
+class CheckpointServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private LogAgentConfig config;
+
+    @BeforeEach
+    void setUp() {
+        config = new LogAgentConfig();
+        config.setCheckpointDirectory(tempDir.toString());
+        config.setCheckpointFlushIntervalMs(60_000);
+    }
+
+    @Test
+    void testOffsetsSurviveRestart() {
+        // Arrange
+        CheckpointService first = new CheckpointService(config);
+        first.start();
+        first.commit("file-a", 100);
+        first.commit("file-a", 250);
+        first.commit("file-b", 42);
+        first.flush();
+
+        // Act - simulate a crash: no stop(), just a new instance over the same directory
+        CheckpointService second = new CheckpointService(config);
+        second.start();
+
+        // Assert
+        assertEquals(OptionalLong.of(250), second.getOffset("file-a"));
+        assertEquals(OptionalLong.of(42), second.getOffset("file-b"));
+
+        first.stop();
+        second.stop();
+    }
+
+    @Test
+    void testCommitNeverMovesBackwards() {
+        // Arrange
+        CheckpointService service = new CheckpointService(config);
+
+        // Act - acknowledgements may complete out of order
+        service.commit("file-a", 500);
+        service.commit("file-a", 300);
+
+        // Assert
+        assertEquals(OptionalLong.of(500), service.getOffset("file-a"));
+    }
+
+    @Test
+    void testCompletedMarkerSurvivesLaterCommits() {
+        // Arrange
+        CheckpointService service = new CheckpointService(config);
+        service.commit("archive#1", 300);
+
+        // Act - a late acknowledgement of an earlier batch
+        service.markCompleted("archive#1");
+        service.commit("archive#1", 400);
+
+        // Assert
+        assertTrue(service.isCompleted("archive#1"));
+        assertFalse(service.isCompleted("archive#2"));
+    }
+
+    @Test
+    void testCompactionKeepsLatestOffsetsAndRemovals() {
+        // Arrange - compact after every couple of records
+        config.setCheckpointCompactThreshold(2);
+        CheckpointService first = new CheckpointService(config);
+        first.start();
+        first.commit("file-a", 10);
+        first.commit("file-b", 20);
+        first.flush();
+        first.commit("file-a", 30);
+        first.remove("file-b");
+        first.flush();
+        first.stop();
+
+        // Act
+        CheckpointService second = new CheckpointService(config);
+        second.start();
+
+        // Assert
+        assertEquals(OptionalLong.of(30), second.getOffset("file-a"));
+        assertFalse(second.getOffset("file-b").isPresent());
+        second.stop();
+    }
+
+    @Test
+    void testRetainOnlyForgetsUntrackedFiles() {
+        // Arrange
+        CheckpointService service = new CheckpointService(config);
+        service.commit("file-a", 10);
+        service.commit("file-b", 20);
+
+        // Act
+        Map<String, Long> removed = service.retainOnly("file-a"::equals);
+
+        // Assert
+        assertEquals(OptionalLong.of(10), service.getOffset("file-a"));
+        assertFalse(service.getOffset("file-b").isPresent());
+        assertEquals(Map.of("file-b", 20L), removed);
+    }
+
+    @Test
+    void testTornJournalTailIsDiscarded() throws IOException {
+        // Arrange
+        CheckpointService first = new CheckpointService(config);
+        first.start();
+        first.commit("file-a", 100);
+        first.flush();
+
+        // Simulate a partially written record at the end of the journal
+        Files.write(tempDir.resolve(CheckpointService.JOURNAL_FILE), new byte[]{0, 0, 0, 9, 'f', 'i'},
+            StandardOpenOption.APPEND);
+
+        // Act
+        CheckpointService second = new CheckpointService(config);
+        second.start();
+        second.commit("file-a", 200);
+        second.flush();
+
+        CheckpointService third = new CheckpointService(config);
+        third.start();
+
+        // Assert
+        assertEquals(OptionalLong.of(200), third.getOffset("file-a"));
+        first.stop();
+        second.stop();
+        third.stop();
+    }
+
+    @Test
+    void testPendingCommitsShareOneFlush() {
+        // Arrange
+        CheckpointService service = new CheckpointService(config);
+        service.start();
+
+        // Act
+        for (int i = 1; i <= 100; i++) {
+            service.commit("file-a", i * 10L);
+            service.commit("file-b", i * 20L);
+        }
+        service.flush();
+
+        // Assert - 200 commits coalesced into a single journal write of two records
+        Map<String, Object> stats = service.getCheckpointStats();
+        assertEquals(200L, stats.get("commits"));
+        assertEquals(1L, stats.get("flushes"));
+        assertEquals(2L, stats.get("journal_records"));
+        service.stop();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.service;
+
+import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.agent.dedup.SamplingRule;
+import com.logaggregator.common.LogEntry;
+import com.logaggregator.common.LogLevel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for DeduplicationService
+ */
+@ExtendWith(MockitoExtension.class)
+class DeduplicationServiceTest {
+
+    private static final long WINDOW_MS = 1000;
+
+    @Mock
+    private LogAgentConfig config;
+
+    @Mock
+    private IngestQueueService ingestQueue;
+
+    @Mock
+    private LogProducerService logProducerService;
+
+    private final AtomicLong clock = new AtomicLong(0);
+    private double nextRandom = 0.5;
+
+    private DeduplicationService deduplicatingService(String mode, int tableSize) {
+        when(config.isEnableDeduplication()).thenReturn(true);
+        when(config.getDeduplicationMode()).thenReturn(mode);
+        when(config.getDeduplicationWindowMs()).thenReturn(WINDOW_MS);
+        when(config.getDeduplicationTableSize()).thenReturn(tableSize);
+        lenient().when(ingestQueue.submit(anyList())).thenReturn(CompletableFuture.completedFuture(null));
+        return newService();
+    }
+
+    private DeduplicationService newService() {
+        return new DeduplicationService(config, ingestQueue, new RateLimitService(config, logProducerService),
+            clock::get, () -> nextRandom);
+    }
+
+    @Test
+    void testTemplateRepeatsCollapseIntoOneEntry() {
+        // Arrange
+        DeduplicationService service = deduplicatingService("template", 64);
+        List<LogEntry> batch = List.of(
+            new LogEntry("app.log", LogLevel.INFO, "Health check from 10.0.0.1 took 12ms"),
+            new LogEntry("app.log", LogLevel.INFO, "Health check from 10.0.0.7 took 9ms"),
+            new LogEntry("app.log", LogLevel.WARN, "Health check from 10.0.0.7 took 950ms"),
+            new LogEntry("app.log", LogLevel.INFO, "Health check from 10.0.0.2 took 15ms"));
+
+        // Act
+        List<LogEntry> admitted = service.admit(batch);
+        service.flush();
+        verifyNoInteractions(ingestQueue);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(WINDOW_MS));
+        service.flush();
+
+        // Assert - the WARN line is not a repeat of the INFO ones
+        assertEquals(List.of(batch.get(0), batch.get(2)), admitted);
+        verify(ingestQueue).submit(List.of(batch.get(3)));
+        assertEquals(2, batch.get(3).getMetadata().get("repeat_count"));
+        assertEquals(2L, service.getDeduplicationStats().get("collapsed_lines"));
+    }
+
+    @Test
+    void testExactModeOnlyCollapsesIdenticalLines() {
+        // Arrange
+        DeduplicationService service = deduplicatingService("exact", 64);
+
+        // Act & Assert
+        assertTrue(service.admit(new LogEntry("app.log", LogLevel.INFO, "Retrying in 5s")));
+        assertTrue(service.admit(new LogEntry("app.log", LogLevel.INFO, "Retrying in 10s")));
+        assertFalse(service.admit(new LogEntry("app.log", LogLevel.INFO, "Retrying in 5s")));
+        assertTrue(service.admit(new LogEntry("other.log", LogLevel.INFO, "Retrying in 5s")));
+
+        // A line seen again after its window opens a new one
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(WINDOW_MS));
+        assertTrue(service.admit(new LogEntry("app.log", LogLevel.INFO, "Retrying in 10s")));
+    }
+
+    @Test
+    void testEvictionSendsPendingRepeats() {
+        // Arrange - a single slot, so every new line evicts the previous one
+        DeduplicationService service = deduplicatingService("exact", 1);
+        LogEntry repeat = new LogEntry("app.log", LogLevel.ERROR, "Connection refused");
+
+        // Act
+        service.admit(new LogEntry("app.log", LogLevel.ERROR, "Connection refused"));
+        service.admit(repeat);
+        boolean admitted = service.admit(new LogEntry("app.log", LogLevel.INFO, "Connected"));
+
+        // Assert
+        assertTrue(admitted);
+        verify(ingestQueue).submit(List.of(repeat));
+        assertEquals(1, repeat.getMetadata().get("repeat_count"));
+    }
+
+    @Test
+    void testSamplingRulesKeepTheirFraction() {
+        // Arrange
+        when(config.getSamplingRules()).thenReturn(List.of("agent-001:/var/log/app/*:DEBUG=0.25", "*=1"));
+        DeduplicationService service = newService();
+        LogEntry debug = new LogEntry("agent-001:/var/log/app/service.log", LogLevel.DEBUG, "cache miss");
+        LogEntry info = new LogEntry("agent-001:/var/log/app/service.log", LogLevel.INFO, "cache miss");
+
+        // Act & Assert
+        nextRandom = 0.5;
+        assertFalse(service.admit(debug));
+        assertTrue(service.admit(info));
+        assertEquals(1.0, info.getMetadata().get("sample_rate"));
+
+        nextRandom = 0.1;
+        assertTrue(service.admit(debug));
+        assertEquals(0.25, debug.getMetadata().get("sample_rate"));
+        assertEquals(1L, service.getDeduplicationStats().get("sampled_out"));
+    }
+
+    @Test
+    void testInvalidSamplingRulesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> SamplingRule.parse("app.log"));
+        assertThrows(IllegalArgumentException.class, () -> SamplingRule.parse("app.log=often"));
+        assertThrows(IllegalArgumentException.class, () -> SamplingRule.parse("app.log:DEBUG=2"));
+    }
+}
@@ -8,6 +8,9 @@
 package com.logaggregator.agent.service;
 
 import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.agent.tail.FileIdentity;
+import com.logaggregator.common.LogEntry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -18,11 +21,22 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 /**
@@ -37,6 +51,13 @@ class FileMonitorServiceTest {
     @Mock
     private LogProducerService logProducerService;
 
+    @Mock
+    private CheckpointService checkpointService;
+
+    private IngestQueueService ingestQueue;
+
+    private RateLimitService rateLimitService;
+
     private FileMonitorService fileMonitorService;
 
     @TempDir
@@ -44,15 +65,31 @@ class FileMonitorServiceTest {
 
     @BeforeEach
     void setUp() {
-        when(config.getAgentId()).thenReturn("test-agent");
-        when(config.getHostname()).thenReturn("test-host");
-        when(config.getScanIntervalSeconds()).thenReturn(1);
-        when(config.getBatchSize()).thenReturn(10);
-        when(config.getMaxFileSizeBytes()).thenReturn(1024L * 1024L);
-        when(config.isEnableFileWatcher()).thenReturn(true);
-        when(config.getFilePatterns()).thenReturn(Arrays.asList("*.log", "*.txt"));
+        // Shared by every test, though not every test reads every setting
+        lenient().when(config.getAgentId()).thenReturn("test-agent");
+        lenient().when(config.getHostname()).thenReturn("test-host");
+        lenient().when(config.getScanIntervalSeconds()).thenReturn(1);
+        lenient().when(config.getBatchSize()).thenReturn(10);
+        lenient().when(config.getMaxFileSizeBytes()).thenReturn(1024L * 1024L);
+        lenient().when(config.isEnableFileWatcher()).thenReturn(true);
+        lenient().when(config.getFilePatterns()).thenReturn(Arrays.asList("*.log", "*.txt"));
+        lenient().when(config.getFileEncoding()).thenReturn("UTF-8");
+        lenient().when(config.getReadBufferSizeBytes()).thenReturn(4096);
+        lenient().when(config.getFingerprintBytes()).thenReturn(1024);
+        lenient().when(config.getDrainSliceMs()).thenReturn(50L);
+        lenient().when(config.getIngestQueueBudgetBytes()).thenReturn(64L * 1024L * 1024L);
 
-        fileMonitorService = new FileMonitorService(config, logProducerService);
+        ingestQueue = new IngestQueueService(config, logProducerService);
+        ingestQueue.start();
+        rateLimitService = new RateLimitService(config, logProducerService);
+        fileMonitorService = new FileMonitorService(config, ingestQueue, checkpointService,
+            new LogFilterService(config), new DeduplicationService(config, ingestQueue, rateLimitService),
+            rateLimitService);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ingestQueue.stop();
     }
 
     @Test
@@ -135,4 +172,314 @@ class FileMonitorServiceTest {
         // Cleanup
         fileMonitorService.stopMonitoring();
     }
+
+    @Test
+    void testBurstIsDrainedWithoutFurtherEvents() throws IOException {
+        // Arrange
+        when(config.getWatchDirectories()).thenReturn(List.of(tempDir.toString()));
+        when(config.getCatchUpThresholdBytes()).thenReturn(Long.MAX_VALUE);
+        when(logProducerService.sendLogEntries(anyList())).thenReturn(CompletableFuture.completedFuture(null));
+        fileMonitorService.startMonitoring();
+
+        // Act - a single write of more lines than one batch holds
+        StringBuilder burst = new StringBuilder();
+        for (int i = 0; i < 25; i++) {
+            burst.append("Burst entry ").append(i).append('\n');
+        }
+        Files.writeString(tempDir.resolve("burst.log"), burst.toString());
+
+        // Assert - 25 lines in batches of 10, then no lag left
+        verify(logProducerService, timeout(5000).times(3)).sendLogEntries(anyList());
+        Map<String, Object> stats = fileMonitorService.getMonitoringStats();
+        assertEquals(0L, stats.get("total_lag_bytes"));
+
+        // Cleanup
+        fileMonitorService.stopMonitoring();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testParallelTailingKeepsPerFileOrder() throws IOException {
+        // Arrange
+        when(config.getWatchDirectories()).thenReturn(List.of(tempDir.toString()));
+        when(config.getCatchUpThresholdBytes()).thenReturn(Long.MAX_VALUE);
+        when(config.getTailParallelism()).thenReturn(4);
+
+        Map<String, List<String>> received = new ConcurrentHashMap<>();
+        when(logProducerService.sendLogEntries(anyList())).thenAnswer(invocation -> {
+            for (LogEntry entry : (List<LogEntry>) invocation.getArgument(0)) {
+                received.computeIfAbsent(entry.getMetadata().get("file_path").toString(), k -> new ArrayList<>())
+                    .add(entry.getMessage());
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+        fileMonitorService.startMonitoring();
+
+        // Act
+        List<String> expected = new ArrayList<>();
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            expected.add("Entry " + i);
+            content.append("Entry ").append(i).append('\n');
+        }
+        for (int f = 0; f < 8; f++) {
+            Files.writeString(tempDir.resolve("parallel-" + f + ".log"), content.toString());
+        }
+
+        // Assert - 8 files of 50 lines in batches of 10, each file in its original order
+        verify(logProducerService, timeout(5000).times(40)).sendLogEntries(anyList());
+        assertEquals(8, received.size());
+        received.values().forEach(messages -> assertEquals(expected, messages));
+        assertEquals(4, fileMonitorService.getMonitoringStats().get("tail_parallelism"));
+
+        // Cleanup
+        fileMonitorService.stopMonitoring();
+    }
+
+    @Test
+    void testNestedDirectoriesAreWatched() throws IOException {
+        // Arrange - a long scan interval, so only watch events can pick up changes
+        when(config.getWatchDirectories()).thenReturn(List.of(tempDir.toString()));
+        when(config.getScanIntervalSeconds()).thenReturn(60);
+        when(config.getCatchUpThresholdBytes()).thenReturn(Long.MAX_VALUE);
+        when(logProducerService.sendLogEntries(anyList())).thenReturn(CompletableFuture.completedFuture(null));
+
+        Path existingDir = Files.createDirectories(tempDir.resolve("nginx"));
+        Path existingLog = existingDir.resolve("access.log");
+        Files.writeString(existingLog, "Old entry\n");
+        fileMonitorService.startMonitoring();
+
+        // Act - append to a nested file and create a log in a new nested directory
+        Files.writeString(existingLog, "New entry\n", StandardOpenOption.APPEND);
+        Path newDir = Files.createDirectories(tempDir.resolve("app").resolve("worker"));
+        Files.writeString(newDir.resolve("worker.log"), "Worker entry\n");
+
+        // Assert
+        verify(logProducerService, timeout(2000).times(2)).sendLogEntries(anyList());
+        Map<String, Object> stats = fileMonitorService.getMonitoringStats();
+        assertEquals(2, stats.get("tracked_files_count"));
+        assertEquals(4, stats.get("watched_directories_count"));
+
+        // Cleanup
+        fileMonitorService.stopMonitoring();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testStackTraceIsSentAsOneEntry() throws IOException {
+        // Arrange
+        when(config.getWatchDirectories()).thenReturn(List.of(tempDir.toString()));
+        when(config.getCatchUpThresholdBytes()).thenReturn(Long.MAX_VALUE);
+        when(config.isEnableMultiline()).thenReturn(true);
+        when(config.getMultilineContinuationPattern()).thenReturn("^\\s|^Caused by:|^[\\w$.]+Exception(:|$)");
+        when(config.getMultilineMaxLines()).thenReturn(500);
+        when(config.getMultilineFlushTimeoutMs()).thenReturn(200L);
+
+        List<LogEntry> sent = new CopyOnWriteArrayList<>();
+        when(logProducerService.sendLogEntries(anyList())).thenAnswer(invocation -> {
+            sent.addAll((List<LogEntry>) invocation.getArgument(0));
+            return CompletableFuture.completedFuture(null);
+        });
+        FileMonitorService multilineService = new FileMonitorService(config, ingestQueue, checkpointService,
+            new LogFilterService(config), new DeduplicationService(config, ingestQueue, rateLimitService),
+            rateLimitService);
+        multilineService.startMonitoring();
+
+        // Act
+        Files.writeString(tempDir.resolve("service.log"),
+            "2024-01-01 10:00:00 ERROR Request failed\n"
+            + "java.lang.IllegalStateException: boom\n"
+            + "\tat com.example.Service.handle(Service.java:42)\n"
+            + "\tat com.example.Main.main(Main.java:7)\n"
+            + "2024-01-01 10:00:01 INFO Recovered\n");
+
+        // Assert - the last event is sent once the flush timeout passes
+        verify(logProducerService, timeout(3000).atLeast(2)).sendLogEntries(anyList());
+        assertEquals(2, sent.size());
+        assertEquals(4, sent.get(0).getMetadata().get("line_count"));
+        assertTrue(sent.get(0).getMessage().contains("\tat com.example.Main.main(Main.java:7)"));
+
+        // Cleanup
+        multilineService.stopMonitoring();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFailedBatchIsReadAgain() throws IOException {
+        // Arrange - the first batch is not acknowledged
+        when(config.getWatchDirectories()).thenReturn(List.of(tempDir.toString()));
+        when(config.getCatchUpThresholdBytes()).thenReturn(Long.MAX_VALUE);
+
+        AtomicInteger attempts = new AtomicInteger(0);
+        List<String> delivered = new CopyOnWriteArrayList<>();
+        when(logProducerService.sendLogEntries(anyList())).thenAnswer(invocation -> {
+            if (attempts.getAndIncrement() == 0) {
+                return CompletableFuture.failedFuture(new RuntimeException("broker down"));
+            }
+            for (LogEntry entry : (List<LogEntry>) invocation.getArgument(0)) {
+                delivered.add(entry.getMessage());
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+        fileMonitorService.startMonitoring();
+
+        // Act
+        Files.writeString(tempDir.resolve("retry.log"), "Entry 0\nEntry 1\nEntry 2\n");
+
+        // Assert - the same lines are sent again and only then committed
+        verify(logProducerService, timeout(5000).times(2)).sendLogEntries(anyList());
+        assertEquals(List.of("Entry 0", "Entry 1", "Entry 2"), delivered);
+        verify(checkpointService, timeout(2000)).commit(anyString(), eq(24L));
+
+        // Cleanup
+        fileMonitorService.stopMonitoring();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testLaterAckDoesNotCommitPastAFailedBatch() throws Exception {
+        // Arrange - one line per batch, the acks of the first two are held by the test
+        when(config.getWatchDirectories()).thenReturn(List.of(tempDir.toString()));
+        when(config.getCatchUpThresholdBytes()).thenReturn(Long.MAX_VALUE);
+        when(config.getBatchSize()).thenReturn(1);
+
+        List<CompletableFuture<Void>> held = new CopyOnWriteArrayList<>();
+        List<String> delivered = new CopyOnWriteArrayList<>();
+        when(logProducerService.sendLogEntries(anyList())).thenAnswer(invocation -> {
+            if (held.size() < 2) {
+                CompletableFuture<Void> ack = new CompletableFuture<>();
+                held.add(ack);
+                return ack;
+            }
+            for (LogEntry entry : (List<LogEntry>) invocation.getArgument(0)) {
+                delivered.add(entry.getMessage());
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+        fileMonitorService.startMonitoring();
+        Files.writeString(tempDir.resolve("order.log"), "line 1\nline 2\n");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (held.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+
+        // Act - the second batch is acked while the first is still pending, then the first fails
+        held.get(1).complete(null);
+        Thread.sleep(200);
+        verify(checkpointService, never()).commit(anyString(), anyLong());
+        held.get(0).completeExceptionally(new RuntimeException("broker down"));
+
+        // Assert - both lines are read again, and only then committed
+        awaitDelivered(delivered, 2);
+        assertEquals(List.of("line 1", "line 2"), delivered);
+        verify(checkpointService, timeout(2000)).commit(anyString(), eq(14L));
+
+        // Cleanup
+        fileMonitorService.stopMonitoring();
+    }
+
+    /**
+     * Collect the messages of every batch the producer is handed, acknowledging each
+     */
+    @SuppressWarnings("unchecked")
+    private List<String> collectDelivered() {
+        List<String> delivered = new CopyOnWriteArrayList<>();
+        when(logProducerService.sendLogEntries(anyList())).thenAnswer(invocation -> {
+            for (LogEntry entry : (List<LogEntry>) invocation.getArgument(0)) {
+                delivered.add(entry.getMessage());
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+        return delivered;
+    }
+
+    private static void awaitDelivered(List<String> delivered, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (delivered.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        // Another scan interval, so a line sent twice would show up
+        Thread.sleep(1500);
+    }
+
+    @Test
+    void testFileOverTheSizeLimitResumesFromItsCheckpoint() throws Exception {
+        // Arrange - both files are over the limit, only big.log has a committed offset
+        when(config.getWatchDirectories()).thenReturn(List.of(tempDir.toString()));
+        when(config.getCatchUpThresholdBytes()).thenReturn(Long.MAX_VALUE);
+        when(config.getMaxFileSizeBytes()).thenReturn(16L);
+        Path big = tempDir.resolve("big.log");
+        Files.writeString(big, "already sent line\nunsent line\n");
+        Files.writeString(tempDir.resolve("new.log"), "line of an untracked file\n");
+        String bigKey = FileIdentity.of(big, 1024).asKey();
+        when(checkpointService.getOffset(anyString())).thenReturn(OptionalLong.empty());
+        when(checkpointService.getOffset(bigKey)).thenReturn(OptionalLong.of(18));
+        List<String> delivered = collectDelivered();
+
+        // Act
+        fileMonitorService.startMonitoring();
+        awaitDelivered(delivered, 1);
+
+        // Assert
+        assertEquals(List.of("unsent line"), delivered);
+        assertEquals(1, fileMonitorService.getMonitoringStats().get("tracked_files_count"));
+
+        // Cleanup
+        fileMonitorService.stopMonitoring();
+    }
+
+    @Test
+    void testRenameRotationDeliversEachLineOnce() throws Exception {
+        // Arrange
+        when(config.getWatchDirectories()).thenReturn(List.of(tempDir.toString()));
+        when(config.getCatchUpThresholdBytes()).thenReturn(Long.MAX_VALUE);
+        List<String> delivered = collectDelivered();
+        fileMonitorService.startMonitoring();
+        Path log = tempDir.resolve("app.log");
+        Files.writeString(log, "line 1\nline 2\n");
+        awaitDelivered(delivered, 2);
+
+        // Act - a last line, rename, a late write to the renamed file, then a new file
+        Files.writeString(log, "line 3\n", StandardOpenOption.APPEND);
+        Path rotated = tempDir.resolve("app.log.1");
+        Files.move(log, rotated);
+        Files.writeString(rotated, "line 4\n", StandardOpenOption.APPEND);
+        Files.writeString(log, "line 5\nline 6\n");
+        awaitDelivered(delivered, 6);
+
+        // Assert
+        List<String> sorted = new ArrayList<>(delivered);
+        sorted.sort(null);
+        assertEquals(List.of("line 1", "line 2", "line 3", "line 4", "line 5", "line 6"), sorted);
+
+        // Cleanup
+        fileMonitorService.stopMonitoring();
+    }
+
+    @Test
+    void testCopyTruncateRotationDeliversEachLineOnce() throws Exception {
+        // Arrange
+        when(config.getWatchDirectories()).thenReturn(List.of(tempDir.toString()));
+        when(config.getCatchUpThresholdBytes()).thenReturn(Long.MAX_VALUE);
+        List<String> delivered = collectDelivered();
+        fileMonitorService.startMonitoring();
+        Path log = tempDir.resolve("app.log");
+        Files.writeString(log, "line 1\nline 2\n");
+        awaitDelivered(delivered, 2);
+
+        // Act - a last line, a copy under a name that is tailed too, truncation, then new lines
+        Files.writeString(log, "line 3\n", StandardOpenOption.APPEND);
+        Files.copy(log, tempDir.resolve("app-1.log"));
+        Files.write(log, new byte[0], StandardOpenOption.TRUNCATE_EXISTING);
+        Files.writeString(log, "line 4\n", StandardOpenOption.APPEND);
+        awaitDelivered(delivered, 4);
+
+        // Assert - the copy resumes where the original was read to instead of starting over
+        List<String> sorted = new ArrayList<>(delivered);
+        sorted.sort(null);
+        assertEquals(List.of("line 1", "line 2", "line 3", "line 4"), sorted);
+
+        // Cleanup
+        fileMonitorService.stopMonitoring();
+    }
 }
@@ -8,6 +8,7 @@
 package com.logaggregator.agent.service;
 
 import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.agent.limit.AdaptiveThrottle;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -31,14 +32,19 @@ class HealthMonitorServiceTest {
     @Mock
     private LogProducerService logProducerService;
 
+    @Mock
+    private IngestQueueService ingestQueue;
+
     private HealthMonitorService healthMonitorService;
 
     @BeforeEach
     void setUp() {
-        when(config.getAgentId()).thenReturn("test-agent");
-        when(config.getHostname()).thenReturn("test-host");
+        // Only read by the health reports some tests send
+        lenient().when(config.getAgentId()).thenReturn("test-agent");
+        lenient().when(config.getHostname()).thenReturn("test-host");
+        when(ingestQueue.getThrottle()).thenReturn(new AdaptiveThrottle(80.0, 75.0, 0.1, 200));
 
-        healthMonitorService = new HealthMonitorService(config, logProducerService);
+        healthMonitorService = new HealthMonitorService(config, logProducerService, ingestQueue);
     }
 
     @Test
@@ -82,6 +88,23 @@ class HealthMonitorServiceTest {
         assertTrue(healthStatus.containsKey("cpu_usage_percent"));
         assertTrue(healthStatus.containsKey("memory_usage_percent"));
         assertTrue(healthStatus.containsKey("overall_status"));
+        assertTrue(healthStatus.containsKey("throttle"));
+    }
+
+    @Test
+    void testHealthStatusReportsThrottleState() {
+        // Arrange
+        ingestQueue.getThrottle().update(50.0, 90.0);
+
+        // Act
+        Map<String, Object> healthStatus = healthMonitorService.getHealthStatus();
+
+        // Assert
+        @SuppressWarnings("unchecked")
+        Map<String, Object> throttle = (Map<String, Object>) healthStatus.get("throttle");
+        assertEquals("THROTTLED", throttle.get("state"));
+        assertEquals("heap", throttle.get("limited_by"));
+        assertEquals(0.5, (Double) throttle.get("pace"), 1e-9);
     }
 
     @Test
@@ -98,6 +121,7 @@ class HealthMonitorServiceTest {
         assertTrue(metrics.containsKey("available_processors"));
         assertTrue(metrics.containsKey("agent_uptime_ms"));
         assertTrue(metrics.containsKey("health_checks_performed"));
+        assertTrue(metrics.containsKey("ingest_queue"));
 
         // Verify numeric values
         assertTrue((Long) metrics.get("jvm_total_memory") > 0);
@@ -0,0 +1,188 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.service;
+
+import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.common.LogEntry;
+import com.logaggregator.common.LogLevel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for HttpIngestService
+ */
+@ExtendWith(MockitoExtension.class)
+class HttpIngestServiceTest {
+
+    @Mock
+    private IngestQueueService ingestQueue;
+
+    @Mock
+    private LogProducerService logProducerService;
+
+    private LogAgentConfig config;
+    private HttpIngestService service;
+    private final List<LogEntry> submitted = new ArrayList<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        config = new LogAgentConfig();
+        config.setAgentId("agent-001");
+        config.setHostname("web-01");
+        RateLimitService rateLimitService = new RateLimitService(config, logProducerService);
+        service = new HttpIngestService(config, ingestQueue, new LogFilterService(config),
+            new DeduplicationService(config, ingestQueue, rateLimitService), rateLimitService);
+        lenient().when(ingestQueue.submit(anyList())).thenAnswer(invocation -> {
+            submitted.addAll((List<LogEntry>) invocation.getArgument(0));
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    private static InputStream body(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testNdjsonRecordsBecomeEntries() throws Exception {
+        // Arrange
+        when(ingestQueue.hasCapacity()).thenReturn(true);
+        String ndjson = "{\"message\":\"Order placed\",\"level\":\"warning\",\"timestamp\":1705312800000,"
+            + "\"order_id\":42,\"user\":{\"id\":7},\"thread\":\"worker-1\"}\n"
+            + "{\"msg\":\"Payment captured\",\"app\":\"payments\",\"host\":\"pod-3\",\"amount\":9.5}\n"
+            + "{\"level\":\"INFO\"}\n"
+            + "\"not an object\"\n";
+
+        // Act
+        HttpIngestService.IngestResult result = service.ingestJson(body(ndjson), "checkout", "127.0.0.1");
+
+        // Assert
+        assertEquals(2, result.getAccepted());
+        assertEquals(2, result.getRejected());
+        assertFalse(result.isThrottled());
+        assertNull(result.getError());
+        assertEquals(2, submitted.size());
+
+        LogEntry first = submitted.get(0);
+        assertEquals("Order placed", first.getMessage());
+        assertEquals(LogLevel.WARN, first.getLevel());
+        assertEquals("checkout", first.getApplication());
+        assertEquals("agent-001:http:checkout", first.getSource());
+        assertEquals("web-01", first.getHostname());
+        assertEquals("worker-1", first.getThread());
+        assertEquals(LocalDateTime.ofInstant(Instant.ofEpochMilli(1705312800000L), ZoneId.systemDefault()),
+            first.getTimestamp());
+        assertEquals(42L, first.getMetadata().get("order_id"));
+        assertEquals("{\"id\":7}", first.getMetadata().get("user"));
+        assertEquals("127.0.0.1", first.getMetadata().get("peer"));
+
+        LogEntry second = submitted.get(1);
+        assertEquals("payments", second.getApplication());
+        assertEquals("pod-3", second.getHostname());
+        assertEquals(9.5, second.getMetadata().get("amount"));
+    }
+
+    @Test
+    void testPlainLinesAreParsedLikeFiles() throws Exception {
+        // Arrange
+        when(ingestQueue.hasCapacity()).thenReturn(true);
+
+        // Act
+        HttpIngestService.IngestResult result = service.ingestLines(
+            body("2024-01-15 10:30:00 ERROR Connection refused\n\nplain text line\n"), "batch-job", null);
+
+        // Assert
+        assertEquals(2, result.getAccepted());
+        assertEquals(2, submitted.size());
+        assertEquals("batch-job", submitted.get(0).getApplication());
+        assertEquals("plain text line", submitted.get(1).getMessage());
+    }
+
+    @Test
+    void testLongLinesAreTruncated() throws Exception {
+        // Arrange - "é" straddles the limit and is dropped whole
+        config.setHttpIngestMaxLineBytes(16);
+        when(ingestQueue.hasCapacity()).thenReturn(true);
+
+        // Act
+        HttpIngestService.IngestResult result = service.ingestLines(
+            body("0123456789abcdeé and more past the limit\r\nnext line\r\n"), null, null);
+
+        // Assert
+        assertEquals(2, result.getAccepted());
+        assertEquals("0123456789abcde", submitted.get(0).getMessage());
+        assertEquals("next line", submitted.get(1).getMessage());
+        assertEquals(1L, service.getIngestStats().get("truncated_lines"));
+    }
+
+    @Test
+    void testReadingStopsWhenTheQueueFills() throws Exception {
+        // Arrange - room at the start and after the first batch only
+        config.setBatchSize(2);
+        when(ingestQueue.hasCapacity()).thenReturn(true, true, false);
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            ndjson.append("{\"message\":\"Entry ").append(i).append("\"}\n");
+        }
+
+        // Act
+        HttpIngestService.IngestResult result = service.ingestJson(body(ndjson.toString()), null, null);
+
+        // Assert
+        assertTrue(result.isThrottled());
+        assertEquals(4, result.getAccepted());
+        assertEquals(4, submitted.size());
+        assertEquals("Entry 3", submitted.get(3).getMessage());
+    }
+
+    @Test
+    void testFullQueueRefusesTheRequest() throws Exception {
+        // Arrange
+        when(ingestQueue.hasCapacity()).thenReturn(false);
+
+        // Act
+        HttpIngestService.IngestResult result = service.ingestLines(body("a line\n"), null, null);
+
+        // Assert
+        assertTrue(result.isThrottled());
+        assertEquals(0, result.getAccepted());
+        verify(ingestQueue, never()).submit(anyList());
+    }
+
+    @Test
+    void testMalformedJsonKeepsEarlierRecords() throws Exception {
+        // Arrange
+        when(ingestQueue.hasCapacity()).thenReturn(true);
+
+        // Act
+        HttpIngestService.IngestResult result = service.ingestJson(
+            body("{\"message\":\"ok\"}\n{\"message\": oops}\n{\"message\":\"never read\"}\n"), null, null);
+
+        // Assert
+        assertEquals(1, result.getAccepted());
+        assertNotNull(result.getError());
+        assertEquals(List.of("ok"), submitted.stream().map(LogEntry::getMessage).toList());
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.service;
+
+import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.common.LogEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for IngestQueueService
+ */
+@ExtendWith(MockitoExtension.class)
+class IngestQueueServiceTest {
+
+    @Mock
+    private LogProducerService logProducerService;
+
+    private LogAgentConfig config;
+
+    private IngestQueueService ingestQueue;
+
+    @BeforeEach
+    void setUp() {
+        config = new LogAgentConfig();
+        ingestQueue = new IngestQueueService(config, logProducerService);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ingestQueue.stop();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testBatchesAreSentInSubmissionOrder() throws Exception {
+        // Arrange
+        List<String> sent = new CopyOnWriteArrayList<>();
+        when(logProducerService.sendLogEntries(anyList())).thenAnswer(invocation -> {
+            for (LogEntry entry : (List<LogEntry>) invocation.getArgument(0)) {
+                sent.add(entry.getMessage());
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+        ingestQueue.start();
+
+        // Act
+        CompletableFuture<Void> last = null;
+        for (int i = 0; i < 20; i++) {
+            last = ingestQueue.submit(List.of(new LogEntry("test", "INFO", "Entry " + i)));
+        }
+        last.get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(20, sent.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals("Entry " + i, sent.get(i));
+        }
+    }
+
+    @Test
+    void testReadersPauseUntilBudgetIsReleased() throws Exception {
+        // Arrange - the producer holds the batch until we complete it
+        config.setIngestQueueBudgetBytes(1);
+        CompletableFuture<Void> pendingSend = new CompletableFuture<>();
+        when(logProducerService.sendLogEntries(anyList())).thenReturn(pendingSend);
+        ingestQueue.start();
+
+        // Act
+        CompletableFuture<Void> result = ingestQueue.submit(List.of(new LogEntry("test", "INFO", "Held")));
+
+        // Assert - no room while the batch is in flight
+        assertFalse(ingestQueue.hasCapacity());
+        assertFalse(ingestQueue.awaitCapacity(50));
+
+        pendingSend.complete(null);
+        result.get(5, TimeUnit.SECONDS);
+        assertTrue(ingestQueue.awaitCapacity(50));
+
+        Map<String, Object> stats = ingestQueue.getQueueStats();
+        assertEquals(0L, stats.get("used_bytes"));
+        assertEquals(1L, stats.get("pause_count"));
+    }
+
+    @Test
+    void testFailedSendFailsTheBatch() {
+        // Arrange
+        when(logProducerService.sendLogEntries(anyList()))
+            .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker down")));
+        ingestQueue.start();
+
+        // Act
+        CompletableFuture<Void> result = ingestQueue.submit(List.of(new LogEntry("test", "INFO", "Lost")));
+
+        // Assert - the offset of a failed batch must not be committed
+        assertThrows(Exception.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertEquals(0L, ingestQueue.getQueueStats().get("used_bytes"));
+    }
+}
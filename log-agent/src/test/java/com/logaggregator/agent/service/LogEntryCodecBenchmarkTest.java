@@ -0,0 +1,91 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logaggregator.common.LogEntry;
+import com.logaggregator.common.LogEntryCodec;
+import com.logaggregator.common.LogLevel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Encode and decode time and size per entry of the binary LogEntryCodec
+ * versus Jackson JSON, on batches shaped like the agent's batch records.
+ * Run with: mvn test -pl log-agent -Dbenchmark=true -Dtest=LogEntryCodecBenchmarkTest
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class LogEntryCodecBenchmarkTest {
+
+    private static final int BATCH_SIZE = 500;
+    private static final int WARMUP_ITERATIONS = 200;
+    private static final int ITERATIONS = 1000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @Test
+    void benchmarkBinaryVersusJson() throws Exception {
+        // Arrange
+        List<LogEntry> batch = new ArrayList<>();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            LogEntry entry = new LogEntry("agent-001:/var/log/app/service.log", i % 10 == 0 ? LogLevel.WARN : LogLevel.INFO,
+                "Request " + (i * 7919 % 100000) + " served in " + (i % 250) + "ms by worker-" + (i % 16));
+            entry.setHostname("web-01");
+            entry.setApplication("orders");
+            entry.setThread("http-nio-8080-exec-" + (i % 8));
+            entry.setLoggerName("com.example.orders.OrderController");
+            entry.addMetadata("agent_id", "agent-001");
+            entry.addMetadata("file_path", "/var/log/app/service.log");
+            entry.addMetadata("line_number", i);
+            batch.add(entry);
+        }
+        TypeReference<List<LogEntry>> listType = new TypeReference<>() {};
+
+        // Act
+        byte[] json = objectMapper.writeValueAsBytes(batch);
+        byte[] binary = LogEntryCodec.encode(batch);
+        long jsonNanos = measure(() -> objectMapper.readValue(objectMapper.writeValueAsBytes(batch), listType));
+        long binaryNanos = measure(() -> LogEntryCodec.decode(LogEntryCodec.encode(batch)));
+
+        // Assert
+        assertEquals(BATCH_SIZE, LogEntryCodec.decode(binary).size());
+        assertTrue(binary.length < json.length);
+
+        System.out.printf("Jackson JSON:  %.0f ns/entry round trip, %.1f bytes/entry%n",
+            jsonNanos / (double) BATCH_SIZE, json.length / (double) BATCH_SIZE);
+        System.out.printf("LogEntryCodec: %.0f ns/entry round trip, %.1f bytes/entry%n",
+            binaryNanos / (double) BATCH_SIZE, binary.length / (double) BATCH_SIZE);
+    }
+
+    /**
+     * Best time of one round trip after warmup
+     */
+    private long measure(RoundTrip roundTrip) throws Exception {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            roundTrip.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            roundTrip.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    @FunctionalInterface
+    private interface RoundTrip {
+        Object run() throws Exception;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.service;
+
+import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.common.LogEntry;
+import com.logaggregator.common.LogLevel;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Records per second and bytes handed to the broker when every entry is its
+ * own Kafka record versus packed into JSON or binary batches.
+ * Run with: mvn test -pl log-agent -Dbenchmark=true -Dtest=LogProducerServiceBenchmarkTest
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class LogProducerServiceBenchmarkTest {
+
+    private static final int ENTRY_COUNT = 100_000;
+    private static final int BATCH_SIZE = 100;
+    private static final int ROUNDS = 3;
+    // Key and value lengths, attributes, offset and timestamp deltas of a record in a v2 record batch
+    private static final int RECORD_OVERHEAD_BYTES = 20;
+
+    @Test
+    void benchmarkSingleVersusBatchedRecords() {
+        // Arrange - the same entries in batches as FileMonitorService sends them
+        List<List<LogEntry>> batches = new ArrayList<>();
+        for (int i = 0; i < ENTRY_COUNT / BATCH_SIZE; i++) {
+            List<LogEntry> batch = new ArrayList<>();
+            for (int j = 0; j < BATCH_SIZE; j++) {
+                LogEntry entry = new LogEntry("agent-001:/var/log/nginx/access.log", LogLevel.INFO,
+                    "10.0.0." + (j % 255) + " - - \"GET /api/items/" + (i * BATCH_SIZE + j) + " HTTP/1.1\" 200 2326");
+                entry.setHostname("web-01");
+                entry.addMetadata("agent_id", "agent-001");
+                entry.addMetadata("file_path", "/var/log/nginx/access.log");
+                batch.add(entry);
+            }
+            batches.add(batch);
+        }
+
+        Result single = run(batches, false, "json");
+        Result batched = run(batches, true, "json");
+        Result binary = run(batches, true, "binary");
+
+        // Assert
+        assertEquals(ENTRY_COUNT, single.records);
+        assertTrue(batched.records < single.records);
+        assertTrue(binary.bytes < batched.bytes);
+
+        System.out.printf("Single records:  %,d records, %.0f entries/s, %,d broker bytes%n",
+            single.records, ENTRY_COUNT / (single.nanos / 1e9), single.bytes);
+        System.out.printf("Batched records: %,d records, %.0f entries/s, %,d broker bytes%n",
+            batched.records, ENTRY_COUNT / (batched.nanos / 1e9), batched.bytes);
+        System.out.printf("Binary records:  %,d records, %.0f entries/s, %,d broker bytes%n",
+            binary.records, ENTRY_COUNT / (binary.nanos / 1e9), binary.bytes);
+    }
+
+    private Result run(List<List<LogEntry>> batches, boolean batchRecords, String wireFormat) {
+        LogAgentConfig config = new LogAgentConfig();
+        config.setKafkaTopicName("raw-logs");
+        config.setEnableSpool(false);
+        config.setEnableBatchRecords(batchRecords);
+        config.setWireFormat(wireFormat);
+
+        Result result = new Result();
+        result.nanos = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            MockProducer<String, byte[]> producer =
+                new MockProducer<>(true, new StringSerializer(), new ByteArraySerializer());
+            DefaultKafkaProducerFactory<String, byte[]> factory = new DefaultKafkaProducerFactory<>(Map.of()) {
+                @Override
+                protected Producer<String, byte[]> createKafkaProducer() {
+                    return producer;
+                }
+            };
+            LogProducerService service = new LogProducerService(new KafkaTemplate<>(factory), config);
+
+            // Act
+            long start = System.nanoTime();
+            for (List<LogEntry> batch : batches) {
+                service.sendLogEntries(batch).join();
+            }
+            result.nanos = Math.min(result.nanos, System.nanoTime() - start);
+
+            result.records = producer.history().size();
+            result.bytes = 0;
+            for (ProducerRecord<String, byte[]> record : producer.history()) {
+                result.bytes += RECORD_OVERHEAD_BYTES
+                    + record.key().getBytes(StandardCharsets.UTF_8).length
+                    + record.value().length;
+            }
+        }
+        return result;
+    }
+
+    private static class Result {
+        private long records;
+        private long bytes;
+        private long nanos;
+    }
+}
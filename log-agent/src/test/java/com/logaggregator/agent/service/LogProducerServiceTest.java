@@ -8,20 +8,33 @@
 package com.logaggregator.agent.service;
 
 import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.agent.partition.PartitionStrategy;
+import com.logaggregator.common.LogBatch;
 import com.logaggregator.common.LogEntry;
+import com.logaggregator.common.LogEntryCodec;
 import com.logaggregator.common.LogLevel;
+import com.logaggregator.common.WireFormat;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
-import org.springframework.util.concurrent.ListenableFuture;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -34,37 +47,163 @@ import static org.mockito.Mockito.*;
 class LogProducerServiceTest {
 
     @Mock
-    private KafkaTemplate<String, String> kafkaTemplate;
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
 
     @Mock
     private LogAgentConfig config;
 
     @Mock
-    private ListenableFuture<SendResult<String, String>> kafkaFuture;
+    private SendResult<String, byte[]> sendResult;
 
     private LogProducerService logProducerService;
 
+    @TempDir
+    Path spoolDir;
+
     @BeforeEach
     void setUp() {
         when(config.getKafkaTopicName()).thenReturn("test-topic");
         logProducerService = new LogProducerService(kafkaTemplate, config);
+        logProducerService.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        logProducerService.stop();
     }
 
     @Test
     void testSendLogEntry_Success() throws Exception {
         // Arrange
         LogEntry logEntry = new LogEntry("test-source", LogLevel.INFO, "test message");
-        when(kafkaTemplate.send(anyString(), anyString(), anyString())).thenReturn(kafkaFuture);
+        CompletableFuture<SendResult<String, byte[]>> kafkaFuture = new CompletableFuture<>();
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(kafkaFuture);
+        when(sendResult.getRecordMetadata()).thenReturn(
+            new RecordMetadata(new TopicPartition("test-topic", 0), 0, 0, 0, 0, 0));
 
         // Act
         CompletableFuture<Void> result = logProducerService.sendLogEntry(logEntry);
 
-        // Simulate successful callback
-        verify(kafkaFuture).addCallback(any());
+        // Assert - completes only once the broker acknowledges the record
+        ProducerRecord<String, byte[]> record = captureRecords(1).get(0);
+        assertEquals("test-topic", record.topic());
+        assertEquals("test-source", record.key());
+        assertArrayEquals(WireFormat.JSON.getHeaderValue(), record.headers().lastHeader(WireFormat.HEADER).value());
+        assertFalse(result.isDone());
+        kafkaFuture.complete(sendResult);
+        assertTrue(result.isDone());
+        assertFalse(result.isCompletedExceptionally());
+        assertEquals(1L, logProducerService.getDeliveryStats().get("acked_records"));
+    }
 
-        // Verify
-        verify(kafkaTemplate).send(eq("test-topic"), eq("test-source"), anyString());
-        assertNotNull(result);
+    @Test
+    void testSendLogEntry_RetriesThenFails() {
+        // Arrange - every send fails, two retries without backoff
+        when(config.getMaxRetries()).thenReturn(2);
+        LogEntry logEntry = new LogEntry("test-source", LogLevel.INFO, "test message");
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+            .thenReturn(CompletableFuture.failedFuture(new RuntimeException("broker down")));
+
+        // Act
+        CompletableFuture<Void> result = logProducerService.sendLogEntry(logEntry);
+
+        // Assert
+        assertThrows(Exception.class, () -> result.get(5, TimeUnit.SECONDS));
+        verify(kafkaTemplate, times(3)).send(any(ProducerRecord.class));
+        assertEquals(2L, logProducerService.getDeliveryStats().get("retried_sends"));
+        assertEquals(1L, logProducerService.getDeliveryStats().get("failed_records"));
+    }
+
+    @Test
+    void testStop_FailsSendsWaitingForARetry() {
+        // Arrange - the retry is a minute away
+        when(config.getMaxRetries()).thenReturn(1);
+        when(config.getRetryBackoffMs()).thenReturn(60_000L);
+        when(config.getRetryBackoffMaxMs()).thenReturn(60_000L);
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+            .thenReturn(CompletableFuture.failedFuture(new RuntimeException("broker down")));
+        CompletableFuture<Void> waiting =
+            logProducerService.sendLogEntry(new LogEntry("test-source", LogLevel.INFO, "test message"));
+        assertFalse(waiting.isDone());
+
+        // Act
+        logProducerService.stop();
+        logProducerService.start();
+        CompletableFuture<Void> afterRestart =
+            logProducerService.sendLogEntry(new LogEntry("test-source", LogLevel.INFO, "test message"));
+
+        // Assert - the stopped send fails, and a restarted producer schedules retries again
+        assertTrue(waiting.isCompletedExceptionally());
+        assertFalse(afterRestart.isDone());
+        assertEquals(1L, logProducerService.getDeliveryStats().get("failed_records"));
+    }
+
+    @Test
+    void testSendLogEntry_SpooledAfterFailedSendCompletes() {
+        // Arrange - the broker is down, the spool has room
+        enableSpool(1024 * 1024);
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+            .thenReturn(CompletableFuture.failedFuture(new RuntimeException("broker down")));
+
+        // Act
+        CompletableFuture<Void> result =
+            logProducerService.sendLogEntry(new LogEntry("test-source", LogLevel.INFO, "test message"));
+
+        // Assert - acknowledged once the spool holds the record on disk
+        assertDoesNotThrow(() -> result.get(5, TimeUnit.SECONDS));
+        assertEquals(1L, logProducerService.getSpoolStats().get("spooled_records"));
+        logProducerService.stop();
+    }
+
+    @Test
+    void testSendLogEntry_DroppedBySpoolFails() {
+        // Arrange - the broker is down and the spool too small for any record
+        enableSpool(8);
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+            .thenReturn(CompletableFuture.failedFuture(new RuntimeException("broker down")));
+
+        // Act
+        CompletableFuture<Void> result =
+            logProducerService.sendLogEntry(new LogEntry("test-source", LogLevel.INFO, "test message"));
+
+        // Assert - the caller must not commit past an entry that exists nowhere
+        assertThrows(Exception.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertEquals(1L, logProducerService.getSpoolStats().get("dropped_records"));
+        logProducerService.stop();
+    }
+
+    @Test
+    void testSendLogEntries_WindowBoundsInFlightSends() {
+        // Arrange - at most two records awaiting their ack
+        when(config.getMaxInFlightPerBatch()).thenReturn(2);
+        List<CompletableFuture<SendResult<String, byte[]>>> pending = new ArrayList<>();
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenAnswer(invocation -> {
+            CompletableFuture<SendResult<String, byte[]>> future = new CompletableFuture<>();
+            pending.add(future);
+            return future;
+        });
+        when(sendResult.getRecordMetadata()).thenReturn(
+            new RecordMetadata(new TopicPartition("test-topic", 0), 0, 0, 0, 0, 0));
+        List<LogEntry> logEntries = Arrays.asList(
+            new LogEntry("source1", LogLevel.INFO, "message1"),
+            new LogEntry("source1", LogLevel.INFO, "message2"),
+            new LogEntry("source1", LogLevel.INFO, "message3"),
+            new LogEntry("source1", LogLevel.INFO, "message4")
+        );
+
+        // Act
+        CompletableFuture<Void> result = logProducerService.sendLogEntries(logEntries);
+
+        // Assert - each ack lets the next record go
+        assertEquals(2, pending.size());
+        pending.get(0).complete(sendResult);
+        assertEquals(3, pending.size());
+        pending.get(1).complete(sendResult);
+        pending.get(2).complete(sendResult);
+        assertEquals(4, pending.size());
+        assertFalse(result.isDone());
+        pending.get(3).complete(sendResult);
+        assertTrue(result.isDone());
     }
 
     @Test
@@ -76,28 +215,130 @@ class LogProducerServiceTest {
             new LogEntry("source3", LogLevel.WARN, "message3")
         );
 
-        when(kafkaTemplate.send(anyString(), anyString(), anyString())).thenReturn(kafkaFuture);
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(new CompletableFuture<>());
 
         // Act
         CompletableFuture<Void> result = logProducerService.sendLogEntries(logEntries);
 
         // Verify
-        verify(kafkaTemplate, times(3)).send(anyString(), anyString(), anyString());
+        verify(kafkaTemplate, times(3)).send(any(ProducerRecord.class));
         assertNotNull(result);
     }
 
     @Test
     void testSendLogEntry_WithNullSource() throws Exception {
         // Arrange
-        LogEntry logEntry = new LogEntry(null, LogLevel.INFO, "test message");
+        LogEntry logEntry = new LogEntry("test-source", LogLevel.INFO, "test message");
         logEntry.setSource(null);
-        when(kafkaTemplate.send(anyString(), anyString(), anyString())).thenReturn(kafkaFuture);
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(new CompletableFuture<>());
 
         // Act
         CompletableFuture<Void> result = logProducerService.sendLogEntry(logEntry);
 
         // Verify - should use "unknown" as key when source is null
-        verify(kafkaTemplate).send(eq("test-topic"), eq("unknown"), anyString());
+        assertEquals("unknown", captureRecords(1).get(0).key());
         assertNotNull(result);
     }
+
+    @Test
+    void testSendLogEntries_PacksBatchRecords() throws Exception {
+        // Arrange - at most two entries per record
+        when(config.isEnableBatchRecords()).thenReturn(true);
+        when(config.getBatchRecordMaxEntries()).thenReturn(2);
+        when(config.getBatchRecordMaxBytes()).thenReturn(1024 * 1024);
+        List<LogEntry> logEntries = Arrays.asList(
+            new LogEntry("source1", LogLevel.INFO, "message1"),
+            new LogEntry("source1", LogLevel.INFO, "message2"),
+            new LogEntry("source1", LogLevel.INFO, "message3"),
+            new LogEntry("source2", LogLevel.ERROR, "message4")
+        );
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(new CompletableFuture<>());
+
+        // Act
+        logProducerService.sendLogEntries(logEntries);
+
+        // Assert - two envelopes for source1, one for source2
+        List<ProducerRecord<String, byte[]>> records = captureRecords(3);
+        assertEquals(Arrays.asList("source1", "source1", "source2"),
+            records.stream().map(ProducerRecord::key).toList());
+        String first = new String(records.get(0).value(), StandardCharsets.UTF_8);
+        assertTrue(LogBatch.isBatch(first));
+        assertTrue(first.contains("\"entry_count\":2"));
+        assertTrue(new String(records.get(1).value(), StandardCharsets.UTF_8).contains("\"entry_count\":1"));
+    }
+
+    @Test
+    void testSendLogEntries_BinaryWireFormat() {
+        // Arrange - binary batch records of at most two entries
+        when(config.getWireFormat()).thenReturn("binary");
+        when(config.isEnableBatchRecords()).thenReturn(true);
+        when(config.getBatchRecordMaxEntries()).thenReturn(2);
+        when(config.getBatchRecordMaxBytes()).thenReturn(1024 * 1024);
+        logProducerService = new LogProducerService(kafkaTemplate, config);
+        List<LogEntry> logEntries = Arrays.asList(
+            new LogEntry("source1", LogLevel.INFO, "message1"),
+            new LogEntry("source1", LogLevel.WARN, "message2"),
+            new LogEntry("source1", LogLevel.INFO, "message3")
+        );
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(new CompletableFuture<>());
+
+        // Act
+        logProducerService.sendLogEntries(logEntries);
+
+        // Assert - the header names the format and the values decode back
+        List<ProducerRecord<String, byte[]>> records = captureRecords(2);
+        assertArrayEquals(WireFormat.BINARY.getHeaderValue(), records.get(0).headers().lastHeader(WireFormat.HEADER).value());
+        List<LogEntry> decoded = LogEntryCodec.decode(records.get(0).value());
+        assertEquals(2, decoded.size());
+        assertEquals("message2", decoded.get(1).getMessage());
+        assertEquals(LogLevel.WARN, decoded.get(1).getLevel());
+        assertEquals(1, LogEntryCodec.decode(records.get(1).value()).size());
+    }
+
+    @Test
+    void testSendLogEntries_RoundRobinSpreadsSourceAndNumbersEntries() {
+        // Arrange - each entry is its own record, spread over two sub-keys
+        when(config.getPartitionStrategy()).thenReturn("round-robin");
+        when(config.getPartitionSubKeys()).thenReturn(2);
+        logProducerService = new LogProducerService(kafkaTemplate, config);
+        List<LogEntry> logEntries = Arrays.asList(
+            new LogEntry("source1", LogLevel.INFO, "message1"),
+            new LogEntry("source1", LogLevel.INFO, "message2"),
+            new LogEntry("source1", LogLevel.INFO, "message3")
+        );
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(new CompletableFuture<>());
+
+        // Act
+        logProducerService.sendLogEntries(logEntries);
+
+        // Assert - keys rotate and sequence numbers follow the order of the source
+        assertEquals(Arrays.asList("source1#0", "source1#1", "source1#0"),
+            captureRecords(3).stream().map(ProducerRecord::key).toList());
+        long first = (Long) logEntries.get(0).getMetadata().get(PartitionStrategy.SEQUENCE_METADATA);
+        assertEquals(first + 1, logEntries.get(1).getMetadata().get(PartitionStrategy.SEQUENCE_METADATA));
+        assertEquals(first + 2, logEntries.get(2).getMetadata().get(PartitionStrategy.SEQUENCE_METADATA));
+    }
+
+    /**
+     * Open a spool holding at most two segments of the given size
+     */
+    private void enableSpool(long segmentBytes) {
+        when(config.getMaxInFlightRecords()).thenReturn(100);
+        when(config.isEnableSpool()).thenReturn(true);
+        when(config.getSpoolDirectory()).thenReturn(spoolDir.toString());
+        when(config.getSpoolSegmentBytes()).thenReturn(segmentBytes);
+        when(config.getSpoolMaxBytes()).thenReturn(2 * segmentBytes);
+        when(config.getSpoolEvictionPolicy()).thenReturn("drop-newest");
+        // Replay runs once right after start, records spooled later stay put
+        when(config.getSpoolReplayIntervalMs()).thenReturn(60_000L);
+        lenient().when(config.getSpoolReplayBatchSize()).thenReturn(100);
+        logProducerService.start();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private List<ProducerRecord<String, byte[]>> captureRecords(int count) {
+        ArgumentCaptor<ProducerRecord<String, byte[]>> records = ArgumentCaptor.forClass((Class) ProducerRecord.class);
+        verify(kafkaTemplate, times(count)).send(records.capture());
+        return records.getAllValues();
+    }
 }
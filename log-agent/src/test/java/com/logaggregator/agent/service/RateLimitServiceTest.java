@@ -0,0 +1,158 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.service;
+
+import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.common.LogEntry;
+import com.logaggregator.common.LogLevel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for RateLimitService
+ */
+@ExtendWith(MockitoExtension.class)
+class RateLimitServiceTest {
+
+    @Mock
+    private LogAgentConfig config;
+
+    @Mock
+    private LogProducerService logProducerService;
+
+    private final AtomicLong clock = new AtomicLong(0);
+
+    private RateLimitService rateLimitService;
+
+    @BeforeEach
+    void setUp() {
+        // 10 entries per second with room for a burst of 10
+        when(config.isEnableRateLimit()).thenReturn(true);
+        when(config.getSourceRateLimit()).thenReturn(10.0);
+        when(config.getSourceRateBurst()).thenReturn(10);
+        rateLimitService = new RateLimitService(config, logProducerService, clock::get);
+    }
+
+    @Test
+    void testLowerLevelsAreShedFirst() {
+        // Act - ten entries of each level while the clock stands still
+        int debug = admitted(LogLevel.DEBUG, 10);
+        int info = admitted(LogLevel.INFO, 10);
+        int error = admitted(LogLevel.ERROR, 10);
+        int fatal = admitted(LogLevel.FATAL, 10);
+
+        // Assert - each level may drain the bucket as far as its priority allows
+        assertEquals(2, debug);
+        assertEquals(2, info);
+        assertEquals(4, error);
+        assertEquals(2, fatal);
+        assertEquals(30L, rateLimitService.getRateLimitStats().get("dropped_entries"));
+    }
+
+    @Test
+    void testBucketRefillsAtTheConfiguredRate() {
+        // Arrange - drain the bucket
+        assertEquals(10, admitted(LogLevel.FATAL, 20));
+
+        // Act
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+
+        // Assert
+        assertEquals(5, admitted(LogLevel.FATAL, 20));
+    }
+
+    @Test
+    void testAdmitBatchKeepsOrderAndSummarizesDrops() {
+        // Arrange
+        List<LogEntry> batch = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            batch.add(new LogEntry("app.log", i % 2 == 0 ? LogLevel.DEBUG : LogLevel.ERROR, "line " + i));
+        }
+
+        // Act - the bucket is drained to 60% first, so only ERROR lines fit
+        admitted(LogLevel.WARN, 6);
+        List<LogEntry> admitted = rateLimitService.admit(batch);
+        rateLimitService.sendSummaries();
+
+        // Assert
+        assertEquals(List.of(batch.get(1), batch.get(3)), admitted);
+        ArgumentCaptor<LogEntry> summary = ArgumentCaptor.forClass(LogEntry.class);
+        verify(logProducerService).sendLogEntry(summary.capture());
+        assertEquals("app.log", summary.getValue().getSource());
+        assertEquals(LogLevel.WARN, summary.getValue().getLevel());
+        assertEquals(4L, summary.getValue().getMetadata().get("dropped_lines"));
+        assertEquals(3L, summary.getValue().getMetadata().get("dropped_debug"));
+        assertEquals(1L, summary.getValue().getMetadata().get("dropped_error"));
+
+        // Counts restart after a summary
+        rateLimitService.sendSummaries();
+        verifyNoMoreInteractions(logProducerService);
+    }
+
+    @Test
+    void testEntriesRefusedByTheirApplicationKeepTheSourceToken() {
+        // Arrange - one entry per second for the application
+        when(config.getApplicationRateLimit()).thenReturn(1.0);
+        when(config.getApplicationRateBurst()).thenReturn(1);
+
+        // Act
+        int checkout = 0;
+        for (int i = 0; i < 6; i++) {
+            LogEntry entry = new LogEntry("app.log", LogLevel.FATAL, "checkout " + i);
+            entry.setApplication("checkout");
+            if (rateLimitService.admit(entry)) {
+                checkout++;
+            }
+        }
+
+        // Assert - only the admitted entry took a source token
+        assertEquals(1, checkout);
+        assertEquals(9, admitted(LogLevel.FATAL, 20));
+    }
+
+    @Test
+    void testIdleBucketsAreEvicted() {
+        // Arrange
+        when(config.getRateLimitSummaryIntervalMs()).thenReturn(1000L);
+        admitted(LogLevel.FATAL, 20);
+
+        // Act - still draining, then full for a whole interval
+        rateLimitService.evictIdle();
+        int busy = (int) rateLimitService.getRateLimitStats().get("limited_sources");
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        rateLimitService.sendSummaries();
+        rateLimitService.evictIdle();
+
+        // Assert - the source starts over with a full bucket
+        assertEquals(1, busy);
+        assertEquals(0, rateLimitService.getRateLimitStats().get("limited_sources"));
+        assertEquals(10, admitted(LogLevel.FATAL, 20));
+    }
+
+    private int admitted(LogLevel level, int count) {
+        int admitted = 0;
+        for (int i = 0; i < count; i++) {
+            if (rateLimitService.admit(new LogEntry("app.log", level, "message " + i))) {
+                admitted++;
+            }
+        }
+        return admitted;
+    }
+}
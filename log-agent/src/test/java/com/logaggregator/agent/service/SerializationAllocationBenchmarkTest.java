@@ -0,0 +1,152 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.common.LogEntry;
+import com.logaggregator.common.LogLevel;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Heap allocated per entry while LogProducerService serializes and hands
+ * records to Kafka, next to the String based path it replaced.
+ *
+ * The record values themselves are subtracted, since they have to be
+ * allocated for the producer. Every object takes at least 16 bytes, so
+ * the remaining bytes divided by 16 bound the number of allocations.
+ * Run with: mvn test -pl log-agent -Dbenchmark=true -Dtest=SerializationAllocationBenchmarkTest
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class SerializationAllocationBenchmarkTest {
+
+    private static final int BATCH_SIZE = 500;
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int ROUNDS = 200;
+    private static final int MIN_OBJECT_BYTES = 16;
+    // id, source, level, message, raw message, hostname, application, thread, logger,
+    // two timestamps and three metadata fields
+    private static final int FIELDS_PER_ENTRY = 14;
+
+    private final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    void benchmarkAllocationsPerEntry() throws Exception {
+        // Arrange
+        List<LogEntry> batch = new ArrayList<>();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            LogEntry entry = new LogEntry("agent-001:/var/log/app/service.log", LogLevel.INFO,
+                "Request " + (i * 7919 % 100000) + " served in " + (i % 250) + "ms by worker-" + (i % 16));
+            entry.setHostname("web-01");
+            entry.setApplication("orders");
+            entry.setThread("http-nio-8080-exec-" + (i % 8));
+            entry.setLoggerName("com.example.orders.OrderController");
+            entry.addMetadata("agent_id", "agent-001");
+            entry.addMetadata("file_path", "/var/log/app/service.log");
+            entry.addMetadata("line_number", i);
+            batch.add(entry);
+        }
+
+        // Act
+        double stringPath = measureStringPath(batch);
+        double jsonBatch = measureService(batch, "json");
+        double binaryBatch = measureService(batch, "binary");
+
+        // Assert
+        assertTrue(jsonBatch < stringPath);
+        assertTrue(binaryBatch / MIN_OBJECT_BYTES < FIELDS_PER_ENTRY);
+
+        report("String path", stringPath);
+        report("Pooled JSON", jsonBatch);
+        report("Binary", binaryBatch);
+    }
+
+    private void report(String name, double bytesPerEntry) {
+        System.out.printf("%-12s %6.0f bytes/entry beyond the value, at most %.2f allocations per field%n",
+            name, bytesPerEntry, bytesPerEntry / MIN_OBJECT_BYTES / FIELDS_PER_ENTRY);
+    }
+
+    /**
+     * Entries serialized to Strings, joined into an envelope and encoded, as before the pooled path
+     */
+    private double measureStringPath(List<LogEntry> batch) throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+        long[] valueBytes = new long[1];
+        Round round = () -> {
+            StringBuilder envelope = new StringBuilder("{\"batch_version\":1,\"entry_count\":")
+                .append(batch.size()).append(",\"entries\":[");
+            for (int i = 0; i < batch.size(); i++) {
+                envelope.append(i > 0 ? "," : "").append(objectMapper.writeValueAsString(batch.get(i)));
+            }
+            valueBytes[0] += envelope.append("]}").toString().getBytes(StandardCharsets.UTF_8).length;
+        };
+        return measure(round, valueBytes);
+    }
+
+    private double measureService(List<LogEntry> batch, String wireFormat) throws Exception {
+        LogAgentConfig config = new LogAgentConfig();
+        config.setKafkaTopicName("raw-logs");
+        config.setEnableSpool(false);
+        config.setEnableBatchRecords(true);
+        config.setBatchRecordMaxEntries(BATCH_SIZE);
+        config.setWireFormat(wireFormat);
+
+        // Acknowledges every record at once without copying it anywhere
+        long[] valueBytes = new long[1];
+        CompletableFuture<SendResult<String, byte[]>> acked = CompletableFuture.completedFuture(
+            new SendResult<>(null, new RecordMetadata(new TopicPartition("raw-logs", 0), 0, 0, 0, 0, 0)));
+        KafkaTemplate<String, byte[]> template = new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(Map.of())) {
+            @Override
+            public CompletableFuture<SendResult<String, byte[]>> send(ProducerRecord<String, byte[]> record) {
+                valueBytes[0] += record.value().length;
+                return acked;
+            }
+        };
+        LogProducerService service = new LogProducerService(template, config);
+        return measure(() -> service.sendLogEntries(batch).join(), valueBytes);
+    }
+
+    /**
+     * Bytes allocated per entry by the calling thread, minus the record values
+     */
+    private double measure(Round round, long[] valueBytes) throws Exception {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            round.run();
+        }
+        valueBytes[0] = 0;
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ROUNDS; i++) {
+            round.run();
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        return (allocated - valueBytes[0]) / (double) (ROUNDS * BATCH_SIZE);
+    }
+
+    @FunctionalInterface
+    private interface Round {
+        void run() throws Exception;
+    }
+}
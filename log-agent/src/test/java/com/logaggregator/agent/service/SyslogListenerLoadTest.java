@@ -0,0 +1,171 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.service;
+
+import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.common.LogEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * Messages per second SyslogListenerService receives on loopback and hands
+ * through the ingest queue to the producer, which only counts them.
+ *
+ * TCP has to sustain 100,000 messages per second. UDP is only reported:
+ * what it delivers depends on the socket buffers of the host.
+ * Run with: mvn test -pl log-agent -Dbenchmark=true -Dtest=SyslogListenerLoadTest
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@ExtendWith(MockitoExtension.class)
+class SyslogListenerLoadTest {
+
+    private static final int SENDERS = 2;
+    private static final int MESSAGES_PER_SENDER = 500_000;
+    private static final int UDP_MESSAGES = 200_000;
+    private static final double REQUIRED_RATE = 100_000;
+    // Messages written to a TCP socket at once
+    private static final int WRITE_BATCH = 256;
+
+    @Mock
+    private LogProducerService logProducerService;
+
+    private final LongAdder delivered = new LongAdder();
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void benchmarkMessagesPerSecond() throws Exception {
+        // Arrange
+        LogAgentConfig config = new LogAgentConfig();
+        config.setSyslogBindAddress("127.0.0.1");
+        config.setSyslogPort(0);
+        config.setBatchSize(500);
+        when(logProducerService.sendLogEntries(anyList())).thenAnswer(invocation -> {
+            delivered.add(((List<LogEntry>) invocation.getArgument(0)).size());
+            return CompletableFuture.completedFuture(null);
+        });
+        IngestQueueService ingestQueue = new IngestQueueService(config, logProducerService);
+        RateLimitService rateLimitService = new RateLimitService(config, logProducerService);
+        SyslogListenerService listener = new SyslogListenerService(config, ingestQueue, new LogFilterService(config),
+            new DeduplicationService(config, ingestQueue, rateLimitService), rateLimitService);
+        ingestQueue.start();
+        listener.start();
+
+        try {
+            // Act
+            double tcpRate = sendTcp(listener.getLocalAddress("tcp"));
+            delivered.reset();
+            long udpStart = System.nanoTime();
+            sendUdp(listener.getLocalAddress("udp"));
+            awaitDelivered(UDP_MESSAGES, 2000);
+            double udpRate = delivered.sum() / ((System.nanoTime() - udpStart) / 1e9);
+
+            // Assert
+            assertTrue(tcpRate >= REQUIRED_RATE, "TCP sustained only " + (long) tcpRate + " messages/s");
+
+            System.out.printf("TCP: %,d messages from %d connections, %.0f messages/s%n",
+                SENDERS * MESSAGES_PER_SENDER, SENDERS, tcpRate);
+            System.out.printf("UDP: %,d of %,d datagrams delivered, %.0f messages/s%n",
+                delivered.sum(), UDP_MESSAGES, udpRate);
+        } finally {
+            listener.stop();
+            ingestQueue.stop();
+        }
+    }
+
+    private static byte[] message(int sender, int sequence) {
+        return ("<134>1 2024-01-15T10:30:00.000Z fw0" + sender + ".example.com firewall 4711 TRAFFIC "
+            + "[traffic@32473 src=\"10.0.0." + (sequence % 255) + "\" dst=\"192.168.1.1\" port=\"443\"] "
+            + "connection " + sequence + " allowed by policy web-out").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Send octet-counted messages from several connections at once
+     *
+     * @return messages per second from the first write until the producer has all of them
+     */
+    private double sendTcp(InetSocketAddress address) throws Exception {
+        List<Thread> senders = new ArrayList<>();
+        List<Exception> failures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int s = 0; s < SENDERS; s++) {
+            int sender = s;
+            Thread thread = new Thread(() -> {
+                try (SocketChannel channel = SocketChannel.open(address)) {
+                    ByteBuffer buffer = ByteBuffer.allocate(WRITE_BATCH * 256);
+                    for (int i = 0; i < MESSAGES_PER_SENDER; i++) {
+                        byte[] message = message(sender, i);
+                        buffer.put((message.length + " ").getBytes(StandardCharsets.US_ASCII)).put(message);
+                        if ((i + 1) % WRITE_BATCH == 0 || i + 1 == MESSAGES_PER_SENDER) {
+                            buffer.flip();
+                            while (buffer.hasRemaining()) {
+                                channel.write(buffer);
+                            }
+                            buffer.clear();
+                        }
+                    }
+                } catch (Exception e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            thread.start();
+            senders.add(thread);
+        }
+        for (Thread thread : senders) {
+            thread.join();
+        }
+        assertTrue(failures.isEmpty(), () -> "Sender failed: " + failures.get(0));
+        awaitDelivered(SENDERS * MESSAGES_PER_SENDER, 60_000);
+        assertEquals(SENDERS * MESSAGES_PER_SENDER, delivered.sum());
+        return SENDERS * MESSAGES_PER_SENDER / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private void sendUdp(InetSocketAddress address) throws Exception {
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            for (int i = 0; i < UDP_MESSAGES; i++) {
+                channel.send(ByteBuffer.wrap(message(0, i)), address);
+            }
+        }
+    }
+
+    /**
+     * Wait until the producer has the expected count, or nothing arrived for the idle time
+     */
+    private void awaitDelivered(long expected, long idleMs) throws InterruptedException {
+        long last = -1;
+        long idleSince = System.currentTimeMillis();
+        while (delivered.sum() < expected) {
+            long current = delivered.sum();
+            if (current != last) {
+                last = current;
+                idleSince = System.currentTimeMillis();
+            } else if (System.currentTimeMillis() - idleSince > idleMs) {
+                return;
+            }
+            Thread.sleep(5);
+        }
+    }
+}
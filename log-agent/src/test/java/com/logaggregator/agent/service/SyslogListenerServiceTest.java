@@ -0,0 +1,118 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.service;
+
+import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.common.LogEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for SyslogListenerService
+ */
+@ExtendWith(MockitoExtension.class)
+class SyslogListenerServiceTest {
+
+    @Mock
+    private LogProducerService logProducerService;
+
+    private IngestQueueService ingestQueue;
+    private SyslogListenerService listener;
+    private final List<LogEntry> sent = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        LogAgentConfig config = new LogAgentConfig();
+        config.setAgentId("agent-001");
+        config.setSyslogBindAddress("127.0.0.1");
+        config.setSyslogPort(0);
+        when(logProducerService.sendLogEntries(anyList())).thenAnswer(invocation -> {
+            sent.addAll((List<LogEntry>) invocation.getArgument(0));
+            return CompletableFuture.completedFuture(null);
+        });
+        ingestQueue = new IngestQueueService(config, logProducerService);
+        ingestQueue.start();
+        RateLimitService rateLimitService = new RateLimitService(config, logProducerService);
+        listener = new SyslogListenerService(config, ingestQueue, new LogFilterService(config),
+            new DeduplicationService(config, ingestQueue, rateLimitService), rateLimitService);
+        listener.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        listener.stop();
+        ingestQueue.stop();
+    }
+
+    private void awaitSent(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sent.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void testUdpDatagramsAreSent() throws Exception {
+        // Arrange
+        InetSocketAddress address = listener.getLocalAddress("udp");
+
+        // Act
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            channel.send(ByteBuffer.wrap("<11>Jan 15 10:00:00 router1 bgpd[99]: neighbor down"
+                .getBytes(StandardCharsets.UTF_8)), address);
+        }
+        awaitSent(1);
+
+        // Assert
+        assertEquals(1, sent.size());
+        assertEquals("neighbor down", sent.get(0).getMessage());
+        assertEquals("router1", sent.get(0).getHostname());
+        assertEquals("bgpd", sent.get(0).getApplication());
+        assertEquals("127.0.0.1", sent.get(0).getMetadata().get("peer"));
+    }
+
+    @Test
+    void testTcpFramesAreSentInOrder() throws Exception {
+        // Arrange
+        InetSocketAddress address = listener.getLocalAddress("tcp");
+        String counted = "<14>1 2024-01-15T10:00:00Z switch1 lldpd - - - port up";
+
+        // Act - an octet-counted frame, a line, and a last line closed by the end of the stream
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            channel.write(ByteBuffer.wrap((counted.length() + " " + counted
+                + "<13>Jan 15 10:00:01 switch1 lldpd: port flapping\n"
+                + "<13>Jan 15 10:00:02 switch1 lldpd: port stable").getBytes(StandardCharsets.UTF_8)));
+        }
+        awaitSent(3);
+
+        // Assert
+        assertEquals(3, sent.size());
+        assertEquals("port up", sent.get(0).getMessage());
+        assertEquals("port flapping", sent.get(1).getMessage());
+        assertEquals("port stable", sent.get(2).getMessage());
+        assertEquals(1L, listener.getListenerStats().get("accepted_connections"));
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.spool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SegmentSpool
+ */
+class SegmentSpoolTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRecordsAreReadInOrderAcrossSegments() throws IOException {
+        // Arrange - small segments so the records span several of them
+        try (SegmentSpool spool = new SegmentSpool(tempDir, 64, 64 * 1024, SegmentSpool.EvictionPolicy.DROP_OLDEST)) {
+            spool.open();
+            for (int i = 0; i < 20; i++) {
+                assertTrue(spool.append(bytes("record-" + i)));
+            }
+            assertTrue(spool.getSegmentCount() > 1);
+
+            // Act
+            List<String> read = drain(spool);
+
+            // Assert
+            assertEquals(20, read.size());
+            for (int i = 0; i < 20; i++) {
+                assertEquals("record-" + i, read.get(i));
+            }
+            assertTrue(spool.isEmpty());
+            assertEquals(1, spool.getSegmentCount());
+        }
+    }
+
+    @Test
+    void testUnacknowledgedRecordsSurviveRestart() throws IOException {
+        // Arrange
+        try (SegmentSpool first = new SegmentSpool(tempDir, 64, 64 * 1024, SegmentSpool.EvictionPolicy.DROP_OLDEST)) {
+            first.open();
+            for (int i = 0; i < 10; i++) {
+                first.append(bytes("record-" + i));
+            }
+            first.acknowledge(first.read(3));
+            first.read(3); // read but never acknowledged
+        }
+
+        // Act
+        try (SegmentSpool second = new SegmentSpool(tempDir, 64, 64 * 1024, SegmentSpool.EvictionPolicy.DROP_OLDEST)) {
+            second.open();
+
+            // Assert - replay continues after the last acknowledged record
+            List<String> read = drain(second);
+            assertEquals(7, read.size());
+            assertEquals("record-3", read.get(0));
+            assertEquals("record-9", read.get(6));
+        }
+    }
+
+    @Test
+    void testTornTailIsDiscarded() throws IOException {
+        // Arrange
+        try (SegmentSpool spool = new SegmentSpool(tempDir, 1024, 64 * 1024, SegmentSpool.EvictionPolicy.DROP_OLDEST)) {
+            spool.open();
+            spool.append(bytes("complete"));
+        }
+        Path segment;
+        try (var files = Files.list(tempDir)) {
+            segment = files.filter(p -> p.getFileName().toString().endsWith(SegmentSpool.SEGMENT_SUFFIX))
+                .findFirst().orElseThrow();
+        }
+        // A crash in the middle of the next append
+        Files.write(segment, new byte[]{0, 0, 0, 50, 1, 2}, StandardOpenOption.APPEND);
+
+        // Act
+        try (SegmentSpool spool = new SegmentSpool(tempDir, 1024, 64 * 1024, SegmentSpool.EvictionPolicy.DROP_OLDEST)) {
+            spool.open();
+            spool.append(bytes("after restart"));
+
+            // Assert
+            assertEquals(List.of("complete", "after restart"), drain(spool));
+        }
+    }
+
+    @Test
+    void testDropOldestEvictsWholeSegments() throws IOException {
+        // Arrange - segments of two 16 byte frames, 80 bytes in total
+        try (SegmentSpool spool = new SegmentSpool(tempDir, 40, 80, SegmentSpool.EvictionPolicy.DROP_OLDEST)) {
+            spool.open();
+
+            // Act
+            for (int i = 0; i < 6; i++) {
+                assertTrue(spool.append(bytes("record-" + i)));
+            }
+
+            // Assert - the oldest segment made room for the newest records
+            assertEquals(List.of("record-2", "record-3", "record-4", "record-5"), drain(spool));
+            assertTrue(spool.getEvictedBytes() > 0);
+        }
+    }
+
+    @Test
+    void testDropNewestRejectsRecordsWhenFull() throws IOException {
+        // Arrange
+        try (SegmentSpool spool = new SegmentSpool(tempDir, 40, 80, SegmentSpool.EvictionPolicy.DROP_NEWEST)) {
+            spool.open();
+
+            // Act
+            List<Boolean> accepted = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                accepted.add(spool.append(bytes("record-" + i)));
+            }
+
+            // Assert
+            assertEquals(List.of(true, true, true, true, true, false), accepted);
+            assertEquals(1, spool.getRejectedRecords());
+            assertEquals(List.of("record-0", "record-1", "record-2", "record-3", "record-4"), drain(spool));
+        }
+    }
+
+    @Test
+    void testEvictionPolicyFromConfig() {
+        assertEquals(SegmentSpool.EvictionPolicy.DROP_OLDEST, SegmentSpool.EvictionPolicy.fromConfig("drop-oldest"));
+        assertEquals(SegmentSpool.EvictionPolicy.DROP_NEWEST, SegmentSpool.EvictionPolicy.fromConfig(" DROP_NEWEST "));
+    }
+
+    private static List<String> drain(SegmentSpool spool) throws IOException {
+        List<String> read = new ArrayList<>();
+        SegmentSpool.Batch batch = spool.read(4);
+        while (!batch.isEmpty()) {
+            for (byte[] record : batch.getRecords()) {
+                read.add(new String(record, StandardCharsets.UTF_8));
+            }
+            spool.acknowledge(batch);
+            batch = spool.read(4);
+        }
+        return read;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
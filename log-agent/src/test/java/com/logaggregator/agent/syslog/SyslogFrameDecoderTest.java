@@ -0,0 +1,92 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.syslog;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SyslogFrameDecoder
+ */
+class SyslogFrameDecoderTest {
+
+    private final List<String> frames = new ArrayList<>();
+
+    private void feed(SyslogFrameDecoder decoder, ByteBuffer buffer, String data) {
+        buffer.put(data.getBytes(StandardCharsets.UTF_8));
+        buffer.flip();
+        decoder.decode(buffer, (bytes, offset, length) ->
+            frames.add(new String(bytes, offset, length, StandardCharsets.UTF_8)));
+        buffer.compact();
+    }
+
+    @Test
+    void testOctetCountedAndNewlineFramesMayBeMixed() {
+        // Arrange
+        SyslogFrameDecoder decoder = new SyslogFrameDecoder(1024);
+        ByteBuffer buffer = ByteBuffer.allocate(2048);
+
+        // Act
+        feed(decoder, buffer, "11 <13>1 hello<13>plain line\r\n18 <13>1 with\nnewline");
+
+        // Assert
+        assertEquals(List.of("<13>1 hello", "<13>plain line", "<13>1 with\nnewline"), frames);
+    }
+
+    @Test
+    void testFramesSplitAcrossReadsAreJoined() {
+        // Arrange
+        SyslogFrameDecoder decoder = new SyslogFrameDecoder(1024);
+        ByteBuffer buffer = ByteBuffer.allocate(2048);
+
+        // Act
+        feed(decoder, buffer, "1");
+        feed(decoder, buffer, "9 <13>1 split ");
+        feed(decoder, buffer, "message<14>partial");
+        feed(decoder, buffer, " line\n");
+
+        // Assert
+        assertEquals(List.of("<13>1 split message", "<14>partial line"), frames);
+    }
+
+    @Test
+    void testLineStartingWithDigitIsNotAnOctetCount() {
+        // Arrange
+        SyslogFrameDecoder decoder = new SyslogFrameDecoder(1024);
+        ByteBuffer buffer = ByteBuffer.allocate(2048);
+
+        // Act
+        feed(decoder, buffer, "2024-01-15 started\n");
+
+        // Assert
+        assertEquals(List.of("2024-01-15 started"), frames);
+    }
+
+    @Test
+    void testOversizedFramesAreTruncated() {
+        // Arrange
+        SyslogFrameDecoder decoder = new SyslogFrameDecoder(8);
+        ByteBuffer buffer = ByteBuffer.allocate(8 + 11 + 1);
+
+        // Act - a counted frame and a line, both longer than the maximum
+        feed(decoder, buffer, "20 abcdefghij");
+        feed(decoder, buffer, "klmnopqrst");
+        feed(decoder, buffer, "<13>0123456789");
+        feed(decoder, buffer, "abcdef\nnext\n");
+
+        // Assert
+        assertEquals(List.of("abcdefgh", "<13>0123", "next"), frames);
+        assertEquals(2, decoder.getOversizedFrames());
+    }
+}
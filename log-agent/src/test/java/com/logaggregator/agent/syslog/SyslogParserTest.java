@@ -0,0 +1,132 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.syslog;
+
+import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.common.LogEntry;
+import com.logaggregator.common.LogLevel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SyslogParser
+ */
+class SyslogParserTest {
+
+    private SyslogParser parser;
+
+    @BeforeEach
+    void setUp() {
+        LogAgentConfig config = new LogAgentConfig();
+        config.setAgentId("agent-001");
+        parser = new SyslogParser(config);
+    }
+
+    @Test
+    void testRfc5424WithStructuredData() {
+        // Arrange
+        String message = "<165>1 2024-01-15T10:30:00.003Z fw01.example.com firewall 4711 ID47 "
+            + "[exampleSDID@32473 iut=\"3\" eventSource=\"Application\"][origin ip=\"10.0.0.1\" note=\"a \\\"quoted\\\" \\] value\"] "
+            + "\uFEFFPacket dropped";
+
+        // Act
+        LogEntry entry = parser.parse(message, "192.168.1.10");
+
+        // Assert
+        assertEquals("Packet dropped", entry.getMessage());
+        assertEquals(LogLevel.INFO, entry.getLevel());
+        assertEquals("fw01.example.com", entry.getHostname());
+        assertEquals("firewall", entry.getApplication());
+        assertEquals("agent-001:syslog:fw01.example.com", entry.getSource());
+        assertEquals("local4", entry.getMetadata().get("facility"));
+        assertEquals(5, entry.getMetadata().get("severity"));
+        assertEquals("4711", entry.getMetadata().get("pid"));
+        assertEquals("ID47", entry.getMetadata().get("msgid"));
+        assertEquals("3", entry.getMetadata().get("sd.exampleSDID@32473.iut"));
+        assertEquals("Application", entry.getMetadata().get("sd.exampleSDID@32473.eventSource"));
+        assertEquals("a \"quoted\" ] value", entry.getMetadata().get("sd.origin.note"));
+        assertEquals("rfc5424", entry.getTag("syslog_format"));
+        LocalDateTime expected = LocalDateTime.ofInstant(
+            OffsetDateTime.parse("2024-01-15T10:30:00.003Z").toInstant(), ZoneId.systemDefault());
+        assertEquals(expected, entry.getTimestamp());
+    }
+
+    @Test
+    void testRfc5424WithNilValuesAndNoMessage() {
+        // Act
+        LogEntry entry = parser.parse("<11>1 - - - - - [meta sequenceId=\"7\"]", "10.1.1.1");
+
+        // Assert - the peer stands in for the hostname and the raw message for the text
+        assertEquals(LogLevel.ERROR, entry.getLevel());
+        assertEquals("10.1.1.1", entry.getHostname());
+        assertEquals("syslog", entry.getApplication());
+        assertEquals("7", entry.getMetadata().get("sd.meta.sequenceId"));
+        assertEquals("<11>1 - - - - - [meta sequenceId=\"7\"]", entry.getMessage());
+    }
+
+    @Test
+    void testRfc5424TimestampsWithOffsetAndPrecision() {
+        // Act
+        LogEntry offset = parser.parse("<14>1 2024-03-31T01:30:00.123456+02:00 host app - - - shifted", "10.0.0.1");
+        LogEntry nanos = parser.parse("<14>1 2024-03-31T23:59:59.123456789-05:30 host app - - - late", "10.0.0.1");
+
+        // Assert
+        assertEquals(LocalDateTime.ofInstant(OffsetDateTime.parse("2024-03-31T01:30:00.123456+02:00").toInstant(),
+            ZoneId.systemDefault()), offset.getTimestamp());
+        assertEquals(LocalDateTime.ofInstant(OffsetDateTime.parse("2024-03-31T23:59:59.123456789-05:30").toInstant(),
+            ZoneId.systemDefault()), nanos.getTimestamp());
+    }
+
+    @Test
+    void testRfc3164WithTagAndPid() {
+        // Act
+        LogEntry entry = parser.parse("<34>Oct 11 22:14:15 mymachine su[230]: 'su root' failed for lonvick on /dev/pts/8\n",
+            "10.0.0.5");
+
+        // Assert
+        assertEquals("'su root' failed for lonvick on /dev/pts/8", entry.getMessage());
+        assertEquals(LogLevel.FATAL, entry.getLevel());
+        assertEquals("mymachine", entry.getHostname());
+        assertEquals("su", entry.getApplication());
+        assertEquals("230", entry.getMetadata().get("pid"));
+        assertEquals("auth", entry.getMetadata().get("facility"));
+        assertEquals("rfc3164", entry.getTag("syslog_format"));
+        assertEquals(10, entry.getTimestamp().getMonthValue());
+        assertEquals(11, entry.getTimestamp().getDayOfMonth());
+        assertEquals(22, entry.getTimestamp().getHour());
+    }
+
+    @Test
+    void testRfc3164WithoutHostnameOrPriority() {
+        // Act
+        LogEntry noHostname = parser.parse("<30>Jan  5 08:00:01 ntpd: clock synchronized", "10.0.0.6");
+        LogEntry bare = parser.parse("just a line from an old printer", "10.0.0.7");
+
+        // Assert
+        assertEquals("10.0.0.6", noHostname.getHostname());
+        assertEquals("ntpd", noHostname.getApplication());
+        assertEquals("clock synchronized", noHostname.getMessage());
+        assertEquals(5, noHostname.getTimestamp().getDayOfMonth());
+
+        assertEquals("just a line from an old printer", bare.getMessage());
+        assertEquals(LogLevel.INFO, bare.getLevel());
+        assertEquals("user", bare.getMetadata().get("facility"));
+        assertEquals("10.0.0.7", bare.getHostname());
+    }
+
+    @Test
+    void testEmptyMessageIsSkipped() {
+        assertNull(parser.parse(" \r\n", "10.0.0.8"));
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.system;
+
+import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.common.LogEntry;
+import com.logaggregator.common.LogLevel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for JournalFollower, with journalctl replaced by cat over recorded output
+ */
+class JournalFollowerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRecordsAreSentAndTheCursorIsResumedAfter() throws Exception {
+        // Arrange
+        Path output = tempDir.resolve("journal.json");
+        Files.writeString(output, String.join("\n",
+            "{\"__CURSOR\":\"c1\",\"__REALTIME_TIMESTAMP\":\"1705312800000000\",\"PRIORITY\":\"3\","
+                + "\"SYSLOG_IDENTIFIER\":\"sshd\",\"_PID\":\"812\",\"MESSAGE\":\"Connection reset\"}",
+            "{\"__CURSOR\":\"c2\",\"PRIORITY\":\"6\",\"_COMM\":\"kernel\",\"MESSAGE\":[104,105]}",
+            "{\"__CURSOR\":\"c3\",\"PRIORITY\":\"7\"}",
+            ""), StandardCharsets.UTF_8);
+        Path cursorFile = tempDir.resolve("journal.cursor");
+        LogAgentConfig config = new LogAgentConfig();
+        List<String> startOptions = new ArrayList<>();
+        List<LogEntry> sent = new ArrayList<>();
+        SystemLogFollower.BatchSink sink = entries -> {
+            sent.addAll(entries);
+            return CompletableFuture.completedFuture(null);
+        };
+        JournalFollower follower = new JournalFollower(config, cursorFile, sink, option -> {
+            startOptions.add(option);
+            return List.of("cat", output.toString());
+        });
+
+        // Act
+        while (follower.poll()) {
+            // Read until cat exits
+        }
+        follower.flush();
+        JournalFollower restarted = new JournalFollower(config, cursorFile, sink, option -> {
+            startOptions.add(option);
+            return List.of("true");
+        });
+        restarted.poll();
+
+        // Assert - the record without a message is skipped but its cursor counts
+        assertEquals(2, sent.size());
+        assertEquals(LogLevel.ERROR, sent.get(0).getLevel());
+        assertEquals("sshd", sent.get(0).getApplication());
+        assertEquals("812", sent.get(0).getMetadata().get("pid"));
+        assertEquals("hi", sent.get(1).getMessage());
+        assertEquals("kernel", sent.get(1).getApplication());
+        assertEquals("c3", Files.readString(cursorFile, StandardCharsets.UTF_8));
+        assertEquals(List.of("--lines=0", "--after-cursor=c3"), startOptions);
+    }
+}
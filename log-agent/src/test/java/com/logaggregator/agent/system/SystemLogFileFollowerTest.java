@@ -0,0 +1,199 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.system;
+
+import com.logaggregator.agent.config.LogAgentConfig;
+import com.logaggregator.agent.service.CheckpointService;
+import com.logaggregator.common.LogEntry;
+import com.logaggregator.common.LogLevel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SystemLogFileFollower
+ */
+class SystemLogFileFollowerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path syslog;
+    private LogAgentConfig config;
+    private CheckpointService checkpointService;
+    private final List<String> sent = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        syslog = tempDir.resolve("syslog");
+        config = new LogAgentConfig();
+        config.setEnableCheckpoints(false);
+        checkpointService = new CheckpointService(config);
+        append(syslog, "Jan 15 10:00:00 host cron[1]: old line 1", "Jan 15 10:00:01 host cron[1]: old line 2");
+    }
+
+    private SystemLogFileFollower follower(SystemLogFollower.BatchSink sink) {
+        return new SystemLogFileFollower(config, syslog, checkpointService,
+            line -> new LogEntry("system-log", LogLevel.INFO, line), sink);
+    }
+
+    private SystemLogFileFollower follower() {
+        return follower(entries -> {
+            entries.forEach(entry -> sent.add(entry.getMessage()));
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    /**
+     * A follower whose batches stay in flight until the test completes them
+     */
+    private SystemLogFileFollower pendingFollower(List<CompletableFuture<Void>> pending) {
+        return follower(entries -> {
+            entries.forEach(entry -> sent.add(entry.getMessage()));
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            pending.add(future);
+            return future;
+        });
+    }
+
+    private static void append(Path file, String... lines) throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (String line : lines) {
+            content.append(line).append('\n');
+        }
+        Files.writeString(file, content, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private static void drain(SystemLogFileFollower follower) throws Exception {
+        while (follower.poll()) {
+            // Read until there is nothing left
+        }
+    }
+
+    @Test
+    void testResumesAfterTheLastAcknowledgedLine() throws Exception {
+        // Arrange - the first run starts at the end of the existing file
+        SystemLogFileFollower first = follower();
+        drain(first);
+        append(syslog, "line 1", "line 2");
+        drain(first);
+        first.release();
+
+        // Act - lines written while the agent was down
+        append(syslog, "line 3");
+        SystemLogFileFollower second = follower();
+        drain(second);
+
+        // Assert
+        assertEquals(List.of("line 1", "line 2", "line 3"), sent);
+    }
+
+    @Test
+    void testRotatedFileIsReadToItsEndBeforeTheNewOne() throws Exception {
+        // Arrange
+        SystemLogFileFollower follower = follower();
+        drain(follower);
+        append(syslog, "before rotation");
+
+        // Act - rename, a late write to the old file, then the new file
+        Path rotated = tempDir.resolve("syslog.1");
+        Files.move(syslog, rotated);
+        append(rotated, "late write");
+        append(syslog, "after rotation 1", "after rotation 2");
+        drain(follower);
+
+        // Assert
+        assertEquals(List.of("before rotation", "late write", "after rotation 1", "after rotation 2"), sent);
+    }
+
+    @Test
+    void testFailedBatchIsReadAgain() throws Exception {
+        // Arrange - the first batch fails, every later one succeeds
+        int[] calls = {0};
+        SystemLogFileFollower follower = follower(entries -> {
+            if (calls[0]++ == 0) {
+                return CompletableFuture.failedFuture(new IllegalStateException("broker down"));
+            }
+            entries.forEach(entry -> sent.add(entry.getMessage()));
+            return CompletableFuture.completedFuture(null);
+        });
+        drain(follower);
+
+        // Act
+        append(syslog, "line 1", "line 2");
+        drain(follower);
+
+        // Assert
+        assertEquals(List.of("line 1", "line 2"), sent);
+        assertEquals(1L, follower.getStats().get("rewinds"));
+    }
+
+    @Test
+    void testBatchesInFlightBehindAFailureRewindOnce() throws Exception {
+        // Arrange - three batches in flight
+        config.setBatchSize(1);
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        SystemLogFileFollower follower = pendingFollower(pending);
+        drain(follower);
+        append(syslog, "line 1", "line 2", "line 3");
+        drain(follower);
+        assertEquals(3, pending.size());
+
+        // Act - the first fails and is read again, then the two behind it are acked
+        pending.get(0).completeExceptionally(new IllegalStateException("broker down"));
+        drain(follower);
+        pending.get(1).complete(null);
+        pending.get(2).complete(null);
+        for (int i = 3; i < pending.size(); i++) {
+            pending.get(i).complete(null);
+        }
+        drain(follower);
+
+        // Assert
+        assertEquals(6, pending.size());
+        assertEquals(List.of("line 1", "line 2", "line 3", "line 1", "line 2", "line 3"), sent);
+        assertEquals(1L, follower.getStats().get("rewinds"));
+        assertEquals(Files.size(syslog), follower.getStats().get("committed_offset"));
+    }
+
+    @Test
+    void testRotatedFileIsKeptUntilItsLinesAreAcknowledged() throws Exception {
+        // Arrange
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        SystemLogFileFollower follower = pendingFollower(pending);
+        drain(follower);
+        append(syslog, "before rotation");
+        drain(follower);
+
+        // Act - rotate while the last batch of the old file is in flight, then fail it
+        Files.move(syslog, tempDir.resolve("syslog.1"));
+        append(syslog, "after rotation");
+        drain(follower);
+        List<String> beforeAck = new ArrayList<>(sent);
+        pending.get(0).completeExceptionally(new IllegalStateException("broker down"));
+        drain(follower);
+        pending.get(1).complete(null);
+        drain(follower);
+
+        // Assert - the failed line is read again from the old file before the new one is opened
+        assertEquals(List.of("before rotation"), beforeAck);
+        assertEquals(List.of("before rotation", "before rotation", "after rotation"), sent);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.tail;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ArchiveReader
+ */
+class ArchiveReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testReadLines_Gzip() throws IOException {
+        // Arrange - lines longer than the 8 byte buffer and no trailing newline
+        String content = "first line\nsecond much longer line\r\nlast";
+        Path archive = tempDir.resolve("app.log.1.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(archive))) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+
+        List<String> lines = new ArrayList<>();
+        try (ArchiveReader reader = new ArchiveReader(archive, StandardCharsets.UTF_8, 8)) {
+            // Act
+            int count = reader.readLines(100, (line, endOffset) -> lines.add(line));
+
+            // Assert - the unterminated last line is final in an archive
+            assertEquals("gzip", reader.getFormat());
+            assertEquals(3, count);
+            assertEquals(List.of("first line", "second much longer line", "last"), lines);
+            assertEquals(content.length(), reader.getPosition());
+            assertTrue(reader.isFinished());
+        }
+    }
+
+    @Test
+    void testReadLines_Zstd() throws IOException {
+        // Arrange
+        Path archive = tempDir.resolve("app.log.1.zst");
+        try (OutputStream out = new ZstdOutputStream(Files.newOutputStream(archive))) {
+            out.write("one\ntwo\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        List<String> lines = new ArrayList<>();
+        try (ArchiveReader reader = new ArchiveReader(archive, StandardCharsets.UTF_8, 64)) {
+            // Act
+            reader.readLines(100, (line, endOffset) -> lines.add(line));
+
+            // Assert
+            assertEquals("zstd", reader.getFormat());
+            assertEquals(List.of("one", "two"), lines);
+        }
+    }
+
+    @Test
+    void testHeadChecksum_MatchesOriginalFile() throws IOException {
+        // Arrange
+        String content = "2024-01-01 INFO started\n2024-01-01 INFO running\n";
+        Path logFile = tempDir.resolve("app.log");
+        Files.writeString(logFile, content);
+        Path archive = tempDir.resolve("app.log.1.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(archive))) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+
+        try (ArchiveReader reader = new ArchiveReader(archive, StandardCharsets.UTF_8, 8)) {
+            // Act
+            Long checksum = reader.headChecksum(1024);
+            List<String> lines = new ArrayList<>();
+            reader.readLines(100, (line, endOffset) -> lines.add(line));
+
+            // Assert - the head is still delivered as a line afterwards
+            assertEquals(FileIdentity.of(logFile, 1024).getHeadChecksum(), checksum);
+            assertEquals(List.of("2024-01-01 INFO started", "2024-01-01 INFO running"), lines);
+        }
+    }
+
+    @Test
+    void testTrailerChecksum_TellsApartArchivesWithTheSameHead() throws IOException {
+        // Arrange - both files start with the same banner
+        String banner = "=== application started ===\n";
+        Path first = tempDir.resolve("app.log.1.gz");
+        Path second = tempDir.resolve("app.log.2.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(first))) {
+            out.write((banner + "first run\n").getBytes(StandardCharsets.UTF_8));
+        }
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(second))) {
+            out.write((banner + "second run\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        try (ArchiveReader firstReader = new ArchiveReader(first, StandardCharsets.UTF_8, 64);
+             ArchiveReader secondReader = new ArchiveReader(second, StandardCharsets.UTF_8, 64);
+             ArchiveReader firstAgain = new ArchiveReader(first, StandardCharsets.UTF_8, 64)) {
+            // Act & Assert
+            assertEquals(firstReader.headChecksum(16), secondReader.headChecksum(16));
+            assertNotEquals(firstReader.trailerChecksum(), secondReader.trailerChecksum());
+            assertEquals(firstReader.trailerChecksum(), firstAgain.trailerChecksum());
+        }
+    }
+
+    @Test
+    void testRejectsUncompressedFile() throws IOException {
+        // Arrange
+        Path plain = tempDir.resolve("plain.gz");
+        Files.writeString(plain, "not compressed\n");
+
+        // Act & Assert
+        assertThrows(IOException.class, () -> new ArchiveReader(plain, StandardCharsets.UTF_8, 64));
+    }
+}
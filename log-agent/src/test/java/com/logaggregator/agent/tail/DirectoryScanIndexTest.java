@@ -0,0 +1,104 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.tail;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for DirectoryScanIndex
+ */
+class DirectoryScanIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final List<Path> files = new ArrayList<>();
+
+    private final DirectoryScanIndex.Visitor collector = new DirectoryScanIndex.Visitor() {
+        @Override
+        public boolean onDirectory(Path directory) {
+            return !directory.getFileName().toString().equals("skipped");
+        }
+
+        @Override
+        public void onFile(Path file, BasicFileAttributes attrs) {
+            files.add(file);
+        }
+    };
+
+    @Test
+    void testUnchangedDirectoriesAreNotListedAgain() throws IOException {
+        // Arrange - settled modification times, so nothing counts as racy
+        DirectoryScanIndex index = new DirectoryScanIndex(0);
+        Path nested = Files.createDirectories(tempDir.resolve("a").resolve("b"));
+        Files.writeString(nested.resolve("app.log"), "entry\n");
+        settle(tempDir, tempDir.resolve("a"), nested);
+        index.scan(tempDir, false, collector);
+        files.clear();
+
+        // Act
+        index.scan(tempDir, false, collector);
+
+        // Assert
+        assertTrue(files.isEmpty());
+        assertEquals(3, index.getDirectoriesSkipped());
+        assertEquals(3, index.getDirectoriesListed());
+    }
+
+    @Test
+    void testChangedNestedDirectoryIsListed() throws IOException {
+        // Arrange
+        DirectoryScanIndex index = new DirectoryScanIndex(0);
+        Path nested = Files.createDirectories(tempDir.resolve("a").resolve("b"));
+        settle(tempDir, tempDir.resolve("a"), nested);
+        index.scan(tempDir, false, collector);
+
+        // Act - a new file only changes its own directory
+        Path newFile = Files.writeString(nested.resolve("new.log"), "entry\n");
+        index.scan(tempDir, false, collector);
+
+        // Assert
+        assertEquals(List.of(newFile), files);
+        assertEquals(2, index.getDirectoriesSkipped());
+    }
+
+    @Test
+    void testRemovedAndSkippedDirectoriesLeaveTheIndex() throws IOException {
+        // Arrange
+        DirectoryScanIndex index = new DirectoryScanIndex(0);
+        Path removed = Files.createDirectories(tempDir.resolve("removed"));
+        Files.createDirectories(tempDir.resolve("skipped"));
+        index.scan(tempDir, false, collector);
+        assertEquals(2, index.getIndexedDirectoryCount());
+
+        // Act
+        Files.delete(removed);
+        index.scan(tempDir, false, collector);
+
+        // Assert
+        assertEquals(1, index.getIndexedDirectoryCount());
+    }
+
+    private static void settle(Path... directories) throws IOException {
+        FileTime past = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+        for (Path directory : directories) {
+            Files.setLastModifiedTime(directory, past);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.tail;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for FileIdentity
+ */
+class FileIdentityTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testIdentitySurvivesRenameAndAppend() throws IOException {
+        // Arrange
+        Path logFile = tempDir.resolve("app.log");
+        Files.writeString(logFile, "first line\nsecond line\n");
+        FileIdentity before = FileIdentity.of(logFile, 1024);
+
+        // Act - rotate by rename, then keep writing to the renamed file
+        Path rotated = tempDir.resolve("app.log.1");
+        Files.move(logFile, rotated, StandardCopyOption.ATOMIC_MOVE);
+        Files.writeString(rotated, "third line\n", StandardOpenOption.APPEND);
+        FileIdentity after = FileIdentity.of(rotated, 1024);
+
+        // Assert
+        assertEquals(before, after);
+        assertEquals(before.asKey(), after.asKey());
+    }
+
+    @Test
+    void testRewrittenFileGetsNewIdentity() throws IOException {
+        // Arrange
+        Path logFile = tempDir.resolve("app.log");
+        Files.writeString(logFile, "old content\n");
+        FileIdentity before = FileIdentity.of(logFile, 1024);
+
+        // Act - truncate in place and write different content
+        Files.writeString(logFile, "new content\n", StandardOpenOption.TRUNCATE_EXISTING);
+        FileIdentity after = FileIdentity.of(logFile, 1024);
+
+        // Assert - same file key, different head
+        assertEquals(before.getFileKey(), after.getFileKey());
+        assertNotEquals(before, after);
+    }
+
+    @Test
+    void testIncompleteHeadHasNoIdentity() throws IOException {
+        // Arrange
+        Path empty = tempDir.resolve("empty.log");
+        Files.createFile(empty);
+        Path partial = tempDir.resolve("partial.log");
+        Files.writeString(partial, "no newline yet");
+        Path longHead = tempDir.resolve("long.log");
+        Files.writeString(longHead, "x".repeat(64));
+
+        // Act & Assert - a head longer than the fingerprint is complete without a newline
+        assertNull(FileIdentity.of(empty, 16));
+        assertNull(FileIdentity.of(partial, 16));
+        assertNotNull(FileIdentity.of(longHead, 16));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.tail;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Throughput comparison between RandomAccessFile.readLine and the buffered
+ * and memory mapped paths of FileTailReader.
+ * Run with: mvn test -pl log-agent -Dbenchmark=true -Dtest=FileTailReaderBenchmarkTest
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class FileTailReaderBenchmarkTest {
+
+    private static final int LINE_COUNT = 50_000;
+    private static final int ROUNDS = 3;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void benchmarkReadThroughput() throws IOException {
+        // Arrange - nginx style access log lines
+        Path logFile = tempDir.resolve("access.log");
+        try (BufferedWriter writer = Files.newBufferedWriter(logFile, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < LINE_COUNT; i++) {
+                writer.write("10.0.0." + (i % 255) + " - - [10/Oct/2023:13:55:36 +0000] \"GET /api/items/" + i
+                    + " HTTP/1.1\" 200 2326 \"https://example.com/\" \"Mozilla/5.0 (X11; Linux x86_64)\"\n");
+            }
+        }
+        double megabytes = Files.size(logFile) / (1024.0 * 1024.0);
+
+        long rafLines = 0;
+        long rafNanos = Long.MAX_VALUE;
+        long tailLines = 0;
+        long tailNanos = Long.MAX_VALUE;
+        long mappedLines = 0;
+        long mappedNanos = Long.MAX_VALUE;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            // Act - legacy path
+            long start = System.nanoTime();
+            rafLines = 0;
+            try (RandomAccessFile raf = new RandomAccessFile(logFile.toFile(), "r")) {
+                while (raf.readLine() != null) {
+                    rafLines++;
+                }
+            }
+            rafNanos = Math.min(rafNanos, System.nanoTime() - start);
+
+            // Act - channel based reader
+            start = System.nanoTime();
+            long[] counted = new long[1];
+            try (FileTailReader reader = new FileTailReader(logFile, StandardCharsets.UTF_8, 64 * 1024)) {
+                while (reader.readLines(1000, (line, endOffset) -> counted[0]++) > 0) {
+                    // keep draining
+                }
+            }
+            tailLines = counted[0];
+            tailNanos = Math.min(tailNanos, System.nanoTime() - start);
+
+            // Act - mapped catch-up path
+            start = System.nanoTime();
+            counted[0] = 0;
+            try (FileTailReader reader = new FileTailReader(logFile, StandardCharsets.UTF_8, 64 * 1024)) {
+                while (reader.readLinesMapped(1000, 16 * 1024 * 1024, (line, endOffset) -> counted[0]++) > 0) {
+                    // keep draining
+                }
+            }
+            mappedLines = counted[0];
+            mappedNanos = Math.min(mappedNanos, System.nanoTime() - start);
+        }
+
+        // Assert
+        assertEquals(LINE_COUNT, rafLines);
+        assertEquals(LINE_COUNT, tailLines);
+        assertEquals(LINE_COUNT, mappedLines);
+
+        System.out.printf("RandomAccessFile.readLine: %.1f MB/s%n", megabytes / (rafNanos / 1e9));
+        System.out.printf("FileTailReader:            %.1f MB/s%n", megabytes / (tailNanos / 1e9));
+        System.out.printf("FileTailReader (mapped):   %.1f MB/s%n", megabytes / (mappedNanos / 1e9));
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.tail;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for FileTailReader
+ */
+class FileTailReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testReadLines_SplitsAcrossBufferBoundaries() throws IOException {
+        // Arrange - lines longer than the 8 byte buffer
+        Path logFile = tempDir.resolve("app.log");
+        Files.writeString(logFile, "first line\nsecond much longer line\r\nthird\n");
+
+        List<String> lines = new ArrayList<>();
+        try (FileTailReader reader = new FileTailReader(logFile, StandardCharsets.UTF_8, 8)) {
+            // Act
+            int count = reader.readLines(100, (line, endOffset) -> lines.add(line));
+
+            // Assert
+            assertEquals(3, count);
+            assertEquals(List.of("first line", "second much longer line", "third"), lines);
+            assertEquals(Files.size(logFile), reader.getPosition());
+        }
+    }
+
+    @Test
+    void testReadLines_DecodesUtf8() throws IOException {
+        // Arrange
+        Path logFile = tempDir.resolve("utf8.log");
+        Files.writeString(logFile, "Größe überschritten – 日本語\n", StandardCharsets.UTF_8);
+
+        List<String> lines = new ArrayList<>();
+        try (FileTailReader reader = new FileTailReader(logFile, StandardCharsets.UTF_8, 5)) {
+            // Act
+            reader.readLines(10, (line, endOffset) -> lines.add(line));
+
+            // Assert
+            assertEquals(List.of("Größe überschritten – 日本語"), lines);
+        }
+    }
+
+    @Test
+    void testReadLines_LeavesPartialLineUntilCompleted() throws IOException {
+        // Arrange
+        Path logFile = tempDir.resolve("partial.log");
+        Files.writeString(logFile, "complete\npart");
+
+        List<String> lines = new ArrayList<>();
+        try (FileTailReader reader = new FileTailReader(logFile, StandardCharsets.UTF_8, 64)) {
+            // Act
+            reader.readLines(10, (line, endOffset) -> lines.add(line));
+
+            // Assert - only the terminated line is consumed
+            assertEquals(List.of("complete"), lines);
+            assertEquals(9, reader.getPosition());
+
+            // Act - the writer finishes the line
+            Files.writeString(logFile, "ial\n", StandardOpenOption.APPEND);
+            reader.readLines(10, (line, endOffset) -> lines.add(line));
+
+            // Assert
+            assertEquals(List.of("complete", "partial"), lines);
+            assertEquals(Files.size(logFile), reader.getPosition());
+        }
+    }
+
+    @Test
+    void testReadLines_StopsAtMaxLinesWithExactOffset() throws IOException {
+        // Arrange
+        Path logFile = tempDir.resolve("batch.log");
+        Files.writeString(logFile, "a\nbb\nccc\ndddd\n");
+
+        List<Long> offsets = new ArrayList<>();
+        try (FileTailReader reader = new FileTailReader(logFile, StandardCharsets.UTF_8, 64)) {
+            // Act
+            int count = reader.readLines(2, (line, endOffset) -> offsets.add(endOffset));
+
+            // Assert
+            assertEquals(2, count);
+            assertEquals(List.of(2L, 5L), offsets);
+            assertEquals(5, reader.getPosition());
+
+            // Act - resume from the stored position
+            List<String> rest = new ArrayList<>();
+            reader.readLines(10, (line, endOffset) -> rest.add(line));
+
+            // Assert
+            assertEquals(List.of("ccc", "dddd"), rest);
+        }
+    }
+
+    @Test
+    void testReadLinesMapped_CrossesWindowsOnLineBoundaries() throws IOException {
+        // Arrange - 16 byte windows force several re-maps
+        Path logFile = tempDir.resolve("backlog.log");
+        StringBuilder content = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            String line = "line-" + i + "-ü";
+            expected.add(line);
+            content.append(line).append('\n');
+        }
+        Files.writeString(logFile, content.toString(), StandardCharsets.UTF_8);
+
+        List<String> lines = new ArrayList<>();
+        try (FileTailReader reader = new FileTailReader(logFile, StandardCharsets.UTF_8, 64)) {
+            // Act
+            while (reader.readLinesMapped(7, 16, (line, endOffset) -> lines.add(line)) > 0) {
+                // keep draining
+            }
+
+            // Assert
+            assertEquals(expected, lines);
+            assertEquals(Files.size(logFile), reader.getPosition());
+        }
+    }
+
+    @Test
+    void testReadLinesMapped_FallsBackForLinesLongerThanWindow() throws IOException {
+        // Arrange
+        Path logFile = tempDir.resolve("long.log");
+        String longLine = "x".repeat(100);
+        Files.writeString(logFile, "short\n" + longLine + "\ntail");
+
+        List<String> lines = new ArrayList<>();
+        try (FileTailReader reader = new FileTailReader(logFile, StandardCharsets.UTF_8, 32)) {
+            // Act
+            reader.readLinesMapped(10, 16, (line, endOffset) -> lines.add(line));
+            reader.readLinesMapped(10, 16, (line, endOffset) -> lines.add(line));
+
+            // Assert - the unterminated tail is not consumed
+            assertEquals(List.of("short", longLine), lines);
+            assertEquals(6 + longLine.length() + 1, reader.getPosition());
+        }
+    }
+}
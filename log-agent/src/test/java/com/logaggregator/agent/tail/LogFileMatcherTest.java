@@ -0,0 +1,46 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.tail;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LogFileMatcher
+ */
+class LogFileMatcherTest {
+
+    @Test
+    void testMatchesIncludePatternsCaseInsensitively() {
+        // Arrange
+        LogFileMatcher matcher = new LogFileMatcher(List.of("*.log", "messages"), List.of());
+
+        // Act & Assert
+        assertTrue(matcher.matches(Path.of("/var/log/app.log")));
+        assertTrue(matcher.matches(Path.of("/var/log/APP.LOG")));
+        assertTrue(matcher.matches(Path.of("/var/log/messages")));
+        assertFalse(matcher.matches(Path.of("/var/log/app.log.1")));
+        assertFalse(matcher.matches(Path.of("/var/log/applog")));
+    }
+
+    @Test
+    void testExcludePatternsWin() {
+        // Arrange
+        LogFileMatcher matcher = new LogFileMatcher(List.of("*.log"), List.of("*-debug.log", "archive"));
+
+        // Act & Assert
+        assertTrue(matcher.matches(Path.of("/var/log/app.log")));
+        assertFalse(matcher.matches(Path.of("/var/log/app-debug.log")));
+        assertTrue(matcher.isExcluded(Path.of("/var/log/archive")));
+        assertFalse(matcher.isExcluded(Path.of("/var/log/nginx")));
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * this file is part of Log Aggregator.
+ * Log Aggregator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ *
+ */
+
+package com.logaggregator.agent.tail;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for MultilineAggregator
+ */
+class MultilineAggregatorTest {
+
+    private static final Pattern JAVA_CONTINUATION =
+        Pattern.compile("^\\s|^Caused by:|^Suppressed:|^[\\w$.]+(Exception|Error|Throwable)(:|$)");
+
+    @Test
+    void testStackTraceIsJoinedWithItsMessage() {
+        // Arrange
+        MultilineAggregator aggregator = new MultilineAggregator(null, JAVA_CONTINUATION, 500, 1000);
+
+        // Act
+        assertNull(aggregator.add("2024-01-01 10:00:00 ERROR Request failed", 0, 0));
+        assertNull(aggregator.add("java.lang.IllegalStateException: boom", 40, 0));
+        assertNull(aggregator.add("\tat com.example.Service.handle(Service.java:42)", 78, 0));
+        assertNull(aggregator.add("Caused by: java.io.IOException: closed", 126, 0));
+        assertNull(aggregator.add("\t... 12 more", 165, 0));
+        List<String> completed = aggregator.add("2024-01-01 10:00:01 INFO Recovered", 178, 0);
+
+        // Assert
+        assertEquals(5, completed.size());
+        assertEquals("2024-01-01 10:00:00 ERROR Request failed", completed.get(0));
+        assertTrue(aggregator.hasPending());
+        assertEquals(178, aggregator.getPendingStartOffset());
+    }
+
+    @Test
+    void testStartPatternGroupsUntilNextStart() {
+        // Arrange
+        Pattern timestamp = Pattern.compile("^\\d{4}-\\d{2}-\\d{2} ");
+        MultilineAggregator aggregator = new MultilineAggregator(timestamp, null, 500, 1000);
+
+        // Act
+        aggregator.add("2024-01-01 10:00:00 first", 0, 0);
+        aggregator.add("free form detail", 26, 0);
+        List<String> completed = aggregator.add("2024-01-01 10:00:01 second", 43, 0);
+
+        // Assert
+        assertEquals(List.of("2024-01-01 10:00:00 first", "free form detail"), completed);
+    }
+
+    @Test
+    void testLineLimitSplitsEvents() {
+        // Arrange
+        MultilineAggregator aggregator = new MultilineAggregator(null, JAVA_CONTINUATION, 3, 1000);
+
+        // Act
+        aggregator.add("message", 0, 0);
+        aggregator.add("\tat a", 8, 0);
+        aggregator.add("\tat b", 14, 0);
+        List<String> completed = aggregator.add("\tat c", 20, 0);
+
+        // Assert
+        assertEquals(3, completed.size());
+        assertEquals(20, aggregator.getPendingStartOffset());
+    }
+
+    @Test
+    void testPendingEventBecomesIdleAfterTimeout() {
+        // Arrange
+        MultilineAggregator aggregator = new MultilineAggregator(null, JAVA_CONTINUATION, 500, 1000);
+        aggregator.add("last message", 0, 5_000);
+
+        // Act & Assert
+        assertFalse(aggregator.isIdle(5_500));
+        assertTrue(aggregator.isIdle(6_000));
+        assertEquals(List.of("last message"), aggregator.flush());
+        assertFalse(aggregator.hasPending());
+        assertNull(aggregator.flush());
+    }
+}
@@ -0,0 +1,24 @@
+package com.logaggregator.processor;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.util.backoff.FixedBackOff;
+
+/**
+ * Redelivery of records the listeners fail.
+ * A compressed batch can arrive before its dictionary has been read, so
+ * the record is failed and sought back, then retried after a back-off
+ * while the dictionary listener keeps consuming on its own container.
+ */
+@Configuration
+public class KafkaConsumerConfig {
+
+    @Bean
+    public DefaultErrorHandler kafkaErrorHandler(
+            @Value("${log.kafka.retry.interval-ms:1000}") long intervalMs,
+            @Value("${log.kafka.retry.attempts:60}") long attempts) {
+        return new DefaultErrorHandler(new FixedBackOff(intervalMs, attempts));
+    }
+}
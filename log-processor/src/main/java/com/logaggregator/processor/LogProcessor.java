@@ -2,48 +2,117 @@
 
 package com.logaggregator.processor;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.logaggregator.common.CompressedBatch;
+import com.logaggregator.common.LogBatch;
+import com.logaggregator.common.LogDictionary;
 import com.logaggregator.common.LogEntry;
+import com.logaggregator.common.LogEntryCodec;
+import com.logaggregator.common.WireFormat;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
 import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 @Component
 public class LogProcessor {
 
-    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
     private final ObjectMapper objectMapper;
+    private final WireFormat processedFormat;
+    // Loaded once per dictionary and shared by every batch compressed with it
+    private final Map<Long, ZstdDictDecompress> dictionaries = new ConcurrentHashMap<>();
 
     // Pattern for extracting error codes
     private static final Pattern ERROR_CODE_PATTERN = Pattern.compile("ERROR_\\d+");
 
-    public LogProcessor(KafkaTemplate<String, String> kafkaTemplate, ObjectMapper objectMapper) {
+    public LogProcessor(KafkaTemplate<String, byte[]> kafkaTemplate, ObjectMapper objectMapper,
+                        @Value("${log.kafka.format.processed:json}") String processedFormat) {
         this.kafkaTemplate = kafkaTemplate;
         this.objectMapper = objectMapper;
+        this.processedFormat = WireFormat.fromConfig(processedFormat);
     }
 
     @KafkaListener(topics = "${log.kafka.topic.raw:raw-logs}", groupId = "log-processor-group")
-    public void processLog(String rawLogMessage) {
+    public void processLog(ConsumerRecord<String, byte[]> record) {
+        byte[] rawLogMessage = record.value();
         try {
-            LogEntry logEntry = objectMapper.readValue(rawLogMessage, LogEntry.class);
+            Header formatHeader = record.headers().lastHeader(WireFormat.HEADER);
+            WireFormat format = WireFormat.fromHeader(formatHeader != null ? formatHeader.value() : null);
+            if (format == null) {
+                System.err.println("Skipping log record with unknown format " + new String(formatHeader.value()));
+                return;
+            }
+            if (format == WireFormat.BINARY) {
+                for (LogEntry logEntry : LogEntryCodec.decode(rawLogMessage)) {
+                    processEntry(logEntry);
+                }
+                return;
+            }
 
-            // Process the log entry
-            LogEntry processedLog = enhanceLogEntry(logEntry);
+            if (format == WireFormat.ZSTD_DICTIONARY) {
+                // Batch the agent compressed with the dictionary of its source
+                CompressedBatch batch = CompressedBatch.fromRecord(rawLogMessage);
+                if (!batch.isSupported()) {
+                    System.err.println("Skipping compressed log batch with unsupported version " + batch.getBatchVersion());
+                    return;
+                }
+                for (LogEntry logEntry : readEntries(batch)) {
+                    processEntry(logEntry);
+                }
+                return;
+            }
 
-            // Send to processed topic
-            String processedMessage = objectMapper.writeValueAsString(processedLog);
-            kafkaTemplate.send("processed-logs", processedMessage);
+            if (LogBatch.isBatch(rawLogMessage)) {
+                // Many entries packed into one record by the agent
+                LogBatch batch = objectMapper.readValue(rawLogMessage, LogBatch.class);
+                if (!batch.isSupported()) {
+                    System.err.println("Skipping log batch with unsupported version " + batch.getBatchVersion());
+                    return;
+                }
+                for (LogEntry logEntry : batch.getEntries()) {
+                    processEntry(logEntry);
+                }
+                return;
+            }
 
-            System.out.println("Processed log: " + processedLog.getId());
+            processEntry(objectMapper.readValue(rawLogMessage, LogEntry.class));
 
+        } catch (IllegalStateException e) {
+            // Missing dictionary, let the container redeliver the record
+            throw e;
         } catch (Exception e) {
             System.err.println("Error processing log: " + e.getMessage());
         }
     }
 
+    private void processEntry(LogEntry logEntry) throws Exception {
+        // Process the log entry
+        LogEntry processedLog = enhanceLogEntry(logEntry);
+
+        // Send to processed topic in its configured format
+        byte[] processedMessage = processedFormat == WireFormat.BINARY
+            ? LogEntryCodec.encode(List.of(processedLog))
+            : objectMapper.writeValueAsBytes(processedLog);
+        ProducerRecord<String, byte[]> record = new ProducerRecord<>("processed-logs", processedMessage);
+        record.headers().add(WireFormat.HEADER, processedFormat.getHeaderValue());
+        kafkaTemplate.send(record);
+
+        System.out.println("Processed log: " + processedLog.getId());
+    }
+
     private LogEntry enhanceLogEntry(LogEntry original) {
         // Create enhanced log entry with additional processing
         LogEntry enhanced = new LogEntry();
@@ -87,4 +156,35 @@ public class LogProcessor {
                 return "UNKNOWN";
         }
     }
+
+    // Every instance reads all dictionaries, so each gets its own group
+    @KafkaListener(topics = "${log.kafka.topic.dictionaries:log-dictionaries}",
+                   groupId = "log-processor-dictionaries-#{T(java.util.UUID).randomUUID()}")
+    public void listenDictionaries(byte[] message) {
+        try {
+            LogDictionary dictionary = objectMapper.readValue(message, LogDictionary.class);
+            dictionaries.computeIfAbsent(dictionary.getDictId(), id -> new ZstdDictDecompress(dictionary.getDictionary()));
+        } catch (IOException e) {
+            System.err.println("Error deserializing compression dictionary: " + e.getMessage());
+        }
+    }
+
+    private List<LogEntry> readEntries(CompressedBatch batch) throws IOException {
+        byte[] entries = batch.decompressEntries(dictionaryFor(batch.getDictId()));
+        return objectMapper.readValue(entries, new TypeReference<List<LogEntry>>() {});
+    }
+
+    /**
+     * The agent publishes a dictionary before using it, but the dictionary
+     * topic may be read a little behind the log topic. The record is then
+     * failed and the container redelivers it after a back-off, see
+     * {@link KafkaConsumerConfig}.
+     */
+    private ZstdDictDecompress dictionaryFor(long dictId) {
+        ZstdDictDecompress dictionary = dictionaries.get(dictId);
+        if (dictionary == null) {
+            throw new IllegalStateException("Compression dictionary " + dictId + " is not available");
+        }
+        return dictionary;
+    }
 }
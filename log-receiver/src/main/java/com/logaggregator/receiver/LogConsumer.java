@@ -1,17 +1,31 @@
 package com.logaggregator.receiver;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.logaggregator.common.CompressedBatch;
+import com.logaggregator.common.LogBatch;
+import com.logaggregator.common.LogDictionary;
 import com.logaggregator.common.LogEntry;
+import com.logaggregator.common.LogEntryCodec;
+import com.logaggregator.common.WireFormat;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 public class LogConsumer {
 
     private final ObjectMapper objectMapper;
     private final LogRepository logRepository; // Spring Data Elasticsearch repository
+    // Loaded once per dictionary and shared by every batch compressed with it
+    private final Map<Long, ZstdDictDecompress> dictionaries = new ConcurrentHashMap<>();
 
     public LogConsumer(ObjectMapper objectMapper, LogRepository logRepository) {
         this.objectMapper = objectMapper;
@@ -19,14 +33,83 @@ public class LogConsumer {
     }
 
     @KafkaListener(topics = "${log.kafka.topic.name:raw-logs}", groupId = "log-receiver-group")
-    public void listen(String message) {
+    public void listen(ConsumerRecord<String, byte[]> record) {
+        byte[] message = record.value();
         try {
+            Header formatHeader = record.headers().lastHeader(WireFormat.HEADER);
+            WireFormat format = WireFormat.fromHeader(formatHeader != null ? formatHeader.value() : null);
+            if (format == null) {
+                System.err.println("Skipping log record with unknown format " + new String(formatHeader.value()));
+                return;
+            }
+            if (format == WireFormat.BINARY) {
+                List<LogEntry> entries = LogEntryCodec.decode(message);
+                logRepository.saveAll(entries);
+                System.out.println("Received and saved binary batch of " + entries.size() + " logs");
+                return;
+            }
+
+            if (format == WireFormat.ZSTD_DICTIONARY) {
+                // Batch the agent compressed with the dictionary of its source
+                CompressedBatch batch = CompressedBatch.fromRecord(message);
+                if (!batch.isSupported()) {
+                    System.err.println("Skipping compressed log batch with unsupported version " + batch.getBatchVersion());
+                    return;
+                }
+                logRepository.saveAll(readEntries(batch));
+                System.out.println("Received and saved compressed batch of " + batch.getEntryCount() + " logs");
+                return;
+            }
+
+            if (LogBatch.isBatch(message)) {
+                // Many entries packed into one record by the agent
+                LogBatch batch = objectMapper.readValue(message, LogBatch.class);
+                if (!batch.isSupported()) {
+                    System.err.println("Skipping log batch with unsupported version " + batch.getBatchVersion());
+                    return;
+                }
+                logRepository.saveAll(batch.getEntries());
+                System.out.println("Received and saved batch of " + batch.getEntries().size() + " logs");
+                return;
+            }
+
             LogEntry logEntry = objectMapper.readValue(message, LogEntry.class);
             logRepository.save(logEntry); // Save to Elasticsearch
             System.out.println("Received and saved log: " + logEntry.getId());
-        } catch (IOException e) {
+        } catch (IOException | IllegalArgumentException e) {
             System.err.println("Error deserializing log entry or saving to ES: " + e.getMessage());
             e.printStackTrace();
         }
     }
+
+    // Every instance reads all dictionaries, so each gets its own group
+    @KafkaListener(topics = "${log.kafka.topic.dictionaries:log-dictionaries}",
+                   groupId = "log-receiver-dictionaries-#{T(java.util.UUID).randomUUID()}")
+    public void listenDictionaries(byte[] message) {
+        try {
+            LogDictionary dictionary = objectMapper.readValue(message, LogDictionary.class);
+            dictionaries.computeIfAbsent(dictionary.getDictId(), id -> new ZstdDictDecompress(dictionary.getDictionary()));
+        } catch (IOException e) {
+            System.err.println("Error deserializing compression dictionary: " + e.getMessage());
+        }
+    }
+
+    private List<LogEntry> readEntries(CompressedBatch batch) throws IOException {
+        byte[] entries = batch.decompressEntries(dictionaryFor(batch.getDictId()));
+        return objectMapper.readValue(entries, new TypeReference<List<LogEntry>>() {});
+    }
+
+    /**
+     * The agent publishes a dictionary before using it, but the dictionary
+     * topic may be read a little behind the log topic. The record is then
+     * failed and the container redelivers it after a back-off, see
+     * {@link KafkaConsumerConfig}.
+     */
+    private ZstdDictDecompress dictionaryFor(long dictId) {
+        ZstdDictDecompress dictionary = dictionaries.get(dictId);
+        if (dictionary == null) {
+            throw new IllegalStateException("Compression dictionary " + dictId + " is not available");
+        }
+        return dictionary;
+    }
 }